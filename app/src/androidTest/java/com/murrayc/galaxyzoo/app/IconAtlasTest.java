@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Check IconAtlas against the index.bin written by the compileIconAtlases task in app/build.gradle.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IconAtlasTest {
+    private static final String ASSET_PATH_ICONS_DIR = "icons/";
+    private static final int BINARY_MAGIC_ICONS_INDEX = 0x475A4943; //"GZIC"
+    private static final int BINARY_FORMAT_VERSION = 1;
+
+    //The workflow icons are in a PNG atlas, so we can compare their pixels exactly.
+    private static final String LOSSLESS_ATLAS_FILE_EXTENSION = ".png";
+
+    private static final class IndexEntry {
+        String name;
+        String atlasFilename;
+        int x;
+        int y;
+        int width;
+        int height;
+    }
+
+    private Context mContext;
+    private List<IndexEntry> mEntries;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mEntries = readIndex();
+        assertTrue(mEntries.size() > 0);
+    }
+
+    @Test
+    public void testRegionsMatchIndex() {
+        final IconAtlas iconAtlas = new IconAtlas(mContext);
+        for (final IndexEntry entry : mEntries) {
+            final IconAtlas.Region region = iconAtlas.getRegion(entry.name);
+            assertNotNull("getRegion() returned null for: " + entry.name, region);
+            assertEquals(entry.width, region.getWidth());
+            assertEquals(entry.height, region.getHeight());
+            assertEquals(!entry.atlasFilename.endsWith(LOSSLESS_ATLAS_FILE_EXTENSION), region.isOpaque());
+        }
+    }
+
+    @Test
+    public void testDecodeRegion() throws IOException {
+        final IndexEntry entry = getLosslessEntries().get(0);
+        final Bitmap expected = getIcon(decodeWholeAtlas(entry.atlasFilename), entry);
+
+        final IconAtlas iconAtlas = new IconAtlas(mContext);
+        final Bitmap actual = iconAtlas.decodeRegion(iconAtlas.getRegion(entry.name), null);
+        assertNotNull(actual);
+        assertEquals(entry.width, actual.getWidth());
+        assertEquals(entry.height, actual.getHeight());
+        assertTrue("The decoded icon is not the one at its position in the atlas: " + entry.name,
+                expected.sameAs(actual));
+    }
+
+    /**
+     * Each thread should get the right icon, even when several threads decode from the same atlas at once.
+     */
+    @Test
+    public void testDecodeRegionConcurrently() throws Exception {
+        final List<IndexEntry> entries = getLosslessEntries();
+        final Bitmap wholeAtlas = decodeWholeAtlas(entries.get(0).atlasFilename);
+        final List<Bitmap> expected = new ArrayList<>();
+        for (final IndexEntry entry : entries) {
+            expected.add(getIcon(wholeAtlas, entry));
+        }
+
+        final IconAtlas iconAtlas = new IconAtlas(mContext);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<Bitmap>> futures = new ArrayList<>();
+        for (final IndexEntry entry : entries) {
+            futures.add(executor.submit(() -> iconAtlas.decodeRegion(iconAtlas.getRegion(entry.name), null)));
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            final Bitmap actual = futures.get(i).get();
+            assertNotNull(actual);
+            assertTrue("Wrong pixels for: " + entries.get(i).name, expected.get(i).sameAs(actual));
+        }
+
+        executor.shutdown();
+    }
+
+    /**
+     * The atlas should create new decoders after recycle() has released the idle ones.
+     */
+    @Test
+    public void testDecodeRegionAfterRecycle() throws IOException {
+        final IndexEntry entry = getLosslessEntries().get(0);
+        final Bitmap expected = getIcon(decodeWholeAtlas(entry.atlasFilename), entry);
+
+        final IconAtlas iconAtlas = new IconAtlas(mContext);
+        assertNotNull(iconAtlas.decodeRegion(iconAtlas.getRegion(entry.name), null));
+        iconAtlas.recycle();
+
+        final Bitmap actual = iconAtlas.decodeRegion(iconAtlas.getRegion(entry.name), null);
+        assertNotNull(actual);
+        assertTrue("The decoded icon is not the one at its position in the atlas: " + entry.name,
+                expected.sameAs(actual));
+    }
+
+    /**
+     * Get the icons from the first lossless atlas.
+     */
+    private List<IndexEntry> getLosslessEntries() {
+        final List<IndexEntry> result = new ArrayList<>();
+        for (final IndexEntry entry : mEntries) {
+            if (!entry.atlasFilename.endsWith(LOSSLESS_ATLAS_FILE_EXTENSION)) {
+                continue;
+            }
+
+            if (result.isEmpty() || entry.atlasFilename.equals(result.get(0).atlasFilename)) {
+                result.add(entry);
+            }
+        }
+
+        assertTrue(result.size() > 0);
+        return result;
+    }
+
+    private Bitmap decodeWholeAtlas(final String atlasFilename) throws IOException {
+        final InputStream inputStream = Utils.openAsset(mContext, ASSET_PATH_ICONS_DIR + atlasFilename);
+        assertNotNull(inputStream);
+        final Bitmap atlas = BitmapFactory.decodeStream(inputStream);
+        inputStream.close();
+        assertNotNull(atlas);
+        return atlas;
+    }
+
+    private static Bitmap getIcon(final Bitmap wholeAtlas, final IndexEntry entry) {
+        return Bitmap.createBitmap(wholeAtlas, entry.x, entry.y, entry.width, entry.height);
+    }
+
+    private List<IndexEntry> readIndex() throws IOException {
+        final InputStream inputStream = Utils.openAsset(mContext, ASSET_PATH_ICONS_DIR + "index.bin");
+        assertNotNull(inputStream);
+
+        final DataInputStream in = new DataInputStream(inputStream);
+        assertEquals(BINARY_MAGIC_ICONS_INDEX, in.readInt());
+        assertEquals(BINARY_FORMAT_VERSION, in.readInt());
+
+        final int atlasesCount = in.readInt();
+        final String[] atlasFilenames = new String[atlasesCount];
+        for (int i = 0; i < atlasesCount; i++) {
+            atlasFilenames[i] = in.readUTF();
+        }
+
+        final int iconsCount = in.readInt();
+        final List<IndexEntry> result = new ArrayList<>(iconsCount);
+        for (int i = 0; i < iconsCount; i++) {
+            final IndexEntry entry = new IndexEntry();
+            entry.name = in.readUTF();
+            entry.atlasFilename = atlasFilenames[in.readUnsignedByte()];
+            entry.x = in.readShort();
+            entry.y = in.readShort();
+            entry.width = in.readShort();
+            entry.height = in.readShort();
+            result.add(entry);
+        }
+
+        in.close();
+        return result;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.murrayc.galaxyzoo.core.DecisionTree;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Check that an icon returned by getIcon() is never reused for another icon,
+ * even while other threads evict and decode icons.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IconsCacheEvictionTest {
+    private static final int ICONS_COUNT = 40;
+    private static final int THREADS_COUNT = 4;
+    private static final int ITERATIONS_PER_THREAD = 50;
+
+    //IconsCache uses 1/4 of its budget, which is 1/8 of its memory, for the workflow icons.
+    private static final int WORKFLOW_CACHE_FRACTION = 32;
+    private static final int CACHED_ICONS_COUNT = 3;
+
+    private static final class ReturnedIcon {
+        final String name;
+        final Bitmap bitmap;
+
+        ReturnedIcon(final String name, final Bitmap bitmap) {
+            this.name = name;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private Context mContext;
+    private List<DecisionTree> mTrees;
+    private List<String> mIconNames;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = InstrumentationRegistry.getTargetContext();
+
+        final String filename = com.murrayc.galaxyzoo.app.provider.Config.SUBJECT_GROUPS.values().iterator().next().getFilename();
+        final InputStream inputStreamTree = Utils.openAsset(mContext, Utils.getDecisionTreeFilepath(filename));
+        assertNotNull(inputStreamTree);
+        final DecisionTree decisionTree = new DecisionTree(inputStreamTree, null);
+        inputStreamTree.close();
+
+        mTrees = new ArrayList<>();
+        mTrees.add(decisionTree);
+
+        //The workflow icons all have the same size and config,
+        //so BitmapPool can reuse any of them for any other.
+        mIconNames = new ArrayList<>();
+        for (final DecisionTree.Question question : decisionTree.getAllQuestions()) {
+            for (final DecisionTree.Answer answer : question.getAnswers()) {
+                if (mIconNames.size() < ICONS_COUNT && !mIconNames.contains(answer.getIcon())) {
+                    mIconNames.add(answer.getIcon());
+                }
+            }
+        }
+
+        assertTrue(mIconNames.size() > CACHED_ICONS_COUNT);
+    }
+
+    @Test
+    public void testConcurrentEviction() throws Exception {
+        //Icons from a cache that is big enough to never evict them:
+        final IconsCache referenceCache = new IconsCache(mContext);
+        final Map<String, Bitmap> expected = new HashMap<>();
+        for (final String iconName : mIconNames) {
+            final Bitmap bitmap = referenceCache.getIcon(iconName);
+            assertNotNull(bitmap);
+            expected.put(iconName, bitmap);
+        }
+
+        //A cache with room for only a few icons, so they are evicted, and reused, very often:
+        final Bitmap example = expected.get(mIconNames.get(0));
+        final int iconBytes = example.getRowBytes() * example.getHeight();
+        final IconsCache iconsCache = new IconsCache(mContext,
+                iconBytes * CACHED_ICONS_COUNT * WORKFLOW_CACHE_FRACTION);
+
+        //The preloading adds icons that were never returned, so BitmapPool may reuse them:
+        final ExecutorService preloadExecutor = Executors.newFixedThreadPool(2);
+        iconsCache.preloadIconsAsync(preloadExecutor, mTrees);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS_COUNT);
+        final List<Future<List<ReturnedIcon>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS_COUNT; t++) {
+            final Random random = new Random(t);
+            futures.add(executor.submit(() -> {
+                final List<ReturnedIcon> returned = new ArrayList<>();
+                for (int i = 0; i < ITERATIONS_PER_THREAD; i++) {
+                    final String iconName = mIconNames.get(random.nextInt(mIconNames.size()));
+                    final Bitmap bitmap = iconsCache.getIcon(iconName);
+                    assertNotNull(bitmap);
+                    assertTrue("getIcon() returned the wrong pixels for: " + iconName,
+                            expected.get(iconName).sameAs(bitmap));
+                    returned.add(new ReturnedIcon(iconName, bitmap));
+                }
+
+                return returned;
+            }));
+        }
+
+        final List<ReturnedIcon> returned = new ArrayList<>();
+        for (final Future<List<ReturnedIcon>> future : futures) {
+            returned.addAll(future.get());
+        }
+
+        executor.shutdown();
+        preloadExecutor.shutdown();
+        assertTrue(preloadExecutor.awaitTermination(60, TimeUnit.SECONDS));
+
+        //None of the returned icons should have been overwritten later:
+        for (final ReturnedIcon icon : returned) {
+            assertTrue("A returned icon was reused for another icon: " + icon.name,
+                    expected.get(icon.name).sameAs(icon.bitmap));
+        }
+
+        assertTrue(iconsCache.getEvictionCount() > 0);
+    }
+}
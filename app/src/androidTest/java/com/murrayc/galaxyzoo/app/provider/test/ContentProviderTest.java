@@ -19,17 +19,25 @@
 
 package com.murrayc.galaxyzoo.app.provider.test;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.test.ProviderTestCase2;
 import android.test.mock.MockContentResolver;
 
+import com.murrayc.galaxyzoo.app.provider.Classification;
+import com.murrayc.galaxyzoo.app.provider.ClassificationAnswer;
+import com.murrayc.galaxyzoo.app.provider.ClassificationCheckbox;
 import com.murrayc.galaxyzoo.app.provider.Item;
 import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Simple test to ensure that the generated bindings are working.
@@ -111,6 +119,9 @@ public class ContentProviderTest extends ProviderTestCase2<ItemsContentProvider>
         final String fileContentUri = cursor.getString(cursor.getColumnIndex(Item.Columns.LOCATION_STANDARD_URI));
         assertNotNull(fileContentUri);
 
+        //The file URI depends only on the item ID and the image type:
+        assertEquals(Item.FILE_URI + "/" + ContentUris.parseId(uriItem) + "-standard", fileContentUri);
+
         //Open the actual file data at that content: URI:
         /* TODO: Test this when we find out how to make getExternalCacheDir() work in this ProviderTestCase2.
         final Uri uri = Uri.parse(fileContentUri);
@@ -122,6 +133,177 @@ public class ContentProviderTest extends ProviderTestCase2<ItemsContentProvider>
         cursor.close();
     }
 
+    public void testBulkInsertSkipsExisting() {
+        mMockResolver.insert(Item.CONTENT_URI, getFullContentValues());
+
+        final ContentValues valuesOther = new ContentValues();
+        valuesOther.put(Item.Columns.SUBJECT_ID, "SomeOtherSubjectID");
+        final ContentValues[] values = {getFullContentValues(), valuesOther, valuesOther};
+        assertEquals(1, mMockResolver.bulkInsert(Item.CONTENT_URI, values));
+
+        final Cursor cursor = mMockResolver.query(Item.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testCallBulkInsertReturnsOnlyNewItemIds() {
+        mMockResolver.insert(Item.CONTENT_URI, getFullContentValues());
+
+        final ContentValues valuesOther = new ContentValues();
+        valuesOther.put(Item.Columns.SUBJECT_ID, "SomeOtherSubjectID");
+        final ContentValues[] values = {getFullContentValues(), valuesOther, valuesOther};
+        final Bundle extras = new Bundle();
+        extras.putParcelableArray(ItemsContentProvider.CALL_EXTRA_VALUES, values);
+        final Bundle result = mMockResolver.call(Item.CONTENT_URI,
+                ItemsContentProvider.METHOD_BULK_INSERT_ITEMS, null, extras);
+        assertNotNull(result);
+
+        final List<String> itemIds = result.getStringArrayList(ItemsContentProvider.CALL_EXTRA_ITEM_IDS);
+        assertNotNull(itemIds);
+        assertEquals(1, itemIds.size());
+
+        final Cursor cursor = mMockResolver.query(Item.CONTENT_URI,
+                new String[]{Item.Columns.SUBJECT_ID}, Item.Columns._ID + " = ?",
+                new String[]{itemIds.get(0)}, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("SomeOtherSubjectID", cursor.getString(0));
+        cursor.close();
+    }
+
+    public void testDeleteWithLimitRemovesOldestDone() {
+        insertDoneItem("SubjectID3", "2014-10-03 10:00:00.000");
+        insertDoneItem("SubjectID1", "2014-10-01 10:00:00.000");
+        insertDoneItem("SubjectID2", "2014-10-02 10:00:00.000");
+
+        final Uri uri = Item.ITEMS_URI.buildUpon()
+                .appendQueryParameter(Item.QUERY_PARAMETER_LIMIT, "2")
+                .build();
+        assertEquals(2, mMockResolver.delete(uri, Item.Columns.DONE + " = 1", null));
+
+        final Cursor cursor = mMockResolver.query(Item.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("SubjectID3", cursor.getString(cursor.getColumnIndex(Item.Columns.SUBJECT_ID)));
+        cursor.close();
+    }
+
+    private void insertDoneItem(final String subjectId, final String dateTimeDone) {
+        final ContentValues values = new ContentValues();
+        values.put(Item.Columns.SUBJECT_ID, subjectId);
+        values.put(Item.Columns.DONE, 1);
+        values.put(Item.Columns.DATETIME_DONE, dateTimeDone);
+        assertNotNull(mMockResolver.insert(Item.CONTENT_URI, values));
+    }
+
+    public void testApplyBatch() throws OperationApplicationException {
+        final Uri uriItem = mMockResolver.insert(Item.CONTENT_URI, getFullContentValues());
+        assertNotNull(uriItem);
+        final String itemId = uriItem.getLastPathSegment();
+
+        final ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        ops.add(buildAnswerInsert(itemId, 0));
+        ops.add(buildAnswerInsert(itemId, 1));
+        ops.add(ContentProviderOperation.newUpdate(uriItem)
+                .withValue(Item.Columns.DONE, 1)
+                .build());
+        assertEquals(3, mMockResolver.applyBatch(Item.AUTHORITY, ops).length);
+
+        assertEquals(2, getAnswersCount(itemId));
+    }
+
+    public void testApplyBatchRollsBack() {
+        final Uri uriItem = mMockResolver.insert(Item.CONTENT_URI, getFullContentValues());
+        assertNotNull(uriItem);
+        final String itemId = uriItem.getLastPathSegment();
+
+        final ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        ops.add(buildAnswerInsert(itemId, 0));
+
+        //This will fail, so the insert above should be rolled back too:
+        ops.add(ContentProviderOperation.newUpdate(uriItem)
+                .withValue(Item.Columns.DONE, 1)
+                .withExpectedCount(2)
+                .build());
+        try {
+            mMockResolver.applyBatch(Item.AUTHORITY, ops);
+            fail(); //This should not be reached: The exception should always be thrown.
+        } catch (final OperationApplicationException e) {
+        }
+
+        assertEquals(0, getAnswersCount(itemId));
+    }
+
+    public void testQueryClassification() throws OperationApplicationException {
+        final Uri uriItem = mMockResolver.insert(Item.CONTENT_URI, getFullContentValues());
+        assertNotNull(uriItem);
+        final String itemId = uriItem.getLastPathSegment();
+
+        final ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        ops.add(buildAnswerInsert(itemId, 0));
+        ops.add(buildAnswerInsert(itemId, 1));
+        ops.add(ContentProviderOperation.newInsert(ClassificationCheckbox.CLASSIFICATION_CHECKBOXES_URI)
+                .withValue(ClassificationCheckbox.Columns.ITEM_ID, itemId)
+                .withValue(ClassificationCheckbox.Columns.SEQUENCE, 1)
+                .withValue(ClassificationCheckbox.Columns.QUESTION_ID, "sloan-1")
+                .withValue(ClassificationCheckbox.Columns.CHECKBOX_ID, "x-1")
+                .build());
+        ops.add(ContentProviderOperation.newInsert(ClassificationCheckbox.CLASSIFICATION_CHECKBOXES_URI)
+                .withValue(ClassificationCheckbox.Columns.ITEM_ID, itemId)
+                .withValue(ClassificationCheckbox.Columns.SEQUENCE, 1)
+                .withValue(ClassificationCheckbox.Columns.QUESTION_ID, "sloan-1")
+                .withValue(ClassificationCheckbox.Columns.CHECKBOX_ID, "x-0")
+                .build());
+        mMockResolver.applyBatch(Item.AUTHORITY, ops);
+
+        final String[] projection = {Classification.Columns.ITEM_ID,
+                Classification.Columns.SEQUENCE,
+                Classification.Columns.QUESTION_ID,
+                Classification.Columns.CHECKBOX_ID};
+        final Cursor cursor = mMockResolver.query(
+                Uri.withAppendedPath(Classification.CLASSIFICATIONS_URI, itemId),
+                projection, null, null, null);
+        assertNotNull(cursor);
+
+        //One row for the first answer, and one row for each of the second answer's checkboxes:
+        assertEquals(3, cursor.getCount());
+
+        assertTrue(cursor.moveToNext());
+        assertEquals(itemId, cursor.getString(0));
+        assertEquals(0, cursor.getInt(1));
+        assertEquals("sloan-0", cursor.getString(2));
+        assertTrue(cursor.isNull(3));
+
+        assertTrue(cursor.moveToNext());
+        assertEquals(1, cursor.getInt(1));
+        assertEquals("sloan-1", cursor.getString(2));
+        assertEquals("x-0", cursor.getString(3));
+
+        assertTrue(cursor.moveToNext());
+        assertEquals("x-1", cursor.getString(3));
+        cursor.close();
+    }
+
+    private static ContentProviderOperation buildAnswerInsert(final String itemId, final int sequence) {
+        return ContentProviderOperation.newInsert(ClassificationAnswer.CLASSIFICATION_ANSWERS_URI)
+                .withValue(ClassificationAnswer.Columns.ITEM_ID, itemId)
+                .withValue(ClassificationAnswer.Columns.SEQUENCE, sequence)
+                .withValue(ClassificationAnswer.Columns.QUESTION_ID, "sloan-" + sequence)
+                .withValue(ClassificationAnswer.Columns.ANSWER_ID, "a-0")
+                .build();
+    }
+
+    private int getAnswersCount(final String itemId) {
+        final Cursor cursor = mMockResolver.query(ClassificationAnswer.CLASSIFICATION_ANSWERS_URI, null,
+                ClassificationAnswer.Columns.ITEM_ID + " = ?", new String[]{itemId}, null);
+        assertNotNull(cursor);
+        final int result = cursor.getCount();
+        cursor.close();
+        return result;
+    }
+
     //TODO: Test filtering of mime types?
     public void testGetStreamTypes() {
         final Uri uri = Uri.parse(Item.FILE_URI + "/1");
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider.test;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import com.murrayc.galaxyzoo.app.Utils;
+import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Check that ItemsContentProvider can upgrade an existing database.
+ * This doesn't use ProviderTestCase2, because its IsolatedContext has no external cache directory,
+ * so the files would not be migrated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseUpgradeTest {
+    private static final String DATABASE_NAME = "items.db";
+    private static final long ITEM_ID = 987654;
+
+    private Context mContext;
+    private File mCacheDir;
+
+    @Before
+    public void setUp() {
+        mContext = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(), "test-upgrade.");
+        mContext.deleteDatabase(DATABASE_NAME);
+
+        mCacheDir = Utils.getExternalCacheDir(mContext);
+        assertNotNull(mCacheDir);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(DATABASE_NAME);
+
+        for (final String name : new String[]{"987001", "987002", "987003", "987004",
+                ITEM_ID + "-standard", ITEM_ID + "-thumbnail", ITEM_ID + "-inverted"}) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(mCacheDir, name).delete();
+        }
+    }
+
+    /** Upgrade from a version 21 database, which had a separate files table.
+     * The thumbnail is at its new path already, as if an earlier upgrade
+     * had moved it but had then been interrupted before committing its transaction.
+     */
+    @Test
+    public void testUpgradeFromVersion21() throws IOException {
+        final File oldStandard = createFile("987001");
+        final File newThumbnail = createFile(ITEM_ID + "-thumbnail");
+        final File oldUnused = createFile("987004");
+
+        final SQLiteDatabase db = mContext.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        createVersion21Tables(db);
+        insertFile(db, 1, "987001");
+        insertFile(db, 2, "987002"); //Moved already.
+        insertFile(db, 3, "987003"); //Never downloaded.
+        insertFile(db, 4, "987004"); //Not used by any item.
+
+        final ContentValues values = new ContentValues();
+        values.put(Item.Columns._ID, ITEM_ID);
+        values.put(Item.Columns.SUBJECT_ID, "somesubjectid");
+        values.put(Item.Columns.LOCATION_STANDARD_URI, Item.FILE_URI + "/1");
+        values.put(Item.Columns.LOCATION_STANDARD_DOWNLOADED, 1);
+        values.put(Item.Columns.LOCATION_THUMBNAIL_URI, Item.FILE_URI + "/2");
+        values.put(Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED, 1);
+        values.put(Item.Columns.LOCATION_INVERTED_URI, Item.FILE_URI + "/3");
+        values.put(Item.Columns.LOCATION_INVERTED_DOWNLOADED, 1);
+        db.insertOrThrow("items", null, values);
+        db.setVersion(21);
+        db.close();
+
+        //The first query opens, and upgrades, the database:
+        final ItemsContentProvider provider = new ItemsContentProvider();
+        provider.attachInfo(mContext, null);
+        final Cursor cursor = provider.query(ContentUris.withAppendedId(Item.ITEMS_URI, ITEM_ID),
+                new String[]{Item.Columns.LOCATION_STANDARD_URI,
+                        Item.Columns.LOCATION_STANDARD_DOWNLOADED,
+                        Item.Columns.LOCATION_THUMBNAIL_URI,
+                        Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED,
+                        Item.Columns.LOCATION_INVERTED_URI,
+                        Item.Columns.LOCATION_INVERTED_DOWNLOADED},
+                null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+
+        assertEquals(Item.FILE_URI + "/" + ITEM_ID + "-standard", cursor.getString(0));
+        assertEquals(1, cursor.getInt(1));
+        assertEquals(Item.FILE_URI + "/" + ITEM_ID + "-thumbnail", cursor.getString(2));
+        assertEquals(1, cursor.getInt(3));
+        assertEquals(Item.FILE_URI + "/" + ITEM_ID + "-inverted", cursor.getString(4));
+        assertEquals(0, cursor.getInt(5));
+        cursor.close();
+
+        assertFalse(oldStandard.exists());
+        assertTrue(new File(mCacheDir, ITEM_ID + "-standard").exists());
+        assertTrue(newThumbnail.exists());
+        assertFalse(new File(mCacheDir, ITEM_ID + "-inverted").exists());
+        assertFalse(oldUnused.exists());
+
+        //The files table should be gone:
+        final SQLiteDatabase dbUpgraded = mContext.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        final Cursor cursorTables = dbUpgraded.rawQuery(
+                "SELECT name FROM sqlite_master WHERE type = 'table' AND name = 'files'", null);
+        assertEquals(0, cursorTables.getCount());
+        cursorTables.close();
+        dbUpgraded.close();
+    }
+
+    /** Upgrading from a version that we can't migrate drops the tables,
+     * but new items must still not reuse the IDs, and therefore the cache file names, of old items.
+     */
+    @Test
+    public void testRecreateTablesDoesNotReuseItemIds() {
+        final SQLiteDatabase db = mContext.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        createVersion21Tables(db);
+        final ContentValues values = new ContentValues();
+        values.put(Item.Columns._ID, ITEM_ID);
+        values.put(Item.Columns.SUBJECT_ID, "somesubjectid");
+        db.insertOrThrow("items", null, values);
+        db.setVersion(19);
+        db.close();
+
+        final ItemsContentProvider provider = new ItemsContentProvider();
+        provider.attachInfo(mContext, null);
+
+        final Cursor cursor = provider.query(Item.ITEMS_URI, new String[]{Item.Columns._ID},
+                null, null, null);
+        assertNotNull(cursor);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+
+        final ContentValues valuesNew = new ContentValues();
+        valuesNew.put(Item.Columns.SUBJECT_ID, "someothersubjectid");
+        final Uri uri = provider.insert(Item.ITEMS_URI, valuesNew);
+        assertNotNull(uri);
+        assertTrue(ContentUris.parseId(uri) > ITEM_ID);
+    }
+
+    private File createFile(final String name) throws IOException {
+        final File file = new File(mCacheDir, name);
+        assertTrue(file.exists() || file.createNewFile());
+        return file;
+    }
+
+    private void insertFile(final SQLiteDatabase db, final long fileId, final String name) {
+        final ContentValues values = new ContentValues();
+        values.put("_id", fileId);
+        values.put("_data", new File(mCacheDir, name).getAbsolutePath());
+        db.insertOrThrow("files", null, values);
+    }
+
+    private static void createVersion21Tables(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE items (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "done INTEGER DEFAULT 0, " +
+                "uploaded INTEGER DEFAULT 0, " +
+                "subjectId TEXT, " +
+                "zooniverseId TEXT, " +
+                "groupId TEXT, " +
+                "locationStandardUriRemote TEXT, " +
+                "locationStandardUri TEXT, " +
+                "locationStandardDownloaded INTEGER DEFAULT 0, " +
+                "locationThumbnailUriRemote TEXT, " +
+                "locationThumbnailUri TEXT, " +
+                "locationThumbnailDownloaded INTEGER DEFAULT 0, " +
+                "locationInvertedUriRemote TEXT, " +
+                "locationInvertedUri TEXT, " +
+                "locationInvertedDownloaded INTEGER DEFAULT 0, " +
+                "favorite INTEGER DEFAULT 0, " +
+                "dateTimeDone TEXT)");
+        db.execSQL("CREATE TABLE files (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "_data TEXT)");
+        db.execSQL("CREATE TABLE classification_answers (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "sequence INTEGER DEFAULT 0, " +
+                "itemId INTEGER, " +
+                "questionId TEXT, " +
+                "answerId TEXT)");
+        db.execSQL("CREATE TABLE classification_checkboxes (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "sequence INTEGER DEFAULT 0, " +
+                "itemId INTEGER, " +
+                "questionId TEXT, " +
+                "checkboxId TEXT)");
+    }
+}
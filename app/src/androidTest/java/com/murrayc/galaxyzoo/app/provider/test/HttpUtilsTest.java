@@ -19,18 +19,41 @@
 
 package com.murrayc.galaxyzoo.app.provider.test;
 
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.murrayc.galaxyzoo.app.Utils;
 import com.murrayc.galaxyzoo.app.provider.HttpUtils;
+import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
+import com.murrayc.galaxyzoo.core.ClassificationKeys;
+import com.murrayc.galaxyzoo.core.FormEncoder;
+import com.murrayc.galaxyzoo.core.NameValuePair;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 /**
  * Simple test to ensure that the generated bindings are working.
@@ -46,16 +69,16 @@ public class HttpUtilsTest {
 
     @Test
     public void testGetPostDataBytes() throws IOException {
-        final List<HttpUtils.NameValuePair> nameValuePairs = new ArrayList<>();
-        nameValuePairs.add(new HttpUtils.NameValuePair("classification[subject_ids][]",
+        final List<NameValuePair> nameValuePairs = new ArrayList<>();
+        nameValuePairs.add(new NameValuePair("classification[subject_ids][]",
                 "504f217bc499611ea60410ed"));
-        nameValuePairs.add(new HttpUtils.NameValuePair("classification[annotations][0][sloan-0]",
+        nameValuePairs.add(new NameValuePair("classification[annotations][0][sloan-0]",
                 "a-1"));
-        nameValuePairs.add(new HttpUtils.NameValuePair("classification[annotations][1][sloan-1]",
+        nameValuePairs.add(new NameValuePair("classification[annotations][1][sloan-1]",
                 "a-1"));
-        nameValuePairs.add(new HttpUtils.NameValuePair("classification[annotations][2][sloan-2]",
+        nameValuePairs.add(new NameValuePair("classification[annotations][2][sloan-2]",
                 "a-1"));
-        nameValuePairs.add(new HttpUtils.NameValuePair("classification[annotations][3][sloan-3]",
+        nameValuePairs.add(new NameValuePair("classification[annotations][3][sloan-3]",
                 "a-0"));
 
         final String content = HttpUtils.getPostDataBytes(nameValuePairs);
@@ -63,4 +86,236 @@ public class HttpUtilsTest {
                 content);
     }
 
+    @Test
+    public void testFormEncoder() throws IOException {
+        final List<NameValuePair> nameValuePairs = new ArrayList<>();
+        nameValuePairs.add(ClassificationKeys.subjectId("504f217bc499611ea60410ed"));
+        nameValuePairs.add(ClassificationKeys.favorite());
+        nameValuePairs.add(ClassificationKeys.annotation(0, "sloan-0", "a-1"));
+        nameValuePairs.add(ClassificationKeys.annotation(1, "sloan-1", "x-2"));
+        nameValuePairs.add(ClassificationKeys.annotation(1, "sloan-1", "x-3"));
+        nameValuePairs.add(new NameValuePair("some name & more", "\u00fcber \u20ac \ud83d\ude00 100%"));
+        nameValuePairs.add(ClassificationKeys.userAgent(2, HttpUtils.getUserAgent()));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FormEncoder().write(nameValuePairs, out);
+
+        //FormEncoder should write exactly what the simpler getPostDataBytes() would:
+        final String content = new String(out.toByteArray(), Utils.STRING_ENCODING);
+        assertEquals(HttpUtils.getPostDataBytes(nameValuePairs), content);
+        assertEquals(out.size(), FormEncoder.getEncodedLength(nameValuePairs));
+
+        assertEquals("classification[annotations][1][sloan-1]", nameValuePairs.get(3).getName());
+    }
+
+    private static final String TEST_CACHE_FILE_NAME = "999999-standard";
+
+    /**
+     * The first response is cut off half way through its body,
+     * so the first download leaves a partial download to resume.
+     * The second response comes from secondResponseDispatcher.
+     */
+    private static abstract class ResumeDispatcher extends Dispatcher {
+        final List<RecordedRequest> requests = new ArrayList<>();
+        private final String mFirstBody;
+        private final String mFirstEtag;
+
+        ResumeDispatcher(final String firstBody, final String firstEtag) {
+            mFirstBody = firstBody;
+            mFirstEtag = firstEtag;
+        }
+
+        @Override
+        public synchronized MockResponse dispatch(final RecordedRequest request) {
+            requests.add(request);
+            if (requests.size() == 1) {
+                return new MockResponse()
+                        .setResponseCode(HttpURLConnection.HTTP_OK)
+                        .setHeader("ETag", mFirstEtag)
+                        .setBody(mFirstBody)
+                        .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+            }
+
+            return dispatchSecond(request);
+        }
+
+        abstract MockResponse dispatchSecond(RecordedRequest request);
+    }
+
+    private static String createTestBody(final char c) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 64 * 1024; i++) {
+            builder.append((char) (c + (i % 16)));
+        }
+
+        return builder.toString();
+    }
+
+    private static Context getContext() {
+        return InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    private static String getTestCacheFileUri() {
+        return Item.FILE_URI.buildUpon().appendPath(TEST_CACHE_FILE_NAME).build().toString();
+    }
+
+    private static void deleteTestCacheFiles(final File cacheFile) {
+        final File[] files = cacheFile.getParentFile().listFiles();
+        assertNotNull(files);
+        for (final File file : files) {
+            if (file.getName().startsWith(TEST_CACHE_FILE_NAME)) {
+                assertTrue(file.delete());
+            }
+        }
+    }
+
+    private static void checkNoTemporaryFiles(final File cacheFile) {
+        final File[] files = cacheFile.getParentFile().listFiles();
+        assertNotNull(files);
+        for (final File file : files) {
+            if (file.getName().startsWith(TEST_CACHE_FILE_NAME) &&
+                    file.getName().endsWith(HttpUtils.TEMP_FILE_SUFFIX)) {
+                fail("Unexpected temporary file: " + file);
+            }
+        }
+    }
+
+    private static String getFileContents(final File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpUtils.copyStream(in, out);
+        in.close();
+        return new String(out.toByteArray(), Utils.STRING_ENCODING);
+    }
+
+    /**
+     * Download once, so the download is cut off and leaves a partial download.
+     */
+    private static void downloadPartially(final MockWebServer server, final File cacheFile) {
+        try {
+            HttpUtils.cacheUriToFileSync(getContext(), server.url("/image.jpg").toString(), getTestCacheFileUri());
+            fail("The first download should have been cut off.");
+        } catch (final HttpUtils.FileCacheException e) {
+            //This is expected.
+        }
+
+        assertTrue(new File(cacheFile.getPath() + HttpUtils.TEMP_FILE_SUFFIX).exists());
+    }
+
+    @Test
+    public void testCacheUriToFileResumesWithIfRange() throws IOException, HttpUtils.FileCacheException {
+        final File cacheFile = ItemsContentProvider.getCacheFile(getContext(), getTestCacheFileUri());
+        assertNotNull(cacheFile);
+        deleteTestCacheFiles(cacheFile);
+
+        final String body = createTestBody('a');
+        final String etag = "\"version-1\"";
+        final ResumeDispatcher dispatcher = new ResumeDispatcher(body, etag) {
+            @Override
+            MockResponse dispatchSecond(final RecordedRequest request) {
+                //Send only the rest, because the file has not changed:
+                final String range = request.getHeader("Range");
+                final int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                return new MockResponse()
+                        .setResponseCode(HttpURLConnection.HTTP_PARTIAL)
+                        .setHeader("ETag", etag)
+                        .setHeader("Content-Range", "bytes " + start + "-" + (body.length() - 1) + "/" + body.length())
+                        .setBody(body.substring(start));
+            }
+        };
+
+        final MockWebServer server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+
+        downloadPartially(server, cacheFile);
+
+        assertTrue(HttpUtils.cacheUriToFileSync(getContext(), server.url("/image.jpg").toString(), getTestCacheFileUri()));
+        assertEquals(2, dispatcher.requests.size());
+
+        //The second request should ask for just the rest of that version of the file:
+        final RecordedRequest second = dispatcher.requests.get(1);
+        assertNotNull(second.getHeader("Range"));
+        assertEquals(etag, second.getHeader("If-Range"));
+
+        assertEquals(body, getFileContents(cacheFile));
+        checkNoTemporaryFiles(cacheFile);
+
+        server.shutdown();
+        deleteTestCacheFiles(cacheFile);
+    }
+
+    @Test
+    public void testCacheUriToFileRestartsWhenChanged() throws IOException, HttpUtils.FileCacheException {
+        final File cacheFile = ItemsContentProvider.getCacheFile(getContext(), getTestCacheFileUri());
+        assertNotNull(cacheFile);
+        deleteTestCacheFiles(cacheFile);
+
+        final String bodyChanged = createTestBody('A');
+        final ResumeDispatcher dispatcher = new ResumeDispatcher(createTestBody('a'), "\"version-1\"") {
+            @Override
+            MockResponse dispatchSecond(final RecordedRequest request) {
+                //The If-Range does not match, so send the whole new file:
+                return new MockResponse()
+                        .setResponseCode(HttpURLConnection.HTTP_OK)
+                        .setHeader("ETag", "\"version-2\"")
+                        .setBody(bodyChanged);
+            }
+        };
+
+        final MockWebServer server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+
+        downloadPartially(server, cacheFile);
+
+        assertTrue(HttpUtils.cacheUriToFileSync(getContext(), server.url("/image.jpg").toString(), getTestCacheFileUri()));
+        assertEquals(2, dispatcher.requests.size());
+        assertNotNull(dispatcher.requests.get(1).getHeader("If-Range"));
+
+        //The file should not start with the old version's partial download:
+        assertEquals(bodyChanged, getFileContents(cacheFile));
+        checkNoTemporaryFiles(cacheFile);
+
+        server.shutdown();
+        deleteTestCacheFiles(cacheFile);
+    }
+
+    @Test
+    public void testCacheUriToFileWithoutValidatorDoesNotResume() throws IOException, InterruptedException, HttpUtils.FileCacheException {
+        final File cacheFile = ItemsContentProvider.getCacheFile(getContext(), getTestCacheFileUri());
+        assertNotNull(cacheFile);
+        deleteTestCacheFiles(cacheFile);
+
+        final String body = createTestBody('a');
+        final MockWebServer server = new MockWebServer();
+
+        //Without an ETag or Last-Modified, we could not know if the rest is from the same version,
+        //so the partial download should not be kept.
+        server.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_OK)
+                .setBody(body)
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        server.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_OK)
+                .setBody(body));
+        server.start();
+
+        try {
+            HttpUtils.cacheUriToFileSync(getContext(), server.url("/image.jpg").toString(), getTestCacheFileUri());
+            fail("The first download should have been cut off.");
+        } catch (final HttpUtils.FileCacheException e) {
+            //This is expected.
+        }
+
+        checkNoTemporaryFiles(cacheFile);
+
+        assertTrue(HttpUtils.cacheUriToFileSync(getContext(), server.url("/image.jpg").toString(), getTestCacheFileUri()));
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("Range"));
+        assertEquals(body, getFileContents(cacheFile));
+
+        server.shutdown();
+        deleteTestCacheFiles(cacheFile);
+    }
 }
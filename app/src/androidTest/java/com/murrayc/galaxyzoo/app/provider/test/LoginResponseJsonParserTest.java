@@ -22,6 +22,7 @@ package com.murrayc.galaxyzoo.app.provider.test;
 import android.support.test.runner.AndroidJUnit4;
 
 import com.murrayc.galaxyzoo.app.LoginUtils;
+import com.murrayc.galaxyzoo.core.LoginResult;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -42,7 +43,7 @@ public class LoginResponseJsonParserTest {
     public void testParseSuccess() throws IOException {
         final InputStream inputStream = LoginResponseJsonParserTest.class.getClassLoader().getResourceAsStream("test_login_response_success.json");
         assertNotNull(inputStream);
-        final LoginUtils.LoginResult result = LoginUtils.parseLoginResponseContent(inputStream);
+        final LoginResult result = LoginUtils.parseLoginResponseContent(inputStream);
         assertNotNull(result);
         assertTrue(result.getSuccess());
         assertEquals(result.getName(), "testuser");
@@ -22,8 +22,8 @@ package com.murrayc.galaxyzoo.app.provider.test;
 import android.support.test.runner.AndroidJUnit4;
 
 import com.murrayc.galaxyzoo.app.Utils;
-import com.murrayc.galaxyzoo.app.provider.client.MoreItemsJsonParser;
-import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
+import com.murrayc.galaxyzoo.core.MoreItemsJsonParser;
+import com.murrayc.galaxyzoo.core.Subject;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
@@ -43,7 +44,7 @@ import static junit.framework.Assert.assertNotNull;
  */
 @RunWith(AndroidJUnit4.class)
 public class MoreItemsJsonParserTest {
-    private List<ZooniverseClient.Subject> mSubjects = null;
+    private List<Subject> mSubjects = null;
 
 
     @Before
@@ -64,6 +65,22 @@ public class MoreItemsJsonParserTest {
         assertEquals(5, mSubjects.size());
     }
 
+    @Test
+    public void testStreaming() throws IOException {
+        final InputStream inputStream = MoreItemsJsonParserTest.class.getClassLoader().getResourceAsStream("test_more_items_response.json");
+        assertNotNull(inputStream);
+
+        final List<Subject> subjects = new ArrayList<>();
+        final int count = MoreItemsJsonParser.parseMoreItemsResponseContent(inputStream, subjects::add);
+        inputStream.close();
+
+        assertEquals(5, count);
+        assertEquals(mSubjects.size(), subjects.size());
+        for (int i = 0; i < subjects.size(); i++) {
+            assertEquals(mSubjects.get(i).getSubjectId(), subjects.get(i).getSubjectId());
+        }
+    }
+
     @Test
     public void testValues() {
 
@@ -24,11 +24,14 @@ import android.content.Context;
 import android.support.test.InstrumentationRegistry;
 import android.util.MalformedJsonException;
 
-import com.murrayc.galaxyzoo.app.LoginUtils;
 import com.murrayc.galaxyzoo.app.Utils;
 import com.murrayc.galaxyzoo.app.provider.Config;
 import com.murrayc.galaxyzoo.app.provider.HttpUtils;
+import com.murrayc.galaxyzoo.app.provider.client.HttpConnectionPool;
 import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
+import com.murrayc.galaxyzoo.core.LoginResult;
+import com.murrayc.galaxyzoo.core.NameValuePair;
+import com.murrayc.galaxyzoo.core.Subject;
 import com.squareup.okhttp.HttpUrl;
 import com.squareup.okhttp.mockwebserver.MockResponse;
 import com.squareup.okhttp.mockwebserver.MockWebServer;
@@ -53,6 +56,7 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 /**
  * Simple test to ensure that the generated bindings are working.
@@ -82,11 +86,11 @@ public class ZooniverseClientTest{
         final ZooniverseClient client = createZooniverseClient(server);
 
         final int COUNT = 5;
-        final List<ZooniverseClient.Subject> subjects = client.requestMoreItemsSync(COUNT);
+        final List<Subject> subjects = client.requestMoreItemsSync(COUNT);
         assertNotNull(subjects);
         assertTrue(subjects.size() == COUNT);
 
-        final ZooniverseClient.Subject subject = subjects.get(0);
+        final Subject subject = subjects.get(0);
         assertNotNull(subject);
 
         assertNotNull(subject.getSubjectId());
@@ -139,7 +143,7 @@ public class ZooniverseClientTest{
 
         final ZooniverseClient client = createZooniverseClient(server);
 
-        final LoginUtils.LoginResult result = client.loginSync("testusername", "testpassword");
+        final LoginResult result = client.loginSync("testusername", "testpassword");
         assertNotNull(result);
         assertTrue(result.getSuccess());
         assertEquals(result.getApiKey(), "testapikey");
@@ -176,7 +180,7 @@ public class ZooniverseClientTest{
 
 
         try {
-            final LoginUtils.LoginResult result = client.loginSync("testusername", "testpassword");
+            final LoginResult result = client.loginSync("testusername", "testpassword");
             assertNotNull(result);
             assertFalse(result.getSuccess());
         } catch (final ZooniverseClient.LoginException e) {
@@ -199,7 +203,7 @@ public class ZooniverseClientTest{
 
 
         try {
-            final LoginUtils.LoginResult result = client.loginSync("testusername", "testpassword");
+            final LoginResult result = client.loginSync("testusername", "testpassword");
             assertNotNull(result);
             assertFalse(result.getSuccess());
         } catch (final ZooniverseClient.LoginException e) {
@@ -209,6 +213,58 @@ public class ZooniverseClientTest{
         server.shutdown();
     }
 
+    @Test
+    public void testMoreItemsStreaming() throws IOException, InterruptedException, ZooniverseClient.RequestMoreItemsException {
+        final MockWebServer server = new MockWebServer();
+
+        final String strResponse = getStringFromStream(
+                MoreItemsJsonParserTest.class.getClassLoader().getResourceAsStream("test_more_items_response.json"));
+        assertNotNull(strResponse);
+        server.enqueue(new MockResponse().setBody(strResponse));
+        server.start();
+
+        final ZooniverseClient client = createZooniverseClient(server);
+
+        final int COUNT = 5;
+        final List<Subject> subjects = new ArrayList<>();
+        final int result = client.requestMoreItemsStreamingSync(COUNT, subjects::add);
+        assertEquals(COUNT, result);
+        assertEquals(COUNT, subjects.size());
+
+        final Subject subject = subjects.get(0);
+        assertNotNull(subject);
+        assertEquals(subject.getSubjectId(), "5500684569736d5964271400");
+        assertEquals(subject.getGroupId(), TEST_GROUP_ID);
+
+        final RecordedRequest request = server.takeRequest();
+        assertEquals(HttpUtils.CONTENT_TYPE_JSON, request.getHeader(HttpUtils.HTTP_REQUEST_HEADER_PARAM_ACCEPT));
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testMoreItemsStreamingWithBadResponseCode() throws IOException {
+        final MockWebServer server = new MockWebServer();
+
+        final MockResponse response = new MockResponse();
+        response.setResponseCode(HttpURLConnection.HTTP_NOT_FOUND);
+        response.setBody("test nonsense failure message");
+        server.enqueue(response);
+        server.start();
+
+        final ZooniverseClient client = createZooniverseClient(server);
+
+        final List<Subject> subjects = new ArrayList<>();
+        try {
+            client.requestMoreItemsStreamingSync(5, subjects::add);
+            fail("requestMoreItemsStreamingSync() should have thrown an exception.");
+        } catch (final ZooniverseClient.RequestMoreItemsException e) {
+            assertTrue(subjects.isEmpty());
+        }
+
+        server.shutdown();
+    }
+
     @Test
     public void testMoreItemsWithBadResponseContent() throws IOException {
         final MockWebServer server = new MockWebServer();
@@ -220,7 +276,7 @@ public class ZooniverseClientTest{
 
         //Mostly we want to check that it doesn't crash on a bad HTTP response.
         try {
-            final List<ZooniverseClient.Subject> subjects = client.requestMoreItemsSync(5);
+            final List<Subject> subjects = client.requestMoreItemsSync(5);
             assertTrue((subjects == null) || (subjects.isEmpty()));
         } catch (final ZooniverseClient.RequestMoreItemsException e) {
             final Throwable cause = e.getCause();
@@ -248,7 +304,7 @@ public class ZooniverseClientTest{
         //Mostly we want to check that it doesn't crash on a bad HTTP response.
 
         try {
-            final List<ZooniverseClient.Subject> subjects = client.requestMoreItemsSync(5);
+            final List<Subject> subjects = client.requestMoreItemsSync(5);
             assertTrue((subjects == null) || (subjects.isEmpty()));
         } catch (final ZooniverseClient.RequestMoreItemsException e) {
             assertTrue(e.getCause() instanceof ExecutionException);
@@ -272,13 +328,13 @@ public class ZooniverseClientTest{
 
         //SyncAdapter.doUploadSync() adds an "interface" parameter too,
         //but we are testing a more generic API here:
-        final List<HttpUtils.NameValuePair> values = new ArrayList<>();
-        values.add(new HttpUtils.NameValuePair("classification[subject_ids][]", "504e4a38c499611ea6010c6a"));
-        values.add(new HttpUtils.NameValuePair("classification[favorite][]", "true"));
-        values.add(new HttpUtils.NameValuePair("classification[annotations][0][sloan-0]", "a-0"));
-        values.add(new HttpUtils.NameValuePair("classification[annotations][1][sloan-7]", "a-1"));
-        values.add(new HttpUtils.NameValuePair("classification[annotations][2][sloan-5]", "a-0"));
-        values.add(new HttpUtils.NameValuePair("classification[annotations][3][sloan-6]", "x-5"));
+        final List<NameValuePair> values = new ArrayList<>();
+        values.add(new NameValuePair("classification[subject_ids][]", "504e4a38c499611ea6010c6a"));
+        values.add(new NameValuePair("classification[favorite][]", "true"));
+        values.add(new NameValuePair("classification[annotations][0][sloan-0]", "a-0"));
+        values.add(new NameValuePair("classification[annotations][1][sloan-7]", "a-1"));
+        values.add(new NameValuePair("classification[annotations][2][sloan-5]", "a-0"));
+        values.add(new NameValuePair("classification[annotations][3][sloan-6]", "x-5"));
 
         final boolean result = client.uploadClassificationSync("testAuthName",
                 "testAuthApiKey", TEST_GROUP_ID, values);
@@ -314,8 +370,8 @@ public class ZooniverseClientTest{
 
         final ZooniverseClient client = createZooniverseClient(server);
 
-        final List<HttpUtils.NameValuePair> values = new ArrayList<>();
-        values.add(new HttpUtils.NameValuePair("test nonsense", "12345"));
+        final List<NameValuePair> values = new ArrayList<>();
+        values.add(new NameValuePair("test nonsense", "12345"));
 
         try {
             final boolean result = client.uploadClassificationSync("testAuthName",
@@ -330,6 +386,139 @@ public class ZooniverseClientTest{
         server.shutdown();
     }
 
+    @Test
+    public void testUploadsReuseConnection() throws IOException, InterruptedException, ZooniverseClient.UploadException {
+        final MockWebServer server = new MockWebServer();
+
+        final int count = 3;
+        for (int i = 0; i < count; i++) {
+            final MockResponse response = new MockResponse();
+            response.setResponseCode(HttpURLConnection.HTTP_CREATED);
+            response.setBody("TODO");
+            server.enqueue(response);
+        }
+        server.start();
+
+        final ZooniverseClient client = createZooniverseClient(server);
+
+        final List<NameValuePair> values = new ArrayList<>();
+        values.add(new NameValuePair("classification[subject_ids][]", "504e4a38c499611ea6010c6a"));
+        values.add(new NameValuePair("classification[annotations][0][sloan-0]", "a-0"));
+
+        for (int i = 0; i < count; i++) {
+            assertTrue(client.uploadClassificationSync("testAuthName",
+                    "testAuthApiKey", TEST_GROUP_ID, values));
+        }
+
+        //The connection should be back in the pool, waiting for the next upload:
+        final HttpConnectionPool.Stats stats = HttpConnectionPool.getStats();
+        assertTrue(stats.getIdleConnectionCount() >= 1);
+
+        //Each request's sequence number is its position on its connection,
+        //so they were all sent via the first request's connection:
+        for (int i = 0; i < count; i++) {
+            final RecordedRequest request = server.takeRequest();
+            assertEquals(i, request.getSequenceNumber());
+        }
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testUploadReusesConnectionAfterFailure() throws IOException, InterruptedException, ZooniverseClient.UploadException {
+        final MockWebServer server = new MockWebServer();
+
+        final MockResponse responseFailure = new MockResponse();
+        responseFailure.setResponseCode(HttpURLConnection.HTTP_UNAUTHORIZED);
+        responseFailure.setBody("test nonsense failure message");
+        server.enqueue(responseFailure);
+
+        final MockResponse responseSuccess = new MockResponse();
+        responseSuccess.setResponseCode(HttpURLConnection.HTTP_CREATED);
+        responseSuccess.setBody("TODO");
+        server.enqueue(responseSuccess);
+        server.start();
+
+        final ZooniverseClient client = createZooniverseClient(server);
+
+        final List<NameValuePair> values = new ArrayList<>();
+        values.add(new NameValuePair("test nonsense", "12345"));
+
+        try {
+            assertFalse(client.uploadClassificationSync("testAuthName",
+                    "testAuthApiKey", TEST_GROUP_ID, values));
+        } catch (final ZooniverseClient.UploadException e) {
+            //This is (at least with okhttp.mockwebserver) a normal
+            //event if the upload was refused via an error response code.
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        assertTrue(client.uploadClassificationSync("testAuthName",
+                "testAuthApiKey", TEST_GROUP_ID, values));
+
+        //The error response's body should have been discarded,
+        //so the second upload could use the same connection:
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testUploadBatch() throws IOException, InterruptedException, ZooniverseClient.UploadException {
+        final MockWebServer server = new MockWebServer();
+
+        //The second classification is refused, but that should not stop the batch:
+        final int[] responseCodes = {HttpURLConnection.HTTP_CREATED,
+                HttpURLConnection.HTTP_UNAUTHORIZED,
+                HttpURLConnection.HTTP_CREATED};
+        for (final int responseCode : responseCodes) {
+            final MockResponse response = new MockResponse();
+            response.setResponseCode(responseCode);
+            response.setBody("TODO");
+            server.enqueue(response);
+        }
+        server.start();
+
+        final ZooniverseClient client = createZooniverseClient(server);
+
+        final List<List<NameValuePair>> classifications = new ArrayList<>();
+        for (int i = 0; i < responseCodes.length; i++) {
+            final List<NameValuePair> values = new ArrayList<>();
+            values.add(new NameValuePair("classification[subject_ids][]", "504e4a38c499611ea6010c6" + i));
+            values.add(new NameValuePair("classification[annotations][0][sloan-0]", "a-0"));
+            classifications.add(values);
+        }
+
+        final List<Boolean> results = new ArrayList<>();
+        final int uploadedCount = client.uploadClassificationsSync("testAuthName",
+                "testAuthApiKey", TEST_GROUP_ID, classifications,
+                (index, uploaded) -> {
+                    //The callback should be called once per classification, in order:
+                    assertEquals(results.size(), index);
+                    results.add(uploaded);
+                });
+        assertEquals(2, uploadedCount);
+
+        assertEquals(responseCodes.length, results.size());
+        assertTrue(results.get(0));
+        assertFalse(results.get(1));
+        assertTrue(results.get(2));
+
+        assertEquals(responseCodes.length, server.getRequestCount());
+
+        //They should all have been sent, in order, via the first request's connection:
+        for (int i = 0; i < responseCodes.length; i++) {
+            final RecordedRequest request = server.takeRequest();
+            assertEquals(i, request.getSequenceNumber());
+            assertEquals("POST", request.getMethod());
+            assertEquals("/workflows/" + TEST_GROUP_ID + "/classifications", request.getPath());
+            assertTrue(request.getBody().readUtf8().contains("504e4a38c499611ea6010c6" + i));
+        }
+
+        server.shutdown();
+    }
+
     private static ZooniverseClient createZooniverseClient(final MockWebServer server) {
         final HttpUrl mockUrl = server.url("/");
 
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.syncadapter;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * This is in the same package as UploadExecutor, instead of in app.test,
+ * because UploadExecutor is package-private.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UploadExecutorTest {
+    private static final long TIMEOUT_MILLIS = 60000;
+    private static final long WAIT_SECONDS = 10;
+
+    /**
+     * A task that waits until release() is called, or until it is interrupted.
+     */
+    private static final class BlockingTask implements Runnable {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                mRelease.await();
+            } catch (final InterruptedException e) {
+                interrupted.set(true);
+            }
+
+            finished.countDown();
+        }
+
+        void release() {
+            mRelease.countDown();
+        }
+    }
+
+    private static void waitUntilNotSubmitted(final UploadExecutor executor, final String key) throws InterruptedException {
+        //The task removes its key just after its Runnable has finished.
+        final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(WAIT_SECONDS);
+        while (executor.isSubmitted(key)) {
+            assertTrue("Timed out waiting for the task to finish: " + key, System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSubmit() throws InterruptedException {
+        final UploadExecutor executor = new UploadExecutor(2, 10, TIMEOUT_MILLIS);
+
+        final BlockingTask task = new BlockingTask();
+        assertTrue(executor.submit("1", task));
+        assertTrue(task.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(executor.isSubmitted("1"));
+
+        task.release();
+        assertTrue(task.finished.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        waitUntilNotSubmitted(executor, "1");
+        assertEquals(1, executor.getMetrics().getFinishedCount());
+
+        //The same key may be submitted again after the task has finished:
+        final BlockingTask taskAgain = new BlockingTask();
+        taskAgain.release();
+        assertTrue(executor.submit("1", taskAgain));
+        assertTrue(taskAgain.finished.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubmitDuplicate() throws InterruptedException {
+        final UploadExecutor executor = new UploadExecutor(2, 10, TIMEOUT_MILLIS);
+
+        final BlockingTask task = new BlockingTask();
+        assertTrue(executor.submit("1", task));
+        assertTrue(task.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        //A task with the same key is refused while the first is running:
+        final BlockingTask duplicate = new BlockingTask();
+        assertFalse(executor.submit("1", duplicate));
+
+        //So is a batch that contains that key, and none of its other keys are kept:
+        assertFalse(executor.submit(Arrays.asList("2", "1"), duplicate));
+        assertFalse(executor.isSubmitted("2"));
+
+        task.release();
+        waitUntilNotSubmitted(executor, "1");
+
+        //The refused task never ran:
+        assertEquals(1, duplicate.started.getCount());
+    }
+
+    @Test
+    public void testSubmitRejectedWhenQueueFull() throws InterruptedException {
+        final UploadExecutor executor = new UploadExecutor(1, 1, TIMEOUT_MILLIS);
+
+        final BlockingTask running = new BlockingTask();
+        assertTrue(executor.submit("1", running));
+        assertTrue(running.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        final BlockingTask queued = new BlockingTask();
+        assertTrue(executor.submit("2", queued));
+
+        //There is no room in the queue for this one:
+        final BlockingTask rejected = new BlockingTask();
+        assertFalse(executor.submit("3", rejected));
+        assertFalse(executor.isSubmitted("3"));
+        assertEquals(1, executor.getMetrics().getRejectedCount());
+
+        running.release();
+        queued.release();
+        assertTrue(queued.finished.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        waitUntilNotSubmitted(executor, "2");
+
+        //It may be submitted again when there is room:
+        rejected.release();
+        assertTrue(executor.submit("3", rejected));
+        assertTrue(rejected.finished.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelAll() throws InterruptedException {
+        final UploadExecutor executor = new UploadExecutor(1, 10, TIMEOUT_MILLIS);
+
+        final BlockingTask running = new BlockingTask();
+        assertTrue(executor.submit("1", running));
+        assertTrue(running.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        final BlockingTask queued = new BlockingTask();
+        assertTrue(executor.submit("2", queued));
+
+        executor.cancelAll();
+
+        //The queued task is forgotten immediately, so it may be submitted again:
+        assertFalse(executor.isSubmitted("2"));
+        final BlockingTask queuedAgain = new BlockingTask();
+        queuedAgain.release();
+        assertTrue(executor.submit("2", queuedAgain));
+
+        //The running task is interrupted:
+        assertTrue(running.finished.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(running.interrupted.get());
+        waitUntilNotSubmitted(executor, "1");
+
+        //The newer task for the same key must not be forgotten by the cancelled one:
+        assertTrue(queuedAgain.finished.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, queued.started.getCount());
+    }
+
+    @Test
+    public void testCancelledRunningTaskKeepsKeyUntilItStops() throws InterruptedException {
+        final UploadExecutor executor = new UploadExecutor(2, 10, TIMEOUT_MILLIS);
+
+        //This task ignores interruption, like a blocking HttpURLConnection read:
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        assertTrue(executor.submit("1", () -> {
+            started.countDown();
+            while (true) {
+                try {
+                    release.await();
+                    return;
+                } catch (final InterruptedException e) {
+                    //Carry on waiting.
+                }
+            }
+        }));
+        assertTrue(started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        executor.cancelAll();
+
+        //It might still upload, so the same item must not be uploaded again yet:
+        assertTrue(executor.isSubmitted("1"));
+        assertFalse(executor.submit("1", new BlockingTask()));
+
+        release.countDown();
+        waitUntilNotSubmitted(executor, "1");
+
+        final BlockingTask again = new BlockingTask();
+        again.release();
+        assertTrue(executor.submit("1", again));
+        assertTrue(again.finished.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+}
@@ -23,9 +23,9 @@ import android.content.Context;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
-import com.murrayc.galaxyzoo.app.DecisionTree;
 import com.murrayc.galaxyzoo.app.Utils;
 import com.murrayc.galaxyzoo.app.provider.Config;
+import com.murrayc.galaxyzoo.core.DecisionTree;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -34,18 +34,24 @@ import org.junit.runner.RunWith;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 
 /**
  * Simple test to ensure that the generated bindings are working.
  */
 @RunWith(AndroidJUnit4.class)
 public class DecisionTreeTest {
+    //The asset directory of the decision tree and translation files. See Utils.getDecisionTreeFilepath().
+    private static final String ASSET_DIR_DECISION_TREE = "decision_tree";
+
     Context mockContext;
 
     @Before
@@ -131,6 +137,147 @@ public class DecisionTreeTest {
         }
     }
 
+    @Test
+    public void testFromXmlWithTranslation() throws DecisionTree.DecisionTreeException, IOException {
+        final DecisionTree expected = createCorrectDecisionTree(true /* withTranslation */);
+
+        final InputStream inputStreamTranslation = DecisionTreeTest.class.getClassLoader().getResourceAsStream("test_translation.json");
+        assertNotNull(inputStreamTranslation);
+        final DecisionTree.Translation translation = new DecisionTree.Translation(inputStreamTranslation);
+        inputStreamTranslation.close();
+
+        final InputStream inputStreamDecisionTree = DecisionTreeTest.class.getClassLoader().getResourceAsStream("test_decision_tree.xml");
+        assertNotNull(inputStreamDecisionTree);
+        final DecisionTree decisionTree = DecisionTree.fromXml(inputStreamDecisionTree, translation);
+        inputStreamDecisionTree.close();
+
+        checkDecisionTreesEqual(expected, decisionTree);
+        assertEquals("Spirale", decisionTree.getQuestion("sloan-3").getTitle());
+    }
+
+    /**
+     * The binary files are generated from the XML and JSON files at build time,
+     * by the compileDecisionTrees task in app/build.gradle.
+     */
+    @Test
+    public void testBinaryDecisionTreesMatchXml() throws DecisionTree.DecisionTreeException, IOException {
+        //Check every tree and translation file, not just the ones that we use now:
+        final String[] filenames = getContext().getAssets().list(ASSET_DIR_DECISION_TREE);
+        assertNotNull(filenames);
+
+        final List<String> treeFilenames = new ArrayList<>();
+        final List<String> translationFilenames = new ArrayList<>();
+        for (final String filename : filenames) {
+            if (filename.endsWith(".xml")) {
+                treeFilenames.add(filename);
+            } else if (filename.endsWith(".json")) {
+                translationFilenames.add(filename);
+            }
+        }
+
+        assertFalse(treeFilenames.isEmpty());
+        assertFalse(translationFilenames.isEmpty());
+
+        //Each tree without any translation, too:
+        translationFilenames.add(null);
+
+        for (final String treeFilename : treeFilenames) {
+            final String filePath = Utils.getDecisionTreeFilepath(treeFilename);
+
+            for (final String translationFilename : translationFilenames) {
+                final String translationFilePath = (translationFilename == null) ?
+                        null : Utils.getDecisionTreeFilepath(translationFilename);
+
+                final InputStream inputStreamTree = Utils.openAsset(getContext(), filePath);
+                assertNotNull(inputStreamTree);
+                InputStream inputStreamTranslation = null;
+                if (translationFilePath != null) {
+                    inputStreamTranslation = Utils.openAsset(getContext(), translationFilePath);
+                    assertNotNull(inputStreamTranslation);
+                }
+
+                final DecisionTree decisionTreeFromXml = new DecisionTree(inputStreamTree, inputStreamTranslation);
+                inputStreamTree.close();
+                if (inputStreamTranslation != null) {
+                    inputStreamTranslation.close();
+                }
+
+                final InputStream inputStreamBinary = Utils.openAsset(getContext(),
+                        Utils.getBinaryFilePath(filePath));
+                assertNotNull("No binary file for: " + filePath, inputStreamBinary);
+                final DecisionTree decisionTreeFromBinary = DecisionTree.fromBinary(inputStreamBinary);
+                inputStreamBinary.close();
+
+                if (translationFilePath != null) {
+                    final InputStream inputStreamTranslationBinary = Utils.openAsset(getContext(),
+                            Utils.getBinaryFilePath(translationFilePath));
+                    assertNotNull("No binary file for: " + translationFilePath, inputStreamTranslationBinary);
+                    decisionTreeFromBinary.applyTranslation(
+                            DecisionTree.Translation.fromBinary(inputStreamTranslationBinary));
+                    inputStreamTranslationBinary.close();
+                }
+
+                checkDecisionTreesEqual(decisionTreeFromXml, decisionTreeFromBinary);
+            }
+        }
+    }
+
+    private static void checkDecisionTreesEqual(final DecisionTree expected, final DecisionTree actual) {
+        assertEquals(expected.getAllQuestions().size(), actual.getAllQuestions().size());
+        assertEquals(expected.getQuestionOrFirst(null).getId(), actual.getQuestionOrFirst(null).getId());
+
+        for (final DecisionTree.Question expectedQuestion : expected.getAllQuestions()) {
+            final String questionId = expectedQuestion.getId();
+            final DecisionTree.Question actualQuestion = actual.getQuestion(questionId);
+            assertNotNull(actualQuestion);
+            assertEquals(expectedQuestion.getTitle(), actualQuestion.getTitle());
+            assertEquals(expectedQuestion.getText(), actualQuestion.getText());
+            assertEquals(expectedQuestion.getHelp(), actualQuestion.getHelp());
+
+            checkButtonsEqual(expectedQuestion.getCheckboxes(), actualQuestion.getCheckboxes());
+            checkButtonsEqual(expectedQuestion.getAnswers(), actualQuestion.getAnswers());
+
+            for (final DecisionTree.Answer answer : expectedQuestion.getAnswers()) {
+                final DecisionTree.Question expectedNext = expected.getNextQuestionForAnswer(questionId, answer.getId());
+                final DecisionTree.Question actualNext = actual.getNextQuestionForAnswer(questionId, answer.getId());
+                if (expectedNext == null) {
+                    assertNull(actualNext);
+                } else {
+                    assertNotNull(actualNext);
+                    assertEquals(expectedNext.getId(), actualNext.getId());
+                }
+            }
+        }
+    }
+
+    private static void checkButtonsEqual(final List<? extends DecisionTree.BaseButton> expected,
+                                          final List<? extends DecisionTree.BaseButton> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final DecisionTree.BaseButton expectedButton = expected.get(i);
+            final DecisionTree.BaseButton actualButton = actual.get(i);
+            assertEquals(expectedButton.getId(), actualButton.getId());
+            assertEquals(expectedButton.getText(), actualButton.getText());
+            assertEquals(expectedButton.getIcon(), actualButton.getIcon());
+            assertEquals(expectedButton.getExamplesCount(), actualButton.getExamplesCount());
+        }
+    }
+
+    @Test
+    public void testSharedDecisionTree() throws DecisionTree.DecisionTreeException, IOException {
+        final DecisionTree sharedDecisionTree = createCorrectDecisionTree(true /* withTranslation */);
+
+        final DecisionTree.DiscussQuestion discussQuestion =
+                new DecisionTree.DiscussQuestion("sloan-11", "a-0", "a-1");
+        final DecisionTree decisionTree = new DecisionTree(sharedDecisionTree, discussQuestion);
+        assertEquals(sharedDecisionTree.getAllQuestions().size(), decisionTree.getAllQuestions().size());
+
+        //The questions should not be copied:
+        final String QUESTION_ID = "sloan-3";
+        assertSame(sharedDecisionTree.getQuestion(QUESTION_ID), decisionTree.getQuestion(QUESTION_ID));
+        assertSame(sharedDecisionTree.getQuestionOrFirst(null), decisionTree.getQuestionOrFirst(null));
+    }
+
     @Test
     public void testQuestionsWithTranslation() throws DecisionTree.DecisionTreeException, IOException {
         final DecisionTree decisionTree = createCorrectDecisionTree(true /* withTranslation */);
@@ -25,14 +25,16 @@ import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
 import com.murrayc.galaxyzoo.app.Config;
-import com.murrayc.galaxyzoo.app.DecisionTree;
 import com.murrayc.galaxyzoo.app.IconsCache;
 import com.murrayc.galaxyzoo.app.Utils;
+import com.murrayc.galaxyzoo.app.provider.Config.SubjectGroup;
+import com.murrayc.galaxyzoo.core.DecisionTree;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -40,7 +42,11 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import static com.murrayc.galaxyzoo.app.provider.Config.SUBJECT_GROUPS;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
@@ -75,7 +81,7 @@ public class IconsCacheTest {
     }
 
     @Test
-    public void testIconsCache() throws DecisionTree.DecisionTreeException, IOException {
+    public void testIconsCache() throws DecisionTree.DecisionTreeException, IOException, InterruptedException {
         final List<DecisionTree> trees = new ArrayList<>();
         for (final Map.Entry<String, com.murrayc.galaxyzoo.app.provider.Config.SubjectGroup> entry : com.murrayc.galaxyzoo.app.provider.Config.SUBJECT_GROUPS.entrySet()) {
             final com.murrayc.galaxyzoo.app.provider.Config.SubjectGroup subjectGroup = entry.getValue();
@@ -91,7 +97,11 @@ public class IconsCacheTest {
             trees.add(decisionTree);
         }
 
-        final IconsCache iconsCache = new IconsCache(getContext(), trees);
+        final IconsCache iconsCache = new IconsCache(getContext());
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        iconsCache.preloadIconsAsync(executor, trees);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
 
         for (final DecisionTree decisionTree : trees) {
             for (final DecisionTree.Question question : decisionTree.getAllQuestions()) {
@@ -108,6 +118,208 @@ public class IconsCacheTest {
         }
     }
 
+    @Test
+    public void testPreloadIconsAsync() throws DecisionTree.DecisionTreeException, IOException, InterruptedException {
+        final List<DecisionTree> trees = new ArrayList<>();
+        for (final SubjectGroup subjectGroup : SUBJECT_GROUPS.values()) {
+            trees.add(loadDecisionTree(subjectGroup));
+        }
+
+        final IconsCache iconsCache = new IconsCache(getContext());
+        preloadIcons(iconsCache, trees);
+
+        //The icons should be available, whether or not they are still in the cache after preloading:
+        for (final DecisionTree decisionTree : trees) {
+            for (final DecisionTree.Question question : decisionTree.getAllQuestions()) {
+                for (final DecisionTree.Answer answer : question.getAnswers()) {
+                    checkIcon(iconsCache, answer.getIcon());
+                }
+
+                for (final DecisionTree.Checkbox checkbox : question.getCheckboxes()) {
+                    checkIcon(iconsCache, checkbox.getIcon());
+                }
+            }
+        }
+
+        //The preloaded icons should not need to be decoded again,
+        //unless they did not all fit in the cache:
+        assertTrue(iconsCache.getHitCount() > 0);
+        if (iconsCache.getEvictionCount() == 0) {
+            assertEquals(0, iconsCache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testDecodedIconsFile() throws DecisionTree.DecisionTreeException, IOException, InterruptedException {
+        final List<DecisionTree> trees = new ArrayList<>();
+        trees.add(loadFirstDecisionTree());
+
+        //Make sure that the first IconsCache decodes the icons and writes the file:
+        final File file = deleteDecodedIconsFile();
+
+        final IconsCache iconsCache = new IconsCache(getContext());
+        preloadIcons(iconsCache, trees);
+        assertEquals(0, iconsCache.getDecodedIconsFileHitCount());
+        assertTrue(file.exists());
+
+        //A second IconsCache, as if in a new process, should read the icons from the file:
+        final IconsCache iconsCacheWarm = new IconsCache(getContext());
+        preloadIcons(iconsCacheWarm, trees);
+        assertTrue(iconsCacheWarm.getDecodedIconsFileHitCount() > 0);
+
+        for (final DecisionTree.Question question : trees.get(0).getAllQuestions()) {
+            for (final DecisionTree.Answer answer : question.getAnswers()) {
+                final Bitmap expected = iconsCache.getIcon(answer.getIcon());
+                final Bitmap actual = iconsCacheWarm.getIcon(answer.getIcon());
+                assertNotNull(actual);
+                assertTrue(expected.sameAs(actual));
+            }
+        }
+    }
+
+    /**
+     * An icon that getIcon() decoded before preloadIconsAsync() started should still be saved in the file.
+     */
+    @Test
+    public void testDecodedIconsFileIncludesCachedIcons() throws DecisionTree.DecisionTreeException, IOException, InterruptedException {
+        final List<DecisionTree> trees = new ArrayList<>();
+        trees.add(loadFirstDecisionTree());
+
+        final File file = deleteDecodedIconsFile();
+
+        final String iconName = trees.get(0).getAllQuestions().get(0).getAnswers().get(0).getIcon();
+        final IconsCache iconsCache = new IconsCache(getContext());
+        assertNotNull(iconsCache.getIcon(iconName));
+
+        preloadIcons(iconsCache, trees);
+        assertTrue(file.exists());
+
+        //A second IconsCache, without preloading, should read that icon from the file:
+        final IconsCache iconsCacheWarm = new IconsCache(getContext());
+        final Bitmap icon = iconsCacheWarm.getIcon(iconName);
+        assertNotNull(icon);
+        assertEquals(1, iconsCacheWarm.getDecodedIconsFileHitCount());
+        assertTrue(iconsCache.getIcon(iconName).sameAs(icon));
+    }
+
+    @Test
+    public void testExampleIconsDecodedWithoutAlpha() throws DecisionTree.DecisionTreeException, IOException {
+        final DecisionTree decisionTree = loadFirstDecisionTree();
+
+        final IconsCache iconsCache = new IconsCache(getContext());
+
+        boolean foundExample = false;
+        for (final DecisionTree.Question question : decisionTree.getAllQuestions()) {
+            for (final DecisionTree.Answer answer : question.getAnswers()) {
+                //The workflow icons may have transparency:
+                final Bitmap icon = iconsCache.getIcon(answer.getIcon());
+                assertNotNull(icon);
+                assertEquals(Bitmap.Config.ARGB_8888, icon.getConfig());
+
+                //The example icons are photos, so they need less memory:
+                for (int i = 0; i < answer.getExamplesCount(); ++i) {
+                    final String exampleIconName = answer.getExampleIconName(question.getId(), i);
+                    checkIcon(iconsCache, exampleIconName);
+                    assertEquals(Bitmap.Config.RGB_565, iconsCache.getIcon(exampleIconName).getConfig());
+                    foundExample = true;
+                }
+            }
+        }
+
+        assertTrue(foundExample);
+    }
+
+    /**
+     * An icon that getIcon() returned should keep its pixels after the cache has evicted it,
+     * even when the next decoded icons reuse bitmaps from the pool.
+     */
+    @Test
+    public void testReturnedIconsAreNotReused() throws DecisionTree.DecisionTreeException, IOException, InterruptedException {
+        final DecisionTree decisionTree = loadFirstDecisionTree();
+        final List<DecisionTree> trees = new ArrayList<>();
+        trees.add(decisionTree);
+
+        //The workflow icons all have the same size and config,
+        //so the pool could reuse any of them for any other.
+        final List<String> iconNames = new ArrayList<>();
+        for (final DecisionTree.Question question : decisionTree.getAllQuestions()) {
+            for (final DecisionTree.Answer answer : question.getAnswers()) {
+                if (!iconNames.contains(answer.getIcon())) {
+                    iconNames.add(answer.getIcon());
+                }
+            }
+        }
+
+        //The icons from a cache that is big enough to never evict them:
+        final IconsCache referenceCache = new IconsCache(getContext());
+        final Bitmap reference = referenceCache.getIcon(iconNames.get(0));
+        assertNotNull(reference);
+
+        //A cache with room for only a few workflow icons, and a pool with room for a couple of bitmaps.
+        //IconsCache uses 1/32 of its memory for the workflow icons, and 1/64 for the pool.
+        final int iconBytes = reference.getRowBytes() * reference.getHeight();
+        final IconsCache iconsCache = new IconsCache(getContext(), iconBytes * 64 * 2);
+        assertTrue(iconNames.size() > 8);
+
+        //The preloaded icons are evicted, never having been returned, so they go in the pool,
+        //and are then reused for other icons:
+        preloadIcons(iconsCache, trees);
+        assertTrue(iconsCache.getBitmapReuseCount() > 0);
+
+        //Get all the icons, so the cache evicts each returned icon,
+        //and the pool would reuse it for the next decoded icon if it had put it in the pool:
+        final List<Bitmap> returned = new ArrayList<>();
+        for (final String iconName : iconNames) {
+            final Bitmap icon = iconsCache.getIcon(iconName);
+            assertNotNull(icon);
+            returned.add(icon);
+        }
+
+        assertTrue(iconsCache.getEvictionCount() > 0);
+
+        //None of the returned icons should have been overwritten by the icons decoded after them:
+        for (int i = 0; i < iconNames.size(); i++) {
+            final String iconName = iconNames.get(i);
+            assertTrue("A returned icon was reused for another icon: " + iconName,
+                    referenceCache.getIcon(iconName).sameAs(returned.get(i)));
+        }
+    }
+
+    private DecisionTree loadDecisionTree(final SubjectGroup subjectGroup) throws DecisionTree.DecisionTreeException, IOException {
+        final InputStream inputStreamTree = Utils.openAsset(getContext(),
+                Utils.getDecisionTreeFilepath(subjectGroup.getFilename()));
+        assertNotNull(inputStreamTree);
+        final DecisionTree result = new DecisionTree(inputStreamTree, null);
+        inputStreamTree.close();
+        return result;
+    }
+
+    private DecisionTree loadFirstDecisionTree() throws DecisionTree.DecisionTreeException, IOException {
+        return loadDecisionTree(SUBJECT_GROUPS.values().iterator().next());
+    }
+
+    /**
+     * Preload the icons on several threads, as the app does, and wait for the preloading to finish.
+     */
+    private static void preloadIcons(final IconsCache iconsCache, final List<DecisionTree> trees) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        iconsCache.preloadIconsAsync(executor, trees);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Delete the file of decoded icons, so the next IconsCache decodes them and writes the file again.
+     */
+    private File deleteDecodedIconsFile() {
+        final File file = new File(getContext().getCacheDir(), "decoded_icons.bin");
+        if (file.exists()) {
+            assertTrue(file.delete());
+        }
+
+        return file;
+    }
+
     private static boolean checkFileExistsAtUri(final String uri) throws IOException {
         final URL url = new URL(uri);
         final HttpURLConnection con = (HttpURLConnection) url.openConnection();
@@ -23,9 +23,9 @@ import android.content.Context;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
-import com.murrayc.galaxyzoo.app.DecisionTree;
 import com.murrayc.galaxyzoo.app.Singleton;
 import com.murrayc.galaxyzoo.app.provider.Config;
+import com.murrayc.galaxyzoo.core.DecisionTree;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -37,6 +37,8 @@ import java.util.List;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 
 /**
  * Simple test to ensure that the generated bindings are working.
@@ -97,6 +99,34 @@ public class SingletonTest {
         assertNotSame(decisionTreeSloanSingleBand, decisionTreeGoodsFull);
     }
 
+    @Test
+    public void testLazyDecisionTreeLoadedOnce() throws DecisionTree.DecisionTreeException, InterruptedException {
+        final Singleton singleton = new Singleton(getContext());
+
+        //SLOAN is not used for new subjects, so it is loaded when it is first needed.
+        //Several threads asking for it at once should all get the same instance:
+        final int THREADS_COUNT = 4;
+        final DecisionTree[] results = new DecisionTree[THREADS_COUNT];
+        final Thread[] threads = new Thread[THREADS_COUNT];
+        for (int i = 0; i < THREADS_COUNT; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> results[index] = singleton.getDecisionTree(Config.SUBJECT_GROUP_ID_SLOAN));
+            threads[i].start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNotNull(results[0]);
+        for (final DecisionTree result : results) {
+            assertSame(results[0], result);
+        }
+
+        assertSame(results[0], singleton.getDecisionTree(Config.SUBJECT_GROUP_ID_SLOAN));
+        assertNull(singleton.getDecisionTree("nonsense"));
+    }
+
     public void testQuestionsWithoutTranslation() throws DecisionTree.DecisionTreeException, IOException {
         final DecisionTree decisionTree = getDecisionTreeSloan();
 
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.app;
+
+import android.util.JsonReader;
+
+import com.murrayc.galaxyzoo.core.CorePlatform;
+import com.murrayc.galaxyzoo.core.JsonTokenReader;
+import com.murrayc.galaxyzoo.core.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Lets the core module's parsers use Android's JsonReader and log via our Log class.
+ * The core module cannot use these Android APIs directly,
+ * so that it can be built, and benchmarked, on a regular JVM.
+ */
+public final class AndroidCorePlatform {
+    private AndroidCorePlatform() {
+    }
+
+    /**
+     * This is safe to call more than once.
+     * The ItemsContentProvider calls this too, because a ContentProvider's onCreate()
+     * is called before the Application's onCreate().
+     */
+    public static void install() {
+        CorePlatform.install(new AndroidLogger(), new AndroidJsonTokenReaderFactory());
+    }
+
+    private static final class AndroidLogger implements Logger {
+        @Override
+        public void error(final String message, final Throwable e) {
+            Log.error(message, e);
+        }
+
+        @Override
+        public void error(final String message) {
+            Log.error(message);
+        }
+
+        @Override
+        public void info(final String message, final Throwable e) {
+            Log.info(message, e);
+        }
+
+        @Override
+        public void info(final String message) {
+            Log.info(message);
+        }
+    }
+
+    private static final class AndroidJsonTokenReaderFactory implements JsonTokenReader.Factory {
+        @Override
+        public JsonTokenReader create(final Reader reader) {
+            return new AndroidJsonTokenReader(new JsonReader(reader));
+        }
+    }
+
+    private static final class AndroidJsonTokenReader implements JsonTokenReader {
+        private final JsonReader mReader;
+
+        AndroidJsonTokenReader(final JsonReader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            mReader.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            mReader.endArray();
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            mReader.beginObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            mReader.endObject();
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return mReader.hasNext();
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            return mReader.nextName();
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            return mReader.nextString();
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            return mReader.nextBoolean();
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            mReader.skipValue();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
+        }
+    }
+}
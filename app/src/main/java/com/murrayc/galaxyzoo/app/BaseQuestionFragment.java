@@ -23,6 +23,8 @@ import android.content.Context;
 import android.graphics.drawable.BitmapDrawable;
 import android.support.annotation.Nullable;
 
+import com.murrayc.galaxyzoo.core.DecisionTree;
+
 /**
  * Created by murrayc on 8/28/14.
  */
@@ -23,6 +23,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
@@ -39,6 +40,9 @@ import android.view.ViewGroup;
 
 import com.murrayc.galaxyzoo.app.provider.Item;
 import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
+import com.squareup.picasso.Picasso;
+
+import java.lang.ref.WeakReference;
 
 /**
  * A fragment representing a single subject.
@@ -61,6 +65,27 @@ public class ClassifyFragment extends ItemFragment implements LoaderManager.Load
 
     private View mRootView = null;
     private boolean mGetNextInProgress = false;
+    private PrefetchNextItemTask mPrefetchNextItemTask = null;
+
+    //Picasso uses this to identify our prefetch requests, so we can cancel them.
+    private static final String PICASSO_TAG_PREFETCH = "ClassifyFragment.prefetch";
+
+    //Like the provider's "next" item, but not the current item,
+    //so this finds the item that the user will see after this one:
+    private static final String WHERE_CLAUSE_NEXT_AFTER_ITEM = "(" +
+            Item.Columns.DONE + " != 1" +
+            ") AND (" +
+            Item.Columns.LOCATION_STANDARD_DOWNLOADED + " == 1" +
+            ") AND (" +
+            Item.Columns.LOCATION_THUMBNAIL_DOWNLOADED + " == 1" +
+            ") AND (" +
+            Item.Columns.LOCATION_INVERTED_DOWNLOADED + " == 1" +
+            ") AND (" +
+            Item.Columns._ID + " != ?" +
+            ")";
+    private static final String[] PROJECTION_PREFETCH = {Item.Columns.LOCATION_STANDARD_URI,
+            Item.Columns.LOCATION_INVERTED_URI};
+    private static final String ORDER_BY_PREFETCH = Item.Columns._ID + " ASC";
 
     /**
      * A dummy implementation of the {@link ClassifyFragment.Callbacks} interface that does
@@ -264,6 +289,120 @@ public class ClassifyFragment extends ItemFragment implements LoaderManager.Load
             fragmentQuestion.setGroupId(null); //Avoid any chance of us using the wrong groups's decision tree.
             fragmentQuestion.setItemId(getItemId()); //This will trigger a later UI update of the fragment.
         }
+
+        //While the user classifies this item,
+        //get the next item's images ready so we can show it as soon as this one is done:
+        prefetchNextItem();
+    }
+
+    private void prefetchNextItem() {
+        final Activity activity = getActivity();
+        if (activity == null) {
+            return;
+        }
+
+        final String itemId = getItemId();
+        if (TextUtils.isEmpty(itemId) ||
+                TextUtils.equals(itemId, ItemsContentProvider.URI_PART_ITEM_ID_NEXT)) {
+            return;
+        }
+
+        cancelPrefetchNextItem();
+
+        mPrefetchNextItemTask = new PrefetchNextItemTask(activity);
+        mPrefetchNextItemTask.execute(itemId);
+    }
+
+    private void cancelPrefetchNextItem() {
+        if (mPrefetchNextItemTask != null) {
+            mPrefetchNextItemTask.cancel(false);
+            mPrefetchNextItemTask = null;
+        }
+
+        final Activity activity = getActivity();
+        if (activity != null) {
+            Picasso.with(activity).cancelTag(PICASSO_TAG_PREFETCH);
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+
+        //Don't keep decoding images for a classification that the user has left.
+        //We prefetch again when we are resumed, via update().
+        cancelPrefetchNextItem();
+    }
+
+    /**
+     * Find the item that will be shown after the current one,
+     * and decode its standard and inverted images into Picasso's memory cache,
+     * so SubjectFragment.showImage() does not need to wait for them.
+     */
+    private static class PrefetchNextItemTask extends AsyncTask<String, Void, String[]> {
+
+        private final WeakReference<Context> mContextReference;
+
+        PrefetchNextItemTask(final Context context) {
+            mContextReference = new WeakReference<>(context);
+        }
+
+        @Override
+        protected String[] doInBackground(final String... params) {
+            if (params.length < 1) {
+                return null;
+            }
+
+            final Context context = mContextReference.get();
+            if (context == null) {
+                return null;
+            }
+
+            //We query all items, instead of the "next" item,
+            //because the provider would then request more items from the server if there are none,
+            //but we don't want to wait for that here.
+            final Cursor cursor = context.getContentResolver().query(Item.CONTENT_URI,
+                    PROJECTION_PREFETCH, WHERE_CLAUSE_NEXT_AFTER_ITEM, new String[]{params[0]},
+                    ORDER_BY_PREFETCH);
+            if (cursor == null) {
+                return null;
+            }
+
+            try {
+                if (!cursor.moveToFirst()) {
+                    return null;
+                }
+
+                return new String[]{cursor.getString(0), cursor.getString(1)};
+            } finally {
+                cursor.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(final String[] uris) {
+            if (uris == null || isCancelled()) {
+                return;
+            }
+
+            final Context context = mContextReference.get();
+            if (context == null) {
+                return;
+            }
+
+            //SubjectFragment.showImage() loads the same URIs, without any transformation,
+            //so it will find these in Picasso's memory cache.
+            //The low priority avoids delaying the current item's image.
+            final Picasso picasso = Picasso.with(context);
+            for (final String uri : uris) {
+                if (!TextUtils.isEmpty(uri)) {
+                    picasso.load(uri)
+                            .tag(PICASSO_TAG_PREFETCH)
+                            .priority(Picasso.Priority.LOW)
+                            .fetch();
+                }
+            }
+        }
     }
 
     public void update() {
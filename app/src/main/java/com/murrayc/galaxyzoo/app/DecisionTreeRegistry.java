@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.murrayc.galaxyzoo.core.DecisionTree;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Parses each decision tree file, and the translation file, only once,
+ * even when several subject groups use the same decision tree file.
+ * The DecisionTrees from this should not be changed,
+ * because they are shared. See DecisionTree(DecisionTree, DiscussQuestion).
+ *
+ * There is one registry for each locale, so the trees are keyed just by their filenames.
+ *
+ * This uses the binary files that are generated from the XML and JSON files at build time,
+ * if they are available, because they are much quicker to load.
+ *
+ * This may be used from several threads at once. Each file is loaded by a FutureTask,
+ * so different files may be loaded at the same time, but each file is only loaded once,
+ * and other threads that need the same file wait for it.
+ * The trees depend on the translation, so they wait for it too, but only when they need it.
+ */
+class DecisionTreeRegistry {
+    private final Context mContext;
+    private final String mTranslationFilePath;
+
+    private final ConcurrentMap<String, FutureTask<DecisionTree>> mDecisionTrees = new ConcurrentHashMap<>();
+    private final FutureTask<DecisionTree.Translation> mTranslation = new FutureTask<>(this::loadTranslation);
+
+    /**
+     * @param context
+     * @param translationFilePath The asset path of the translation JSON file for the locale, or null for no translation.
+     */
+    DecisionTreeRegistry(@NonNull final Context context, @Nullable final String translationFilePath) {
+        mContext = context;
+        mTranslationFilePath = translationFilePath;
+    }
+
+    /**
+     * Get the parsed and translated decision tree for the file,
+     * parsing it if this is the first time,
+     * or waiting for it if another thread is already parsing it.
+     *
+     * @param decisionTreeFilename
+     * @return null if the file could not be opened.
+     * @throws DecisionTree.DecisionTreeException
+     */
+    @Nullable
+    DecisionTree getDecisionTree(@NonNull final String decisionTreeFilename) throws DecisionTree.DecisionTreeException {
+        FutureTask<DecisionTree> task = mDecisionTrees.get(decisionTreeFilename);
+        if (task == null) {
+            final FutureTask<DecisionTree> newTask = new FutureTask<>(() -> loadDecisionTree(decisionTreeFilename));
+            task = mDecisionTrees.putIfAbsent(decisionTreeFilename, newTask);
+            if (task == null) {
+                task = newTask;
+            }
+        }
+
+        return runAndGet(task);
+    }
+
+    /**
+     * Get the parsed translation,
+     * parsing it if this is the first time,
+     * or waiting for it if another thread is already parsing it.
+     *
+     * @return null if there is no translation for the locale.
+     * @throws DecisionTree.DecisionTreeException
+     */
+    @Nullable
+    DecisionTree.Translation getTranslation() throws DecisionTree.DecisionTreeException {
+        return runAndGet(mTranslation);
+    }
+
+    /**
+     * Run the task in this thread, unless it has already been run or is already running in another thread,
+     * and then get its result.
+     */
+    private static <T> T runAndGet(final FutureTask<T> task) throws DecisionTree.DecisionTreeException {
+        //This does nothing if the task has already been started:
+        task.run();
+
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DecisionTree.DecisionTreeException("Interrupted while waiting for the file to be loaded.", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof DecisionTree.DecisionTreeException) {
+                throw (DecisionTree.DecisionTreeException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new DecisionTree.DecisionTreeException("Exception while loading the file.", e);
+        }
+    }
+
+    /**
+     * Load the precompiled binary file if it is available,
+     * falling back to parsing the XML file.
+     */
+    @Nullable
+    private DecisionTree loadDecisionTree(@NonNull final String decisionTreeFilename) throws DecisionTree.DecisionTreeException {
+        final String filePath = Utils.getDecisionTreeFilepath(decisionTreeFilename);
+
+        final InputStream inputStreamBinary = Utils.openAsset(mContext, Utils.getBinaryFilePath(filePath));
+        if (inputStreamBinary != null) {
+            DecisionTree decisionTree = null;
+            try {
+                decisionTree = DecisionTree.fromBinary(inputStreamBinary);
+            } catch (final DecisionTree.DecisionTreeException e) {
+                Log.error("DecisionTreeRegistry: Could not load the binary decision tree, so parsing the XML instead: " + decisionTreeFilename, e);
+            } finally {
+                closeStream(inputStreamBinary);
+            }
+
+            if (decisionTree != null) {
+                //The translation might have been parsed in another thread meanwhile,
+                //so we only wait for it now:
+                final DecisionTree.Translation translation = getTranslation();
+                if (translation != null) {
+                    decisionTree.applyTranslation(translation);
+                }
+
+                return decisionTree;
+            }
+        }
+
+        final InputStream inputStreamTree = Utils.openAsset(mContext, filePath);
+        if (inputStreamTree == null) {
+            Log.error("DecisionTreeRegistry: Could not open decision tree: " + decisionTreeFilename);
+            return null;
+        }
+
+        try {
+            return DecisionTree.fromXml(inputStreamTree, getTranslation());
+        } finally {
+            closeStream(inputStreamTree);
+        }
+    }
+
+    /**
+     * Parse the translation file. This is only called once, by the mTranslation FutureTask.
+     */
+    @Nullable
+    private DecisionTree.Translation loadTranslation() throws DecisionTree.DecisionTreeException {
+        if (TextUtils.isEmpty(mTranslationFilePath)) {
+            return null;
+        }
+
+        final InputStream inputStreamBinary = Utils.openAsset(mContext,
+                Utils.getBinaryFilePath(mTranslationFilePath));
+        if (inputStreamBinary != null) {
+            try {
+                return DecisionTree.Translation.fromBinary(inputStreamBinary);
+            } catch (final IOException e) {
+                Log.error("DecisionTreeRegistry: Could not load the binary translation, so parsing the JSON instead: " + mTranslationFilePath, e);
+            } finally {
+                closeStream(inputStreamBinary);
+            }
+        }
+
+        final InputStream inputStreamTranslation = Utils.openAsset(mContext, mTranslationFilePath);
+        if (inputStreamTranslation == null) {
+            return null;
+        }
+
+        try {
+            return new DecisionTree.Translation(inputStreamTranslation);
+        } catch (final IOException e) {
+            throw new DecisionTree.DecisionTreeException("Translation parsing failed", e);
+        } finally {
+            closeStream(inputStreamTranslation);
+        }
+    }
+
+    private static void closeStream(final InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (final IOException e) {
+            Log.error("DecisionTreeRegistry: Exception while closing inputStream", e);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file of already-decoded icon pixels, in the app's cache directory,
+ * so we don't need to decode the icons from the atlas images again when the app starts again.
+ * The file is memory-mapped, so reading the icons is just a copy from the mapped file.
+ *
+ * The file is only valid for the app version that wrote it,
+ * because the icons, and how we decode them, might change with a new version.
+ *
+ * The format is:
+ * - A header: The magic number, the format version, the app version code, and the offset of the index.
+ * - The pixels of each icon, as written by Bitmap.copyPixelsToBuffer().
+ * - The index: The number of icons, and then each icon's name, config, width, height,
+ *   and the offset of its pixels.
+ *
+ * A Reader may be used from several threads at once. So may a Writer.
+ */
+final class DecodedIconsFile {
+    private static final int BINARY_MAGIC_DECODED_ICONS = 0x475A4450; //"GZDP"
+    private static final int BINARY_FORMAT_VERSION = 1;
+
+    //magic, format version, app version code, index offset:
+    private static final int HEADER_SIZE = 4 * 4;
+
+    //The order of these must not change without changing BINARY_FORMAT_VERSION:
+    private static final Bitmap.Config[] CONFIGS = {Bitmap.Config.ARGB_8888, Bitmap.Config.RGB_565};
+
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+    private DecodedIconsFile() {
+    }
+
+    /**
+     * @return -1 if we cannot store bitmaps with this config.
+     */
+    private static int getConfigIndex(final Bitmap.Config config) {
+        for (int i = 0; i < CONFIGS.length; i++) {
+            if (CONFIGS[i] == config) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Where an icon's pixels are in the file.
+     */
+    static final class Entry {
+        private final Bitmap.Config config;
+        private final int width;
+        private final int height;
+        private final int offset;
+
+        Entry(final Bitmap.Config config, final int width, final int height, final int offset) {
+            this.config = config;
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+        }
+
+        Bitmap.Config getConfig() {
+            return config;
+        }
+
+        int getWidth() {
+            return width;
+        }
+
+        int getHeight() {
+            return height;
+        }
+    }
+
+    static final class Reader {
+        private final MappedByteBuffer mBuffer;
+        private final Map<String, Entry> mEntries;
+
+        private Reader(final MappedByteBuffer buffer, final Map<String, Entry> entries) {
+            mBuffer = buffer;
+            mEntries = entries;
+        }
+
+        /**
+         * Map the file, if it exists and was written by this version of the app.
+         *
+         * @return null if the file does not exist or cannot be used.
+         */
+        @Nullable
+        static Reader open(@NonNull final File file, final int appVersionCode) {
+            if (!file.exists()) {
+                return null;
+            }
+
+            FileInputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(file);
+                final FileChannel channel = inputStream.getChannel();
+
+                //The mapping stays valid after we close the channel.
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.limit() < HEADER_SIZE ||
+                        buffer.getInt() != BINARY_MAGIC_DECODED_ICONS ||
+                        buffer.getInt() != BINARY_FORMAT_VERSION) {
+                    Log.error("DecodedIconsFile.Reader.open(): Unexpected file type.");
+                    return null;
+                }
+
+                //This is normal after the app has been upgraded:
+                if (buffer.getInt() != appVersionCode) {
+                    return null;
+                }
+
+                final int indexOffset = buffer.getInt();
+                if (indexOffset < HEADER_SIZE || indexOffset > buffer.limit()) {
+                    //The Writer probably did not finish.
+                    Log.error("DecodedIconsFile.Reader.open(): Unexpected index offset: " + indexOffset);
+                    return null;
+                }
+
+                buffer.position(indexOffset);
+                final int count = buffer.getInt();
+                final Map<String, Entry> entries = new HashMap<>(count);
+                for (int i = 0; i < count; i++) {
+                    final byte[] nameBytes = new byte[buffer.getShort()];
+                    buffer.get(nameBytes);
+                    final String name = new String(nameBytes, CHARSET_UTF8);
+
+                    final int configIndex = buffer.get();
+                    if (configIndex < 0 || configIndex >= CONFIGS.length) {
+                        Log.error("DecodedIconsFile.Reader.open(): Unexpected config: " + configIndex);
+                        return null;
+                    }
+
+                    final int width = buffer.getShort();
+                    final int height = buffer.getShort();
+                    final int offset = buffer.getInt();
+                    if (offset < HEADER_SIZE || offset >= indexOffset) {
+                        Log.error("DecodedIconsFile.Reader.open(): Unexpected offset: " + offset);
+                        return null;
+                    }
+
+                    entries.put(name, new Entry(CONFIGS[configIndex], width, height, offset));
+                }
+
+                return new Reader(buffer, entries);
+            } catch (final IOException | RuntimeException e) {
+                //java.nio.BufferUnderflowException is a RuntimeException.
+                Log.error("DecodedIconsFile.Reader.open(): Exception while reading the file.", e);
+                return null;
+            } finally {
+                if (inputStream != null) {
+                    try {
+                        inputStream.close();
+                    } catch (final IOException e) {
+                        Log.error("DecodedIconsFile.Reader.open(): Exception while closing inputStream", e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return null if the icon is not in the file.
+         */
+        @Nullable
+        Entry getEntry(@NonNull final String iconName) {
+            return mEntries.get(iconName);
+        }
+
+        /**
+         * Copy the icon's pixels into the bitmap,
+         * which must have the entry's config, width, and height.
+         */
+        void copyPixelsTo(@NonNull final Entry entry, @NonNull final Bitmap bitmap) {
+            //A duplicate has its own position, so this is safe while other threads use mBuffer.
+            final ByteBuffer pixels = mBuffer.duplicate();
+            pixels.position(entry.offset);
+            bitmap.copyPixelsFromBuffer(pixels);
+        }
+    }
+
+    /**
+     * Writes the file as icons are decoded, and then writes the index when commit() is called.
+     * The file is written to a temporary file first,
+     * so a Reader never sees an incomplete file.
+     */
+    static final class Writer {
+        private static final class IndexEntry {
+            final String name;
+            final Entry entry;
+
+            IndexEntry(final String name, final Entry entry) {
+                this.name = name;
+                this.entry = entry;
+            }
+        }
+
+        private final File mFile;
+        private final File mTempFile;
+        private final int mAppVersionCode;
+        private RandomAccessFile mOutput = null;
+        private final List<IndexEntry> mIndex = new ArrayList<>();
+        private final Set<String> mNames = new HashSet<>();
+        private boolean mFailed = false;
+
+        Writer(@NonNull final File file, final int appVersionCode) {
+            mFile = file;
+            mTempFile = new File(file.getPath() + ".tmp");
+            mAppVersionCode = appVersionCode;
+        }
+
+        /**
+         * @return true if add() has already added the icon.
+         */
+        synchronized boolean contains(@NonNull final String iconName) {
+            return mNames.contains(iconName);
+        }
+
+        /**
+         * Append the bitmap's pixels to the file.
+         * This does nothing if an earlier call failed, or if the icon has already been added.
+         */
+        synchronized void add(@NonNull final String iconName, @NonNull final Bitmap bitmap) {
+            if (mFailed || mNames.contains(iconName)) {
+                return;
+            }
+
+            final int configIndex = getConfigIndex(bitmap.getConfig());
+            if (configIndex == -1) {
+                //We never decode to other configs, so just don't store it.
+                return;
+            }
+
+            try {
+                if (mOutput == null) {
+                    mOutput = new RandomAccessFile(mTempFile, "rw");
+                    mOutput.setLength(0);
+
+                    //The index offset is written by commit():
+                    mOutput.writeInt(BINARY_MAGIC_DECODED_ICONS);
+                    mOutput.writeInt(BINARY_FORMAT_VERSION);
+                    mOutput.writeInt(mAppVersionCode);
+                    mOutput.writeInt(0);
+                }
+
+                final ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+                bitmap.copyPixelsToBuffer(pixels);
+
+                final int offset = (int) mOutput.getFilePointer();
+                mOutput.write(pixels.array());
+                mIndex.add(new IndexEntry(iconName,
+                        new Entry(CONFIGS[configIndex], bitmap.getWidth(), bitmap.getHeight(), offset)));
+                mNames.add(iconName);
+            } catch (final IOException e) {
+                Log.error("DecodedIconsFile.Writer.add(): Exception while writing the file.", e);
+                abort();
+            }
+        }
+
+        /**
+         * Write the index, and replace any previous file.
+         */
+        synchronized void commit() {
+            if (mFailed || mOutput == null) {
+                return;
+            }
+
+            try {
+                final int indexOffset = (int) mOutput.getFilePointer();
+                mOutput.writeInt(mIndex.size());
+                for (final IndexEntry indexEntry : mIndex) {
+                    final byte[] nameBytes = indexEntry.name.getBytes(CHARSET_UTF8);
+                    mOutput.writeShort(nameBytes.length);
+                    mOutput.write(nameBytes);
+
+                    final Entry entry = indexEntry.entry;
+                    mOutput.writeByte(getConfigIndex(entry.config));
+                    mOutput.writeShort(entry.width);
+                    mOutput.writeShort(entry.height);
+                    mOutput.writeInt(entry.offset);
+                }
+
+                mOutput.seek(HEADER_SIZE - 4);
+                mOutput.writeInt(indexOffset);
+                mOutput.close();
+                mOutput = null;
+            } catch (final IOException e) {
+                Log.error("DecodedIconsFile.Writer.commit(): Exception while writing the file.", e);
+                abort();
+                return;
+            }
+
+            if (!mTempFile.renameTo(mFile)) {
+                Log.error("DecodedIconsFile.Writer.commit(): Could not rename the temporary file.");
+                abort();
+            }
+
+            mIndex.clear();
+        }
+
+        /**
+         * Stop writing, and delete the incomplete file.
+         */
+        synchronized void abort() {
+            mFailed = true;
+            mIndex.clear();
+
+            if (mOutput != null) {
+                try {
+                    mOutput.close();
+                } catch (final IOException e) {
+                    Log.error("DecodedIconsFile.Writer.abort(): Exception while closing the file.", e);
+                }
+
+                mOutput = null;
+            }
+
+            if (mTempFile.exists() && !mTempFile.delete()) {
+                Log.error("DecodedIconsFile.Writer.abort(): Could not delete the temporary file.");
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import android.net.Uri;
 
 import com.squareup.leakcanary.LeakCanary;
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.UrlConnectionDownloader;
 
 /**
  * Created by murrayc on 5/12/15.
@@ -36,13 +37,22 @@ public class GalaxyZooApplication extends Application {
     public void onCreate() {
         super.onCreate();
 
+        //Let the parsers in the core module use Android's JsonReader and Log.
+        AndroidCorePlatform.install();
+
         //Catch leaks, in debug builds (release builds use a no-op).
         LeakCanary.install(this);
 
         //Let us log errors from Picasso to give us some clues when things go wrong.
         //Unfortunately, we can't get these errors in the regular onError() callback:
         //https://github.com/square/picasso/issues/379
-        final Picasso picasso = (new Picasso.Builder(this)).listener(GalaxyZooApplication.picassoListener).build();
+        //Picasso would use OkHttp, with its own client and disk cache, if it found OkHttp's urlconnection module,
+        //which we use for HttpConnectionPool. Picasso's images come from a different server
+        //than our uploads, so they would not reuse those connections anyway,
+        //and we just keep Picasso's usual HttpURLConnection downloader and cache.
+        final Picasso picasso = (new Picasso.Builder(this))
+                .downloader(new UrlConnectionDownloader(this))
+                .listener(GalaxyZooApplication.picassoListener).build();
         //This affects what, for instance, Picasso.with() will return:
         try {
             Picasso.setSingletonInstance(picasso);
@@ -53,6 +63,16 @@ public class GalaxyZooApplication extends Application {
         }
     }
 
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+
+        final Singleton singleton = Singleton.getInstance();
+        if (singleton != null) {
+            singleton.onTrimMemory();
+        }
+    }
+
     private static class PicassoListener implements Picasso.Listener {
         @Override
         public void onImageLoadFailed(final Picasso picasso, final Uri uri, final Exception exception) {
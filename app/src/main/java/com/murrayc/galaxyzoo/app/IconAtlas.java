@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The icons, packed into a few large images by the compileIconAtlases task in app/build.gradle,
+ * with an index of each icon's position in those images.
+ * Each icon is decoded separately with a BitmapRegionDecoder,
+ * so we only open a few assets, and we never decode a whole atlas image.
+ * See IconsCache.decodeIcon() for the decoding options.
+ *
+ * This may be used from several threads at once.
+ * A BitmapRegionDecoder decodes only one region at a time, holding its own lock,
+ * so each thread that is decoding uses its own decoder for the atlas.
+ * IconsCache.preloadIconsAsync() can then decode icons from the same atlas in parallel.
+ * Each decoder holds a copy of its whole atlas image, so recycle() releases them
+ * when we don't expect to decode many more icons.
+ */
+class IconAtlas {
+    private static final String ASSET_PATH_ICONS_DIR = "icons/";
+    private static final String INDEX_FILENAME = "index.bin";
+
+    //JPEG images cannot have transparency:
+    private static final String OPAQUE_ATLAS_FILE_EXTENSION = ".jpg";
+
+    //The index format written by the compileIconAtlases task in app/build.gradle.
+    //Change BINARY_FORMAT_VERSION here and in IconAtlasCompiler, in buildSrc, if the format changes.
+    private static final int BINARY_MAGIC_ICONS_INDEX = 0x475A4943; //"GZIC"
+    private static final int BINARY_FORMAT_VERSION = 1;
+
+    /**
+     * Where an icon is in the atlas images.
+     */
+    static final class Region {
+        private final int atlasIndex;
+        private final Rect rect;
+        private final boolean opaque;
+
+        Region(final int atlasIndex, final Rect rect, final boolean opaque) {
+            this.atlasIndex = atlasIndex;
+            this.rect = rect;
+            this.opaque = opaque;
+        }
+
+        int getWidth() {
+            return rect.width();
+        }
+
+        int getHeight() {
+            return rect.height();
+        }
+
+        /**
+         * Whether the icon has no transparency,
+         * so it could be decoded without an alpha channel.
+         */
+        boolean isOpaque() {
+            return opaque;
+        }
+    }
+
+    private final Context mContext;
+
+    //These are loaded the first time that they are needed:
+    private boolean mIndexLoaded = false;
+    private String[] mAtlasFilenames = new String[0];
+    //The decoders for each atlas that are not being used by a thread right now.
+    //There are only as many as the most threads that have decoded from the atlas at once.
+    private ArrayDeque<BitmapRegionDecoder>[] mIdleDecoders = newIdleDecoders(0);
+    private final Map<String, Region> mRegions = new HashMap<>();
+
+    IconAtlas(@NonNull final Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Find where the icon is in the atlas images.
+     *
+     * @param iconName The icon's name, as used in the decision tree, such as "yes", or "sloan-0_a-0_0".
+     * @return null if there is no such icon.
+     */
+    @Nullable
+    synchronized Region getRegion(@NonNull final String iconName) {
+        loadIndexIfNecessary();
+        return mRegions.get(iconName);
+    }
+
+    /**
+     * Decode the icon from its atlas image.
+     *
+     * @param region The icon's region, from getRegion().
+     * @param options Options such as inSampleSize and inPreferredConfig, or null.
+     * @return null if the icon could not be decoded.
+     */
+    @Nullable
+    Bitmap decodeRegion(@NonNull final Region region, @Nullable final BitmapFactory.Options options) {
+        final BitmapRegionDecoder decoder = takeDecoder(region.atlasIndex);
+        if (decoder == null) {
+            return null;
+        }
+
+        //This decoder is only used by this thread until we give it back,
+        //so we don't need to hold our lock while decoding.
+        try {
+            return decoder.decodeRegion(region.rect, options);
+        } finally {
+            giveBackDecoder(region.atlasIndex, decoder);
+        }
+    }
+
+    /**
+     * Release the memory used by the decoders that are not being used right now.
+     * decodeRegion() will just create a new decoder if it needs one later.
+     */
+    synchronized void recycle() {
+        for (final ArrayDeque<BitmapRegionDecoder> decoders : mIdleDecoders) {
+            for (final BitmapRegionDecoder decoder : decoders) {
+                decoder.recycle();
+            }
+
+            decoders.clear();
+        }
+    }
+
+    private void loadIndexIfNecessary() {
+        if (mIndexLoaded) {
+            return;
+        }
+
+        //Don't try again if this fails:
+        mIndexLoaded = true;
+
+        final InputStream inputStream = Utils.openAsset(mContext, ASSET_PATH_ICONS_DIR + INDEX_FILENAME);
+        if (inputStream == null) {
+            Log.error("IconAtlas: Could not open the index.");
+            return;
+        }
+
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+            if (in.readInt() != BINARY_MAGIC_ICONS_INDEX) {
+                Log.error("IconAtlas: Unexpected index file type.");
+                return;
+            }
+
+            final int version = in.readInt();
+            if (version != BINARY_FORMAT_VERSION) {
+                Log.error("IconAtlas: Unexpected index file version: " + version);
+                return;
+            }
+
+            final int atlasesCount = in.readInt();
+            final String[] atlasFilenames = new String[atlasesCount];
+            for (int i = 0; i < atlasesCount; i++) {
+                atlasFilenames[i] = in.readUTF();
+            }
+
+            final int iconsCount = in.readInt();
+            for (int i = 0; i < iconsCount; i++) {
+                final String name = in.readUTF();
+                final int atlasIndex = in.readUnsignedByte();
+                final int x = in.readShort();
+                final int y = in.readShort();
+                final int width = in.readShort();
+                final int height = in.readShort();
+
+                final boolean opaque = (atlasIndex < atlasesCount) &&
+                        atlasFilenames[atlasIndex].endsWith(OPAQUE_ATLAS_FILE_EXTENSION);
+                mRegions.put(name, new Region(atlasIndex, new Rect(x, y, x + width, y + height), opaque));
+            }
+
+            mAtlasFilenames = atlasFilenames;
+            mIdleDecoders = newIdleDecoders(atlasesCount);
+        } catch (final IOException e) {
+            Log.error("IconAtlas: Exception while reading the index.", e);
+            mRegions.clear();
+        } finally {
+            try {
+                inputStream.close();
+            } catch (final IOException e) {
+                Log.error("IconAtlas: Exception while closing inputStream", e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<BitmapRegionDecoder>[] newIdleDecoders(final int atlasesCount) {
+        final ArrayDeque<BitmapRegionDecoder>[] result = new ArrayDeque[atlasesCount];
+        for (int i = 0; i < atlasesCount; i++) {
+            result[i] = new ArrayDeque<>();
+        }
+
+        return result;
+    }
+
+    /**
+     * Get a decoder for the atlas, which no other thread will use until giveBackDecoder().
+     */
+    @Nullable
+    private BitmapRegionDecoder takeDecoder(final int atlasIndex) {
+        final String atlasFilename;
+        synchronized (this) {
+            if (atlasIndex >= mIdleDecoders.length) {
+                Log.error("IconAtlas: Unexpected atlas index: " + atlasIndex);
+                return null;
+            }
+
+            final BitmapRegionDecoder idle = mIdleDecoders[atlasIndex].poll();
+            if (idle != null) {
+                return idle;
+            }
+
+            atlasFilename = mAtlasFilenames[atlasIndex];
+        }
+
+        //Create another decoder, without holding the lock,
+        //so other threads can still use the idle decoders meanwhile.
+        return createDecoder(atlasFilename);
+    }
+
+    private synchronized void giveBackDecoder(final int atlasIndex, @NonNull final BitmapRegionDecoder decoder) {
+        mIdleDecoders[atlasIndex].push(decoder);
+    }
+
+    @Nullable
+    private BitmapRegionDecoder createDecoder(final String atlasFilename) {
+        final InputStream inputStream = Utils.openAsset(mContext, ASSET_PATH_ICONS_DIR + atlasFilename);
+        if (inputStream == null) {
+            Log.error("IconAtlas: Could not open the atlas: " + atlasFilename);
+            return null;
+        }
+
+        //We don't close the InputStream because the decoder might still read from it.
+        try {
+            return BitmapRegionDecoder.newInstance(inputStream, false);
+        } catch (final IOException e) {
+            Log.error("IconAtlas: Exception while creating the decoder for the atlas: " + atlasFilename, e);
+            return null;
+        }
+    }
+}
@@ -19,10 +19,13 @@
 
 package com.murrayc.galaxyzoo.app;
 
+import android.app.ActivityManager;
 import android.content.Context;
 //import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.util.LruCache;
 import android.text.TextUtils;
@@ -31,16 +34,23 @@ import android.text.TextUtils;
 //import com.android.volley.toolbox.Volley;
 //import com.murrayc.galaxyzoo.app.provider.HttpUtils;
 //import com.murrayc.galaxyzoo.app.syncadapter.SubjectAdder;
+import com.murrayc.galaxyzoo.core.DecisionTree;
 
 //import java.io.BufferedReader;
 //import java.io.ByteArrayOutputStream;
-//import java.io.File;
+import java.io.File;
 //import java.io.FileInputStream;
 //import java.io.FileOutputStream;
 //import java.io.IOException;
-import java.io.InputStream;
+//import java.io.InputStream;
 //import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 //import java.util.regex.Matcher;
 //import java.util.regex.Pattern;
 //import java.util.regex.PatternSyntaxException;
@@ -53,16 +63,42 @@ public class IconsCache {
     private static final String CACHE_FILE_CSS = "css";
     */
 
-    private static final String ASSET_PATH_ICONS_DIR = "icons/";
-    private static final String ICON_FILE_PREFIX = "icon_";
     //private final List<DecisionTree> mDecisionTrees;
     //private final File mCacheDir;
 
-    //TODO: Don't put both kinds of icons in the same map:
-    //See this about the use of the LruCache:
+    //The caches, and the pool of bitmaps to reuse, share one budget in bytes,
+    //using this fraction of the app's memory class, as suggested here:
     //http://developer.android.com/training/displaying-bitmaps/cache-bitmap.html#memory-cache
-    private final LruCache<String, Bitmap> mWorkflowIcons = new LruCache<>(20);
-    private final LruCache<String, Bitmap> mExampleIcons = new LruCache<>(20);
+    private static final int MEMORY_CLASS_FRACTION = 8;
+
+    //How the budget is shared. The example icons get the rest.
+    //There are far fewer workflow icons than example icons.
+    private static final int BUDGET_FRACTION_WORKFLOW_ICONS = 4;
+    private static final int BUDGET_FRACTION_BITMAP_POOL = 8;
+
+    //Used if we cannot get the memory class for some reason:
+    private static final int DEFAULT_MEMORY_CLASS_MEGABYTES = 16;
+
+    //The already-decoded icons, in the app's (internal) cache directory.
+    //See DecodedIconsFile.
+    private static final String CACHE_FILE_DECODED_ICONS = "decoded_icons.bin";
+
+    //TODO: Don't put both kinds of icons in the same map:
+    private final LruCache<String, Bitmap> mWorkflowIcons;
+    private final LruCache<String, Bitmap> mExampleIcons;
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private final IconAtlas mIconAtlas;
+
+    //Icons that were decoded before, maybe by a previous process.
+    //This is null if the file does not exist yet.
+    private final DecodedIconsFile.Reader mDecodedIconsReader;
+
+    //This is only set while preloadIconsAsync() is writing the decoded icons to mDecodedIconsFile.
+    private volatile DecodedIconsFile.Writer mDecodedIconsWriter = null;
+    private final File mDecodedIconsFile;
+    private final AtomicInteger mDecodedIconsFileHitCount = new AtomicInteger();
+    private final BitmapPool mBitmapPool;
     private final Context mContext;
     /*
     private Bitmap mBmapWorkflowIcons = null;
@@ -71,52 +107,365 @@ public class IconsCache {
     */
 
     /**
-     * This does network IO so it should not be used in the UI's main thread.
-     * For instance, do this in an AsyncTask, as in Singleton.init().
+     * This does not preload any icons. See preloadIconsAsync().
      *
      * @param context
-     * @param decisionTrees Decision trees whose icons should be pre-loaded.
      */
-    public IconsCache(final Context context, final List<DecisionTree> decisionTrees) {
-        //this.mDecisionTrees = decisionTrees;
+    public IconsCache(final Context context) {
+        this(context, getMemoryClassMegabytes(context) * 1024 * 1024);
+    }
+
+    /**
+     * This is only public so we can test it.
+     *
+     * @param memoryBytes The memory that the caches use a fraction of, usually the memory class.
+     *                    Tests can make this small, so icons are evicted more often.
+     */
+    public IconsCache(final Context context, final int memoryBytes) {
         this.mContext = context;
-        /* this.mRequestQueue = Volley.newRequestQueue(context);
+        mIconAtlas = new IconAtlas(context);
+
+        final File cacheDir = getCacheDir(context);
+        mDecodedIconsFile = (cacheDir == null) ? null : new File(cacheDir, CACHE_FILE_DECODED_ICONS);
+        mDecodedIconsReader = (mDecodedIconsFile == null) ? null :
+                DecodedIconsFile.Reader.open(mDecodedIconsFile, BuildConfig.VERSION_CODE);
+
+        final int budgetBytes = memoryBytes / MEMORY_CLASS_FRACTION;
+        final int workflowIconsBytes = budgetBytes / BUDGET_FRACTION_WORKFLOW_ICONS;
+        final int bitmapPoolBytes = budgetBytes / BUDGET_FRACTION_BITMAP_POOL;
+        mWorkflowIcons = new BitmapLruCache(workflowIconsBytes);
+        mExampleIcons = new BitmapLruCache(budgetBytes - workflowIconsBytes - bitmapPoolBytes);
+        mBitmapPool = new BitmapPool(bitmapPoolBytes);
+    }
 
-        mCacheDir = Utils.getExternalCacheDir(context);
-        if (mCacheDir == null) {
-            //This would probably lead to a crash later:
-            Log.error("IconsCache(): getExternalCacheDir() returned null.");
+    /**
+     * Preload the icons for each question of the decision trees in a separate task,
+     * so they can be decoded on several threads at once.
+     * getIcon() loads any icon that has not been preloaded yet,
+     * so callers don't need to wait for this.
+     *
+     * @param executor
+     * @param decisionTrees Decision trees whose icons should be pre-loaded.
+     */
+    public void preloadIconsAsync(final Executor executor, final List<DecisionTree> decisionTrees) {
+        final List<DecisionTree.Question> questions = new ArrayList<>();
+        for (final DecisionTree decisionTree : decisionTrees) {
+            questions.addAll(decisionTree.getAllQuestions());
         }
 
-        long lastModified = 0;
+        //If the icons were not already decoded by a previous process,
+        //save them as we decode them, so the next process can just read them.
+        final DecodedIconsFile.Writer writer = (mDecodedIconsReader == null && mDecodedIconsFile != null) ?
+                new DecodedIconsFile.Writer(mDecodedIconsFile, BuildConfig.VERSION_CODE) : null;
+        mDecodedIconsWriter = writer;
 
-        boolean loadFromNetwork = true;
+        final AtomicInteger remainingCount = new AtomicInteger(questions.size());
+        for (final DecisionTree.Question question : questions) {
+            executor.execute(() -> {
+                if (!reloadIconsForQuestion(question)) {
+                    Log.error("IconsCache: reloadIconsForQuestion() failed for question: " + question.getId());
+                }
 
-        if (loadFromNetwork) {
-            loadFromNetwork(context, lastModified);
-        } else {
+                if (remainingCount.decrementAndGet() != 0) {
+                    return;
+                }
+
+                //getIcon() decodes the few remaining icons one at a time,
+                //so we don't need to keep a decoder for each thread:
+                mIconAtlas.recycle();
+
+                //The last task to finish writes the file:
+                if (writer != null) {
+                    mDecodedIconsWriter = null;
+                    writer.commit();
+                }
+            });
+        }
+    }
+
+    @Nullable
+    private static File getCacheDir(final Context context) {
+        try {
+            return context.getCacheDir();
+        } catch (final UnsupportedOperationException e) {
+            //This happens while running under ProviderTestCase2.
+            Log.error("IconsCache.getCacheDir(): Unsupported operation from Context.getCacheDir()", e);
+            return null;
+        }
+    }
+
+    private static int getMemoryClassMegabytes(final Context context) {
+        final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            Log.error("IconsCache: Could not get the ActivityManager.");
+            return DEFAULT_MEMORY_CLASS_MEGABYTES;
+        }
+
+        return activityManager.getMemoryClass();
+    }
+
+    /**
+     * An LruCache whose size is the number of bytes used by its bitmaps,
+     * instead of the number of bitmaps.
+     */
+    private final class BitmapLruCache extends LruCache<String, Bitmap> {
+        BitmapLruCache(final int maxSizeBytes) {
+            super(maxSizeBytes);
+        }
+
+        @Override
+        protected int sizeOf(final String key, final Bitmap value) {
+            return getSizeBytes(value);
+        }
+
+        @Override
+        protected void entryRemoved(final boolean evicted, final String key, final Bitmap oldValue, final Bitmap newValue) {
+            if (evicted) {
+                mBitmapPool.putIfNeverReturned(oldValue);
+            }
+        }
+    }
+
+    private static int getSizeBytes(final Bitmap bitmap) {
+        //Bitmap.getByteCount() is not available until API level 12:
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Bitmaps that can be reused, with BitmapFactory.Options.inBitmap, when decoding other icons,
+     * or when reading them from the DecodedIconsFile, instead of allocating new bitmaps.
+     *
+     * Other code might still be drawing an icon that getIcon() returned,
+     * so we may only reuse icons that were preloaded but never returned.
+     * getIcon() finds and marks an icon while holding this object's lock,
+     * and putIfNeverReturned() checks the mark while holding the same lock.
+     * An evicted icon has already been removed from the LruCache,
+     * so getIcon() cannot find it again after putIfNeverReturned() has put it in the pool.
+     */
+    private static final class BitmapPool {
+        private final int mMaxSizeBytes;
+        private final List<Bitmap> mBitmaps = new ArrayList<>();
+        private int mSizeBytes = 0;
+        private int mReusedCount = 0;
+
+        //The icons that getIcon() has returned.
+        private final Set<Bitmap> mReturnedIcons = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+
+        BitmapPool(final int maxSizeBytes) {
+            mMaxSizeBytes = maxSizeBytes;
+        }
 
+        /**
+         * Don't reuse this bitmap, even after it has been evicted from the cache.
          */
+        synchronized void markReturned(@NonNull final Bitmap bitmap) {
+            mReturnedIcons.add(bitmap);
+        }
 
-        //Just get the cached icons:
-        if (!reloadCachedIcons(decisionTrees)) {
-            //Something went wrong while reloading the icons from the cache files,
-            Log.error("IconsCache: reloadCachedIcons() failed.");
+        synchronized void putIfNeverReturned(final Bitmap bitmap) {
+            if (mReturnedIcons.contains(bitmap)) {
+                return;
+            }
 
-            /*
-            //So try loading them again.
-            if ((networkConnected != null) || (networkConnected.connected)) {
-                Log.info("IconsCache(): Reloading the icons from the network after failing to reload them from the cache.");
-                loadFromNetwork(context, lastModified);
+            if (!bitmap.isMutable() || bitmap.isRecycled()) {
+                return;
             }
-            */
+
+            final int sizeBytes = getSizeBytes(bitmap);
+            if (mSizeBytes + sizeBytes > mMaxSizeBytes) {
+                return;
+            }
+
+            mBitmaps.add(bitmap);
+            mSizeBytes += sizeBytes;
         }
 
-        /* }
+        /**
+         * Get a bitmap of exactly this size and config, because BitmapRegionDecoder
+         * cannot decode into a bitmap of a different size.
+         *
+         * @return null if there is no suitable bitmap.
+         */
+        @Nullable
+        synchronized Bitmap take(final int width, final int height, final Bitmap.Config config) {
+            for (int i = 0; i < mBitmaps.size(); i++) {
+                final Bitmap bitmap = mBitmaps.get(i);
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height &&
+                        bitmap.getConfig() == config) {
+                    mBitmaps.remove(i);
+                    mSizeBytes -= getSizeBytes(bitmap);
+                    mReusedCount++;
+                    return bitmap;
+                }
+            }
 
-        mBmapWorkflowIcons = null;
-        mBmapExampleIcons = null;
-        */
+            return null;
+        }
+
+        synchronized int getReusedCount() {
+            return mReusedCount;
+        }
+    }
+
+    /**
+     * Decode the icon at the size that we show it at,
+     * using less memory for icons that have no transparency,
+     * and reusing the memory of old bitmaps when possible.
+     *
+     * @param cssName
+     * @return null if the icon could not be decoded.
+     */
+    @Nullable
+    private Bitmap decodeIcon(final String cssName) {
+        final Bitmap bitmap = readDecodedIcon(cssName);
+        if (bitmap != null) {
+            mDecodedIconsFileHitCount.incrementAndGet();
+            return bitmap;
+        }
+
+        final Bitmap decoded = decodeIconFromAtlas(cssName);
+
+        final DecodedIconsFile.Writer writer = mDecodedIconsWriter;
+        if (decoded != null && writer != null) {
+            writer.add(cssName, decoded);
+        }
+
+        return decoded;
+    }
+
+    /**
+     * Get the icon's pixels from the file of icons that were decoded before,
+     * without decoding it again.
+     *
+     * @param cssName
+     * @return null if the icon is not in the file.
+     */
+    @Nullable
+    private Bitmap readDecodedIcon(final String cssName) {
+        if (mDecodedIconsReader == null) {
+            return null;
+        }
+
+        final DecodedIconsFile.Entry entry = mDecodedIconsReader.getEntry(cssName);
+        if (entry == null) {
+            return null;
+        }
+
+        Bitmap bitmap = mBitmapPool.take(entry.getWidth(), entry.getHeight(), entry.getConfig());
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(entry.getWidth(), entry.getHeight(), entry.getConfig());
+        }
+
+        try {
+            mDecodedIconsReader.copyPixelsTo(entry, bitmap);
+        } catch (final RuntimeException e) {
+            //For instance, the file might be truncated,
+            //causing a BufferUnderflowException, so just decode the icon instead.
+            Log.error("IconsCache.readDecodedIcon(): Exception while copying the pixels.", e);
+            return null;
+        }
+
+        return bitmap;
+    }
+
+    @Nullable
+    private Bitmap decodeIconFromAtlas(final String cssName) {
+        final IconAtlas.Region region = mIconAtlas.getRegion(cssName);
+        if (region == null) {
+            return null;
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(region.getWidth(), region.getHeight(),
+                Config.ICON_WIDTH_HEIGHT);
+
+        //The example icons are JPEG photos, so they don't need an alpha channel:
+        options.inPreferredConfig = region.isOpaque() ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+
+        //So we can reuse it later via inBitmap:
+        options.inMutable = true;
+
+        //BitmapRegionDecoder only supports inBitmap since API level 16:
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            options.inBitmap = mBitmapPool.take(region.getWidth() / options.inSampleSize,
+                    region.getHeight() / options.inSampleSize,
+                    options.inPreferredConfig);
+        }
+
+        if (options.inBitmap != null) {
+            try {
+                return mIconAtlas.decodeRegion(region, options);
+            } catch (final IllegalArgumentException e) {
+                //The bitmap could not be reused after all, so just allocate a new one:
+                Log.error("IconsCache.decodeIcon(): Could not reuse bitmap.", e);
+                options.inBitmap = null;
+            }
+        }
+
+        return mIconAtlas.decodeRegion(region, options);
+    }
+
+    /**
+     * The largest power of 2 that keeps the decoded icon at least as big as the size that we show it at.
+     */
+    private static int calculateInSampleSize(final int width, final int height, final int targetWidthHeight) {
+        int result = 1;
+        while ((width / (result * 2)) >= targetWidthHeight &&
+                (height / (result * 2)) >= targetWidthHeight) {
+            result *= 2;
+        }
+
+        return result;
+    }
+
+    /**
+     * The number of icons that were read from the file of already-decoded icons,
+     * instead of being decoded.
+     * This is for debugging and tests.
+     */
+    public int getDecodedIconsFileHitCount() {
+        return mDecodedIconsFileHitCount.get();
+    }
+
+    /**
+     * The number of times that getIcon() found the icon in the cache.
+     * This is for debugging and tests.
+     */
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * The number of times that getIcon() did not find the icon in the cache,
+     * so it had to decode it again.
+     * This is for debugging and tests.
+     */
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * The number of icons that were removed from the cache to make room for others.
+     * This is for debugging and tests.
+     */
+    public int getEvictionCount() {
+        return mWorkflowIcons.evictionCount() + mExampleIcons.evictionCount();
+    }
+
+    /**
+     * The number of times that a bitmap from the pool was reused for another icon.
+     * This is for debugging and tests.
+     */
+    public int getBitmapReuseCount() {
+        return mBitmapPool.getReusedCount();
+    }
+
+    /**
+     * Release memory that we can do without, such as the atlas decoders.
+     * Call this from Application.onTrimMemory().
+     */
+    public void onTrimMemory() {
+        mIconAtlas.recycle();
     }
 
     public static String getExampleImageUri(final String iconName) {
@@ -136,31 +485,6 @@ public class IconsCache {
     }
     */
 
-    /**
-     *
-     * @param decisionTrees Decision Trees whose icons should be pre-loaded.
-     * @return
-     */
-    private boolean reloadCachedIcons(final List<DecisionTree> decisionTrees) {
-        mWorkflowIcons.evictAll();
-        mExampleIcons.evictAll();
-
-        boolean allSucceeded = true;
-
-        //For each tree, try loading all its icons:
-        for (final DecisionTree decisionTree : decisionTrees) {
-            final List<DecisionTree.Question> questions = decisionTree.getAllQuestions();
-            for (final DecisionTree.Question question : questions) {
-                if (!reloadIconsForQuestion(question)) {
-                    allSucceeded = false;
-                    //But keep on trying the other ones.
-                }
-            }
-        }
-
-        return allSucceeded;
-    }
-
     private boolean reloadIconsForQuestion(final DecisionTree.Question question) {
         for (final DecisionTree.Answer answer : question.getAnswers()) {
             //Get the icon for the answer:
@@ -206,9 +530,21 @@ public class IconsCache {
 
         //Log.info("reloadIcon:" + cssName);
 
-        //Avoid loading and adding it again:
-        if (map.get(cssName) != null) {
-            return true;
+        //Avoid loading and adding it again.
+        //But getIcon() might have decoded it before preloadIconsAsync() started writing the file,
+        //so make sure that the file has it too.
+        final DecodedIconsFile.Writer writer = mDecodedIconsWriter;
+        if (writer == null || writer.contains(cssName)) {
+            if (map.get(cssName) != null) {
+                return true;
+            }
+        } else {
+            //Don't let BitmapPool reuse it while we copy its pixels:
+            final Bitmap cached = getAndMarkReturned(cssName, map);
+            if (cached != null) {
+                writer.add(cssName, cached);
+                return true;
+            }
         }
 
         /*
@@ -244,11 +580,7 @@ public class IconsCache {
 
         //We bundle the icons with the app,
         //so fall back to that:
-        Bitmap bitmap = null;
-        final InputStream inputStreamAsset = Utils.openAsset(getContext(), getIconAssetPath(cssName));
-        if(inputStreamAsset != null) {
-            bitmap = BitmapFactory.decodeStream(inputStreamAsset);
-        }
+        final Bitmap bitmap = decodeIcon(cssName);
         //}
 
         if (bitmap == null) {
@@ -260,10 +592,6 @@ public class IconsCache {
         return true;
     }
 
-    private static String getIconAssetPath(final String cssName) {
-        return ASSET_PATH_ICONS_DIR + ICON_FILE_PREFIX + cssName;
-    }
-
     /*
     private void readIconsFileSync(final String uriStr, final String cacheId) {
         final String cacheFileUri = createCacheFile(cacheId);
@@ -607,17 +935,50 @@ public class IconsCache {
             return null;
         }
 
-        Bitmap result = mWorkflowIcons.get(iconName);
+        //This might be an example icon, which we preload separately,
+        //so check for that too:
+        Bitmap result = getAndMarkReturned(iconName, mWorkflowIcons);
+        if (result == null) {
+            result = getAndMarkReturned(iconName, mExampleIcons);
+        }
+
+        if (result != null) {
+            mHitCount.incrementAndGet();
+            return result;
+        }
 
         //Reload it if it is no longer in the cache:
+        mMissCount.incrementAndGet();
+        result = decodeIcon(iconName);
         if (result == null) {
-            reloadIcon(iconName, mWorkflowIcons);
-            result = mWorkflowIcons.get(iconName);
+            Log.error("getIcon(): Could not load icon: " + iconName);
+            return null;
         }
 
+        //Mark it before anything else can see it in the cache,
+        //so it can never be reused via BitmapPool.
+        mBitmapPool.markReturned(result);
+        mWorkflowIcons.put(iconName, result);
         return result;
     }
 
+    /**
+     * Get the icon from the cache, if it is there, and mark it as returned,
+     * so BitmapPool will not reuse it even after it has been evicted.
+     * See BitmapPool for why this must hold its lock.
+     */
+    @Nullable
+    private Bitmap getAndMarkReturned(final String iconName, final LruCache<String, Bitmap> map) {
+        synchronized (mBitmapPool) {
+            final Bitmap result = map.get(iconName);
+            if (result != null) {
+                mBitmapPool.markReturned(result);
+            }
+
+            return result;
+        }
+    }
+
     private Context getContext() {
         return mContext;
     }
@@ -45,6 +45,7 @@ import android.widget.TextView;
 
 import com.murrayc.galaxyzoo.app.provider.HttpUtils;
 import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
+import com.murrayc.galaxyzoo.core.LoginResult;
 
 import java.lang.ref.WeakReference;
 
@@ -279,12 +280,12 @@ public class LoginActivity extends ZooAccountAuthenticatorActivity {
     private static class AccountSaveTask extends AsyncTask<Void, Void, Void> {
 
         private final WeakReference<Context> contextReference;
-        private final LoginUtils.LoginResult loginResult;
+        private final LoginResult loginResult;
         private final String existingAccountName;
 
         private final boolean existingAccountIsAnonymous;
 
-        AccountSaveTask(final Context context, final LoginUtils.LoginResult loginResult, final String existingAccountName, final boolean existingAccountIsAnonymous) {
+        AccountSaveTask(final Context context, final LoginResult loginResult, final String existingAccountName, final boolean existingAccountIsAnonymous) {
             this.contextReference = new WeakReference<>(context);
             this.loginResult = loginResult;
             this.existingAccountName = existingAccountName;
@@ -350,7 +351,7 @@ public class LoginActivity extends ZooAccountAuthenticatorActivity {
         }
     }
 
-    private void finishWithResult(final LoginUtils.LoginResult result) {
+    private void finishWithResult(final LoginResult result) {
         boolean loggedIn = false;
         if ((result != null) && result.getSuccess()) {
             loggedIn = true;
@@ -392,7 +393,7 @@ public class LoginActivity extends ZooAccountAuthenticatorActivity {
      * Represents an asynchronous login/registration task used to authenticate
      * the user.
      */
-    public class UserLoginTask extends AsyncTask<Void, Void, LoginUtils.LoginResult> {
+    public class UserLoginTask extends AsyncTask<Void, Void, LoginResult> {
 
         private final String mUsername;
         private final String mPassword;
@@ -404,7 +405,7 @@ public class LoginActivity extends ZooAccountAuthenticatorActivity {
         }
 
         @Override
-        protected LoginUtils.LoginResult doInBackground(final Void... params) {
+        protected LoginResult doInBackground(final Void... params) {
             final ContentResolver contentResolver = getContentResolver();
             if (contentResolver == null) {
                 return null;
@@ -424,7 +425,7 @@ public class LoginActivity extends ZooAccountAuthenticatorActivity {
         }
 
         @Override
-        protected void onPostExecute(final LoginUtils.LoginResult result) {
+        protected void onPostExecute(final LoginResult result) {
             mAuthTask = null;
             LoginActivity.this.showProgress(false);
 
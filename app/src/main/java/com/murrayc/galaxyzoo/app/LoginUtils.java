@@ -34,13 +34,13 @@ import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.FragmentActivity;
 import android.text.TextUtils;
-import android.util.JsonReader;
 
 import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.core.LoginResponseJsonParser;
+import com.murrayc.galaxyzoo.core.LoginResult;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.ref.WeakReference;
 import java.util.Map;
 
@@ -89,50 +89,11 @@ public final class LoginUtils {
         return !(TextUtils.isEmpty(loginDetails.authApiKey));
     }
 
+    /**
+     * See LoginResponseJsonParser.parseLoginResponseContent().
+     */
     public static LoginResult parseLoginResponseContent(final InputStream content) throws IOException {
-        //A failure by default.
-        LoginResult result = new LoginResult(false, null, null);
-
-        final InputStreamReader streamReader = new InputStreamReader(content, Utils.STRING_ENCODING);
-        final JsonReader reader = new JsonReader(streamReader);
-        reader.beginObject();
-        boolean success = false;
-        String apiKey = null;
-        String userName = null;
-        String message = null;
-        while (reader.hasNext()) {
-            final String name = reader.nextName();
-            switch (name) {
-                case "success":
-                    success = reader.nextBoolean();
-                    break;
-                case "api_key":
-                    apiKey = reader.nextString();
-                    break;
-                case "name":
-                    userName = reader.nextString();
-                    break;
-                case "message":
-                    message = reader.nextString();
-                    break;
-                default:
-                    reader.skipValue();
-            }
-        }
-
-        if (success) {
-            result = new LoginResult(true, userName, apiKey);
-        } else {
-            Log.info("Login failed.");
-            Log.info("Login failure message: " + message);
-        }
-
-        reader.endObject();
-        reader.close();
-
-        streamReader.close();
-
-        return result;
+        return LoginResponseJsonParser.parseLoginResponseContent(content);
     }
 
     /**
@@ -533,29 +494,4 @@ public final class LoginUtils {
             return null;
         }
     }
-
-
-    public static class LoginResult {
-        private final boolean success;
-        private final String name;
-        private final String apiKey;
-
-        public LoginResult(final boolean success, final String name, final String apiKey) {
-            this.success = success;
-            this.name = name;
-            this.apiKey = apiKey;
-        }
-
-        public String getApiKey() {
-            return apiKey;
-        }
-
-        public boolean getSuccess() {
-            return success;
-        }
-
-        public String getName() {
-            return name;
-        }
-    }
 }
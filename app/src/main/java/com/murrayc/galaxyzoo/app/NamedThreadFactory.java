@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates threads with recognizable names,
+ * so they are easy to identify while debugging or profiling.
+ */
+public final class NamedThreadFactory implements ThreadFactory {
+    private final String mPrefix;
+    private final int mPriority;
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    /**
+     * Create low-priority threads,
+     * for background work that is less urgent than anything the user is waiting for.
+     *
+     * @param prefix
+     */
+    public NamedThreadFactory(final String prefix) {
+        this(prefix, Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * @param prefix
+     * @param priority A Thread priority, such as Thread.NORM_PRIORITY.
+     */
+    public NamedThreadFactory(final String prefix, final int priority) {
+        mPrefix = prefix;
+        mPriority = priority;
+    }
+
+    @Override
+    public Thread newThread(@NonNull final Runnable runnable) {
+        final Thread thread = new Thread(runnable, mPrefix + "-" + mCount.incrementAndGet());
+        thread.setPriority(mPriority);
+        return thread;
+    }
+}
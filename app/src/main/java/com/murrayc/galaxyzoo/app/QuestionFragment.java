@@ -58,6 +58,7 @@ import com.murrayc.galaxyzoo.app.provider.ClassificationAnswer;
 import com.murrayc.galaxyzoo.app.provider.ClassificationCheckbox;
 import com.murrayc.galaxyzoo.app.provider.Item;
 import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
+import com.murrayc.galaxyzoo.core.DecisionTree;
 
 import java.lang.ref.WeakReference;
 import java.text.DateFormat;
@@ -40,6 +40,8 @@ import android.widget.TableLayout;
 import android.widget.TableRow;
 import android.widget.TextView;
 
+import com.murrayc.galaxyzoo.core.DecisionTree;
+
 
 /**
  * A simple {@link Fragment} subclass.
@@ -30,14 +30,21 @@ import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
 import com.murrayc.galaxyzoo.app.provider.Config;
+import com.murrayc.galaxyzoo.core.DecisionTree;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A singleton that allows our various Activities to share the same data.
@@ -50,8 +57,20 @@ public class Singleton {
     private static List<Callbacks> mCallbacks = new ArrayList<>();
     private static Singleton ourInstance = null;
     private static boolean initializationInProgress = false;
+
+    //Runs the independent parts of the initialization at the same time,
+    //such as parsing each decision tree file and the translation file, and decoding icons.
+    //The threads are not kept after the initialization.
+    private static final int INIT_THREADS_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long INIT_THREADS_KEEP_ALIVE_SECONDS = 5;
+    private static final ThreadPoolExecutor sInitExecutor = createInitExecutor();
+
     private IconsCache mIconsCache = null;
-    private final Map<String, DecisionTree> mDecisionTrees = new HashMap<>();
+
+    //The trees for groups that are not used for new subjects are only loaded when they are first needed,
+    //so this is accessed from several threads.
+    private final ConcurrentMap<String, DecisionTree> mDecisionTrees = new ConcurrentHashMap<>();
+    private final DecisionTreeRegistry mDecisionTreeRegistry;
     private LocaleDetails mLocaleDetails = null;
 
     //A cache of the logged in status,
@@ -70,90 +89,136 @@ public class Singleton {
         //See http://developer.android.com/guide/topics/ui/settings.html#Fragment
         Utils.initDefaultPrefs(context);
 
-        //Try to find a translation file:
-        InputStream inputStreamTranslation = null;
-        String translationFileName = null;
         mLocaleDetails = getLocaleDetails(context);
-        if (!TextUtils.isEmpty(mLocaleDetails.language)) {
-            //Try finding a translation for a country-specific form of the language:
-            //We have to get the stream to find out if the asset exists,
-            //so we keep the stream to avoid re-opening it unnecessarily:
-            translationFileName = Utils.getTranslationFilePath(mLocaleDetails.language, mLocaleDetails.countryCode);
-            inputStreamTranslation = Utils.openAsset(context, translationFileName);
-            if (inputStreamTranslation == null) {
-                //Try just the language instead:
-                translationFileName = Utils.getTranslationFilePath(mLocaleDetails.language, null);
-                inputStreamTranslation = Utils.openAsset(context, translationFileName);
+
+        //Each tree file, and the translation file, is parsed only once,
+        //though several groups of subjects might use the same tree file:
+        mDecisionTreeRegistry = new DecisionTreeRegistry(context,
+                findTranslationFilePath(context, mLocaleDetails));
+
+        //Start parsing the translation and each distinct tree file in parallel.
+        //The DecisionTreeRegistry tracks the dependencies between them,
+        //so loadDecisionTree(), below, just waits for the ones that it needs,
+        //or does them itself if no thread has started them yet.
+        sInitExecutor.execute(() -> {
+            try {
+                mDecisionTreeRegistry.getTranslation();
+            } catch (final DecisionTree.DecisionTreeException e) {
+                //The trees will get the same exception too.
+                Log.error("Singleton: Exception while parsing the translation.", e);
             }
+        });
 
-            if (inputStreamTranslation == null) {
-                translationFileName = null; //To mark that we don't have it.
+        final Set<String> filenamesStarted = new HashSet<>();
+        for (final Config.SubjectGroup subjectGroup : Config.SUBJECT_GROUPS.values()) {
+            final String filename = subjectGroup.getFilename();
+            if (!subjectGroup.getUseForNewQueries() || !filenamesStarted.add(filename)) {
+                continue;
             }
+
+            sInitExecutor.execute(() -> {
+                try {
+                    mDecisionTreeRegistry.getDecisionTree(filename);
+                } catch (final DecisionTree.DecisionTreeException e) {
+                    //loadDecisionTree() will get the same exception too.
+                    Log.error("Singleton: Exception while parsing the decision tree.", e);
+                }
+            });
         }
 
         final List<DecisionTree> decisionTreesToPreloadIcons = new ArrayList<>();
 
-        //Parse the tree for each group of subjects:
+        //Get the tree for each group of subjects that is used for new subjects.
+        //The other trees are only needed for old cached subjects,
+        //so getDecisionTree() loads them later if necessary.
         for (final Map.Entry<String, Config.SubjectGroup> entry : Config.SUBJECT_GROUPS.entrySet()) {
-            final String groupId = entry.getKey();
             final Config.SubjectGroup subjectGroup = entry.getValue();
-
-            final String decisionTreeFilename = subjectGroup.getFilename();
-            final InputStream inputStreamTree = Utils.openAsset(context,
-                    Utils.getDecisionTreeFilepath(decisionTreeFilename));
-            if (inputStreamTree == null) {
-                Log.error("Singleton: Error parsing decision tree.");
+            if (!subjectGroup.getUseForNewQueries()) {
                 continue;
             }
 
-            //We have to reload inputStreamTranslation because we cannot just reuse it:
-            if ((inputStreamTranslation == null) && !TextUtils.isEmpty(translationFileName)) {
-                inputStreamTranslation = Utils.openAsset(context, translationFileName);
+            final DecisionTree decisionTree = loadDecisionTree(entry.getKey(), subjectGroup);
+            if (decisionTree != null) {
+                decisionTreesToPreloadIcons.add(decisionTree);
             }
+        }
 
-            final DecisionTree decisionTree = new DecisionTree(inputStreamTree, inputStreamTranslation);
-            mDecisionTrees.put(groupId, decisionTree);
+        //The trees are all that we need before calling the onInitialized() callbacks.
+        //IconsCache.getIcon() loads any icons that have not been preloaded yet,
+        //so we don't wait for the preloading.
+        mIconsCache = new IconsCache(context);
+        mIconsCache.preloadIconsAsync(sInitExecutor, decisionTreesToPreloadIcons);
+    }
 
-            //Preload icons only for trees that are likely to be used:
-            if (subjectGroup.getUseForNewQueries()) {
-                decisionTreesToPreloadIcons.add(decisionTree);
-            }
+    private static ThreadPoolExecutor createInitExecutor() {
+        //The UI waits for the decision trees, so these threads should not have a low priority.
+        final ThreadPoolExecutor result = new ThreadPoolExecutor(INIT_THREADS_COUNT, INIT_THREADS_COUNT,
+                INIT_THREADS_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("galaxyzoo-init", Thread.NORM_PRIORITY));
+        result.allowCoreThreadTimeOut(true);
+        return result;
+    }
 
-            //Discover the "Discuss this" question from our Config,
-            //because there is no reliable automatic way to discover it:
-            decisionTree.setDiscussQuestion(subjectGroup.getDiscussQuestion());
+    @Nullable
+    private DecisionTree loadDecisionTree(final String groupId, final Config.SubjectGroup subjectGroup) throws DecisionTree.DecisionTreeException {
+        final DecisionTree sharedDecisionTree = mDecisionTreeRegistry.getDecisionTree(subjectGroup.getFilename());
+        if (sharedDecisionTree == null) {
+            Log.error("Singleton: Error parsing decision tree.");
+            return null;
+        }
 
-            if (inputStreamTree != null) {
-                try {
-                    inputStreamTree.close();
-                } catch (final IOException e) {
-                    Log.error("Singleton: Exception while closing inputStreamTree", e);
-                }
-            }
+        //Discover the "Discuss this" question from our Config,
+        //because there is no reliable automatic way to discover it:
+        final DecisionTree decisionTree = new DecisionTree(sharedDecisionTree,
+                subjectGroup.getDiscussQuestion());
 
-            //Make sure that we reload this instead of trying to reuse it,
-            //because we cannot reuse it:
-            if (inputStreamTranslation != null) {
-                try {
-                    inputStreamTranslation.close();
-                } catch (final IOException e) {
-                    Log.error("Singleton: Exception while closing inputStreamTranslation", e);
-                }
-            }
-            inputStreamTranslation = null; //So we reload it if necessary.
+        //Another thread might have loaded it at the same time,
+        //so make sure that everybody gets the same instance:
+        final DecisionTree existing = mDecisionTrees.putIfAbsent(groupId, decisionTree);
+        return (existing != null) ? existing : decisionTree;
+    }
+
+    /**
+     * Try to find a translation file, for a country-specific form of the language,
+     * or just for the language.
+     *
+     * @return The asset path of the translation file, or null if there is none.
+     */
+    @Nullable
+    private static String findTranslationFilePath(final Context context, final LocaleDetails localeDetails) {
+        if (localeDetails == null || TextUtils.isEmpty(localeDetails.language)) {
+            return null;
         }
 
-        //Just in case the for() never iterates even once,
-        //which would be very odd:
-        if (inputStreamTranslation != null) {
-            try {
-                inputStreamTranslation.close();
-            } catch (final IOException e) {
-                Log.error("Singleton: Exception while closing inputStreamTranslation", e);
-            }
+        final String countryFilePath = Utils.getTranslationFilePath(localeDetails.language, localeDetails.countryCode);
+        if (assetExists(context, countryFilePath)) {
+            return countryFilePath;
         }
 
-        mIconsCache = new IconsCache(context, decisionTreesToPreloadIcons);
+        final String languageFilePath = Utils.getTranslationFilePath(localeDetails.language, null);
+        if (assetExists(context, languageFilePath)) {
+            return languageFilePath;
+        }
+
+        return null;
+    }
+
+    /** We have to open the asset to find out if it exists.
+     */
+    private static boolean assetExists(final Context context, final String filePath) {
+        final InputStream inputStream = Utils.openAsset(context, filePath);
+        if (inputStream == null) {
+            return false;
+        }
+
+        try {
+            inputStream.close();
+        } catch (final IOException e) {
+            Log.error("Singleton: Exception while closing inputStream", e);
+        }
+
+        return true;
     }
 
     private static LocaleDetails getLocaleDetails(final Context context) {
@@ -254,8 +319,52 @@ public class Singleton {
         return ourInstance;
     }
 
+    /**
+     * Get the decision tree for the group of subjects,
+     * loading it if this is the first time that it is needed.
+     * Only the trees for groups that are used for new subjects are loaded during init(),
+     * but the others should be quick to load from their compiled binary files.
+     *
+     * This may be called from any thread.
+     *
+     * @param groupId
+     * @return null if the groupId is unknown or the tree could not be loaded.
+     */
+    @Nullable
     public DecisionTree getDecisionTree(final String groupId) {
-        return mDecisionTrees.get(groupId);
+        //ConcurrentHashMap does not allow null keys:
+        if (TextUtils.isEmpty(groupId)) {
+            Log.error("Singleton.getDecisionTree(): groupId is empty.");
+            return null;
+        }
+
+        final DecisionTree existing = mDecisionTrees.get(groupId);
+        if (existing != null) {
+            return existing;
+        }
+
+        final Config.SubjectGroup subjectGroup = Config.SUBJECT_GROUPS.get(groupId);
+        if (subjectGroup == null) {
+            Log.error("Singleton.getDecisionTree(): Unknown groupId: " + groupId);
+            return null;
+        }
+
+        try {
+            return loadDecisionTree(groupId, subjectGroup);
+        } catch (final DecisionTree.DecisionTreeException e) {
+            Log.error("Singleton.getDecisionTree(): Could not load the decision tree for groupId: " + groupId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Release memory that we can do without.
+     * See GalaxyZooApplication.onTrimMemory().
+     */
+    public void onTrimMemory() {
+        if (mIconsCache != null) {
+            mIconsCache.onTrimMemory();
+        }
     }
 
     private Bitmap getIcon(final String iconName) {
@@ -32,6 +32,7 @@ import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
 import com.murrayc.galaxyzoo.app.provider.Item;
+import com.murrayc.galaxyzoo.core.DecisionTree;
 
 import java.io.File;
 import java.io.IOException;
@@ -54,6 +55,9 @@ public final class Utils {
     private static final String ASSET_PATH_DECISION_TREE_DIR = "decision_tree/";
     private static final String JSON_FILE_EXTENSION = ".json";
 
+    //Generated from the XML and JSON files by the compileDecisionTrees task in app/build.gradle:
+    private static final String BINARY_FILE_EXTENSION = ".bin";
+
     /**
      * Ideally you would use LoginUtils.getUseWifiOnly() instead of the copy that is in
      * the SharedPreferences, but this is useful when you don't want to call from the main thread.
@@ -142,6 +146,17 @@ public final class Utils {
         }
     }
 
+    /**
+     * Get the path of the precompiled binary version of a decision tree or translation file.
+     * See DecisionTree.fromBinary() and DecisionTree.Translation.fromBinary().
+     *
+     * @param filePath The asset path of the XML or JSON file, such as from getDecisionTreeFilepath().
+     * @return
+     */
+    public static String getBinaryFilePath(final String filePath) {
+        return filePath + BINARY_FILE_EXTENSION;
+    }
+
     @NonNull
     public static String getTalkUri(final String zooniverseId) {
         return Config.TALK_URI + zooniverseId;
@@ -215,6 +230,30 @@ public final class Utils {
         return uriBuilder.build();
     }
 
+    /**
+     * Get a selection such as "columnName IN (?, ?, ?)",
+     * with one ? placeholder for each of the selection arguments.
+     * We use ? to avoid SQL Injection.
+     *
+     * @param columnName
+     * @param count The number of selection arguments.
+     * @return
+     */
+    public static String getSelectionIn(final String columnName, final int count) {
+        final StringBuilder builder = new StringBuilder(columnName);
+        builder.append(" IN (");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+
+            builder.append('?');
+        }
+        builder.append(')');
+
+        return builder.toString();
+    }
+
     static void initDefaultPrefs(final Context context) {
         PreferenceManager.setDefaultValues(context, R.xml.preferences, false);
     }
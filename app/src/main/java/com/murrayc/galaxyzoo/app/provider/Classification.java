@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo.
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider;
+
+import android.net.Uri;
+
+/**
+ * A read-only view of the complete classifications of items:
+ * Each row has an item's details, one of its classification answers,
+ * and, if there are any, one of that answer's selected checkboxes.
+ * So an answer with several selected checkboxes has several rows.
+ *
+ * This lets us get everything that we need to upload classifications with just one query.
+ */
+public final class Classification {
+    private static final String AUTHORITY =
+            Item.AUTHORITY;
+
+    /**
+     * The URI for the classifications of all Items,
+     * or part of the URI for the classification of a single Item,
+     * whose ID should be appended.
+     */
+    public static final Uri CLASSIFICATIONS_URI = Uri.parse("content://" +
+            AUTHORITY + "/" + ItemsContentProvider.URI_PART_CLASSIFICATION);
+    /**
+     * The content:// style URI for this classification.
+     */
+    public static final Uri CONTENT_URI = CLASSIFICATIONS_URI;
+
+
+    public static final class Columns {
+        //There is no _ID because the rows are not stored as rows in a table.
+        public static final String ITEM_ID = "itemId";
+        public static final String SUBJECT_ID = Item.Columns.SUBJECT_ID;
+        public static final String GROUP_ID = Item.Columns.GROUP_ID;
+        public static final String DONE = Item.Columns.DONE;
+        public static final String UPLOADED = Item.Columns.UPLOADED;
+        public static final String FAVORITE = Item.Columns.FAVORITE;
+        public static final String SEQUENCE = ClassificationAnswer.Columns.SEQUENCE; //null if the item has no answers.
+        public static final String QUESTION_ID = ClassificationAnswer.Columns.QUESTION_ID; //null if the item has no answers.
+        public static final String ANSWER_ID = ClassificationAnswer.Columns.ANSWER_ID; //null if the item has no answers.
+        public static final String CHECKBOX_ID = ClassificationCheckbox.Columns.CHECKBOX_ID; //null if the answer has no checkboxes.
+    }
+}
@@ -19,7 +19,7 @@
 
 package com.murrayc.galaxyzoo.app.provider;
 
-import com.murrayc.galaxyzoo.app.DecisionTree;
+import com.murrayc.galaxyzoo.core.DecisionTree;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -47,6 +47,24 @@ public final class Config {
     //It also allows us to get a mix of items from different groups.
     public static final int MAXIMUM_DOWNLOAD_ITEMS = 5;
 
+    //Upload only a few classifications at a time,
+    //so that a burst of uploads, for instance after a long time offline,
+    //doesn't open many connections at once.
+    public static final int MAXIMUM_CONCURRENT_UPLOADS = 2;
+
+    //Any more outstanding classifications will be uploaded during a later sync.
+    //Each queued upload may be a batch of up to MAXIMUM_UPLOAD_BATCH_SIZE classifications.
+    public static final int MAXIMUM_QUEUED_UPLOADS = 50;
+
+    //Upload a group's classifications one after the other on the same connection,
+    //but not so many that one slow batch holds up the others for long.
+    public static final int MAXIMUM_UPLOAD_BATCH_SIZE = 10;
+
+    //Give up on an upload if it takes longer than this.
+    //This is longer than the connection's own timeouts (HttpUtils.TIMEOUT_MILLIS),
+    //which apply separately to the connection and to each read.
+    public static final long UPLOAD_TIMEOUT_MILLIS = 60000; //1 minute.
+
     public static List<String> getSubjectGroupsToUseForNewQueries() {
         return SUBJECT_GROUPS_TO_USE_FOR_NEW_QUERIES;
     }
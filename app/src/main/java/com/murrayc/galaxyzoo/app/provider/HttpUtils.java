@@ -20,35 +20,26 @@
 package com.murrayc.galaxyzoo.app.provider;
 
 import android.content.Context;
-import android.net.Uri;
-import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.Base64;
-
-import com.android.volley.NetworkResponse;
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.HttpHeaderParser;
-import com.android.volley.toolbox.RequestFuture;
+import android.text.TextUtils;
+
 import com.murrayc.galaxyzoo.app.BuildConfig;
 import com.murrayc.galaxyzoo.app.Log;
 import com.murrayc.galaxyzoo.app.LoginUtils;
 import com.murrayc.galaxyzoo.app.Utils;
+import com.murrayc.galaxyzoo.core.FormEncoding;
+import com.murrayc.galaxyzoo.core.NameValuePair;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.lang.ref.WeakReference;
-import java.net.URLEncoder;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * Don't use any of these methods from the main thread.
@@ -61,9 +52,35 @@ public final class HttpUtils {
     private static final String USER_AGENT_MURRAYC = "murrayc.com-android-galaxyzoo";
     public static final String HTTP_REQUEST_HEADER_PARAM_ACCEPT = "Accept";
     public static final String HTTP_REQUEST_HEADER_PARAM_CONTENT_TYPE = "Content-Type";
+    public static final String HTTP_REQUEST_HEADER_PARAM_RANGE = "Range";
+    public static final String HTTP_REQUEST_HEADER_PARAM_IF_RANGE = "If-Range";
+    public static final String HTTP_RESPONSE_HEADER_PARAM_CONTENT_RANGE = "Content-Range";
+    public static final String HTTP_RESPONSE_HEADER_PARAM_ETAG = "ETag";
+    public static final String HTTP_RESPONSE_HEADER_PARAM_LAST_MODIFIED = "Last-Modified";
     public static final String CONTENT_TYPE_JSON = "application/vnd.api+json; version=1";
     public static final int TIMEOUT_MILLIS = 20000; //20 seconds. Long but not too short for GPRS connections and not endless.
 
+    //We download to a file with this suffix, and then rename it,
+    //so the cache file itself is never only partly written.
+    //A partial download that can be resumed is kept as the cache file's name with this suffix.
+    public static final String TEMP_FILE_SUFFIX = ".part";
+
+    //The end of a kept partial download: The validator's size and this magic number.
+    //See keepPartialDownload().
+    private static final int BINARY_MAGIC_PARTIAL_DOWNLOAD = 0x475A5044; //"GZPD"
+    private static final int PARTIAL_DOWNLOAD_TRAILER_SIZE = 4 + 4;
+
+    private static final int DOWNLOAD_BUFFER_SIZE = 16 * 1024;
+
+    //Each download thread reuses its own buffer,
+    //instead of allocating a new one for each download.
+    private static final ThreadLocal<byte[]> sDownloadBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[DOWNLOAD_BUFFER_SIZE];
+        }
+    };
+
     public static void throwIfNoNetwork(final Context context) {
         final boolean wifiOnly = LoginUtils.getUseWifiOnly(context);
         if(!getNetworkIsConnected(context, wifiOnly)) {
@@ -92,147 +109,348 @@ public final class HttpUtils {
     }
 
     /**
+     * Open a connection, with our User-Agent and with reasonable timeouts.
+     *
+     * @param strURL
+     * @return
+     * @throws IOException
+     */
+    public static HttpURLConnection openConnection(final String strURL) throws IOException {
+        final URL url= new URL(strURL);
+
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        setConnectionDefaults(conn);
+
+        return conn;
+    }
+
+    /**
+     * Set the User-Agent and the timeouts that all our connections should use.
+     */
+    public static void setConnectionDefaults(final HttpURLConnection conn) {
+        conn.setRequestProperty(HTTP_REQUEST_HEADER_PARAM_USER_AGENT, getUserAgent());
+
+        //Set a reasonable timeout.
+        //Otherwise there is no timeout so we might never know if it fails,
+        //so never have the chance to try again.
+        conn.setConnectTimeout(TIMEOUT_MILLIS);
+        conn.setReadTimeout(TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Download the remote file into the local cache file.
+     * This copies the HTTP response body to the file as it arrives, through a small reused buffer,
+     * instead of first holding the whole file in memory.
+     * It writes to a temporary file and then renames it, so the cache file is
+     * never left partly written.
+     *
+     * Each call writes to its own temporary file, so two downloads of the same file never
+     * write to the same temporary file. For instance, the content provider's process
+     * and the sync process might both download it, or ImageDownloader might start a new download
+     * while one that seemed to be stuck is still running.
+     *
+     * If a download fails part way through, its temporary file is kept, with the
+     * response's ETag or Last-Modified, so a later call can ask the server for only
+     * the rest of the file, with HTTP Range and If-Range headers.
      *
      * @param context
-     * @param requestQueue
-     * @param uriFileToCache  A Content URI for a cache file.
-     * @param cacheFileUri
+     * @param uriFileToCache The remote URI.
+     * @param cacheFileUri A Content URI for a cache file.
      * @return
      * @throws FileCacheException
      */
-    public static boolean cacheUriToFileSync(final Context context, final RequestQueue requestQueue, final String uriFileToCache, final String cacheFileUri) throws FileCacheException {
+    public static boolean cacheUriToFileSync(final Context context, final String uriFileToCache, final String cacheFileUri) throws FileCacheException {
         Log.info("cacheUriToFileSync(): uriFileToCache=" + uriFileToCache);
 
-        final RequestFuture<Boolean> futureListener = RequestFuture.newFuture();
-        final Request<Boolean> request = new FileCacheRequest(context, uriFileToCache, cacheFileUri,
-                futureListener, futureListener);
-
-        //We won't request the same image again if it succeeded once,
-        //so don't waste memory or storage caching it.
-        //(We are downloading it to our own cache, of course.)
-        request.setShouldCache(false);
+        final String cacheFilePath = getCacheFilePath(context, cacheFileUri);
+        if (TextUtils.isEmpty(cacheFilePath)) {
+            throw new FileCacheException("Could not get the cache file path for: " + cacheFileUri);
+        }
 
-        requestQueue.add(request);
+        final File cacheFile = new File(cacheFilePath);
+        final File partialFile = new File(cacheFilePath + TEMP_FILE_SUFFIX);
 
-        boolean response = false;
+        final File tempFile;
         try {
-            //Note: If we don't provider the RequestFuture as the errorListener too,
-            //then this won't return until after the timeout, even if an error happen earlier.
-            response = futureListener.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-        } catch (final InterruptedException | ExecutionException e) {
-            Log.error("cacheUriToFile(): Exception from request.", e);
-            throw new FileCacheException("Exception from request.", e);
-        } catch (final TimeoutException e) {
-            Log.error("cacheUriToFile(): Timeout Exception from request.", e);
-            throw new FileCacheException("Timeout Exception from request.", e);
+            tempFile = File.createTempFile(cacheFile.getName() + ".", TEMP_FILE_SUFFIX, cacheFile.getParentFile());
+        } catch (final IOException e) {
+            Log.error("cacheUriToFileSync(): Could not create the temporary file.", e);
+            throw new FileCacheException("Could not create the temporary file.", e);
+        }
 
+        //Take the partial download left by an earlier call, if any.
+        //File.renameTo() is atomic, so only one download can take it.
+        String validator = null;
+        if (partialFile.renameTo(tempFile)) {
+            validator = readPartialDownloadValidator(tempFile);
         }
 
-        return response;
-    }
+        final long existingLength = (validator == null) ? 0 : tempFile.length();
 
-    @Nullable
-    public static String getPostDataBytes(final List<NameValuePair> nameValuePairs) {
-        final StringBuilder result = new StringBuilder();
-        boolean first = true;
+        HttpURLConnection conn = null;
+        InputStream in = null;
+        OutputStream out = null;
+        boolean downloaded = false;
+        try {
+            conn = openConnection(uriFileToCache);
 
-        for (final NameValuePair pair : nameValuePairs) {
-            if (first) {
-                first = false;
+            if (existingLength > 0) {
+                conn.setRequestProperty(HTTP_REQUEST_HEADER_PARAM_RANGE,
+                        "bytes=" + existingLength + "-");
+
+                //The server should send only the rest of the file if it has not changed,
+                //but send the whole file otherwise.
+                conn.setRequestProperty(HTTP_REQUEST_HEADER_PARAM_IF_RANGE, validator);
+            }
+
+            final int responseCode = conn.getResponseCode();
+            final boolean append;
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                //There was no partial download, or the file has changed, or the server ignored the Range,
+                //so start again from the beginning.
+                append = false;
+                validator = getValidator(conn);
+            } else if (responseCode == HttpURLConnection.HTTP_PARTIAL && existingLength > 0 &&
+                    isContentRangeFrom(conn, existingLength)) {
+                Log.info("cacheUriToFileSync(): Resuming from byte " + existingLength);
+                append = true;
             } else {
-                result.append("&");
+                Log.error("cacheUriToFileSync(): response code: " + responseCode);
+
+                //For instance, 416 (Requested Range Not Satisfiable) if the partial file is bad,
+                //so don't keep the partial file, and start again from the beginning next time.
+                validator = null;
+                return false;
             }
 
-            try {
-                result.append(URLEncoder.encode(pair.getName(), Utils.STRING_ENCODING));
-                result.append("=");
-                result.append(URLEncoder.encode(pair.getValue(), Utils.STRING_ENCODING));
-            } catch (final UnsupportedEncodingException e) {
-                //This is incredibly unlikely for the UTF-8 encoding,
-                //so we just log it instead of trying to recover from it.
-                Log.error("getPostDataBytes(): Exception", e);
-                return null;
+            in = conn.getInputStream();
+            out = new FileOutputStream(tempFile, append);
+            copyStream(in, out);
+            downloaded = true;
+        } catch (final IOException e) {
+            //We keep the partly-written temporary file, so we can resume the download later.
+            Log.error("cacheUriToFileSync(): Exception during download.", e);
+            throw new FileCacheException("Exception during download.", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    Log.error("cacheUriToFileSync(): Exception while closing in", e);
+                }
+            }
+
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    Log.error("cacheUriToFileSync(): Exception while closing out", e);
+                    downloaded = false;
+                }
+            }
+
+            if (conn != null) {
+                conn.disconnect();
+            }
+
+            if (!downloaded) {
+                keepPartialDownload(tempFile, partialFile, validator);
             }
         }
 
-        //Log.info("galaxyzoodebug: content:" + result);
-        return result.toString();
+        if (!downloaded) {
+            return false;
+        }
+
+        //File.renameTo() replaces the (empty) cache file atomically.
+        if (!tempFile.renameTo(cacheFile)) {
+            Log.error("cacheUriToFileSync(): Could not rename the temporary file to: " + cacheFilePath);
+            deleteTempFile(tempFile);
+            return false;
+        }
+
+        return true;
     }
 
+    /**
+     * Get the response's ETag, or its Last-Modified date,
+     * so we can use it in an If-Range header when resuming the download.
+     *
+     * @return null if the server gave us nothing that we can use in an If-Range header.
+     */
     @Nullable
-    public static String generateAuthorizationHeader(final String authName, final String authApiKey) {
-        //See the similar code in Zooniverse's user.coffee source code:
-        //https://github.com/zooniverse/Zooniverse/blob/master/src/models/user.coffee#L49
-        final String str = authName + ":" + authApiKey;
-        byte[] asBytes = null;
-        try {
-            asBytes = str.getBytes(Utils.STRING_ENCODING);
-        } catch (final UnsupportedEncodingException e) {
-            //This is incredibly unlikely for the UTF-8 encoding,
-            //so we just log it instead of trying to recover from it.
-            Log.error("generateAuthorizationHeader(): String.getBytes() failed", e);
-            return null;
+    private static String getValidator(final HttpURLConnection conn) {
+        //If-Range does not allow weak ETags:
+        final String etag = conn.getHeaderField(HTTP_RESPONSE_HEADER_PARAM_ETAG);
+        if (!TextUtils.isEmpty(etag) && !etag.startsWith("W/")) {
+            return etag;
         }
 
-        return "Basic " + Base64.encodeToString(asBytes, Base64.NO_WRAP);
-    }
+        final String lastModified = conn.getHeaderField(HTTP_RESPONSE_HEADER_PARAM_LAST_MODIFIED);
+        if (!TextUtils.isEmpty(lastModified)) {
+            return lastModified;
+        }
 
-    public static class FileCacheRequest extends Request<Boolean> {
+        return null;
+    }
 
-        private final String mCacheFileUri;
-        private final WeakReference<Context> mContext;
-        private final Response.Listener<Boolean> mListener;
+    /**
+     * Keep the partly-downloaded temporary file, so a later download can resume it,
+     * or delete it if it cannot be resumed.
+     * The validator is appended to the file, instead of being written to a separate file,
+     * so the data and its validator are always taken together by File.renameTo().
+     *
+     * @param tempFile
+     * @param partialFile
+     * @param validator The response's ETag or Last-Modified date, or null if the download cannot be resumed.
+     */
+    private static void keepPartialDownload(final File tempFile, final File partialFile, @Nullable final String validator) {
+        if (validator == null || tempFile.length() == 0) {
+            deleteTempFile(tempFile);
+            return;
+        }
 
-        /**
-         *
-         * @param context
-         * @param uriFileToCache
-         * @param cacheFileUri  A Content URI for a cache file.
-         * @param listener
-         * @param errorListener
-         */
-        public FileCacheRequest(final Context context, final String uriFileToCache, final String cacheFileUri, final Response.Listener<Boolean> listener, final Response.ErrorListener errorListener) {
-            super(Method.GET, uriFileToCache, errorListener);
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(tempFile, "rw");
+            final long dataLength = file.length();
+            file.seek(dataLength);
+            file.writeUTF(validator);
+            file.writeInt((int) (file.getFilePointer() - dataLength));
+            file.writeInt(BINARY_MAGIC_PARTIAL_DOWNLOAD);
+        } catch (final IOException e) {
+            Log.error("cacheUriToFileSync(): Exception while writing the validator.", e);
+            closeQuietly(file);
+            file = null;
+            deleteTempFile(tempFile);
+            return;
+        } finally {
+            closeQuietly(file);
+        }
 
-            mCacheFileUri = cacheFileUri;
-            mContext = new WeakReference<>(context);
-            mListener = listener;
+        //This replaces any partial download that another download left meanwhile.
+        if (!tempFile.renameTo(partialFile)) {
+            Log.error("cacheUriToFileSync(): Could not rename the temporary file to: " + partialFile);
+            deleteTempFile(tempFile);
         }
+    }
 
-        @Override
-        protected Response<Boolean> parseNetworkResponse(final NetworkResponse response) {
-            if (mContext != null) {
-                final Context context = mContext.get();
-                try {
-                    parseGetFileResponseContent(context, response.data, mCacheFileUri);
-                } catch (final IOException e) {
-                    //Note that this error can actually mean that the _data column _is_ there, but
-                    //that it contains a null value for the path:
-                    //  java.io.FileNotFoundException: Column _data not found.
-                    Log.error("HttpUtils.parseNetworkResponse(): parseGetFileResponseContent failed for cache content URI: " + mCacheFileUri, e);
-                    return Response.error(new VolleyError("parseGetFileResponseContent() failed.", e));
+    /**
+     * Remove the validator that keepPartialDownload() appended to the file,
+     * leaving just the partly-downloaded data.
+     *
+     * @return The validator, or null if the file cannot be resumed, in which case the file is emptied.
+     */
+    @Nullable
+    private static String readPartialDownloadValidator(final File tempFile) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(tempFile, "rw");
+            final long length = file.length();
+            String validator = null;
+            long dataLength = 0;
+            if (length >= PARTIAL_DOWNLOAD_TRAILER_SIZE) {
+                file.seek(length - PARTIAL_DOWNLOAD_TRAILER_SIZE);
+                final int validatorSize = file.readInt();
+                if (file.readInt() == BINARY_MAGIC_PARTIAL_DOWNLOAD &&
+                        validatorSize > 0 && validatorSize <= length - PARTIAL_DOWNLOAD_TRAILER_SIZE) {
+                    dataLength = length - PARTIAL_DOWNLOAD_TRAILER_SIZE - validatorSize;
+                    file.seek(dataLength);
+                    validator = file.readUTF();
+                    if (file.getFilePointer() != length - PARTIAL_DOWNLOAD_TRAILER_SIZE) {
+                        validator = null;
+                    }
                 }
-            } else {
-                Log.error("parseNetworkResponse(): context is null.");
-                return Response.error(new VolleyError("context is null."));
             }
 
-            return Response.success(true, HttpHeaderParser.parseCacheHeaders(response));
+            if (validator == null) {
+                Log.error("cacheUriToFileSync(): Unexpected partial download file. Starting again.");
+                dataLength = 0;
+            }
+
+            file.setLength(dataLength);
+            return validator;
+        } catch (final IOException e) {
+            Log.error("cacheUriToFileSync(): Exception while reading the validator.", e);
+            closeQuietly(file);
+            file = null;
+
+            //Start again from the beginning.
+            //The download will create the file again.
+            deleteTempFile(tempFile);
+            return null;
+        } finally {
+            closeQuietly(file);
         }
+    }
 
-        @Override
-        protected void deliverResponse(final Boolean response) {
-            mListener.onResponse(response);
+    private static void closeQuietly(@Nullable final RandomAccessFile file) {
+        if (file == null) {
+            return;
         }
 
-        @Override
-        public Map<String, String> getHeaders(){
-            final Map<String, String> headers = new HashMap<>();
-            headers.put(HttpUtils.HTTP_REQUEST_HEADER_PARAM_USER_AGENT, getUserAgent());
-            return headers;
+        try {
+            file.close();
+        } catch (final IOException e) {
+            Log.error("cacheUriToFileSync(): Exception while closing the file.", e);
+        }
+    }
+
+    private static boolean isContentRangeFrom(final HttpURLConnection conn, final long start) {
+        //For instance, "bytes 1000-4999/5000".
+        final String contentRange = conn.getHeaderField(HTTP_RESPONSE_HEADER_PARAM_CONTENT_RANGE);
+        return contentRange != null &&
+                contentRange.startsWith("bytes " + start + "-");
+    }
+
+    private static void deleteTempFile(final File tempFile) {
+        if (tempFile.exists() && !tempFile.delete()) {
+            Log.error("cacheUriToFileSync(): Could not delete the temporary file.");
+        }
+    }
+
+    public static void copyStream(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buffer = sDownloadBuffer.get();
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
         }
     }
 
+    /**
+     * Get the real path of the cache file for its content URI.
+     *
+     * @param context
+     * @param cacheFileUri A Content URI for a cache file.
+     * @return
+     */
+    @Nullable
+    public static String getCacheFilePath(final Context context, final String cacheFileUri) {
+        final File file = ItemsContentProvider.getCacheFile(context, cacheFileUri);
+        if (file == null) {
+            Log.error("getCacheFilePath(): Invalid cache file URI: " + cacheFileUri);
+            return null;
+        }
+
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * See FormEncoding.getPostDataBytes().
+     */
+    @Nullable
+    public static String getPostDataBytes(final List<NameValuePair> nameValuePairs) {
+        return FormEncoding.getPostDataBytes(nameValuePairs);
+    }
+
+    /**
+     * See FormEncoding.generateAuthorizationHeader().
+     */
+    @Nullable
+    public static String generateAuthorizationHeader(final String authName, final String authApiKey) {
+        return FormEncoding.generateAuthorizationHeader(authName, authApiKey);
+    }
+
     @NonNull
     public static String getUserAgent() {
         return HttpUtils.USER_AGENT_MURRAYC + "/" + BuildConfig.VERSION_NAME;
@@ -281,51 +499,6 @@ public final class HttpUtils {
     */
 
 
-    /**
-     *
-     * @param context
-     * @param data
-     * @param cacheFileContentUri A Content URI for a cache file.
-     * @throws IOException
-     */
-    private static void parseGetFileResponseContent(final Context context, final byte[] data, final String cacheFileContentUri) throws IOException {
-        //Write the content to the file:
-        ParcelFileDescriptor pfd = null;
-        FileOutputStream fout = null;
-        try {
-            //Use this instead when using the commented icon-downloading code in IconsCache:
-            //fout = new FileOutputStream(cacheFileContentUri);
-            //fout.write(data);
-
-            //FileOutputStream doesn't seem to understand content provider URIs:
-            pfd = context.getContentResolver().
-                    openFileDescriptor(Uri.parse(cacheFileContentUri), "w");
-            if (pfd == null) {
-                Log.error("parseGetFileResponseContent(): pfd is null.");
-            } else {
-
-                fout = new FileOutputStream(pfd.getFileDescriptor());
-                fout.write(data);
-            }
-        } finally {
-            if (fout != null) {
-                try {
-                    fout.close();
-                } catch (final IOException e) {
-                    Log.error("parseGetFileResponseContent(): Exception while closing fout", e);
-                }
-            }
-
-            if (pfd != null) {
-                try {
-                    pfd.close();
-                } catch (final IOException e) {
-                    Log.error("parseGetFileResponseContent(): Exception while closing pfd", e);
-                }
-            }
-        }
-    }
-
     /**
      * Thrown by methods that required a suitable network connection.
      *
@@ -355,24 +528,9 @@ public final class HttpUtils {
         FileCacheException(final String detail, final Exception cause) {
             super(detail, cause);
         }
-    }
-
-    public static class NameValuePair {
-        private final String name;
-        private final String value;
-
-        public NameValuePair(final String name, final String value) {
-            super();
-            this.name = name;
-            this.value = value;
-        }
-
-        String getName() {
-            return name;
-        }
 
-        String getValue() {
-            return value;
+        FileCacheException(final String detail) {
+            super(detail);
         }
     }
 }
@@ -51,6 +51,13 @@ public final class Item {
             AUTHORITY + "/" + ItemsContentProvider.URI_PART_FILE);
     public static final String ITEM_URI_PART = ItemsContentProvider.URI_PART_ITEM;
 
+    /**
+     * A query parameter for a delete() of ITEMS_URI,
+     * to delete only this many of the matching items, oldest-done first.
+     * For instance, Item.ITEMS_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_LIMIT, "5").build()
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
     public static final class Columns implements BaseColumns {
         //The ID is BaseColumns._ID;
         public static final String DONE = "done"; //Integer boolean (1 or 0)
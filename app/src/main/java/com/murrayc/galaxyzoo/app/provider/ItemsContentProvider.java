@@ -21,12 +21,16 @@ package com.murrayc.galaxyzoo.app.provider;
 
 import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
@@ -35,22 +39,34 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
 import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
+import com.murrayc.galaxyzoo.app.AndroidCorePlatform;
 import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.NamedThreadFactory;
 import com.murrayc.galaxyzoo.app.Utils;
 import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
 import com.murrayc.galaxyzoo.app.syncadapter.SubjectAdder;
+import com.murrayc.galaxyzoo.core.Subject;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ItemsContentProvider extends ContentProvider {
 
@@ -59,13 +75,22 @@ public class ItemsContentProvider extends ContentProvider {
     public static final String URI_PART_FILE = "file";
     public static final String URI_PART_CLASSIFICATION_ANSWER = "classification-answer";
     public static final String URI_PART_CLASSIFICATION_CHECKBOX = "classification-checkbox";
-    private static final String URI_PART_CLASSIFICATION = "classification";
+    public static final String URI_PART_CLASSIFICATION = "classification";
 
     /** The standard _data field used by the ContentProvider/ContentResolver for
      * the local URI corresponding to the row (identified by a Content URI) in the table.
      */
     public static final String URI_PART_DATA = "_data";
 
+    /** A method for {@link ContentResolver#call(Uri, String, String, Bundle)}
+     * that does the same as {@link #bulkInsert(Uri, ContentValues[])} for the items URI,
+     * but which returns the IDs of the new items, in {@link #CALL_EXTRA_ITEM_IDS}.
+     * Pass the ContentValues in {@link #CALL_EXTRA_VALUES}.
+     */
+    public static final String METHOD_BULK_INSERT_ITEMS = "bulkInsertItems";
+    public static final String CALL_EXTRA_VALUES = "values";
+    public static final String CALL_EXTRA_ITEM_IDS = "itemIds";
+
     /**
      * The MIME type of {@link Item#CONTENT_URI} providing a directory of items.
      */
@@ -144,7 +169,7 @@ public class ItemsContentProvider extends ContentProvider {
         sUriMatcher.addURI(Item.AUTHORITY, URI_PART_ITEM + "/#", MATCHER_ID_ITEM);
 
         // A URI for a single file:
-        sUriMatcher.addURI(Item.AUTHORITY, URI_PART_FILE + "/#", MATCHER_ID_FILE);
+        sUriMatcher.addURI(Item.AUTHORITY, URI_PART_FILE + "/*", MATCHER_ID_FILE);
 
         // A URI for the list of all classifications:
         sUriMatcher.addURI(Item.AUTHORITY, URI_PART_CLASSIFICATION, MATCHER_ID_CLASSIFICATIONS);
@@ -167,6 +192,11 @@ public class ItemsContentProvider extends ContentProvider {
 
     private static final String[] FILE_MIME_TYPES = new String[]{"application/x-glom"};
 
+    /** The parent of all our content URIs.
+     * Notifying this notifies observers of any of our URIs.
+     */
+    private static final Uri AUTHORITY_URI = Uri.parse("content://" + Item.AUTHORITY);
+
     /**
      * A map of GlomContentProvider projection column names to underlying Sqlite column names
      * for /item/ URIs, mapping to the items tables.
@@ -174,6 +204,7 @@ public class ItemsContentProvider extends ContentProvider {
     private static final Map<String, String> sItemsProjectionMap;
     private static final Map<String, String> sClassificationAnswersProjectionMap;
     private static final Map<String, String> sClassificationCheckboxesProjectionMap;
+    private static final Map<String, String> sClassificationsProjectionMap;
 
     static {
         sItemsProjectionMap = new HashMap<>();
@@ -210,21 +241,86 @@ public class ItemsContentProvider extends ContentProvider {
         sClassificationCheckboxesProjectionMap.put(ClassificationCheckbox.Columns.QUESTION_ID, DatabaseHelper.ClassificationCheckboxesDbColumns.QUESTION_ID);
         sClassificationCheckboxesProjectionMap.put(ClassificationCheckbox.Columns.CHECKBOX_ID, DatabaseHelper.ClassificationCheckboxesDbColumns.CHECKBOX_ID);
 
+        //These are already the column names in the TABLES_CLASSIFICATIONS sub-query:
+        sClassificationsProjectionMap = new HashMap<>();
+        sClassificationsProjectionMap.put(Classification.Columns.ITEM_ID, Classification.Columns.ITEM_ID);
+        sClassificationsProjectionMap.put(Classification.Columns.SUBJECT_ID, Classification.Columns.SUBJECT_ID);
+        sClassificationsProjectionMap.put(Classification.Columns.GROUP_ID, Classification.Columns.GROUP_ID);
+        sClassificationsProjectionMap.put(Classification.Columns.DONE, Classification.Columns.DONE);
+        sClassificationsProjectionMap.put(Classification.Columns.UPLOADED, Classification.Columns.UPLOADED);
+        sClassificationsProjectionMap.put(Classification.Columns.FAVORITE, Classification.Columns.FAVORITE);
+        sClassificationsProjectionMap.put(Classification.Columns.SEQUENCE, Classification.Columns.SEQUENCE);
+        sClassificationsProjectionMap.put(Classification.Columns.QUESTION_ID, Classification.Columns.QUESTION_ID);
+        sClassificationsProjectionMap.put(Classification.Columns.ANSWER_ID, Classification.Columns.ANSWER_ID);
+        sClassificationsProjectionMap.put(Classification.Columns.CHECKBOX_ID, Classification.Columns.CHECKBOX_ID);
+
     }
 
 
     private DatabaseHelper mOpenDbHelper = null;
 
+    /** The URIs changed so far by the applyBatch() that is running on the current thread, if any.
+     * While this is set, we collect the URIs instead of notifying observers immediately.
+     */
+    private final ThreadLocal<Set<Uri>> mBatchChangedUris = new ThreadLocal<>();
+
     //These are only used in the rare case that we need to explicitly get a "next" item,
     //and block on the result, if the SyncAdapter hasn't done that for us.
     private ZooniverseClient mZooniverseClient = null;
     private SubjectAdder mSubjectAdder = null;
-    private static final String[] PROJECTION_REMOVE_ITEM = {
-            DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_URI,
-            DatabaseHelper.ItemsDbColumns.LOCATION_THUMBNAIL_URI,
-            DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_URI
-    };
-    private static final String[] PROJECTION_FILES_FILE_DATA = {DatabaseHelper.FilesDbColumns.FILE_DATA};
+
+    //Deletes the cache files of removed items, in the order that the items were removed.
+    private final ThreadPoolExecutor mDeleteCacheFilesExecutor = createDeleteCacheFilesExecutor();
+    private static final long DELETE_CACHE_FILES_KEEP_ALIVE_SECONDS = 30;
+
+    private static final String[] PROJECTION_URI_PART_DATA = {URI_PART_DATA};
+    private static final String[] PROJECTION_ID = {BaseColumns._ID};
+
+    //The oldest done items first, as used by removeItems() with a limit:
+    private static final String ORDER_BY_REMOVE_ITEMS =
+            DatabaseHelper.ItemsDbColumns.DATETIME_DONE + " ASC, " + BaseColumns._ID + " ASC";
+
+    //Well below SQLITE_MAX_VARIABLE_NUMBER (999).
+    private static final int MAX_SELECTION_ARGS = 500;
+
+    //The cache file names, such as "123-standard", that getCacheFileName() accepts.
+    private static final Pattern PATTERN_CACHE_FILE_NAME = Pattern.compile("[0-9]+-(standard|thumbnail|inverted)");
+    //A download's temporary file, or a kept partial download, such as "12-standard.-4837.part".
+    //See HttpUtils.cacheUriToFileSync() and File.createTempFile().
+    private static final Pattern PATTERN_TEMP_FILE_NAME = Pattern.compile("([0-9]+-(?:standard|thumbnail|inverted))[-.0-9]*" +
+            Pattern.quote(HttpUtils.TEMP_FILE_SUFFIX));
+    private static final String[] PROJECTION_SUBJECT_ID = {DatabaseHelper.ItemsDbColumns.SUBJECT_ID};
+
+    /** The items, joined with their classification answers, joined with those answers' checkboxes.
+     * We use a sub-query so that the caller's selection and sort order can use the
+     * Classification.Columns names without any ambiguity between the tables' columns.
+     * SQLite flattens this, so it is as fast as using the join directly.
+     */
+    private static final String TABLES_CLASSIFICATIONS = "(SELECT " +
+            "i." + DatabaseHelper.ItemsDbColumns._ID + " AS " + Classification.Columns.ITEM_ID + ", " +
+            "i." + DatabaseHelper.ItemsDbColumns.SUBJECT_ID + " AS " + Classification.Columns.SUBJECT_ID + ", " +
+            "i." + DatabaseHelper.ItemsDbColumns.GROUP_ID + " AS " + Classification.Columns.GROUP_ID + ", " +
+            "i." + DatabaseHelper.ItemsDbColumns.DONE + " AS " + Classification.Columns.DONE + ", " +
+            "i." + DatabaseHelper.ItemsDbColumns.UPLOADED + " AS " + Classification.Columns.UPLOADED + ", " +
+            "i." + DatabaseHelper.ItemsDbColumns.FAVORITE + " AS " + Classification.Columns.FAVORITE + ", " +
+            "a." + DatabaseHelper.ClassificationAnswersDbColumns.SEQUENCE + " AS " + Classification.Columns.SEQUENCE + ", " +
+            "a." + DatabaseHelper.ClassificationAnswersDbColumns.QUESTION_ID + " AS " + Classification.Columns.QUESTION_ID + ", " +
+            "a." + DatabaseHelper.ClassificationAnswersDbColumns.ANSWER_ID + " AS " + Classification.Columns.ANSWER_ID + ", " +
+            "c." + DatabaseHelper.ClassificationCheckboxesDbColumns.CHECKBOX_ID + " AS " + Classification.Columns.CHECKBOX_ID +
+            " FROM " + DatabaseHelper.TABLE_NAME_ITEMS + " AS i" +
+            " LEFT OUTER JOIN " + DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS + " AS a" +
+            " ON a." + DatabaseHelper.ClassificationAnswersDbColumns.ITEM_ID + " = i." + DatabaseHelper.ItemsDbColumns._ID +
+            " LEFT OUTER JOIN " + DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES + " AS c" +
+            " ON c." + DatabaseHelper.ClassificationCheckboxesDbColumns.ITEM_ID + " = a." + DatabaseHelper.ClassificationAnswersDbColumns.ITEM_ID +
+            " AND c." + DatabaseHelper.ClassificationCheckboxesDbColumns.QUESTION_ID + " = a." + DatabaseHelper.ClassificationAnswersDbColumns.QUESTION_ID +
+            ")";
+
+    /** Answers in the order they were given, with their checkboxes in a stable order.
+     */
+    private static final String DEFAULT_SORT_ORDER_CLASSIFICATIONS =
+            Classification.Columns.ITEM_ID + " ASC, " +
+            Classification.Columns.SEQUENCE + " ASC, " +
+            Classification.Columns.CHECKBOX_ID + " ASC";
 
 
     /** A where clause to find all the subjects that have not yet been classified,
@@ -287,20 +383,14 @@ public class ItemsContentProvider extends ContentProvider {
         final int affected;
 
         switch (match) {
-            //TODO: Do not support this because it would delete everything in one go?
             case MATCHER_ID_ITEMS:
-                affected = getDb().delete(DatabaseHelper.TABLE_NAME_ITEMS,
-                        (!TextUtils.isEmpty(selection) ?
-                                " AND (" + selection + ')' : ""),
-                        selectionArgs
-                );
-                //TODO: Delete all associated files too.
+                affected = removeItems(selection, selectionArgs,
+                        uri.getQueryParameter(Item.QUERY_PARAMETER_LIMIT));
                 break;
             case MATCHER_ID_ITEM: {
-                //TODO: Use selection.
                 final UriParts uriParts = parseContentUri(uri);
-                removeItem(uriParts.itemId);
-                affected = 1; //TODO: Check the removeItem() result.
+                affected = removeItems(prependIdToSelection(selection),
+                        prependToArray(selectionArgs, uriParts.itemId), null);
                 break;
             }
 
@@ -345,7 +435,7 @@ public class ItemsContentProvider extends ContentProvider {
                         uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return affected;
     }
 
@@ -357,6 +447,10 @@ public class ItemsContentProvider extends ContentProvider {
             case MATCHER_ID_ITEM:
             case MATCHER_ID_ITEM_NEXT:
                 return CONTENT_TYPE_ITEM;
+            case MATCHER_ID_CLASSIFICATIONS:
+                return CONTENT_TYPE_CLASSIFICATIONS;
+            case MATCHER_ID_CLASSIFICATION:
+                return CONTENT_TYPE_CLASSIFICATION;
             case MATCHER_ID_CLASSIFICATION_ANSWERS:
                 return CONTENT_TYPE_CLASSIFICATION_ANSWERS;
             case MATCHER_ID_CLASSIFICATION_ANSWER:
@@ -394,10 +488,50 @@ public class ItemsContentProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Open the cache file directly from its path, which we know from the URI,
+     * instead of using openFileHelper(), which would query for the _data column.
+     */
     @Override
     public ParcelFileDescriptor openFile(@NonNull final Uri uri, @NonNull final String mode)
             throws FileNotFoundException {
-        return super.openFileHelper(uri, mode);
+        if (sUriMatcher.match(uri) != MATCHER_ID_FILE) {
+            throw new FileNotFoundException("No file for URI: " + uri);
+        }
+
+        final File file = getCacheFile(getContext(), uri.toString());
+        if (file == null) {
+            throw new FileNotFoundException("No cache file for URI: " + uri);
+        }
+
+        return ParcelFileDescriptor.open(file, getParcelFileDescriptorMode(mode));
+    }
+
+    /** Like ParcelFileDescriptor.parseMode(), which is not available before API 19.
+     */
+    private static int getParcelFileDescriptorMode(final String mode) {
+        switch (mode) {
+            case "r":
+                return ParcelFileDescriptor.MODE_READ_ONLY;
+            case "w":
+            case "wt":
+                return ParcelFileDescriptor.MODE_WRITE_ONLY |
+                        ParcelFileDescriptor.MODE_CREATE |
+                        ParcelFileDescriptor.MODE_TRUNCATE;
+            case "wa":
+                return ParcelFileDescriptor.MODE_WRITE_ONLY |
+                        ParcelFileDescriptor.MODE_CREATE |
+                        ParcelFileDescriptor.MODE_APPEND;
+            case "rw":
+                return ParcelFileDescriptor.MODE_READ_WRITE |
+                        ParcelFileDescriptor.MODE_CREATE;
+            case "rwt":
+                return ParcelFileDescriptor.MODE_READ_WRITE |
+                        ParcelFileDescriptor.MODE_CREATE |
+                        ParcelFileDescriptor.MODE_TRUNCATE;
+            default:
+                throw new IllegalArgumentException("Invalid file mode: " + mode);
+        }
     }
 
     //TODO: Is this actually used by anything?
@@ -421,30 +555,20 @@ public class ItemsContentProvider extends ContentProvider {
                     throw new IllegalArgumentException("Refusing to insert without a SubjectID: " + uri);
                 }
 
-                // Get (our) local content URIs for the local caches of any (or any future) remote URIs for the images:
-                // Notice that we allow the client to provide a remote URI for each but we then change
-                // it to our local URI of our local cache of that remote file.
-                // Even if no URI is provided by the client, we still create the local URI and put
-                // it in the table row for later use.
-                final ContentValues valuesComplete = new ContentValues(values);
-
-                //This doesn't actually get any data from the locations.
-                boolean fileUrisCreated = false;
+                //Add the row and its local file URIs together:
+                final SQLiteDatabase db = getDb();
+                db.beginTransaction();
                 try {
-                    fileUrisCreated =  createFileUrisForImages(valuesComplete);
-                } catch (final IOException e) {
-                    Log.error("insert(): createFileUrisForImages() failed", e);
-                }
+                    uriInserted = insertItem(values);
+                    if (uriInserted == null) {
+                        return null;
+                    }
 
-                if (!fileUrisCreated) {
-                    //Abandon the item.
-                    //We cannot add an item without its file URIs.
-                    return null;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
 
-                uriInserted = insertMappedValues(DatabaseHelper.TABLE_NAME_ITEMS, valuesComplete,
-                        sItemsProjectionMap, Item.ITEMS_URI);
-
                 //The caller (SyncAdapter) will do this: cacheUrisToFiles(subjectId, listFiles, true /* async */);
                 requestSync();
 
@@ -469,6 +593,157 @@ public class ItemsContentProvider extends ContentProvider {
         return uriInserted;
     }
 
+    /**
+     * Insert several items at once, in one transaction, skipping any items whose subjects are
+     * already in the database.
+     * This avoids the separate queries, transactions, and notifications that we would
+     * have with a separate insert() for each item.
+     *
+     * @param uri
+     * @param values
+     * @return The number of new items.
+     */
+    @Override
+    public int bulkInsert(@NonNull final Uri uri, @NonNull final ContentValues[] values) {
+        switch (sUriMatcher.match(uri)) {
+            case MATCHER_ID_ITEMS:
+                return bulkInsertItems(values).size();
+            default:
+                //Just call insert() for each one:
+                return super.bulkInsert(uri, values);
+        }
+    }
+
+    @Override
+    public Bundle call(@NonNull final String method, final String arg, final Bundle extras) {
+        if (!TextUtils.equals(method, METHOD_BULK_INSERT_ITEMS)) {
+            return super.call(method, arg, extras);
+        }
+
+        if (extras == null) {
+            throw new IllegalArgumentException("call(): No extras for " + METHOD_BULK_INSERT_ITEMS);
+        }
+
+        //When this has been parceled, from the SyncAdapter's process,
+        //we get a Parcelable[] rather than the original ContentValues[].
+        final Parcelable[] parcelables = extras.getParcelableArray(CALL_EXTRA_VALUES);
+        if (parcelables == null) {
+            throw new IllegalArgumentException("call(): No values for " + METHOD_BULK_INSERT_ITEMS);
+        }
+
+        final ContentValues[] values = new ContentValues[parcelables.length];
+        for (int i = 0; i < parcelables.length; i++) {
+            values[i] = (ContentValues) parcelables[i];
+        }
+
+        final Bundle result = new Bundle();
+        result.putStringArrayList(CALL_EXTRA_ITEM_IDS, bulkInsertItems(values));
+        return result;
+    }
+
+    /**
+     * @param values
+     * @return The IDs of the new items, which will be empty if none were inserted.
+     */
+    @NonNull
+    private ArrayList<String> bulkInsertItems(@NonNull final ContentValues[] values) {
+        //Refuse to insert without a Subject ID:
+        final String[] subjectIds = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            final String subjectId = values[i].getAsString(Item.Columns.SUBJECT_ID);
+            if (TextUtils.isEmpty(subjectId)) {
+                throw new IllegalArgumentException("Refusing to insert without a SubjectID.");
+            }
+
+            subjectIds[i] = subjectId;
+        }
+
+        final ArrayList<String> insertedItemIds = new ArrayList<>();
+        boolean failed = false;
+        final Set<Uri> changedUris = new HashSet<>();
+        mBatchChangedUris.set(changedUris);
+
+        final SQLiteDatabase db = getDb();
+        db.beginTransaction();
+        try {
+            //This will also let us skip any duplicates in the values themselves:
+            final Set<String> subjectIdsInDatabase = getSubjectIdsInDatabase(db, subjectIds);
+
+            for (int i = 0; i < values.length; i++) {
+                if (!subjectIdsInDatabase.add(subjectIds[i])) {
+                    //It is already in the database.
+                    //TODO: Update the row?
+                    continue;
+                }
+
+                final Uri itemUri = insertItem(values[i]);
+                if (itemUri == null) {
+                    failed = true;
+                    break;
+                }
+
+                insertedItemIds.add(itemUri.getLastPathSegment());
+            }
+
+            if (!failed) {
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            db.endTransaction();
+            mBatchChangedUris.remove();
+        }
+
+        if (failed) {
+            Log.error("bulkInsertItems(): insertItem() failed, so no items were inserted.");
+
+            //The rolled-back item IDs will be used again by the next insert,
+            //which would then think that it already has any files with their names.
+            //insertItem() doesn't create any files, but don't leave any from elsewhere.
+            final File cacheDir = Utils.getExternalCacheDir(getContext());
+            if (cacheDir != null) {
+                deleteCacheFiles(cacheDir, insertedItemIds);
+            }
+
+            return new ArrayList<>();
+        }
+
+        if (!insertedItemIds.isEmpty()) {
+            notifyChange(Item.ITEMS_URI);
+
+            //The caller (SyncAdapter) will download the images.
+            requestSync();
+        }
+
+        return insertedItemIds;
+    }
+
+    /**
+     * Get which of these subject IDs are already in the items table, with just one query.
+     *
+     * @param db
+     * @param subjectIds
+     * @return
+     */
+    @NonNull
+    private static Set<String> getSubjectIdsInDatabase(final SQLiteDatabase db, final String[] subjectIds) {
+        final Set<String> result = new HashSet<>();
+        if (subjectIds.length == 0) {
+            return result;
+        }
+
+        //Note that this could fail with more than 999 subject IDs (SQLITE_MAX_VARIABLE_NUMBER),
+        //but we only ever ask the server for a few subjects at a time.
+        final Cursor c = db.query(DatabaseHelper.TABLE_NAME_ITEMS, PROJECTION_SUBJECT_ID,
+                Utils.getSelectionIn(DatabaseHelper.ItemsDbColumns.SUBJECT_ID, subjectIds.length),
+                subjectIds, null, null, null);
+        while (c.moveToNext()) {
+            result.add(c.getString(0));
+        }
+
+        c.close();
+        return result;
+    }
+
     private int updateMappedValues(final String tableName, final ContentValues values, final Map<String, String> projectionMap, final String selection,
                                    final String... selectionArgs) {
         final ContentValues valuesToUse = getMappedContentValues(values, projectionMap);
@@ -494,7 +769,7 @@ public class ItemsContentProvider extends ContentProvider {
                 final Uri itemUri =
                         ContentUris.withAppendedId(
                                 uriPrefix, rowId);
-                getContext().getContentResolver().notifyChange(itemUri, null);
+                notifyChange(itemUri);
                 return itemUri; //The URI of the newly-added Item.
             } else {
                 throw new IllegalStateException("could not insert " +
@@ -508,90 +783,70 @@ public class ItemsContentProvider extends ContentProvider {
         return null;
     }
 
-    /** Get a the content URI of a new file, whose data will actually be on the local system.
+    /** Get the content URI for an item's cached image file.
+     * This depends only on the item ID and the image type,
+     * so we don't need to store the file's path anywhere.
+     *
+     * @param itemId
+     * @param imageType
+     * @return
      */
-    private Uri createFileUri() throws IOException {
-        //Log.info("createFileUri(): subject id=" + subjectId + ", imageType=" + imageType);
+    private static Uri getFileUri(final long itemId, final ImageType imageType) {
+        return Item.FILE_URI.buildUpon()
+                .appendPath(getCacheFileName(itemId, imageType))
+                .build();
+    }
 
-        final SQLiteDatabase db = getDb();
-        final long fileId = db.insertOrThrow(DatabaseHelper.TABLE_NAME_FILES,
-                DatabaseHelper.FilesDbColumns.FILE_DATA, null);
+    private static String getCacheFileName(final long itemId, final ImageType imageType) {
+        return Long.toString(itemId) + "-" + imageType.name().toLowerCase(Locale.US);
+    }
 
-        //Build a value for the _data column, using the autogenerated file _id:
-        final String realFileUri = createCacheFile(Long.toString(fileId)); //TODO: Is toString() affected by the locale?)
-        if (TextUtils.isEmpty(realFileUri)) {
-            Log.error("createFileUri(): createCacheFile() returned null.");
-            return null;
-        }
+    /** Get the name of the file in the cache directory for a file content URI,
+     * such as "123-standard", so callers can check for the file without any query.
+     *
+     * @param fileContentUri A content URI for a file, as returned by getFileUri().
+     * @return null if this is not a valid file URI.
+     */
+    @Nullable
+    public static String getCacheFileName(final String fileContentUri) {
+        final String result = Uri.parse(fileContentUri).getLastPathSegment();
 
-        //Put the value for the _data column in the files table:
-        //This will be used implicitly by openOutputStream() and openInputStream():
-        final ContentValues valuesUpdate = new ContentValues();
-        valuesUpdate.put(DatabaseHelper.FilesDbColumns.FILE_DATA, realFileUri);
-        db.update(DatabaseHelper.TABLE_NAME_FILES, valuesUpdate,
-                BaseColumns._ID + " = ?", new String[]{Double.toString(fileId)});
-
-        //Build the content: URI for the file to put in the Item's table:
-        Uri fileUri = null;
-        if (fileId >= 0) {
-            fileUri = ContentUris.withAppendedId(Item.FILE_URI, fileId);
-            //TODO? getContext().getContentResolver().notifyChange(fileId, null);
+        //Don't allow the URI to point to any other file:
+        if (result == null || !PATTERN_CACHE_FILE_NAME.matcher(result).matches()) {
+            return null;
         }
 
-        return fileUri;
+        return result;
     }
 
-    /**
-     * Actually create the file on disk in the cache directory,
-     * and return the absolute path of the new file.
+    /** Get the cache file for a file content URI, without any query.
      *
-     * @param filename
-     * @return
+     * @param context
+     * @param fileContentUri A content URI for a file, as returned by getFileUri().
+     * @return null if this is not a valid file URI or if there is no cache directory.
      */
     @Nullable
-    private String createCacheFile(final String filename) throws IOException {
-        final Context context = getContext();
-        if (context == null) {
+    public static File getCacheFile(final Context context, final String fileContentUri) {
+        final String fileName = getCacheFileName(fileContentUri);
+        if (fileName == null) {
             return null;
         }
 
         final File cacheDir = Utils.getExternalCacheDir(context);
         if (cacheDir == null) {
-            Log.error("createFileUri(): getExternalCacheDir returned null.");
+            Log.error("getCacheFile(): getExternalCacheDir returned null.");
             return null;
         }
 
-        final File file = new File(cacheDir, filename);
-
-        //Actually create an empty file there -
-        //otherwise when we try to write to it via openOutputStream()
-        //we will get a FileNotFoundException.
-        try {
-            if(!file.createNewFile()) {
-                //This can happen while debugging, if we wipe the database but don't wipe the cached files.
-                //You can do that by uninstalling the app.
-                //When this happens we just reuse the file.
-                Log.error("createCacheFile(): The file already exists: " + file.getAbsolutePath());
-            }
-            /*
-            else {
-                Log.info("createFileUri(): subject id=" + subjectId +", file created: " + realFile.getAbsolutePath());
-            }
-            */
-        }  catch (final UnsupportedOperationException e) {
-            //This happens while running under ProviderTestCase2.
-            //so we just catch it and provide a useful value,
-            //so at least the other functionality can be tested.
-            //TODO: Find a way to let it succeed.
-            Log.error("createCacheFile(): Unsupported operation for filename=" + file.getAbsolutePath(), e);
-            return "testuri";
-        }
-
-        return file.getAbsolutePath();
+        return new File(cacheDir, fileName);
     }
 
     @Override
     public boolean onCreate() {
+        //This is called before GalaxyZooApplication.onCreate(),
+        //so make sure that the core module can already log and parse JSON.
+        AndroidCorePlatform.install();
+
         final Context context = getContext();
 
         mOpenDbHelper = new DatabaseHelper(context);
@@ -602,12 +857,7 @@ public class ItemsContentProvider extends ContentProvider {
         //but we will then just reuse the files.
         //mOpenDbHelper.onUpgrade(mOpenDbHelper.getWritableDatabase(), 0, 1);
         mZooniverseClient = new ZooniverseClient(context, Config.SERVER);
-        mSubjectAdder = new SubjectAdder(context, mZooniverseClient.getRequestQueue());
-
-        //This isn't necessary when using the private getExternalCacheDir():
-        //Make sure that the .nomedia file exists,
-        //to prevent the media indexer from checking or listing our files.
-        //createCacheFile(".nomedia");
+        mSubjectAdder = new SubjectAdder(context);
 
         return true;
     }
@@ -686,7 +936,7 @@ public class ItemsContentProvider extends ContentProvider {
                         // it much more likely that we will hit one that works.
                         boolean found = false;
                         for(int i = 0; i < 3; i++) {
-                            List<ZooniverseClient.Subject> subjects = null;
+                            List<Subject> subjects = null;
                             try {
                                 subjects = mZooniverseClient.requestMoreItemsSync(1);
                             } catch (final HttpUtils.NoNetworkException e) {
@@ -739,21 +989,50 @@ public class ItemsContentProvider extends ContentProvider {
 
                 break;
 
-            case MATCHER_ID_FILE:
-                // query the database for a specific file:
-                // The caller will then use the _data value (the normal filesystem URI of a file).
-                final long fileId = ContentUris.parseId(uri);
+            case MATCHER_ID_FILE: {
+                // Get the _data value (the normal filesystem path of a file),
+                // which we know from the URI, without querying the database.
+                final MatrixCursor matrixCursor = new MatrixCursor(PROJECTION_URI_PART_DATA, 1);
+                final File file = getCacheFile(getContext(), uri.toString());
+                if (file != null) {
+                    matrixCursor.addRow(new Object[]{file.getAbsolutePath()});
+                }
 
-                //Prepend our ID=? argument to the selection arguments.
-                //This lets us use the ? syntax to avoid SQL injection
-                c = getDb().query(DatabaseHelper.TABLE_NAME_FILES, projection,
-                        prependIdToSelection(selection),
-                        prependToArray(selectionArgs, fileId), null, null, orderBy
-                );
+                c = matrixCursor;
+                break;
+            }
 
+            case MATCHER_ID_CLASSIFICATIONS: {
+                // query the database for the classifications of all items:
+                // (We ignore the default orderBy because there is no _id column.)
+                final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(TABLES_CLASSIFICATIONS);
+                builder.setProjectionMap(sClassificationsProjectionMap);
+                c = builder.query(getDb(), projection,
+                        selection, selectionArgs,
+                        null, null, getClassificationsOrderBy(sortOrder));
+
+                //The classification changes when an item, answer, or checkbox changes,
+                //so observe all our URIs:
                 c.setNotificationUri(getContext().getContentResolver(),
-                        Item.FILE_URI); //TODO: More precise?
+                        AUTHORITY_URI);
                 break;
+            }
+            case MATCHER_ID_CLASSIFICATION: {
+                // query the database for the classification of a specific item:
+                final UriParts uriParts = parseContentUri(uri);
+
+                final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(TABLES_CLASSIFICATIONS);
+                builder.setProjectionMap(sClassificationsProjectionMap);
+                builder.appendWhere(Classification.Columns.ITEM_ID + " = ?"); //We use ? to avoid SQL Injection.
+                c = builder.query(getDb(), projection,
+                        selection, prependToArray(selectionArgs, uriParts.itemId),
+                        null, null, getClassificationsOrderBy(sortOrder));
+                c.setNotificationUri(getContext().getContentResolver(),
+                        AUTHORITY_URI);
+                break;
+            }
 
             case MATCHER_ID_CLASSIFICATION_ANSWERS: {
                 // query the database for all items:
@@ -829,6 +1108,14 @@ public class ItemsContentProvider extends ContentProvider {
         return c;
     }
 
+    private static String getClassificationsOrderBy(final String sortOrder) {
+        if (TextUtils.isEmpty(sortOrder)) {
+            return DEFAULT_SORT_ORDER_CLASSIFICATIONS;
+        } else {
+            return sortOrder;
+        }
+    }
+
     private Cursor queryItemNext(final String[] projection, final String selection, final String[] selectionArgs, final String orderBy) {
         // query the database for a single  item that is not yet done:
 
@@ -853,10 +1140,6 @@ public class ItemsContentProvider extends ContentProvider {
                 null, null, orderByToUse, "1");
     }
 
-    private static String[] prependToArray(final String[] selectionArgs, final long value) {
-        return prependToArray(selectionArgs, Double.toString(value));
-    }
-
     private static String[] prependToArray(final String[] array, final String value) {
         //Handle array being null:
         if (array == null) {
@@ -965,11 +1248,65 @@ public class ItemsContentProvider extends ContentProvider {
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
 
         return affected;
     }
 
+    /**
+     * Apply all the operations in one database transaction,
+     * so they succeed or fail together,
+     * and notify observers just once at the end, instead of once per operation.
+     *
+     * @param operations
+     * @return
+     * @throws OperationApplicationException
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final Set<Uri> changedUris = new HashSet<>();
+        mBatchChangedUris.set(changedUris);
+
+        final ContentProviderResult[] results;
+        final SQLiteDatabase db = getDb();
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChangedUris.remove();
+        }
+
+        //Coalesce the notifications:
+        //If more than one URI changed, notify their common parent,
+        //which notifies the observers of all of them.
+        if (changedUris.size() == 1) {
+            notifyChange(changedUris.iterator().next());
+        } else if (!changedUris.isEmpty()) {
+            notifyChange(AUTHORITY_URI);
+        }
+
+        return results;
+    }
+
+    /** Notify observers that the data at this URI has changed,
+     * or remember to do that later if we are in the middle of applyBatch().
+     *
+     * @param uri
+     */
+    private void notifyChange(final Uri uri) {
+        final Set<Uri> batchChangedUris = mBatchChangedUris.get();
+        if (batchChangedUris != null) {
+            batchChangedUris.add(uri);
+            return;
+        }
+
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
     private static String prependIdToSelection(final String selection) {
         return BaseColumns._ID + " = ?"
                 + (!TextUtils.isEmpty(selection) ?
@@ -988,134 +1325,178 @@ public class ItemsContentProvider extends ContentProvider {
         return mOpenDbHelper.getWritableDatabase();
     }
 
-    private void removeItem(final String itemId) {
-        final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        builder.setTables(DatabaseHelper.TABLE_NAME_ITEMS);
-        builder.appendWhere(Item.Columns._ID + " = ?"); //We use ? to avoid SQL Injection.
-        final String[] selectionArgs = {itemId}; //TODO: locale-independent?
-        final Cursor c = builder.query(getDb(), PROJECTION_REMOVE_ITEM,
-                null, selectionArgs,
-                null, null, null);
-
-        final String[] imageUris = new String[3];
-        if (c.moveToFirst()) {
-            imageUris[0] = c.getString(0);
-            imageUris[1] = c.getString(1);
-            imageUris[2] = c.getString(2);
+    /**
+     * Remove the matching items, with their classification answers and checkboxes,
+     * in one transaction, and then delete their cached image files on a background thread.
+     *
+     * @param selection
+     * @param selectionArgs
+     * @param limit Remove only this many of the matching items, oldest-done first, or null for all of them.
+     * @return The number of items removed.
+     */
+    private int removeItems(final String selection, final String[] selectionArgs, final String limit) {
+        if (limit != null && (limit.isEmpty() || !TextUtils.isDigitsOnly(limit))) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
         }
 
-        c.close();
+        final SQLiteDatabase db = getDb();
+        final List<String> itemIds = new ArrayList<>();
+        int affected = 0;
 
-        removeItem(itemId, imageUris);
+        db.beginTransaction();
+        try {
+            //ISO-8601 dates can be alphabetically sorted to get date-time order:
+            final Cursor c = db.query(DatabaseHelper.TABLE_NAME_ITEMS, PROJECTION_ID,
+                    selection, selectionArgs, null, null, ORDER_BY_REMOVE_ITEMS, limit);
+            while (c.moveToNext()) {
+                itemIds.add(c.getString(0));
+            }
+            c.close();
+
+            //Keep below SQLite's limit of 999 ? parameters per statement:
+            final int count = itemIds.size();
+            for (int start = 0; start < count; start += MAX_SELECTION_ARGS) {
+                final List<String> chunk = itemIds.subList(start, Math.min(count, start + MAX_SELECTION_ARGS));
+                final String[] whereArgs = chunk.toArray(new String[chunk.size()]);
+
+                // Remove the related classification answers and checkboxes.
+                // We don't check that any rows were deleted,
+                // because items don't always have a classification yet.
+                db.delete(DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS,
+                        Utils.getSelectionIn(DatabaseHelper.ClassificationAnswersDbColumns.ITEM_ID, whereArgs.length),
+                        whereArgs);
+                db.delete(DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES,
+                        Utils.getSelectionIn(DatabaseHelper.ClassificationCheckboxesDbColumns.ITEM_ID, whereArgs.length),
+                        whereArgs);
+
+                //Delete the items:
+                affected += db.delete(DatabaseHelper.TABLE_NAME_ITEMS,
+                        Utils.getSelectionIn(BaseColumns._ID, whereArgs.length),
+                        whereArgs);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (affected != itemIds.size()) {
+            Log.error("removeItems(): Unexpected number of item rows removed: " + affected);
+        }
+
+        deleteCacheFilesAsync(itemIds);
+        return affected;
     }
 
-    private void removeItem(final String itemId, final String... imageUris) {
-        final SQLiteDatabase db = getDb();
+    /**
+     * Delete the items' cached image files, and any partial downloads of them.
+     * We know their paths from the item IDs, so we don't need to query for them.
+     * The item IDs are never reused (AUTOINCREMENT, and see DatabaseHelper.recreateTables()),
+     * so a new item cannot get these files.
+     *
+     * @param itemIds
+     */
+    private void deleteCacheFilesAsync(final List<String> itemIds) {
+        if (itemIds.isEmpty()) {
+            return;
+        }
 
-        final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        builder.setTables(DatabaseHelper.TABLE_NAME_FILES);
-        builder.appendWhere(DatabaseHelper.FilesDbColumns._ID + " = ?");
+        final File cacheDir = Utils.getExternalCacheDir(getContext());
+        if (cacheDir == null) {
+            return;
+        }
 
-        //Get the cached image files, delete them, and forget them:
-        for (final String contentUri : imageUris) {
-            if (contentUri == null) {
-                continue;
-            }
+        mDeleteCacheFilesExecutor.execute(() -> deleteCacheFiles(cacheDir, itemIds));
+    }
 
-            //Get the real local URI for the file:
-            final Uri uri = Uri.parse(contentUri);
-            final long fileId = ContentUris.parseId(uri);
-            final String strFileId = Double.toString(fileId); //TODO: Is this locale-independent?
-
-            final String[] selectionArgs = {strFileId};
-            final Cursor c = builder.query(db, PROJECTION_FILES_FILE_DATA,
-                    null, selectionArgs,
-                    null, null, null);
-
-            if (c.moveToFirst()) {
-                final String realFileUri = c.getString(0);
-                final File realFile = new File(realFileUri);
-                if(!realFile.delete()) {
-                    Log.error("removeItem(): File.delete() failed.");
-                }
-            }
+    private static ThreadPoolExecutor createDeleteCacheFilesExecutor() {
+        final ThreadPoolExecutor result = new ThreadPoolExecutor(1, 1,
+                DELETE_CACHE_FILES_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("galaxyzoo-delete-files"));
 
-            c.close();
+        //Don't keep an idle thread around between removals:
+        result.allowCoreThreadTimeOut(true);
+        return result;
+    }
 
-            final String[] whereArgs = {strFileId};
-            if (db.delete(DatabaseHelper.TABLE_NAME_FILES,
-                    DatabaseHelper.FilesDbColumns._ID + " = ?",
-                    whereArgs) <= 0) {
-                Log.error("removeItem(): Could not remove the file row.");
+    private static void deleteCacheFiles(@NonNull final File cacheDir, final List<String> itemIds) {
+        final Set<String> fileNames = new HashSet<>();
+        for (final String itemId : itemIds) {
+            final long id = Long.parseLong(itemId);
+            for (final ImageType imageType : ImageType.values()) {
+                final String fileName = getCacheFileName(id, imageType);
+                fileNames.add(fileName);
+                deleteFileIfExists(new File(cacheDir, fileName));
             }
         }
 
-        // Remove the related classification answers:
-        final String[] whereArgs = {itemId};
-        if (db.delete(DatabaseHelper.TABLE_NAME_CLASSIFICATION_ANSWERS,
-                DatabaseHelper.ClassificationAnswersDbColumns.ITEM_ID + " = ?",
-                whereArgs) <= 0) {
-            //This would only be an error worth reporting if we know that this item
-            //has a classification already.
-            //Log.error("removeItem(): Could not remove the classification answers rows.");
+        //Each download has its own temporary file (see HttpUtils.cacheUriToFileSync()),
+        //so we find them, and any kept partial downloads, with one directory listing.
+        final String[] names = cacheDir.list();
+        if (names == null) {
+            Log.error("deleteCacheFiles(): File.list() failed.");
+            return;
         }
 
-        // Remove the related classification checkboxes:
-        // We don't check that at least 1 row was deleted,
-        // because there are not always answers with checkboxes.
-        if (db.delete(DatabaseHelper.TABLE_NAME_CLASSIFICATION_CHECKBOXES,
-                DatabaseHelper.ClassificationCheckboxesDbColumns.ITEM_ID + " = ?",
-                whereArgs) <= 0) {
-            //This would only be an error worth reporting if we know that this item
-            //has a classification already.
-            //Log.error("removeItem(): Could not remove the classification answers rows.");
+        for (final String name : names) {
+            final Matcher matcher = PATTERN_TEMP_FILE_NAME.matcher(name);
+            if (matcher.matches() && fileNames.contains(matcher.group(1))) {
+                deleteFileIfExists(new File(cacheDir, name));
+            }
         }
+    }
 
-        //Delete the item:
-        if (db.delete(DatabaseHelper.TABLE_NAME_ITEMS,
-                Item.Columns._ID + " = ?",
-                whereArgs) <= 0) {
-            Log.error("removeItem(): No item rows were removed.");
+    private static void deleteFileIfExists(final File file) {
+        if (file.exists() && !file.delete()) {
+            Log.error("deleteFileIfExists(): File.delete() failed: " + file);
         }
     }
 
     /**
-     * Create Content URIs that point to local files, so we can download the remote files to those
-     * files as a cache.
+     * Insert an item and then set its content URIs for the local cache files of its images,
+     * so we can download the remote files to those files.
+     * Notice that we allow the client to provide a remote URI for each but we then change
+     * it to our local URI of our local cache of that remote file.
+     * This doesn't actually get any data from the remote locations,
+     * and doesn't create any files, so there is nothing to clean up if the transaction is rolled back.
+     *
+     * The caller should call this in a transaction.
      *
      * @param values
-     * @return
+     * @return The URI of the new item, or null on failure.
      */
-    private boolean createFileUrisForImages(final ContentValues values) throws IOException {
-        Uri fileUri = createFileUri();
-        if (fileUri == null) {
-            return false;
-        }
-
-        values.put(DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_URI, fileUri.toString());
-
-        fileUri = createFileUri();
-        if (fileUri == null) {
-            return false;
+    @Nullable
+    private Uri insertItem(final ContentValues values) {
+        final Uri itemUri = insertMappedValues(DatabaseHelper.TABLE_NAME_ITEMS, values,
+                sItemsProjectionMap, Item.ITEMS_URI);
+        if (itemUri == null) {
+            return null;
         }
 
-        values.put(DatabaseHelper.ItemsDbColumns.LOCATION_THUMBNAIL_URI, fileUri.toString());
-
-        fileUri = createFileUri();
-        if (fileUri == null) {
-            return false;
+        final long itemId = ContentUris.parseId(itemUri);
+        final ContentValues valuesFileUris = new ContentValues();
+        valuesFileUris.put(DatabaseHelper.ItemsDbColumns.LOCATION_STANDARD_URI,
+                getFileUri(itemId, ImageType.STANDARD).toString());
+        valuesFileUris.put(DatabaseHelper.ItemsDbColumns.LOCATION_THUMBNAIL_URI,
+                getFileUri(itemId, ImageType.THUMBNAIL).toString());
+        valuesFileUris.put(DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_URI,
+                getFileUri(itemId, ImageType.INVERTED).toString());
+
+        final String[] whereArgs = {Long.toString(itemId)};
+        if (getDb().update(DatabaseHelper.TABLE_NAME_ITEMS, valuesFileUris,
+                BaseColumns._ID + " = ?", whereArgs) != 1) {
+            Log.error("insertItem(): Could not set the file URIs.");
+            return null;
         }
 
-        values.put(DatabaseHelper.ItemsDbColumns.LOCATION_INVERTED_URI, fileUri.toString());
-
-        return true;
+        return itemUri;
     }
 
     /**
-     * There are 2 tables: items and files.
-     * The items table has a uri field that specifies a record in the files tables.
-     * The files table has a (standard for openInput/OutputStream()) _data field that
-     * contains the URI of the file for the item.
+     * The items table has a content URI field for each image, which specifies a cache file.
+     * The file's path depends only on the item ID and the image type.
+     * See getFileUri() and getCacheFile().
      * <p/>
      * The location and creation of the SQLite database is left entirely up to the SQLiteOpenHelper
      * class. We just store its name in the Document.
@@ -1123,20 +1504,29 @@ public class ItemsContentProvider extends ContentProvider {
     private static class DatabaseHelper extends SQLiteOpenHelper {
 
         //After the first official release, try to preserve data when changing this. See onUpgrade()
-        private static final int DATABASE_VERSION = 21;
+        private static final int DATABASE_VERSION = 22;
 
         private static final String DATABASE_NAME = "items.db";
 
         private static final String TABLE_NAME_ITEMS = "items";
+        //This is no longer used, but onUpgrade() uses it to migrate older databases.
         private static final String TABLE_NAME_FILES = "files";
         //Each item row has many classification_answers rows.
         private static final String TABLE_NAME_CLASSIFICATION_ANSWERS = "classification_answers";
         //Each item row has some classification_checkboxes rows.
         private static final String TABLE_NAME_CLASSIFICATION_CHECKBOXES = "classification_checkboxes";
+
+        //SQLite's own table of the last IDs used by AUTOINCREMENT primary keys:
+        private static final String TABLE_NAME_SEQUENCE = "sqlite_sequence";
+        private static final String SEQUENCE_COLUMN_NAME = "name";
+        private static final String SEQUENCE_COLUMN_SEQ = "seq";
         private static final String DEFAULT_SORT_ORDER = Item.Columns._ID + " ASC";
 
+        private final Context mContext;
+
         DatabaseHelper(final Context context) {
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            mContext = context;
         }
 
         @Override
@@ -1157,24 +1547,157 @@ public class ItemsContentProvider extends ContentProvider {
                                     + ItemsDbColumns.GROUP_ID + " TEXT;");
                         } catch( final SQLiteException ex) {
                             Log.error("onUpgrade: ALTER TABLE ADD COLUMN failed", ex);
-                            //Fall through to the default case to recreate the tables completely.
+                            recreateTables(sqLiteDatabase);
+                            break;
                         }
+
+                        //Fall through to the next upgrade.
+                    }
+
+                    case 21: {
+                        migrateFilesTable(sqLiteDatabase);
                         break;
                     }
 
                     default: {
-                        dropTable(sqLiteDatabase, TABLE_NAME_ITEMS);
-                        dropTable(sqLiteDatabase, TABLE_NAME_FILES);
-                        dropTable(sqLiteDatabase, TABLE_NAME_CLASSIFICATION_ANSWERS);
-                        dropTable(sqLiteDatabase, TABLE_NAME_CLASSIFICATION_CHECKBOXES);
-
-                        createTable(sqLiteDatabase);
+                        recreateTables(sqLiteDatabase);
                         break;
                     }
                 }
             }
         }
 
+        private static void recreateTables(final SQLiteDatabase sqLiteDatabase) {
+            //Dropping the table also forgets its AUTOINCREMENT sequence,
+            //so we restore it afterwards to avoid reusing item IDs.
+            //Otherwise a new item could get the cache files of an old item,
+            //or lose its own files to a delayed deleteCacheFilesAsync() for the old item.
+            final long itemsSequence = getSequence(sqLiteDatabase, TABLE_NAME_ITEMS);
+
+            dropTable(sqLiteDatabase, TABLE_NAME_ITEMS);
+            dropTable(sqLiteDatabase, TABLE_NAME_FILES);
+            dropTable(sqLiteDatabase, TABLE_NAME_CLASSIFICATION_ANSWERS);
+            dropTable(sqLiteDatabase, TABLE_NAME_CLASSIFICATION_CHECKBOXES);
+
+            createTable(sqLiteDatabase);
+
+            if (itemsSequence > 0) {
+                final ContentValues values = new ContentValues();
+                values.put(SEQUENCE_COLUMN_NAME, TABLE_NAME_ITEMS);
+                values.put(SEQUENCE_COLUMN_SEQ, itemsSequence);
+                sqLiteDatabase.insert(TABLE_NAME_SEQUENCE, null, values);
+            }
+        }
+
+        /** Get the last ID used by a table with an AUTOINCREMENT primary key.
+         *
+         * @return 0 if the table has not used any IDs yet.
+         */
+        private static long getSequence(final SQLiteDatabase sqLiteDatabase, final String tableName) {
+            try {
+                final Cursor c = sqLiteDatabase.query(TABLE_NAME_SEQUENCE,
+                        new String[]{SEQUENCE_COLUMN_SEQ},
+                        SEQUENCE_COLUMN_NAME + " = ?", new String[]{tableName},
+                        null, null, null);
+                try {
+                    return c.moveToFirst() ? c.getLong(0) : 0;
+                } finally {
+                    c.close();
+                }
+            } catch (final SQLiteException e) {
+                //sqlite_sequence only exists after an AUTOINCREMENT table has been created.
+                Log.error("getSequence(): query failed", e);
+                return 0;
+            }
+        }
+
+        /** Move the cache files from the paths in the old files table to the paths from getCacheFile(),
+         * set the items' file URIs to match, and then drop the files table.
+         * Any image whose file could not be moved will just be downloaded again.
+         *
+         * The files are renamed outside of onUpgrade()'s transaction,
+         * so if the app stops before the transaction is committed,
+         * the next start will see the old rows again, but some of the files will already have been moved.
+         * migrateFile() therefore accepts a file that is already at its new path.
+         * The old and new file names cannot clash, because the old names were just numbers.
+         */
+        private void migrateFilesTable(final SQLiteDatabase sqLiteDatabase) {
+            //Get the old file paths, by file ID:
+            final Map<String, String> oldPaths = new HashMap<>();
+            final Cursor cFiles = sqLiteDatabase.query(TABLE_NAME_FILES,
+                    new String[]{BaseColumns._ID, URI_PART_DATA},
+                    null, null, null, null, null);
+            while (cFiles.moveToNext()) {
+                oldPaths.put(cFiles.getString(0), cFiles.getString(1));
+            }
+            cFiles.close();
+
+            final File cacheDir = Utils.getExternalCacheDir(mContext);
+
+            final Cursor c = sqLiteDatabase.query(TABLE_NAME_ITEMS,
+                    new String[]{BaseColumns._ID,
+                            ItemsDbColumns.LOCATION_STANDARD_URI,
+                            ItemsDbColumns.LOCATION_THUMBNAIL_URI,
+                            ItemsDbColumns.LOCATION_INVERTED_URI},
+                    null, null, null, null, null);
+            while (c.moveToNext()) {
+                final long itemId = c.getLong(0);
+
+                final ContentValues values = new ContentValues();
+                migrateFile(values, oldPaths, cacheDir, itemId, ImageType.STANDARD, c.getString(1),
+                        ItemsDbColumns.LOCATION_STANDARD_URI, ItemsDbColumns.LOCATION_STANDARD_DOWNLOADED);
+                migrateFile(values, oldPaths, cacheDir, itemId, ImageType.THUMBNAIL, c.getString(2),
+                        ItemsDbColumns.LOCATION_THUMBNAIL_URI, ItemsDbColumns.LOCATION_THUMBNAIL_DOWNLOADED);
+                migrateFile(values, oldPaths, cacheDir, itemId, ImageType.INVERTED, c.getString(3),
+                        ItemsDbColumns.LOCATION_INVERTED_URI, ItemsDbColumns.LOCATION_INVERTED_DOWNLOADED);
+
+                sqLiteDatabase.update(TABLE_NAME_ITEMS, values,
+                        BaseColumns._ID + " = ?", new String[]{Long.toString(itemId)});
+            }
+            c.close();
+
+            //Delete any old files that did not belong to an item:
+            for (final String path : oldPaths.values()) {
+                if (TextUtils.isEmpty(path)) {
+                    continue;
+                }
+
+                final File file = new File(path);
+                if (file.exists() && !file.delete()) {
+                    Log.error("migrateFilesTable(): File.delete() failed.");
+                }
+            }
+
+            dropTable(sqLiteDatabase, TABLE_NAME_FILES);
+        }
+
+        private static void migrateFile(final ContentValues values, final Map<String, String> oldPaths,
+                                        final File cacheDir, final long itemId, final ImageType imageType,
+                                        final String oldFileUri, final String uriColumn, final String downloadedColumn) {
+            values.put(uriColumn, getFileUri(itemId, imageType).toString());
+
+            boolean moved = false;
+            if (cacheDir != null && !TextUtils.isEmpty(oldFileUri)) {
+                //Remove it from the map so we don't delete it afterwards:
+                final String oldPath = oldPaths.remove(Uri.parse(oldFileUri).getLastPathSegment());
+                if (!TextUtils.isEmpty(oldPath)) {
+                    final File oldFile = new File(oldPath);
+                    final File newFile = new File(cacheDir, getCacheFileName(itemId, imageType));
+                    if (oldFile.exists()) {
+                        moved = oldFile.renameTo(newFile);
+                    } else {
+                        //An earlier, interrupted, migration might have moved it already:
+                        moved = newFile.exists();
+                    }
+                }
+            }
+
+            if (!moved) {
+                //Download it again:
+                values.put(downloadedColumn, 0);
+            }
+        }
+
         private static void dropTable(final SQLiteDatabase sqLiteDatabase, final String tableName) {
             sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " +
                     tableName + ";");
@@ -1210,13 +1733,6 @@ public class ItemsContentProvider extends ContentProvider {
             createIndex(sqLiteDatabase, TABLE_NAME_ITEMS, ItemsDbColumns.LOCATION_INVERTED_DOWNLOADED);
 
 
-            qs = "CREATE TABLE " + TABLE_NAME_FILES + " (" +
-                    BaseColumns._ID +
-                    " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    FilesDbColumns.FILE_DATA + " TEXT);";
-            sqLiteDatabase.execSQL(qs);
-
-
             qs = "CREATE TABLE " + TABLE_NAME_CLASSIFICATION_ANSWERS + " (" +
                     BaseColumns._ID +
                     " INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -1256,23 +1772,19 @@ public class ItemsContentProvider extends ContentProvider {
             static final String ZOONIVERSE_ID = "zooniverseId";
             static final String GROUP_ID = "groupId";
             static final String LOCATION_STANDARD_URI_REMOTE = "locationStandardUriRemote"; //The original file on the remote server.
-            static final String LOCATION_STANDARD_URI = "locationStandardUri"; //The content URI for a file in the files table.
+            static final String LOCATION_STANDARD_URI = "locationStandardUri"; //The content URI for the cached file. See getFileUri().
             static final String LOCATION_STANDARD_DOWNLOADED = "locationStandardDownloaded"; //1 or 0. Whether the file has finished downloading.
             static final String LOCATION_THUMBNAIL_URI_REMOTE = "locationThumbnailUriRemote"; //The original file on the remote server.
-            static final String LOCATION_THUMBNAIL_URI = "locationThumbnailUri"; //The content URI for a file in the files table.
+            static final String LOCATION_THUMBNAIL_URI = "locationThumbnailUri"; //The content URI for the cached file. See getFileUri().
             static final String LOCATION_THUMBNAIL_DOWNLOADED = "locationThumbnailDownloaded"; //1 or 0. Whether the file has finished downloading.
             static final String LOCATION_INVERTED_URI_REMOTE = "locationInvertedUriRemote"; //The original file on the remote server.
-            static final String LOCATION_INVERTED_URI = "locationInvertedUri"; //The content URI for a file in the files table.
+            static final String LOCATION_INVERTED_URI = "locationInvertedUri"; //The content URI for the cached file. See getFileUri().
             static final String LOCATION_INVERTED_DOWNLOADED = "locationInvertedDownloaded"; //1 or 0. Whether the file has finished downloading.
             //            static final String LOCATIONS_REQUESTED_DATETIME = "locationsRequestedDateTime"; //When we last tried to download the images. An ISO8601 string ("YYYY-MM-DD HH:MM:SS.SSS")
             static final String FAVORITE = "favorite"; //1 or 0. Whether the user has marked this as a favorite.
             static final String DATETIME_DONE = "dateTimeDone"; //An ISO8601 string ("YYYY-MM-DD HH:MM:SS.SSS").
         }
 
-        private static class FilesDbColumns implements BaseColumns {
-            private static final String FILE_DATA = URI_PART_DATA; //The real URI
-        }
-
         private static class ClassificationAnswersDbColumns implements BaseColumns {
             private static final String ITEM_ID = "itemId";
             private static final String SEQUENCE = "sequence";
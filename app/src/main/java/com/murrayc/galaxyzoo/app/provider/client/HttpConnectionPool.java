@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider.client;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.android.volley.toolbox.HttpStack;
+import com.android.volley.toolbox.HurlStack;
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.provider.HttpUtils;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.OkUrlFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One pool of keep-alive HTTP connections for our uploads, logins, and Volley requests,
+ * which all go to the same server, so a sync's uploads don't each need a new TCP and TLS connection.
+ *
+ * Connections from openConnection() must be given back with release(),
+ * instead of just calling HttpURLConnection.disconnect(),
+ * which would close the socket if the response body has not been read completely.
+ *
+ * This may be used from several threads at once.
+ */
+public final class HttpConnectionPool {
+    //Enough for our concurrent uploads (Config.MAXIMUM_CONCURRENT_UPLOADS) and a Volley request.
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+
+    //Long enough to cover a sync's burst of uploads, but we don't want to keep sockets open for long.
+    private static final long KEEP_ALIVE_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    //We read and discard the rest of a response body so its connection can be reused,
+    //but it's not worth reading a big response just for that.
+    private static final int MAX_DISCARD_BYTES = 64 * 1024;
+    private static final int DISCARD_BUFFER_SIZE = 1024;
+
+    private static final ConnectionPool sConnectionPool =
+            new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MILLIS);
+    private static final OkUrlFactory sUrlFactory = createUrlFactory();
+
+    private static final AtomicInteger sRequestCount = new AtomicInteger();
+
+    private HttpConnectionPool() {
+    }
+
+    private static OkUrlFactory createUrlFactory() {
+        final OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(sConnectionPool);
+        client.setConnectTimeout(HttpUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        client.setReadTimeout(HttpUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        client.setWriteTimeout(HttpUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        return new OkUrlFactory(client);
+    }
+
+    /**
+     * Open a connection from the pool, with our User-Agent and with reasonable timeouts,
+     * like HttpUtils.openConnection().
+     * Give it back with release().
+     */
+    @NonNull
+    public static HttpURLConnection openConnection(@NonNull final String strURL) throws IOException {
+        final HttpURLConnection conn = sUrlFactory.open(new URL(strURL));
+        HttpUtils.setConnectionDefaults(conn);
+        sRequestCount.incrementAndGet();
+        return conn;
+    }
+
+    /**
+     * Read and discard the rest of the response body, and close it,
+     * so the connection's socket can be reused.
+     * If that is not possible, for instance because the request failed,
+     * the socket is closed instead.
+     *
+     * @param conn
+     * @param in The response body, from getInputStream(),
+     *           or null if that failed or was not called, or if the body has already been read and closed.
+     */
+    public static void release(@NonNull final HttpURLConnection conn, @Nullable final InputStream in) {
+        InputStream body = in;
+        if (body == null) {
+            //getInputStream() throws an IOException for error response codes,
+            //but the error response body must still be read before the socket can be reused.
+            body = conn.getErrorStream();
+        }
+
+        if (body != null) {
+            discardAndClose(body);
+        }
+
+        //When the whole body has been read and closed, the socket has already gone back to the pool,
+        //so this does nothing. Otherwise, this closes the socket, so it is not reused.
+        conn.disconnect();
+    }
+
+    private static void discardAndClose(@NonNull final InputStream body) {
+        try {
+            final byte[] buffer = new byte[DISCARD_BUFFER_SIZE];
+            int discarded = 0;
+            int count;
+            while (discarded <= MAX_DISCARD_BYTES && (count = body.read(buffer)) != -1) {
+                discarded += count;
+            }
+        } catch (final IOException e) {
+            Log.error("HttpConnectionPool.discardAndClose(): Exception while reading the body", e);
+        }
+
+        try {
+            body.close();
+        } catch (final IOException e) {
+            Log.error("HttpConnectionPool.discardAndClose(): Exception while closing the body", e);
+        }
+    }
+
+    /**
+     * A Volley HttpStack that uses the same pool of connections.
+     * Volley reads each whole response, so its connections are reused too.
+     */
+    @NonNull
+    static HttpStack createVolleyStack() {
+        return new HurlStack() {
+            @Override
+            protected HttpURLConnection createConnection(final URL url) throws IOException {
+                sRequestCount.incrementAndGet();
+                return sUrlFactory.open(url);
+            }
+        };
+    }
+
+    @NonNull
+    public static Stats getStats() {
+        return new Stats(sConnectionPool.getConnectionCount(), sConnectionPool.getIdleConnectionCount(),
+                sRequestCount.get());
+    }
+
+    /**
+     * A snapshot of the pool's state, for logging or tests.
+     */
+    public static final class Stats {
+        private final int connectionCount;
+        private final int idleConnectionCount;
+        private final int requestCount;
+
+        Stats(final int connectionCount, final int idleConnectionCount, final int requestCount) {
+            this.connectionCount = connectionCount;
+            this.idleConnectionCount = idleConnectionCount;
+            this.requestCount = requestCount;
+        }
+
+        /**
+         * The number of open sockets in the pool, whether in use or idle.
+         */
+        public int getConnectionCount() {
+            return connectionCount;
+        }
+
+        /**
+         * The number of open sockets that are waiting to be reused.
+         */
+        public int getIdleConnectionCount() {
+            return idleConnectionCount;
+        }
+
+        /**
+         * The number of requests since the app started, including Volley's.
+         */
+        public int getRequestCount() {
+            return requestCount;
+        }
+
+        @Override
+        public String toString() {
+            return "connections=" + connectionCount + ", idle=" + idleConnectionCount +
+                    ", requests=" + requestCount;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.provider.client;
+
+import android.support.annotation.NonNull;
+
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.provider.HttpUtils;
+import com.murrayc.galaxyzoo.core.MoreItemsJsonParser;
+import com.murrayc.galaxyzoo.core.SubjectCallback;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * A GET request for more subjects, whose response is parsed as it arrives,
+ * so the caller gets the first subject without waiting for the whole response.
+ * Unlike ZooStringRequest, this does not use Volley, because Volley always reads the whole
+ * response body into memory before delivering it.
+ *
+ * This blocks, so it must not be used on the UI's main thread.
+ */
+class ZooSubjectsStreamRequest {
+    private final String mUri;
+    private final SubjectCallback mCallback;
+
+    ZooSubjectsStreamRequest(@NonNull final String uri, @NonNull final SubjectCallback callback) {
+        mUri = uri;
+        mCallback = callback;
+    }
+
+    /**
+     * @return The number of subjects that were passed to the callback.
+     * @throws ZooniverseClient.RequestMoreItemsException
+     */
+    int performSync() throws ZooniverseClient.RequestMoreItemsException {
+        final HttpURLConnection conn;
+        try {
+            conn = HttpUtils.openConnection(mUri);
+        } catch (final IOException e) {
+            Log.error("ZooSubjectsStreamRequest.performSync(): Could not open connection", e);
+            throw new ZooniverseClient.RequestMoreItemsException("Could not open connection.", e);
+        }
+
+        //This is required by the newer API. See ZooStringRequest.getHeaders().
+        conn.setRequestProperty(HttpUtils.HTTP_REQUEST_HEADER_PARAM_ACCEPT, HttpUtils.CONTENT_TYPE_JSON);
+
+        //Identical requests for more items should get different results each time.
+        conn.setUseCaches(false);
+
+        InputStream in = null;
+        try {
+            final int responseCode = conn.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                Log.error("ZooSubjectsStreamRequest.performSync(): response code: " + responseCode);
+                throw new ZooniverseClient.RequestMoreItemsException("Unexpected response code: " + responseCode);
+            }
+
+            in = new BufferedInputStream(conn.getInputStream());
+            return MoreItemsJsonParser.parseMoreItemsResponseContent(in, mCallback);
+        } catch (final IOException e) {
+            Log.error("ZooSubjectsStreamRequest.performSync(): exception during HTTP connection", e);
+            throw new ZooniverseClient.RequestMoreItemsException("Exception during HTTP connection.", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    Log.error("ZooSubjectsStreamRequest.performSync(): exception while closing in", e);
+                }
+            }
+
+            conn.disconnect();
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package com.murrayc.galaxyzoo.app.provider.client;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.android.volley.Request;
@@ -29,17 +30,19 @@ import com.android.volley.toolbox.RequestFuture;
 import com.android.volley.toolbox.Volley;
 import com.murrayc.galaxyzoo.app.Log;
 import com.murrayc.galaxyzoo.app.LoginUtils;
-import com.murrayc.galaxyzoo.app.Utils;
 import com.murrayc.galaxyzoo.app.provider.Config;
 import com.murrayc.galaxyzoo.app.provider.HttpUtils;
+import com.murrayc.galaxyzoo.core.FormEncoder;
+import com.murrayc.galaxyzoo.core.LoginResult;
+import com.murrayc.galaxyzoo.core.MoreItemsJsonParser;
+import com.murrayc.galaxyzoo.core.NameValuePair;
+import com.murrayc.galaxyzoo.core.Subject;
+import com.murrayc.galaxyzoo.core.SubjectCallback;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
@@ -51,6 +54,15 @@ import java.util.concurrent.TimeoutException;
  * Created by murrayc on 10/10/14.
  */
 public class ZooniverseClient {
+    //Each upload or login thread reuses its own encoder, with its buffer,
+    //instead of allocating a new one for each request.
+    private static final ThreadLocal<FormEncoder> sFormEncoder = new ThreadLocal<FormEncoder>() {
+        @Override
+        protected FormEncoder initialValue() {
+            return new FormEncoder();
+        }
+    };
+
     private final Context mContext;
     private final String mServerBaseUri;
 
@@ -68,7 +80,7 @@ public class ZooniverseClient {
         try {
             context.getPackageName();
 
-            mQueue = Volley.newRequestQueue(context);
+            mQueue = Volley.newRequestQueue(context, HttpConnectionPool.createVolleyStack());
         } catch (final UnsupportedOperationException ex) {
             Log.info("ZooniverseClient: Not creating mQueue because context.getPackageName() would fail.");
             mQueue = null; //Just for the unit test.
@@ -76,22 +88,8 @@ public class ZooniverseClient {
     }
 
     private static HttpURLConnection openConnection(final String strURL) throws IOException {
-        final URL url= new URL(strURL);
-
-        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        setConnectionUserAgent(conn);
-
-        //Set a reasonable timeout.
-        //Otherwise there is no timeout so we might never know if it fails,
-        //so never have the chance to try again.
-        conn.setConnectTimeout(HttpUtils.TIMEOUT_MILLIS);
-        conn.setReadTimeout(HttpUtils.TIMEOUT_MILLIS);
-
-        return conn;
-    }
-
-    private static void setConnectionUserAgent(final HttpURLConnection connection) {
-        connection.setRequestProperty(HttpUtils.HTTP_REQUEST_HEADER_PARAM_USER_AGENT, HttpUtils.getUserAgent());
+        //Our uploads and logins all go to the same server, so they can share connections.
+        return HttpConnectionPool.openConnection(strURL);
     }
 
     /** Return a group ID selected at random.
@@ -133,7 +131,7 @@ public class ZooniverseClient {
     }
 
     @Nullable
-    public LoginUtils.LoginResult loginSync(final String username, final String password) throws LoginException {
+    public LoginResult loginSync(final String username, final String password) throws LoginException {
         HttpUtils.throwIfNoNetwork(getContext(),
                 false); //Ignore the wifi-only setting because this will be when the user is explicitly requesting a login.
 
@@ -146,9 +144,9 @@ public class ZooniverseClient {
             throw new LoginException("Could not open connection.", e);
         }
 
-        final List<HttpUtils.NameValuePair> nameValuePairs = new ArrayList<>();
-        nameValuePairs.add(new HttpUtils.NameValuePair("username", username));
-        nameValuePairs.add(new HttpUtils.NameValuePair("password", password));
+        final List<NameValuePair> nameValuePairs = new ArrayList<>();
+        nameValuePairs.add(new NameValuePair("username", username));
+        nameValuePairs.add(new NameValuePair("password", password));
 
         try {
             conn.setRequestMethod("POST");
@@ -175,42 +173,32 @@ public class ZooniverseClient {
                 return null;
             }
 
-            return LoginUtils.parseLoginResponseContent(in);
+            //This reads and closes the whole response:
+            final LoginResult result = LoginUtils.parseLoginResponseContent(in);
+            in = null;
+            return result;
         } catch (final IOException e) {
             Log.error("loginSync(): exception during HTTP connection", e);
 
             throw new LoginException("Could not parse response.", e);
         } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (final IOException e) {
-                    Log.error("loginSync(): exception while closing in", e);
-                }
-            }
-
-            if (conn != null) {
-                conn.disconnect();
-            }
+            //Let the connection be reused:
+            HttpConnectionPool.release(conn, in);
         }
     }
 
-    private static void writeParamsToHttpPost(final HttpURLConnection conn, final List<HttpUtils.NameValuePair> nameValuePairs) throws IOException {
+    /**
+     * Write the parameters directly into the connection's OutputStream, as percent-encoded bytes.
+     * This must be called before the connection is connected,
+     * because it sets the body's length, so HttpURLConnection does not need to buffer the whole body.
+     */
+    private static void writeParamsToHttpPost(final HttpURLConnection conn, final List<NameValuePair> nameValuePairs) throws IOException {
+        conn.setFixedLengthStreamingMode(FormEncoder.getEncodedLength(nameValuePairs));
+
         OutputStream out = null;
         try {
             out = conn.getOutputStream();
-
-            BufferedWriter writer = null;
-            try {
-                writer = new BufferedWriter(
-                        new OutputStreamWriter(out, Utils.STRING_ENCODING));
-                writer.write(HttpUtils.getPostDataBytes(nameValuePairs));
-                writer.flush();
-            } finally {
-                if (writer != null) {
-                    writer.close();
-                }
-            }
+            sFormEncoder.get().write(nameValuePairs, out);
         } finally {
             if (out != null) {
                 try {
@@ -259,13 +247,44 @@ public class ZooniverseClient {
             throw new RequestMoreItemsException("response is null.");
         }
 
-        final List<ZooniverseClient.Subject> result = MoreItemsJsonParser.parseMoreItemsResponseContent(response);
+        final List<Subject> result = MoreItemsJsonParser.parseMoreItemsResponseContent(response);
         if (result == null || result.isEmpty()) {
             throw new RequestMoreItemsException("requestMoreItemsSync(): response contained no subjects.");
         }
         return result;
     }
 
+    /** Request more items, passing each one to the callback as soon as it has been parsed,
+     * while the rest of the response is still arriving.
+     * This will not always provide as many items as requested.
+     *
+     * This blocks until the whole response has been parsed,
+     * so it must not be used on the UI's main thread.
+     *
+     * @param count
+     * @param callback This is called for each subject, on the calling thread.
+     * @return The number of subjects that were passed to the callback.
+     */
+    public int requestMoreItemsStreamingSync(int count, final SubjectCallback callback) throws RequestMoreItemsException {
+        throwIfNoNetwork();
+
+        //Avoid suddenly doing too much network and disk IO
+        //as we download too many images.
+        if (count > Config.MAXIMUM_DOWNLOAD_ITEMS) {
+            count = Config.MAXIMUM_DOWNLOAD_ITEMS;
+        }
+
+        Log.info("requestMoreItemsStreamingSync(): count=" + count);
+
+        final ZooSubjectsStreamRequest request = new ZooSubjectsStreamRequest(getQueryUri(count), callback);
+        final int result = request.performSync();
+        if (result == 0) {
+            throw new RequestMoreItemsException("requestMoreItemsStreamingSync(): response contained no subjects.");
+        }
+
+        return result;
+    }
+
     public void requestMoreItemsAsync(final int count, final Response.Listener<String> listener, final Response.ErrorListener errorListener) {
         throwIfNoNetwork();
 
@@ -295,7 +314,7 @@ public class ZooniverseClient {
         return mContext;
     }
 
-    public boolean uploadClassificationSync(final String authName, final String authApiKey, final String groupId, final List<HttpUtils.NameValuePair> nameValuePairs) throws UploadException {
+    public boolean uploadClassificationSync(final String authName, final String authApiKey, final String groupId, final List<NameValuePair> nameValuePairs) throws UploadException {
         throwIfNoNetwork();
 
         final HttpURLConnection conn;
@@ -349,84 +368,80 @@ public class ZooniverseClient {
         InputStream in = null;
         try {
             //Note: At least with okhttp.mockwebserver, getInputStream() will throw an IOException (file
-            //not found) if the response code was an error, such as HTTP_UNAUTHORIZED.
-            in = conn.getInputStream();
+            //not found) if the response code was an error, such as HTTP_UNAUTHORIZED,
+            //so we check the response code first. Then a refused upload is not mistaken for a
+            //connection problem, and uploadClassificationsSync() can carry on with the next one.
             final int responseCode = conn.getResponseCode();
             if (responseCode != HttpURLConnection.HTTP_CREATED) {
-                Log.error("uploadClassificationSync: Did not receive the 201 Created status code: " + conn.getResponseCode());
+                Log.error("uploadClassificationSync: Did not receive the 201 Created status code: " + responseCode);
                 return false;
             }
 
+            in = conn.getInputStream();
             return true;
         } catch (final IOException e) {
             Log.error("uploadClassificationSync: exception during HTTP connection", e);
 
             throw new UploadException("exception during HTTP connection", e);
         } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (final IOException e) {
-                    Log.error("uploadClassificationSync: exception while closing in", e);
-                }
-            }
-
-            if (conn != null) {
-                conn.disconnect();
-            }
+            //Read the rest of the response, even if it was an error,
+            //so the next upload can reuse the connection:
+            HttpConnectionPool.release(conn, in);
         }
     }
 
-    public RequestQueue getRequestQueue() {
-        return mQueue;
-    }
-
     /**
-     * This class is meant to be immutable.
-     * It only returns references to immutable Strings.
+     * Upload several classifications for the same group, one after the other,
+     * reusing the same kept-alive connection from HttpConnectionPool,
+     * so only the first upload needs a new TCP and TLS connection.
+     *
+     * The server has no request for several classifications at once,
+     * and HttpURLConnection cannot pipeline requests,
+     * so this is still one POST per classification.
+     *
+     * A refused classification does not stop the batch,
+     * but a connection problem does, because the later uploads would probably fail too.
+     * This also stops if the thread is interrupted, for instance by UploadExecutor.cancelAll().
+     *
+     * @param classifications Each classification's parameters, as for uploadClassificationSync().
+     * @param callback This is called, in this thread, after each classification has been uploaded or refused.
+     * @return The number of classifications that were uploaded.
+     * @throws UploadException If there was a connection problem. The callback will already
+     *                         have been called for the earlier classifications.
      */
-    public static final class Subject {
-        private final String mSubjectId;
-        private final String mZooniverseId;
-        private final String mGroupId;
-        private final String mLocationStandard;
-        private final String mLocationThumbnail;
-        private final String mLocationInverted;
-
-        public Subject(final String subjectId, final String zooniverseId, final String groupId, final String locationStandard, final String locationThumbnail, final String locationInverted) {
-            super();
-            this.mSubjectId = subjectId;
-            this.mZooniverseId = zooniverseId;
-            this.mGroupId = groupId;
-            this.mLocationStandard = locationStandard;
-            this.mLocationThumbnail = locationThumbnail;
-            this.mLocationInverted = locationInverted;
-        }
-
-        public String getSubjectId() {
-            return mSubjectId;
-        }
-
-        public String getZooniverseId() {
-            return mZooniverseId;
-        }
+    public int uploadClassificationsSync(final String authName, final String authApiKey, final String groupId,
+                                         @NonNull final List<List<NameValuePair>> classifications,
+                                         @NonNull final UploadBatchCallback callback) throws UploadException {
+        int uploadedCount = 0;
+        final int count = classifications.size();
+        for (int i = 0; i < count; i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.info("uploadClassificationsSync(): Interrupted after " + i + " of " + count);
+                break;
+            }
 
-        public String getGroupId() {
-            return mGroupId;
-        }
+            final boolean uploaded = uploadClassificationSync(authName, authApiKey, groupId,
+                    classifications.get(i));
+            callback.onUploadFinished(i, uploaded);
 
-        public String getLocationStandard() {
-            return mLocationStandard;
+            if (uploaded) {
+                uploadedCount++;
+            }
         }
 
-        public String getLocationThumbnail() {
-            return mLocationThumbnail;
-        }
+        return uploadedCount;
+    }
 
-        public String getLocationInverted() {
-            return mLocationInverted;
-        }
+    public interface UploadBatchCallback {
+        /**
+         * @param index The classification's position in the list passed to uploadClassificationsSync().
+         * @param uploaded Whether the server accepted the classification.
+         */
+        void onUploadFinished(int index, boolean uploaded);
+    }
 
+    public RequestQueue getRequestQueue() {
+        return mQueue;
     }
 
     public static class LoginException extends Exception {
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.syncadapter;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.NamedThreadFactory;
+import com.murrayc.galaxyzoo.app.provider.HttpUtils;
+import com.murrayc.galaxyzoo.app.provider.ImageType;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads images into their cache files, on a small pool of named threads.
+ *
+ * Requests for a remote URI that is already being downloaded are added to that download
+ * instead of starting another one.
+ * A download that has been in progress for longer than IN_FLIGHT_TTL_MILLIS
+ * is assumed to be stuck, so a new request for it will start a new download.
+ * The stuck one might really still be running, but each download writes to its own
+ * temporary file, so they cannot write into each other's files.
+ * Queued downloads run in order of ImageType, so THUMBNAIL and STANDARD images
+ * are available before INVERTED images.
+ *
+ * Partly-downloaded files are resumed, if the remote file has not changed
+ * (see HttpUtils.cacheUriToFileSync()).
+ */
+class ImageDownloader {
+    interface Listener {
+        /**
+         * This is called on the download thread.
+         */
+        void onDownloadDone(boolean success, @NonNull Uri itemUri, @NonNull ImageType imageType);
+    }
+
+    private static final int MAXIMUM_CONCURRENT_DOWNLOADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    //Much longer than a download should take with HttpUtils.TIMEOUT_MILLIS,
+    //even on a slow connection.
+    private static final long IN_FLIGHT_TTL_MILLIS = 5 * 60 * 1000;
+
+    private final Context mContext;
+    private final Listener mListener;
+    private final ThreadPoolExecutor mExecutor;
+
+    /* The downloads that are queued or running, by remote URI.
+     */
+    private final ConcurrentMap<String, Download> mInFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    ImageDownloader(@NonNull final Context context, @NonNull final Listener listener) {
+        mContext = context;
+        mListener = listener;
+
+        mExecutor = new ThreadPoolExecutor(MAXIMUM_CONCURRENT_DOWNLOADS, MAXIMUM_CONCURRENT_DOWNLOADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new NamedThreadFactory("galaxyzoo-download"));
+
+        //Don't keep idle threads around between syncs:
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Whether the remote URI is being downloaded, ignoring downloads that seem to be stuck.
+     *
+     * @param uriRemote
+     * @return
+     */
+    boolean isInProgress(final String uriRemote) {
+        if (TextUtils.isEmpty(uriRemote)) {
+            return false;
+        }
+
+        final Download download = mInFlight.get(uriRemote);
+        return download != null && !download.isStale(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Download the remote URI into the cache file,
+     * or just wait for the download that is already in progress for the same remote URI.
+     * The Listener will be called when it has finished.
+     *
+     * @param uriRemote
+     * @param cacheFileUri A Content URI for a cache file.
+     * @param itemUri
+     * @param imageType
+     * @param async Download on one of our download threads if this is true.
+     *              Otherwise, download on this thread, unless it is already in progress.
+     */
+    void download(@NonNull final String uriRemote, @NonNull final String cacheFileUri,
+                  @NonNull final Uri itemUri, @NonNull final ImageType imageType, final boolean async) {
+        final Target target = new Target(cacheFileUri, itemUri, imageType);
+
+        while (true) {
+            final long now = SystemClock.elapsedRealtime();
+            final Download existing = mInFlight.get(uriRemote);
+            if (existing != null && !existing.isStale(now) && existing.addTarget(target)) {
+                Log.info("ImageDownloader.download(): Already in progress: " + uriRemote);
+                return;
+            }
+
+            final Download download = new Download(uriRemote, target, now, mSequence.getAndIncrement());
+
+            //Replace a stuck or finished download.
+            //The old one will not remove the new one from mInFlight if it finishes later.
+            final boolean added = (existing == null) ?
+                    (mInFlight.putIfAbsent(uriRemote, download) == null) :
+                    mInFlight.replace(uriRemote, existing, download);
+            if (!added) {
+                //Another thread changed it first, so try again.
+                continue;
+            }
+
+            if (!async) {
+                download.run();
+                return;
+            }
+
+            try {
+                mExecutor.execute(download);
+            } catch (final RejectedExecutionException e) {
+                Log.error("ImageDownloader.download(): Download rejected.", e);
+                download.finish(false);
+            }
+
+            return;
+        }
+    }
+
+    /**
+     * Lower numbers are downloaded first.
+     */
+    private static int getPriority(final ImageType imageType) {
+        switch (imageType) {
+            case THUMBNAIL:
+                return 0;
+            case STANDARD:
+                return 1;
+            case INVERTED:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    private static final class Target {
+        private final String mCacheFileUri;
+        private final Uri mItemUri;
+        private final ImageType mImageType;
+
+        Target(final String cacheFileUri, final Uri itemUri, final ImageType imageType) {
+            mCacheFileUri = cacheFileUri;
+            mItemUri = itemUri;
+            mImageType = imageType;
+        }
+    }
+
+    private final class Download implements Runnable, Comparable<Download> {
+        private final String mUriRemote;
+        private final long mStartTime;
+        private final int mPriority;
+        private final long mSequence;
+
+        //The first target is the one that we download into.
+        //Any others get a copy of that file.
+        private final List<Target> mTargets = new ArrayList<>();
+        private boolean mFinished = false;
+
+        Download(final String uriRemote, final Target target, final long startTime, final long sequence) {
+            mUriRemote = uriRemote;
+            mStartTime = startTime;
+            mPriority = getPriority(target.mImageType);
+            mSequence = sequence;
+            mTargets.add(target);
+        }
+
+        boolean isStale(final long now) {
+            return (now - mStartTime) > IN_FLIGHT_TTL_MILLIS;
+        }
+
+        /**
+         * @return false if it is too late to add a target, because the download has finished.
+         */
+        synchronized boolean addTarget(final Target target) {
+            if (mFinished) {
+                return false;
+            }
+
+            for (final Target existing : mTargets) {
+                if (TextUtils.equals(existing.mCacheFileUri, target.mCacheFileUri)) {
+                    return true;
+                }
+            }
+
+            mTargets.add(target);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            boolean success = false;
+            try {
+                success = HttpUtils.cacheUriToFileSync(mContext, mUriRemote, getFirstTarget().mCacheFileUri);
+            } catch (final HttpUtils.FileCacheException e) {
+                Log.error("ImageDownloader.Download.run(): Exception from HttpUtils.cacheUriToFileSync", e);
+            }
+
+            finish(success);
+        }
+
+        private synchronized Target getFirstTarget() {
+            return mTargets.get(0);
+        }
+
+        void finish(final boolean success) {
+            final List<Target> targets;
+            synchronized (this) {
+                mFinished = true;
+                targets = new ArrayList<>(mTargets);
+            }
+
+            //Only remove this download, not a newer one that replaced it:
+            mInFlight.remove(mUriRemote, this);
+
+            final Target first = targets.get(0);
+            for (final Target target : targets) {
+                boolean targetSuccess = success;
+                if (success && target != first) {
+                    targetSuccess = copyCacheFile(first.mCacheFileUri, target.mCacheFileUri);
+                }
+
+                mListener.onDownloadDone(targetSuccess, target.mItemUri, target.mImageType);
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull final Download other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+
+            //Otherwise, first come, first served:
+            if (mSequence == other.mSequence) {
+                return 0;
+            }
+
+            return mSequence < other.mSequence ? -1 : 1;
+        }
+    }
+
+    private boolean copyCacheFile(final String fromCacheFileUri, final String toCacheFileUri) {
+        final String fromPath = HttpUtils.getCacheFilePath(mContext, fromCacheFileUri);
+        final String toPath = HttpUtils.getCacheFilePath(mContext, toCacheFileUri);
+        if (TextUtils.isEmpty(fromPath) || TextUtils.isEmpty(toPath)) {
+            Log.error("ImageDownloader.copyCacheFile(): Could not get the cache file paths.");
+            return false;
+        }
+
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(fromPath);
+            out = new FileOutputStream(toPath);
+            HttpUtils.copyStream(in, out);
+            return true;
+        } catch (final IOException e) {
+            Log.error("ImageDownloader.copyCacheFile(): Exception while copying.", e);
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    Log.error("ImageDownloader.copyCacheFile(): Exception while closing in", e);
+                }
+            }
+
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    Log.error("ImageDownloader.copyCacheFile(): Exception while closing out", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.syncadapter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.text.TextUtils;
+
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.provider.HttpUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Creates the inverted image from the standard image,
+ * so we don't need to download the inverted image too.
+ * The inverted image is just the standard image with each colour inverted.
+ */
+final class ImageInverter {
+    private static final int JPEG_QUALITY = 90;
+
+    private ImageInverter() {
+    }
+
+    /**
+     * Write an inverted copy of the standard image's cache file to the inverted image's cache file.
+     * This should not be called on the main (UI) thread.
+     *
+     * @param context
+     * @param standardCacheFileUri A Content URI for the standard image's cache file.
+     * @param invertedCacheFileUri A Content URI for the inverted image's cache file.
+     * @return
+     */
+    static boolean invertSync(final Context context, final String standardCacheFileUri, final String invertedCacheFileUri) {
+        final String standardPath = HttpUtils.getCacheFilePath(context, standardCacheFileUri);
+        final String invertedPath = HttpUtils.getCacheFilePath(context, invertedCacheFileUri);
+        if (TextUtils.isEmpty(standardPath) || TextUtils.isEmpty(invertedPath)) {
+            Log.error("ImageInverter.invertSync(): Could not get the cache file paths.");
+            return false;
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        final Bitmap bitmap = BitmapFactory.decodeFile(standardPath, options);
+        if (bitmap == null) {
+            Log.error("ImageInverter.invertSync(): Could not decode the standard image: " + standardPath);
+            return false;
+        }
+
+        try {
+            invertBitmap(bitmap);
+            return writeJpeg(bitmap, new File(invertedPath));
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /** Invert the colours, one row at a time,
+     * to avoid allocating an array for all the pixels at once.
+     */
+    private static void invertBitmap(final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                //Invert the RGB but not the alpha:
+                row[x] ^= 0x00FFFFFF;
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+    }
+
+    /** Write to a temporary file and then rename it,
+     * like HttpUtils.cacheUriToFileSync(),
+     * so the cache file is never left partly written.
+     */
+    private static boolean writeJpeg(final Bitmap bitmap, final File file) {
+        File tempFile = null;
+        FileOutputStream out = null;
+        boolean success = false;
+        try {
+            tempFile = File.createTempFile(file.getName(), HttpUtils.TEMP_FILE_SUFFIX, file.getParentFile());
+            out = new FileOutputStream(tempFile);
+            success = bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (final IOException e) {
+            Log.error("ImageInverter.writeJpeg(): Exception while writing the file.", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    Log.error("ImageInverter.writeJpeg(): Exception while closing out", e);
+                    success = false;
+                }
+            }
+        }
+
+        if (success && !tempFile.renameTo(file)) {
+            Log.error("ImageInverter.writeJpeg(): Could not rename the temporary file to: " + file);
+            success = false;
+        }
+
+        if (!success && tempFile != null && tempFile.exists() && !tempFile.delete()) {
+            Log.error("ImageInverter.writeJpeg(): Could not delete the temporary file.");
+        }
+
+        return success;
+    }
+}
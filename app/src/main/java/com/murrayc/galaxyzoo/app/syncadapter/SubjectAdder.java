@@ -24,33 +24,35 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
 import com.murrayc.galaxyzoo.app.Log;
 import com.murrayc.galaxyzoo.app.Utils;
 import com.murrayc.galaxyzoo.app.provider.HttpUtils;
 import com.murrayc.galaxyzoo.app.provider.ImageType;
 import com.murrayc.galaxyzoo.app.provider.Item;
 import com.murrayc.galaxyzoo.app.provider.ItemsContentProvider;
-import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
+import com.murrayc.galaxyzoo.core.Subject;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 public class SubjectAdder {
     private final Context mContext;
 
-    /* A map of remote URIs to the last dates that we tried to download them.
+    private final ImageDownloader mImageDownloader;
+
+    /* The cache directory's modification time when we last found all the cached images,
+     * so we can avoid checking again if nothing has been added or removed since then.
      */
-    private final Map<String, Date> mImageDownloadsInProgress = new HashMap<>();
-    private final RequestQueue mRequestQueue;
+    private long mCacheDirLastModifiedWhenChecked = 0;
     private static final String[] PROJECTION_DOWNLOAD_MISSING_IMAGES = {Item.Columns._ID,
             Item.Columns.LOCATION_STANDARD_DOWNLOADED,
             Item.Columns.LOCATION_STANDARD_URI_REMOTE,
@@ -61,20 +63,19 @@ public class SubjectAdder {
             Item.Columns.LOCATION_INVERTED_DOWNLOADED,
             Item.Columns.LOCATION_INVERTED_URI_REMOTE,
             Item.Columns.LOCATION_INVERTED_URI};
-    private static final String[] PROJECTION_CACHE_URIS_TO_FILES = {
-            Item.Columns.LOCATION_STANDARD_URI_REMOTE,
-            Item.Columns.LOCATION_STANDARD_URI,
-            Item.Columns.LOCATION_THUMBNAIL_URI_REMOTE,
-            Item.Columns.LOCATION_THUMBNAIL_URI,
-            Item.Columns.LOCATION_INVERTED_URI_REMOTE,
-            Item.Columns.LOCATION_INVERTED_URI,
-    };
     private static final String[] PROJECTION_CHECK_IMAGES = {Item.Columns._ID,
             Item.Columns.LOCATION_STANDARD_URI,
             Item.Columns.LOCATION_THUMBNAIL_URI,
             Item.Columns.LOCATION_INVERTED_URI};
-    private static final String[] PROJECTION_URI_PART_DATA = {ItemsContentProvider.URI_PART_DATA};
-    private static final String[] PROJECTION_SUBJECT_ID = {Item.Columns.SUBJECT_ID};
+    private static final String[] PROJECTION_INVERT_IMAGE = {
+            Item.Columns.LOCATION_STANDARD_URI,
+            Item.Columns.LOCATION_INVERTED_DOWNLOADED,
+            Item.Columns.LOCATION_INVERTED_URI_REMOTE,
+            Item.Columns.LOCATION_INVERTED_URI};
+    //This file's absence tells us that the cache directory has been cleared.
+    private static final String CACHE_CHECK_MARKER_FILENAME = ".cache_check";
+
+    private static final String[] PROJECTION_COUNT_AS_COUNT = {"COUNT(*) AS count"};
 
     private static final String WHERE_CLAUSE_DOWNLOAD_NOT_DONE = "(" +
             Item.Columns.LOCATION_STANDARD_DOWNLOADED + " != 1" +
@@ -91,9 +92,9 @@ public class SubjectAdder {
             Item.Columns.LOCATION_INVERTED_DOWNLOADED + " == 1" +
             ")";
 
-    public SubjectAdder(final Context context, final RequestQueue requestQueue) {
+    public SubjectAdder(final Context context) {
         this.mContext = context;
-        this.mRequestQueue = requestQueue;
+        this.mImageDownloader = new ImageDownloader(context, this::onImageDownloadDone);
     }
 
     /**
@@ -129,7 +130,7 @@ public class SubjectAdder {
             final boolean standardDownloaded = c.getInt(1) == 1;
             if (!standardDownloaded) {
                 final String uriStandardRemote = c.getString(2);
-                if (!mImageDownloadsInProgress.containsKey(uriStandardRemote)) {
+                if (!mImageDownloader.isInProgress(uriStandardRemote)) {
                     final String uriStandard = c.getString(3);
                     if (TextUtils.isEmpty(uriStandard)) {
                         //This shouldn't happen.
@@ -147,7 +148,7 @@ public class SubjectAdder {
             final boolean thumbnailDownloaded = c.getInt(4) == 1;
             if (!thumbnailDownloaded) {
                 final String uriThumbnailRemote = c.getString(5);
-                if (!mImageDownloadsInProgress.containsKey(uriThumbnailRemote)) {
+                if (!mImageDownloader.isInProgress(uriThumbnailRemote)) {
                     final String uriThumbnail = c.getString(6);
                     if (TextUtils.isEmpty(uriThumbnail)) {
                         //This shouldn't happen.
@@ -162,10 +163,12 @@ public class SubjectAdder {
                 }
             }
 
+            //We create the inverted image from the standard image,
+            //when the standard image has been downloaded.
             final boolean invertedDownloaded = c.getInt(7) == 1;
             if(!invertedDownloaded) {
                 final String uriInvertedRemote = c.getString(8);
-                if (!mImageDownloadsInProgress.containsKey(uriInvertedRemote)) {
+                if (!mImageDownloader.isInProgress(uriInvertedRemote)) {
                     final String uriInverted = c.getString(9);
                     if (TextUtils.isEmpty(uriInverted)) {
                         //This shouldn't happen.
@@ -175,7 +178,10 @@ public class SubjectAdder {
                         return false;
                     }
 
-                    downloadMissingImage(itemUri, uriInvertedRemote, uriInverted, ImageType.INVERTED);
+                    if (standardDownloaded) {
+                        invertImage(itemUri);
+                    }
+
                     noWorkNeeded = false;
                 }
             }
@@ -212,162 +218,199 @@ public class SubjectAdder {
      * so just forget about these items instead of re-downloading the images.
      * Assume that the system will let the SyncAdaptor download more when it has enough space.
      *
+     * This lists the cache directory once, instead of checking each file separately,
+     * and does nothing if the cache directory has not changed since the last check.
+     *
      * @return True if no work was needed.
      */
     boolean checkForDeletedCachedImages() {
-        boolean noWorkNeeded = true;
+        final File cacheDir = Utils.getExternalCacheDir(getContext());
+        if (cacheDir == null) {
+            Log.error("checkForDeletedCachedImages(): getExternalCacheDir returned null.");
+            return false;
+        }
 
-        final List<String> itemsToAbandon = new ArrayList<>();
+        //Adding or removing a file changes the directory's modification time.
+        //The marker file catches the case that the whole directory was removed and created again.
+        final File marker = new File(cacheDir, CACHE_CHECK_MARKER_FILENAME);
+        if (marker.exists() &&
+                cacheDir.lastModified() == mCacheDirLastModifiedWhenChecked) {
+            return true;
+        }
+
+        final String[] fileNames = cacheDir.list();
+        if (fileNames == null) {
+            Log.error("checkForDeletedCachedImages(): File.list() failed.");
+            return false;
+        }
+
+        final Set<String> cachedFileNames = new HashSet<>(Arrays.asList(fileNames));
 
         //Get all the items that have images that were (at least previously) all fully downloaded:
         final ContentResolver resolver = getContext().getContentResolver();
-
-        //This should be the same orderBy as used by the "next" query in ItemsContentProvider,
-        //though we use the external Column name rather than the internal column name used there,
-        //though they are actually the same.
-        final String orderBy = Item.Columns._ID + " ASC";
         final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_CHECK_IMAGES,
-                WHERE_CLAUSE_DOWNLOAD_ALL_DONE, null, orderBy);
+                WHERE_CLAUSE_DOWNLOAD_ALL_DONE, null, null);
         if (c == null) {
             Log.error("checkForDeletedCachedImages(): Cursor is null.");
             return false;
         }
 
         //Find out if the images still exist in the cache:
+        final List<String> itemsToAbandon = new ArrayList<>();
         while (c.moveToNext()) {
             final String itemId = c.getString(0);
             if (TextUtils.isEmpty(itemId)) {
                 continue;
             }
 
-            final String uriStandard = c.getString(1);
-            if(!cachedImageExists(uriStandard)) {
-                itemsToAbandon.add(itemId);
-                noWorkNeeded = false;
-                continue;
-            }
-
-            final String uriThumbnail = c.getString(2);
-            if(!cachedImageExists(uriThumbnail)) {
+            if (!cachedImageExists(cachedFileNames, c.getString(1)) ||
+                    !cachedImageExists(cachedFileNames, c.getString(2)) ||
+                    !cachedImageExists(cachedFileNames, c.getString(3))) {
+                Log.info("checkForDeletedCachedImages() Abandoning itemId=" + itemId);
                 itemsToAbandon.add(itemId);
-                noWorkNeeded = false;
-                continue;
-            }
-
-            final String uriInverted = c.getString(3);
-            if(!cachedImageExists(uriInverted)) {
-                itemsToAbandon.add(itemId);
-                noWorkNeeded = false;
-                continue;
-            }
-
-            //If the first item did not need to be abandoned,
-            //don't bother checking the rest.
-            //This way, we avoid having to abandon an item
-            //when the user tries to classify a "next" item,
-            //and avoid unnecessary checking when it doesn't look like
-            //the whole cache has been deleted.
-            //If the other items are in fact missing their images
-            //then they will be abandoned when the user tries to view them.
-            if (noWorkNeeded) {
-                break;
             }
         }
 
         c.close();
 
-        //Abandon any items whose images didn't exist any more:
-        for (final String itemId : itemsToAbandon) {
-            Log.info("checkForDeletedCachedImages() Abandoning itemId=" + itemId);
-            final Uri itemUri = Utils.getItemUri(itemId);
-            final int affected = resolver.delete(itemUri, null, null);
-            if (affected != 1) {
+        //Abandon any items whose images didn't exist any more,
+        //in one delete:
+        if (!itemsToAbandon.isEmpty()) {
+            final int affected = resolver.delete(Item.ITEMS_URI,
+                    Utils.getSelectionIn(Item.Columns._ID, itemsToAbandon.size()),
+                    itemsToAbandon.toArray(new String[itemsToAbandon.size()]));
+            if (affected != itemsToAbandon.size()) {
                 Log.error("checkForDeletedCachedImages(): Unexpected number of rows affected: " + affected);
             }
-        }
-
-        return noWorkNeeded;
-    }
-
-    private boolean cachedImageExists(final String fileUri) {
-        final ContentResolver resolver = getContext().getContentResolver();
 
-        //We get the actual local URI so we can check if the local cache file exists.
-        //TODO: Is there a simple way to just check that the file exists via the ContentResolver
-        //without this hacky use of the _data field?
-        final Uri fileUriAsUri = Uri.parse(fileUri);
-        final Cursor c = resolver.query(fileUriAsUri, PROJECTION_URI_PART_DATA,
-                null, null, null);
-        if(c == null) {
-            Log.error("SubjectAdder.cachedImageExists(): Cursor is null.");
+            //Check again next time.
             return false;
         }
 
-        if(!c.moveToNext()) {
-            Log.error("SubjectAdder.cachedImageExists(): query failed.");
-            c.close();
-            return false;
+        try {
+            if (!marker.exists() && !marker.createNewFile()) {
+                Log.error("checkForDeletedCachedImages(): Could not create the marker file.");
+            }
+        } catch (final IOException e) {
+            Log.error("checkForDeletedCachedImages(): Exception while creating the marker file.", e);
         }
 
-        final String localUri = c.getString(0);
-        c.close();
-        if (TextUtils.isEmpty(localUri)) {
-            Log.error("SubjectAdder.cachedImageExists(): _DATA URI was empty.");
+        //Get this after creating the marker file, because that changes it too.
+        mCacheDirLastModifiedWhenChecked = cacheDir.lastModified();
+
+        return true;
+    }
+
+    private static boolean cachedImageExists(final Set<String> cachedFileNames, final String fileUri) {
+        if (TextUtils.isEmpty(fileUri)) {
             return false;
         }
 
-        final File cacheFile = new File(localUri);
-        return cacheFile.exists();
+        return cachedFileNames.contains(ItemsContentProvider.getCacheFileName(fileUri));
     }
 
     /**
+     * Add the subjects to the database, with one bulk insert,
+     * and then start downloading their images.
+     *
      * @param subjects
      * @param asyncFileDownloads Get the image data asynchronously if this is true.
+     * @return Return true if all the subjects are now in the database.
      */
-    public boolean addSubjects(@NonNull final List<ZooniverseClient.Subject> subjects, final boolean asyncFileDownloads) {
+    public boolean addSubjects(@NonNull final List<Subject> subjects, final boolean asyncFileDownloads) {
         if (subjects == null) {
             return false;
         }
 
-        for (final ZooniverseClient.Subject subject : subjects) {
-            if(!addSubject(subject, asyncFileDownloads)) {
-                return false;
-            }
+        if (subjects.isEmpty()) {
+            return true;
         }
 
-        return true;
-    }
+        final ContentResolver resolver = getContext().getContentResolver();
 
+        final int size = subjects.size();
+        final ContentValues[] valuesArray = new ContentValues[size];
+        final String[] subjectIds = new String[size];
+        for (int i = 0; i < size; i++) {
+            final Subject item = subjects.get(i);
+            subjectIds[i] = item.getSubjectId();
+
+            final ContentValues values = new ContentValues();
+            values.put(Item.Columns.SUBJECT_ID, item.getSubjectId());
+            values.put(Item.Columns.ZOONIVERSE_ID, item.getZooniverseId());
+            values.put(Item.Columns.GROUP_ID, item.getGroupId());
+
+            //The ItemsContentProvider will take care of creating local file URIs for the remote URis,
+            //and this SyncAdapter will request that the remote image files are downloaded into those local file URIs.
+            values.put(Item.Columns.LOCATION_STANDARD_URI_REMOTE, item.getLocationStandard());
+            values.put(Item.Columns.LOCATION_THUMBNAIL_URI_REMOTE, item.getLocationThumbnail());
+            values.put(Item.Columns.LOCATION_INVERTED_URI_REMOTE, item.getLocationInverted());
+            valuesArray[i] = values;
+        }
 
-    private void cacheUrisToFiles(final Uri itemUri, final boolean asyncFileDownloads) {
+        //The ItemsContentProvider skips any subjects that are already in the database,
+        //and tells us the IDs of the items that it did insert.
+        final Bundle extras = new Bundle();
+        extras.putParcelableArray(ItemsContentProvider.CALL_EXTRA_VALUES, valuesArray);
+        final Bundle result = resolver.call(Item.ITEMS_URI,
+                ItemsContentProvider.METHOD_BULK_INSERT_ITEMS, null, extras);
+        final List<String> insertedItemIds = (result == null) ? null :
+                result.getStringArrayList(ItemsContentProvider.CALL_EXTRA_ITEM_IDS);
+        if (insertedItemIds == null) {
+            Log.error("addSubjects(): The provider did not return the inserted item IDs.");
+            return false;
+        }
 
-        final ContentResolver resolver = getContext().getContentResolver();
+        //Download the images of only the new items.
+        //Any existing items already had their images downloaded when they were added,
+        //or will have them downloaded by downloadMissingImages().
+        if (!insertedItemIds.isEmpty()) {
+            final String selection = "(" + Utils.getSelectionIn(Item.Columns._ID, insertedItemIds.size()) + ") AND (" +
+                    WHERE_CLAUSE_DOWNLOAD_NOT_DONE + ")";
+            final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_DOWNLOAD_MISSING_IMAGES,
+                    selection, insertedItemIds.toArray(new String[insertedItemIds.size()]), null);
+            if (c == null) {
+                Log.error("addSubjects(): Cursor is null.");
+                return false;
+            }
 
-        //Actually cache the URIs' data in the local files:
-        //This will mark the data as fully downloaded by setting the *Downloaded boolean fields,
-        //so we do this only after creating the items record.
+            while (c.moveToNext()) {
+                final Uri itemUri = Utils.getItemUri(c.getString(0));
+                cacheUrisToFiles(c, itemUri, asyncFileDownloads);
+            }
 
-        final Cursor c = resolver.query(itemUri, PROJECTION_CACHE_URIS_TO_FILES,
-                null, null, null);
-        if (c == null) {
-            Log.error("cacheUrisToFiles(): Cursor is null.");
-            return;
+            c.close();
         }
 
-        while (c.moveToNext()) {
-            final String uriStandardRemote = c.getString(0);
-            final String uriStandard = c.getString(1);
-            final String uriThumbnailRemote = c.getString(2);
-            final String uriThumbnail = c.getString(3);
-            final String uriInvertedRemote = c.getString(4);
-            final String uriInverted = c.getString(5);
-
-            cacheUriToFileWithNullChecks(uriStandardRemote, uriStandard, itemUri, ImageType.STANDARD, asyncFileDownloads);
-            cacheUriToFileWithNullChecks(uriThumbnailRemote, uriThumbnail, itemUri, ImageType.THUMBNAIL, asyncFileDownloads);
-            cacheUriToFileWithNullChecks(uriInvertedRemote, uriInverted, itemUri, ImageType.INVERTED, asyncFileDownloads);
+        return countSubjectsInDatabase(subjectIds) == countDistinct(subjectIds);
+    }
+
+    /**
+     * Actually cache the URIs' data in the local files:
+     * This will mark the data as fully downloaded by setting the *Downloaded boolean fields,
+     * so we do this only after creating the items record.
+     *
+     * @param c A cursor, positioned at an item's row, with the PROJECTION_DOWNLOAD_MISSING_IMAGES columns.
+     * @param itemUri
+     * @param asyncFileDownloads
+     */
+    private void cacheUrisToFiles(final Cursor c, final Uri itemUri, final boolean asyncFileDownloads) {
+        if (c.getInt(1) != 1) {
+            cacheUriToFileWithNullChecks(c.getString(2), c.getString(3), itemUri, ImageType.STANDARD, asyncFileDownloads);
         }
 
-        c.close();
+        if (c.getInt(4) != 1) {
+            cacheUriToFileWithNullChecks(c.getString(5), c.getString(6), itemUri, ImageType.THUMBNAIL, asyncFileDownloads);
+        }
+
+        //Otherwise the inverted image will be created when the standard image has been downloaded.
+        if (c.getInt(1) == 1 && c.getInt(7) != 1) {
+            invertImage(itemUri);
+        }
+    }
+
+    private static int countDistinct(final String[] values) {
+        return new HashSet<>(Arrays.asList(values)).size();
     }
 
     /**
@@ -393,7 +436,7 @@ public class SubjectAdder {
     }
 
     /**
-     * Download bytes from a url and store them in a file, optionally asynchronously in spawned thread.
+     * Download bytes from a url and store them in a file, optionally asynchronously on a download thread.
      *
      * @param cacheFileUri A Content URI for a cache file.
      * @param asyncFileDownloads Get the image data asynchronously if this is true.
@@ -407,57 +450,69 @@ public class SubjectAdder {
             throw new IllegalArgumentException("uriFileToCache is empty or null");
         }
 
-        //Don't attempt it if it is already in progress.
-        if (mImageDownloadsInProgress.containsKey(uriFileToCache)) {
-            //TODO: Check the actual date?
-            return;
-        }
-
         //Don't try if there is no suitable network connection:
         HttpUtils.throwIfNoNetwork(getContext());
 
-        final Date now = new Date();
-        mImageDownloadsInProgress.put(uriFileToCache, now);
-
-        if (asyncFileDownloads) {
-            Log.info("cacheUriToFile(): uriFileToCache=" + uriFileToCache);
+        //This does nothing more if the same image is already being downloaded.
+        mImageDownloader.download(uriFileToCache, cacheFileUri, itemUri, imageType, asyncFileDownloads);
+    }
 
-            final Request<Boolean> request = new HttpUtils.FileCacheRequest(getContext(), uriFileToCache, cacheFileUri,
-                    response -> onImageDownloadDone(response, uriFileToCache, itemUri, imageType),
-                    error -> {
-                        Log.error("cacheUriToFile.onErrorResponse()", error);
-                        onImageDownloadDone(false, uriFileToCache, itemUri, imageType);
-                    });
+    private void onImageDownloadDone(final boolean success, final Uri itemUri, final ImageType imageType) {
+        if (success) {
+            markImageAsDownloaded(itemUri, imageType);
 
-            //We won't request the same image again if it succeeded once:
-            addRequestToQueue(request);
-        } else {
-            boolean response = false;
-            try {
-                response = HttpUtils.cacheUriToFileSync(getContext(), mRequestQueue, uriFileToCache, cacheFileUri);
-            } catch (final HttpUtils.FileCacheException e) {
-                Log.error("SubjectAdder.CacheUriToFile(): Exception from HttpUtils.cacheUriToFileSync", e);
+            //This is already on a background thread,
+            //and the standard image's file is probably still in the filesystem's cache.
+            if (imageType == ImageType.STANDARD) {
+                invertImage(itemUri);
             }
-
-            onImageDownloadDone(response, uriFileToCache, itemUri, imageType);
+        } else {
+            Log.error("onImageDownloadDone(): cacheUriToContentUriFileSync(): failed.");
         }
     }
 
-    private void addRequestToQueue(final Request<Boolean> request) {
-        //We won't request the same image again if it succeeded once,
-        //so don't waste memory or storage caching it.
-        //(We are downloading it to our own cache, of course.)
-        request.setShouldCache(false);
+    /**
+     * Create the inverted image from the (already downloaded) standard image,
+     * instead of downloading the inverted image.
+     * If that fails, download the inverted image instead.
+     *
+     * @param itemUri
+     */
+    private void invertImage(final Uri itemUri) {
+        final ContentResolver resolver = getContext().getContentResolver();
+        final Cursor c = resolver.query(itemUri, PROJECTION_INVERT_IMAGE,
+                null, null, null);
+        if (c == null) {
+            Log.error("invertImage(): Cursor is null.");
+            return;
+        }
 
-        mRequestQueue.add(request);
-    }
+        if (!c.moveToFirst()) {
+            //The item has probably been removed since the download started.
+            c.close();
+            return;
+        }
 
-    private void onImageDownloadDone(final boolean success, final String uriFileToCache, final Uri itemUri, final ImageType imageType) {
-        markImageDownloadAsNotInProgress(uriFileToCache);
-        if (success) {
-            markImageAsDownloaded(itemUri, imageType, uriFileToCache);
+        final String uriStandard = c.getString(0);
+        final boolean invertedDownloaded = c.getInt(1) == 1;
+        final String uriInvertedRemote = c.getString(2);
+        final String uriInverted = c.getString(3);
+        c.close();
+
+        if (invertedDownloaded) {
+            return;
+        }
+
+        if (TextUtils.isEmpty(uriStandard) || TextUtils.isEmpty(uriInverted)) {
+            Log.error("invertImage(): Empty uriStandard or uriInverted.");
+            return;
+        }
+
+        if (ImageInverter.invertSync(getContext(), uriStandard, uriInverted)) {
+            markImageAsDownloaded(itemUri, ImageType.INVERTED);
         } else {
-            Log.error("onImageDownloadDone(): cacheUriToContentUriFileSync(): failed.");
+            Log.error("invertImage(): Could not create the inverted image, so downloading it instead.");
+            cacheUriToFileWithNullChecks(uriInvertedRemote, uriInverted, itemUri, ImageType.INVERTED, true /* async */);
         }
     }
 
@@ -469,20 +524,7 @@ public class SubjectAdder {
         HttpUtils.throwIfNoNetwork(getContext());
     }
 
-
-    private void markImageDownloadAsNotInProgress(final String uriFileToCache) {
-        mImageDownloadsInProgress.remove(uriFileToCache);
-    }
-
-    private void markImageAsDownloaded(final Uri itemUri, final ImageType imageType, final String uriFileToCache) {
-
-        //Don't try downloading this again later:
-
-        //Actually the caller should already have removed this,
-        //regardless of the download's success or failure.
-        //but let's be sure:
-        markImageDownloadAsNotInProgress(uriFileToCache);
-
+    private void markImageAsDownloaded(final Uri itemUri, final ImageType imageType) {
         //Let users of the ContentProvider API know that the image has been fully downloaded
         //so it's safe to use it:
         String fieldName = null;
@@ -515,56 +557,18 @@ public class SubjectAdder {
         //}
     }
 
-    /**
-     * @param item
-     * @param asyncFileDownloads Get the image data asynchronously if this is true.
-     */
-    private boolean addSubject(final ZooniverseClient.Subject item, final boolean asyncFileDownloads) {
-        if (subjectIsInDatabase(item.getSubjectId())) {
-            //It is already in the database.
-            //TODO: Update the row?
-            return true;
-        }
-
-        final ContentResolver resolver = getContext().getContentResolver();
-
-        final ContentValues values = new ContentValues();
-        values.put(Item.Columns.SUBJECT_ID, item.getSubjectId());
-        values.put(Item.Columns.ZOONIVERSE_ID, item.getZooniverseId());
-        values.put(Item.Columns.GROUP_ID, item.getGroupId());
-
-        //The ItemsContentProvider will take care of creating local file URIs for the remote URis,
-        //and this SyncAdapter will request that the remote image files are downloaded into those local file URIs.
-        values.put(Item.Columns.LOCATION_STANDARD_URI_REMOTE, item.getLocationStandard());
-        values.put(Item.Columns.LOCATION_THUMBNAIL_URI_REMOTE, item.getLocationThumbnail());
-        values.put(Item.Columns.LOCATION_INVERTED_URI_REMOTE, item.getLocationInverted());
-
-        final Uri itemUri = resolver.insert(Item.ITEMS_URI, values);
-        if (itemUri == null) {
-            Log.error("could not insert content values: " + values);
-            return false;
-        }
-
-        cacheUrisToFiles(itemUri, asyncFileDownloads);
-
-        //TODO: notifyRowChangeById(rowId);
-        return true;
-    }
-
-    private boolean subjectIsInDatabase(final String subjectId) {
-        //TODO: Use COUNT_AS_COUNT ?
+    private int countSubjectsInDatabase(final String[] subjectIds) {
         final ContentResolver resolver = getContext().getContentResolver();
 
-        final String whereClause = Item.Columns.SUBJECT_ID + " = ?"; //We use ? to avoid SQL Injection.
-        final String[] selectionArgs = {subjectId};
-        final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_SUBJECT_ID,
-                whereClause, selectionArgs, null);
+        final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_COUNT_AS_COUNT,
+                Utils.getSelectionIn(Item.Columns.SUBJECT_ID, subjectIds.length), subjectIds, null);
         if (c == null) {
-            Log.error("subjectIsInDatabase(): Cursor is null.");
-            return false;
+            Log.error("countSubjectsInDatabase(): Cursor is null.");
+            return 0;
         }
 
-        final boolean result = c.getCount() > 0;
+        c.moveToFirst();
+        final int result = c.getInt(0);
         c.close();
         return result;
     }
@@ -27,44 +27,64 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.SyncResult;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
 import com.murrayc.galaxyzoo.app.Log;
 import com.murrayc.galaxyzoo.app.LoginUtils;
+import com.murrayc.galaxyzoo.app.NamedThreadFactory;
 import com.murrayc.galaxyzoo.app.R;
 import com.murrayc.galaxyzoo.app.Utils;
-import com.murrayc.galaxyzoo.app.provider.ClassificationAnswer;
-import com.murrayc.galaxyzoo.app.provider.ClassificationCheckbox;
+import com.murrayc.galaxyzoo.app.provider.Classification;
 import com.murrayc.galaxyzoo.app.provider.Config;
 import com.murrayc.galaxyzoo.app.provider.HttpUtils;
 import com.murrayc.galaxyzoo.app.provider.Item;
-import com.murrayc.galaxyzoo.app.provider.client.MoreItemsJsonParser;
 import com.murrayc.galaxyzoo.app.provider.client.ZooniverseClient;
+import com.murrayc.galaxyzoo.core.ClassificationKeys;
+import com.murrayc.galaxyzoo.core.NameValuePair;
+import com.murrayc.galaxyzoo.core.Subject;
+import com.murrayc.galaxyzoo.core.SubjectCallback;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by murrayc on 10/4/14.
  */
 public class SyncAdapter extends AbstractThreadedSyncAdapter {
     private static final String COUNT_AS_COUNT = "COUNT(*) AS count";
-    private static final String PARAM_PART_CLASSIFICATION = "classification";
     private static final String WHERE_CLAUSE_NOT_DONE = Item.Columns.DONE + " != 1";
     private static final String WHERE_CLAUSE_UPLOADED = Item.Columns.UPLOADED + " == 1";
-    private static final String[] PROJECTION_ITEMS_OUTSTANDING = {Item.Columns._ID,
-            Item.Columns.SUBJECT_ID,
-            Item.Columns.GROUP_ID};
-    private static final String[] PROJECTION_ID = {Item.Columns._ID};
-    private static final String[] PROJECTION_FAVORITE = {Item.Columns.FAVORITE};
-    private static final String[] PROJECTION_CLASSIFICATION_CHECKBOX_ID = {ClassificationCheckbox.Columns.CHECKBOX_ID};
-    private int mUploadsInProgress = 0;
-
-    private boolean mRequestMoreItemsTaskInProgress = false;
+    private static final String[] PROJECTION_CLASSIFICATIONS_OUTSTANDING = {Classification.Columns.ITEM_ID,
+            Classification.Columns.SUBJECT_ID,
+            Classification.Columns.GROUP_ID,
+            Classification.Columns.FAVORITE,
+            Classification.Columns.SEQUENCE,
+            Classification.Columns.QUESTION_ID,
+            Classification.Columns.ANSWER_ID,
+            Classification.Columns.CHECKBOX_ID};
+    private static final String WHERE_CLAUSE_CLASSIFICATIONS_OUTSTANDING =
+            "(" + Classification.Columns.DONE + " == 1) AND " +
+                    "(" + Classification.Columns.UPLOADED + " != 1)";
+    //The checkboxes are sorted just so the parameters are always in the same order:
+    private static final String ORDER_BY_CLASSIFICATIONS = Classification.Columns.ITEM_ID + " ASC, " +
+            Classification.Columns.SEQUENCE + " ASC, " +
+            Classification.Columns.CHECKBOX_ID + " ASC";
+
+    //This runs the uploads, a few at a time:
+    private final UploadExecutor mUploadExecutor;
+
+    //This requests more subjects, one request at a time:
+    private final ThreadPoolExecutor mRequestMoreItemsExecutor;
+
+    private volatile boolean mRequestMoreItemsTaskInProgress = false;
 
     //This communicates with the remote server:
 
@@ -74,21 +94,32 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
     //and download image files to the local cache.
     private final SubjectAdder mSubjectAdder;
 
-    //Out Runnable tasks use this to post results back to our main thread.
-    private final Handler mHandler;
-    private static final String[] PROJECTION_UPLOAD = {ClassificationAnswer.Columns.SEQUENCE,
-            ClassificationAnswer.Columns.QUESTION_ID,
-            ClassificationAnswer.Columns.ANSWER_ID};
     private static final String[] PROJECTION_COUNT_AS_COUNT = new String[]{COUNT_AS_COUNT};
 
+    private static final long REQUEST_MORE_ITEMS_KEEP_ALIVE_SECONDS = 30;
+
+    //Streamed subjects are added to the database a few at a time,
+    //so the first images can start downloading soon,
+    //without a separate transaction and query for every subject.
+    private static final int STREAMED_SUBJECTS_CHUNK_SIZE = 3;
+
     public SyncAdapter(final Context context, final boolean autoInitialize) {
         super(context, autoInitialize);
-        mHandler = new Handler(Looper.getMainLooper());
+        mUploadExecutor = new UploadExecutor(Config.MAXIMUM_CONCURRENT_UPLOADS,
+                Config.MAXIMUM_QUEUED_UPLOADS, Config.UPLOAD_TIMEOUT_MILLIS);
+
+        mRequestMoreItemsExecutor = new ThreadPoolExecutor(1, 1,
+                REQUEST_MORE_ITEMS_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("galaxyzoo-subjects"));
+
+        //Don't keep an idle thread around between syncs:
+        mRequestMoreItemsExecutor.allowCoreThreadTimeOut(true);
 
         //Uncomment this to make debugger breakpoints work: android.os.Debug.waitForDebugger();
 
         mClient = new ZooniverseClient(context, Config.SERVER);
-        mSubjectAdder = new SubjectAdder(context, mClient.getRequestQueue());
+        mSubjectAdder = new SubjectAdder(context);
 
         //We don't listen for the SharedPreferences changes here because it doesn't currently
         //work across processes, so our listener would never be called.
@@ -99,6 +130,15 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         doRegularTasks();
     }
 
+    @Override
+    public void onSyncCanceled() {
+        super.onSyncCanceled();
+
+        //Stop any uploads that have not finished yet.
+        //They will be tried again during the next sync.
+        mUploadExecutor.cancelAll();
+    }
+
     /**
      * Do any uploads, downloads, or removals that are currently necessary.
      * This might not finish all necessary work, so subsequent calls might be necessary.
@@ -117,8 +157,7 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         uploadOutstandingClassifications();
         removeOldSubjects();
 
-        //TODO: Don't bother checking that each image still exists, repeatedly -
-        //instead only check if a special file has been removed from the cache?
+        //This is cheap when nothing has been added to or removed from the cache directory.
         checkImagesStillExist();
 
         Log.info("doRegularTasks() end");
@@ -181,28 +220,72 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
             return;
         }
 
+        mRequestMoreItemsTaskInProgress = true;
 
+        //The response is parsed as it arrives, so we can add the first subjects,
+        //and start downloading their images, before the last subject has arrived.
+        mRequestMoreItemsExecutor.execute(() -> {
+            final StreamedSubjectsAdder adder = new StreamedSubjectsAdder(count);
+            try {
+                mClient.requestMoreItemsStreamingSync(count, adder);
+            } catch (final HttpUtils.NoNetworkException e) {
+                //Ignore this - it is normal if wifi-only is set in the settings
+                //and if we are then not on a wi-fi connection.
+                Log.info("SyncAdapter: requestMoreItemsStreamingSync(): Ignoring NoNetworkException.");
+            } catch (final ZooniverseClient.RequestMoreItemsException e) {
+                Log.error("SyncAdapter: requestMoreItemsStreamingSync() failed", e);
+            } finally {
+                //Add any remaining subjects, even if the response ended early:
+                adder.flush();
+                mRequestMoreItemsTaskInProgress = false;
+            }
+        });
+    }
 
-        mRequestMoreItemsTaskInProgress = true;
+    /**
+     * Adds the subjects from one streamed response, STREAMED_SUBJECTS_CHUNK_SIZE at a time.
+     * This is only used on the mRequestMoreItemsExecutor thread.
+     */
+    private final class StreamedSubjectsAdder implements SubjectCallback {
+        private List<Subject> mPending = new ArrayList<>(STREAMED_SUBJECTS_CHUNK_SIZE);
 
-        try {
-            mClient.requestMoreItemsAsync(count,
-                    response -> {
-                        final List<ZooniverseClient.Subject> result = MoreItemsJsonParser.parseMoreItemsResponseContent(response);
-                        onQueryTaskFinished(result);
-                        mRequestMoreItemsTaskInProgress = false;
-                    },
-                    error -> {
-                        Log.error("ZooniverseClient.requestMoreItemsSync(): request failed", error);
-                        mRequestMoreItemsTaskInProgress = false;
-                    });
-        } catch (final HttpUtils.NoNetworkException e) {
-            //Ignore this - it is normal if wifi-only is set in the settings
-            //and if we are then not on a wi-fi connection.
-            Log.info("SyncAdapter.requestMoreItemsAsync(): Ignoring NoNetworkException.");
-            mRequestMoreItemsTaskInProgress = false;
+        //How many more subjects we still want from this response.
+        private int mRemaining;
+
+        /**
+         * @param count The number of subjects that were missing when we requested them.
+         */
+        StreamedSubjectsAdder(final int count) {
+            mRemaining = count;
+        }
+
+        /**
+         * This is called for each subject, while the rest of the response is still arriving.
+         */
+        @Override
+        public void onSubject(@NonNull final Subject subject) {
+            //Check that we are not adding too many,
+            //which can happen if the server gives us more than we asked for.
+            if (mRemaining <= 0) {
+                return;
+            }
+
+            mRemaining--;
+            mPending.add(subject);
+            if (mPending.size() >= STREAMED_SUBJECTS_CHUNK_SIZE) {
+                flush();
+            }
         }
 
+        void flush() {
+            if (mPending.isEmpty()) {
+                return;
+            }
+
+            final List<Subject> subjects = mPending;
+            mPending = new ArrayList<>(STREAMED_SUBJECTS_CHUNK_SIZE);
+            mSubjectAdder.addSubjects(subjects, true /* async */);
+        }
     }
 
     private int getNotDoneNeededForCache() {
@@ -249,24 +332,20 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
      * @return Return true if we know for sure that no further uploading is currently necessary.
      */
     private boolean uploadOutstandingClassifications() {
-        //To keep things simple, don't do this while it is already happening.
-        //This only ever happens on this thread so there should be no need for a lock here.
-        if (mUploadsInProgress > 0)
-            return false;
+        Log.info("uploadOutstandingClassifications(): upload metrics: " + mUploadExecutor.getMetrics());
 
         // TODO: Request re-authentication when the server says we have used the wrong name + api_key.
         // What does the server reply in that case?
         // See https://github.com/zooniverse/Galaxy-Zoo/issues/184
         final LoginUtils.LoginDetails loginDetails = LoginUtils.getAccountLoginDetails(getContext());
 
-        // query the database for any item whose classification is not yet uploaded.
+        // query the database for the complete classification of any item
+        // whose classification is not yet uploaded.
+        // This gets everything with one query, instead of separate queries for each item's
+        // favorite flag, answers, and each answer's checkboxes.
         final ContentResolver resolver = getContentResolver();
-
-        final String whereClause =
-                "(" + Item.Columns.DONE + " == 1) AND " +
-                        "(" + Item.Columns.UPLOADED + " != 1)";
-        final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_ITEMS_OUTSTANDING,
-                whereClause, null, null); //TODO: Order by?
+        final Cursor c = resolver.query(Classification.CLASSIFICATIONS_URI, PROJECTION_CLASSIFICATIONS_OUTSTANDING,
+                WHERE_CLAUSE_CLASSIFICATIONS_OUTSTANDING, null, ORDER_BY_CLASSIFICATIONS);
         if (c == null) {
             Log.error("uploadOutstandingClassifications(): Cursor is null.");
             return false;
@@ -277,22 +356,89 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
             return true; //Tell the caller that no action was necessary.
         }
 
+        //The items are uploaded in batches, one batch per group,
+        //because each group has its own upload URI.
+        //The batches keep the order of the query, so earlier items are still uploaded first.
+        final Map<String, List<UploadParameters>> batches = new LinkedHashMap<>();
+
+        //The rows are sorted by item, so we have all of an item's rows
+        //when we reach the next item's rows.
+        UploadParameters parameters = null;
         while (c.moveToNext()) {
             final String itemId = c.getString(0);
-            final String subjectId = c.getString(1);
-            final String groupId = c.getString(2);
+            if ((parameters == null) || !TextUtils.equals(parameters.itemId, itemId)) {
+                if (parameters != null) {
+                    addToUploadBatch(batches, parameters, loginDetails);
+                }
+
+                parameters = new UploadParameters(itemId, c.getString(1), c.getString(2),
+                        c.getInt(3) == 1);
+            }
 
+            //This is null if the item has no answers.
+            if (!c.isNull(5)) {
+                parameters.addRow(c.getInt(4), c.getString(5), c.getString(6),
+                        c.getString(7) /* null if there are no checkboxes */);
+            }
+        }
+
+        if (parameters != null) {
+            addToUploadBatch(batches, parameters, loginDetails);
+        }
 
-            mUploadsInProgress++;
-            final UploadTask task = new UploadTask(itemId, subjectId, groupId, loginDetails.name, loginDetails.authApiKey);
-            final Thread thread = new Thread(task);
-            thread.start();
+        //Submit the remaining, not yet full, batches:
+        for (final List<UploadParameters> batch : batches.values()) {
+            submitUploadBatch(batch, loginDetails);
         }
 
         c.close();
         return false;
     }
 
+    /**
+     * Add the item to its group's batch,
+     * submitting the batch if it is then full.
+     */
+    private void addToUploadBatch(@NonNull final Map<String, List<UploadParameters>> batches,
+                                  @NonNull final UploadParameters parameters,
+                                  final LoginUtils.LoginDetails loginDetails) {
+        //Don't upload it again if it is still being uploaded by an earlier sync:
+        if (mUploadExecutor.isSubmitted(parameters.itemId)) {
+            return;
+        }
+
+        List<UploadParameters> batch = batches.get(parameters.groupId);
+        if (batch == null) {
+            batch = new ArrayList<>();
+            batches.put(parameters.groupId, batch);
+        }
+
+        batch.add(parameters);
+
+        if (batch.size() >= Config.MAXIMUM_UPLOAD_BATCH_SIZE) {
+            submitUploadBatch(batch, loginDetails);
+            batches.remove(parameters.groupId);
+        }
+    }
+
+    /**
+     * @param batch The items to upload, which must all be in the same group.
+     */
+    private void submitUploadBatch(@NonNull final List<UploadParameters> batch, final LoginUtils.LoginDetails loginDetails) {
+        final List<String> itemIds = new ArrayList<>(batch.size());
+        final List<List<NameValuePair>> classifications = new ArrayList<>(batch.size());
+        for (final UploadParameters parameters : batch) {
+            itemIds.add(parameters.itemId);
+            classifications.add(parameters.getNameValuePairs());
+        }
+
+        //This does nothing if any of the items are already being uploaded,
+        //or if too many uploads are already queued:
+        final UploadBatchTask task = new UploadBatchTask(batch.get(0).groupId, itemIds,
+                classifications, loginDetails.name, loginDetails.authApiKey);
+        mUploadExecutor.submit(itemIds, task);
+    }
+
     /**
      * Remove old classified subjects if we have too many.
      *
@@ -303,37 +449,18 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         final int max = getKeepCount();
         if (count > max) {
             Log.info("removeOldSubjects(): start");
-            //Get the oldest done (and uploaded) items:
-            final ContentResolver resolver = getContentResolver();
 
-            //ISO-8601 dates can be alphabetically sorted to get date-time order:
-            final String orderBy = Item.Columns.DATETIME_DONE + " ASC";
+            //Remove the oldest done (and uploaded) items, in one go.
+            //ItemsContentProvider takes care of deleting related files, classification answers, etc:
             final int countToRemove = count - max;
-            //TODO: Use this: final String limit = Integer.toString(countToRemove); //TODO: Is this locale-independent?
-            final Cursor c = resolver.query(Item.ITEMS_URI, PROJECTION_ID,
-                    WHERE_CLAUSE_UPLOADED, null, orderBy);
-            if (c == null) {
-                Log.error("removeOldSubjects(): Cursor is null.");
-                return false;
-            }
-
-            //Remove them one by one:
-            int removed = 0;
-            while (c.moveToNext()) {
-                final String itemId = c.getString(0);
-                if (!TextUtils.isEmpty(itemId)) {
-                    removeItem(itemId);
-
-                    //Only remove enough:
-                    removed++;
-                    if (removed == countToRemove) {
-                        break;
-                    }
-                }
+            final Uri uri = Item.ITEMS_URI.buildUpon()
+                    .appendQueryParameter(Item.QUERY_PARAMETER_LIMIT, Integer.toString(countToRemove))
+                    .build();
+            final int removed = getContentResolver().delete(uri, WHERE_CLAUSE_UPLOADED, null);
+            if (removed != countToRemove) {
+                Log.error("removeOldSubjects(): Unexpected number of items removed: " + removed);
             }
 
-            c.close();
-
             Log.info("removeOldSubjects(): end");
 
             return false;
@@ -342,191 +469,118 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    private void removeItem(final String itemId) {
-        final ContentResolver resolver = getContentResolver();
-
-        //ItemsContentProvider takes care of deleting related files, classification answers, etc:
-        if(resolver.delete(Utils.getItemUri(itemId), null, null) < 1) {
-            Log.error("removeItem(): No item rows were removed.");
-        }
-    }
-
-    private boolean doUploadSync(final String itemId, final String subjectId, final String groupId, final String authName, final String authApiKey) throws ZooniverseClient.UploadException {
+    /**
+     * Builds the HTTP POST parameters for one item's classification,
+     * from the item's rows in a Classification.CLASSIFICATIONS_URI cursor.
+     */
+    private static final class UploadParameters {
+        final String itemId;
+        final String groupId;
 
         //Note: I tried using HttpPost.getParams().setParameter() instead of the NameValuePairs,
         //but that did not allow multiple parameters with the same name, which we need.
-        final List<HttpUtils.NameValuePair> nameValuePairs = new ArrayList<>();
+        private final List<NameValuePair> mNameValuePairs = new ArrayList<>();
 
-        nameValuePairs.add(new HttpUtils.NameValuePair(PARAM_PART_CLASSIFICATION + "[subject_ids][]",
-                subjectId));
+        private int mMaxSequence = 0;
+        private int mCurrentSequence = -1;
+        private String mCurrentQuestionId = null;
 
-        final ContentResolver resolver = getContentResolver();
+        UploadParameters(final String itemId, final String subjectId, final String groupId, final boolean favorite) {
+            this.itemId = itemId;
+            this.groupId = groupId;
 
-        //Mark it as a favorite if necessary:
-        {
-            final Cursor c = resolver.query(Utils.getItemUri(itemId),
-                    PROJECTION_FAVORITE, null, null, null);
-            if (c == null) {
-                Log.error("doUploadSync(): Cursor is null.");
-                return false;
-            }
+            mNameValuePairs.add(ClassificationKeys.subjectId(subjectId));
 
-            if (c.moveToFirst()) {
-                final int favorite = c.getInt(0);
-                if (favorite == 1) {
-                    nameValuePairs.add(new HttpUtils.NameValuePair(PARAM_PART_CLASSIFICATION + "[favorite][]",
-                            "true"));
-                }
+            //Mark it as a favorite if necessary:
+            if (favorite) {
+                mNameValuePairs.add(ClassificationKeys.favorite());
             }
-
-            c.close();
         }
 
+        /**
+         * Add the parameters for one row.
+         * An answer with several checkboxes has several rows, in sequence.
+         *
+         * @param sequence
+         * @param questionId
+         * @param answerId
+         * @param checkboxId This may be null.
+         */
+        void addRow(final int sequence, final String questionId, final String answerId, final String checkboxId) {
+            if ((mCurrentQuestionId == null) || (sequence != mCurrentSequence)) {
+                mCurrentSequence = sequence;
+
+                if (sequence > mMaxSequence) {
+                    mMaxSequence = sequence;
+                }
 
-        final Cursor c;
-        {
-            final String selection = ClassificationAnswer.Columns.ITEM_ID + " = ?"; //We use ? to avoid SQL Injection.
-            final String[] selectionArgs = {itemId};
-            final String orderBy = ClassificationAnswer.Columns.SEQUENCE + " ASC";
-            c = resolver.query(ClassificationAnswer.CONTENT_URI,
-                    PROJECTION_UPLOAD, selection, selectionArgs, orderBy);
-            if (c == null) {
-                Log.error("doUploadSync(): Cursor is null.");
-                return false;
-            }
-        }
-
-        int max_sequence = 0;
-        while (c.moveToNext()) {
-            final int sequence = c.getInt(0);
-            final String questionId = c.getString(1);
-            final String answerId = c.getString(2);
-
-            //We could instead ORDER BY the sequence but that might be slightly slower and need a index.
-            if(sequence > max_sequence) {
-                max_sequence = sequence;
-            }
-
-            //Add the question's answer:
-            //TODO: Is the string representation of sequence locale-dependent?
-            final String questionKey =
-                    getAnnotationPart(sequence) + "[" + questionId + "]";
-            nameValuePairs.add(new HttpUtils.NameValuePair(questionKey, answerId));
-
-
-            final String selection = "(" + ClassificationCheckbox.Columns.ITEM_ID + " = ?) AND " +
-                    "(" + ClassificationCheckbox.Columns.QUESTION_ID + " == ?)"; //We use ? to avoid SQL Injection.
-            final String[] selectionArgs = {itemId, questionId};
-
-            //Add the question's answer's selected checkboxes, if any:
-            //The sequence will be the same for any selected checkbox for the same answer,
-            //so we don't bother getting that, or sorting by that.
-            final String orderBy = ClassificationCheckbox.Columns.CHECKBOX_ID + " ASC";
-            final Cursor cursorCheckboxes = resolver.query(ClassificationCheckbox.CONTENT_URI,
-                    PROJECTION_CLASSIFICATION_CHECKBOX_ID, selection, selectionArgs, orderBy);
-            if (cursorCheckboxes == null) {
-                Log.error("doUploadSync(): cursorCheckboxes is null.");
-                c.close();
-                return false;
+                //Add the question's answer:
+                mCurrentQuestionId = questionId;
+                mNameValuePairs.add(ClassificationKeys.annotation(sequence, questionId, answerId));
             }
 
-            while (cursorCheckboxes.moveToNext()) {
-                final String checkboxId = cursorCheckboxes.getString(0);
-
-                //TODO: The Galaxy-Zoo server expects us to reuse the parameter name,
-                //TODO: Is the string representation of sequence locale-dependent?
-                nameValuePairs.add(new HttpUtils.NameValuePair(questionKey, checkboxId));
+            //Add the question's answer's selected checkbox, if any:
+            if (checkboxId != null) {
+                mNameValuePairs.add(ClassificationKeys.annotation(mCurrentSequence, mCurrentQuestionId, checkboxId));
             }
-
-            cursorCheckboxes.close();
         }
 
-        c.close();
-
+        List<NameValuePair> getNameValuePairs() {
+            final List<NameValuePair> result = new ArrayList<>(mNameValuePairs);
 
-        //Help the server know that the classification is from this Android app,
-        //by reusing the User-Agent string as a parameter value.
-        //See https://github.com/murraycu/android-galaxyzoo/issues/11
-        final String key =
-                getAnnotationPart(max_sequence + 1 ) + "[user_agent]";
-        nameValuePairs.add(new HttpUtils.NameValuePair(key, HttpUtils.getUserAgent()));
+            //Help the server know that the classification is from this Android app,
+            //by reusing the User-Agent string as a parameter value.
+            //See https://github.com/murraycu/android-galaxyzoo/issues/11
+            result.add(ClassificationKeys.userAgent(mMaxSequence + 1, HttpUtils.getUserAgent()));
 
-        return mClient.uploadClassificationSync(authName, authApiKey, groupId, nameValuePairs);
-    }
-
-    private static String getAnnotationPart(final int sequence) {
-        return PARAM_PART_CLASSIFICATION + "[annotations][" + sequence + "]";
+            return result;
+        }
     }
 
-    private class UploadTask implements Runnable {
-        private final String mItemId ;
-        private final String mSubjectId;
+    /**
+     * Uploads the classifications of several items in the same group,
+     * one after the other on the same connection.
+     */
+    private class UploadBatchTask implements Runnable {
         private final String mGroupId;
+        private final List<String> mItemIds;
+        private final List<List<NameValuePair>> mClassifications;
         private final String mAuthName;
         private final String mAuthApiKey;
 
-        public UploadTask(final String itemId, final String subjectId, final String groupId, final String authName, final String authApiKey) {
-            mItemId = itemId;
-            mSubjectId = subjectId;
+        public UploadBatchTask(final String groupId, final List<String> itemIds, final List<List<NameValuePair>> classifications, final String authName, final String authApiKey) {
             mGroupId = groupId;
+            mItemIds = itemIds;
+            mClassifications = classifications;
             mAuthName = authName;
             mAuthApiKey = authApiKey;
         }
 
         @Override
         public void run() {
-            Log.info("UploadTask.run()");
-            boolean result = false;
+            Log.info("UploadBatchTask.run(): count=" + mItemIds.size());
             try {
-                result = doUploadSync(mItemId, mSubjectId, mGroupId, mAuthName, mAuthApiKey);
+                //We mark each item in this upload thread, as soon as it has been uploaded,
+                //before the UploadExecutor forgets this task,
+                //so the item cannot be uploaded again before it is marked as uploaded.
+                mClient.uploadClassificationsSync(mAuthName, mAuthApiKey, mGroupId, mClassifications,
+                        (index, uploaded) -> onUploadTaskFinished(uploaded, mItemIds.get(index)));
             } catch (final HttpUtils.NoNetworkException e) {
                 //This is normal, if there is no suitable network connection.
-                Log.info("UploadTask(): NoNetworkException");
+                Log.info("UploadBatchTask(): NoNetworkException");
             } catch (final ZooniverseClient.UploadException e) {
-                Log.error("UploadTask(): UploadException", e);
+                //The rest of the batch will be tried again during a later sync.
+                Log.error("UploadBatchTask(): UploadException", e);
             }
-
-            //Call onPostExecute in the main thread:
-            final boolean resultToUse = result;
-            mHandler.post(() -> onPostExecute(resultToUse));
-        }
-
-        protected void onPostExecute(final boolean result) {
-            onUploadTaskFinished(result, mItemId);
         }
     }
 
-    private void onQueryTaskFinished(@NonNull final List<ZooniverseClient.Subject> result) {
-        mRequestMoreItemsTaskInProgress = false;
-
-        if (result == null) {
-            return;
-        }
-
-        //Check that we are not adding too many,
-        //which can happen if a second request was queued before we got the result from a
-        //first request.
-        List<ZooniverseClient.Subject> listToUse = result;
-        final int missing = getNotDoneNeededForCache();
-        if (missing <= 0) {
-            return;
-        }
-
-        final int size = result.size();
-        if (missing < size) {
-            listToUse = result.subList(0, missing);
-        }
-        mSubjectAdder.addSubjects(listToUse, true /* async */);
-    }
-
     private void onUploadTaskFinished(final boolean result, final String itemId) {
         if (result) {
             markItemAsUploaded(itemId);
         } //else {
             //TODO: Inform the user?
         //}
-
-        mUploadsInProgress--;
     }
 
     private void markItemAsUploaded(final String itemId) {
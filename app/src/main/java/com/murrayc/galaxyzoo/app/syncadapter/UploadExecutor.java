@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.app.syncadapter;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.murrayc.galaxyzoo.app.Log;
+import com.murrayc.galaxyzoo.app.NamedThreadFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs uploads on a small bounded pool of named threads,
+ * instead of starting a new Thread for each upload,
+ * so a burst of uploads (for instance after a long time offline)
+ * does not open dozens of connections at once.
+ *
+ * Each task has one or more keys (the item IDs, for a batch of uploads),
+ * so the same upload is never queued twice.
+ *
+ * Cancelling a task, after a timeout or via cancelAll(), interrupts its thread,
+ * but that cannot interrupt a blocking HttpURLConnection read or write.
+ * A running upload really stops only when the connection's own timeouts
+ * (HttpUtils.TIMEOUT_MILLIS) expire, or before its next request
+ * (see ZooniverseClient.uploadClassificationsSync()).
+ * Until then, its keys stay here, so the same items cannot be uploaded again meanwhile.
+ */
+class UploadExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final ScheduledThreadPoolExecutor mTimeoutExecutor;
+    private final long mTaskTimeoutMillis;
+
+    /* The tasks that are queued or running, by key.
+     * A batch task is here once for each of its keys.
+     */
+    private final ConcurrentMap<String, UploadFuture> mTasks = new ConcurrentHashMap<>();
+
+    private final Metrics mMetrics = new Metrics();
+
+    /**
+     * @param maxConcurrent The maximum number of uploads to run at the same time.
+     * @param maxQueued The maximum number of uploads waiting to run. Further uploads will be refused.
+     * @param taskTimeoutMillis Cancel an upload if it takes longer than this.
+     *                          A batch task may take this long for each of its keys.
+     *                          See the class comment about what cancelling can achieve.
+     */
+    UploadExecutor(final int maxConcurrent, final int maxQueued, final long taskTimeoutMillis) {
+        mTaskTimeoutMillis = taskTimeoutMillis;
+
+        mExecutor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxQueued),
+                new NamedThreadFactory("galaxyzoo-upload"));
+
+        //Don't keep idle threads around between syncs:
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        mTimeoutExecutor = new ScheduledThreadPoolExecutor(1,
+                new NamedThreadFactory("galaxyzoo-upload-timeout"));
+        mTimeoutExecutor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        mTimeoutExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue the task, unless a task with the same key is already queued or running,
+     * or unless the queue is full.
+     *
+     * @param key
+     * @param task
+     * @return true if the task was queued.
+     */
+    boolean submit(@NonNull final String key, @NonNull final Runnable task) {
+        return submit(Collections.singletonList(key), task);
+    }
+
+    /**
+     * Queue a task that does several uploads, such as a batch of classifications,
+     * unless any of its keys is already queued or running,
+     * or unless the queue is full.
+     *
+     * @param keys
+     * @param task
+     * @return true if the task was queued.
+     */
+    boolean submit(@NonNull final List<String> keys, @NonNull final Runnable task) {
+        //Claim each key atomically, so two callers cannot both submit the same upload.
+        //If another task has any of the keys, give back the ones that we claimed already.
+        final UploadFuture future = new UploadFuture(keys, task);
+        for (final String key : keys) {
+            if (mTasks.putIfAbsent(key, future) != null) {
+                future.removeKeys();
+                return false;
+            }
+        }
+
+        try {
+            mExecutor.execute(future);
+        } catch (final RejectedExecutionException e) {
+            //The queue is full.
+            //These uploads will be tried again during a later sync.
+            future.removeKeys();
+            mMetrics.onRejected();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if a task with this key is queued or running.
+     */
+    boolean isSubmitted(@NonNull final String key) {
+        return mTasks.containsKey(key);
+    }
+
+    /**
+     * Cancel all queued tasks, and interrupt any running tasks.
+     * Tasks may be submitted again afterwards.
+     */
+    void cancelAll() {
+        for (final UploadFuture future : mTasks.values()) {
+            future.cancel(true);
+
+            //A task that was cancelled before it started will never remove itself.
+            //A running task will remove itself when it has really stopped,
+            //so it cannot be submitted again while it might still upload.
+            if (!future.mStarted) {
+                future.removeKeys();
+            }
+        }
+
+        //Remove the cancelled tasks from the queue:
+        mExecutor.purge();
+    }
+
+    @NonNull
+    Metrics getMetrics() {
+        return mMetrics;
+    }
+
+    private void onTimeout(final UploadFuture future) {
+        if (!future.isDone()) {
+            Log.error("UploadExecutor: Cancelling upload after timeout: keys=" + future.mKeys);
+            mMetrics.onTimedOut();
+            future.cancel(true);
+        }
+    }
+
+    private final class UploadFuture extends FutureTask<Void> {
+        private final List<String> mKeys;
+        private final long mQueuedTime;
+        private volatile boolean mStarted = false;
+
+        UploadFuture(final List<String> keys, final Runnable task) {
+            super(task, null);
+            mKeys = keys;
+            mQueuedTime = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * Remove this task's keys, but not if they now belong to a newer task,
+         * submitted after this one was cancelled.
+         */
+        private void removeKeys() {
+            for (final String key : mKeys) {
+                mTasks.remove(key, this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled()) {
+                return;
+            }
+
+            mStarted = true;
+            final long startTime = SystemClock.elapsedRealtime();
+            mMetrics.onStarted(startTime - mQueuedTime);
+
+            final ScheduledFuture<?> timeout = mTimeoutExecutor.schedule(
+                    () -> onTimeout(this), mTaskTimeoutMillis * mKeys.size(), TimeUnit.MILLISECONDS);
+            try {
+                super.run();
+            } finally {
+                timeout.cancel(false);
+                mMetrics.onFinished(SystemClock.elapsedRealtime() - startTime);
+                removeKeys();
+            }
+        }
+    }
+
+    /**
+     * Counts and timings for the uploads,
+     * to help us to choose the concurrency limit and queue depth.
+     */
+    static final class Metrics {
+        private final AtomicInteger mStartedCount = new AtomicInteger();
+        private final AtomicInteger mFinishedCount = new AtomicInteger();
+        private final AtomicInteger mRejectedCount = new AtomicInteger();
+        private final AtomicInteger mTimedOutCount = new AtomicInteger();
+        private final AtomicLong mTotalQueueWaitMillis = new AtomicLong();
+        private final AtomicLong mMaxQueueWaitMillis = new AtomicLong();
+        private final AtomicLong mTotalUploadMillis = new AtomicLong();
+        private final AtomicLong mMaxUploadMillis = new AtomicLong();
+
+        private void onStarted(final long queueWaitMillis) {
+            mStartedCount.incrementAndGet();
+            mTotalQueueWaitMillis.addAndGet(queueWaitMillis);
+            setIfGreater(mMaxQueueWaitMillis, queueWaitMillis);
+        }
+
+        private void onFinished(final long uploadMillis) {
+            mFinishedCount.incrementAndGet();
+            mTotalUploadMillis.addAndGet(uploadMillis);
+            setIfGreater(mMaxUploadMillis, uploadMillis);
+        }
+
+        private void onRejected() {
+            mRejectedCount.incrementAndGet();
+        }
+
+        private void onTimedOut() {
+            mTimedOutCount.incrementAndGet();
+        }
+
+        private static void setIfGreater(final AtomicLong value, final long candidate) {
+            long current = value.get();
+            while (candidate > current) {
+                if (value.compareAndSet(current, candidate)) {
+                    return;
+                }
+
+                current = value.get();
+            }
+        }
+
+        int getFinishedCount() {
+            return mFinishedCount.get();
+        }
+
+        int getRejectedCount() {
+            return mRejectedCount.get();
+        }
+
+        int getTimedOutCount() {
+            return mTimedOutCount.get();
+        }
+
+        long getAverageQueueWaitMillis() {
+            final int count = mStartedCount.get();
+            return count == 0 ? 0 : mTotalQueueWaitMillis.get() / count;
+        }
+
+        long getMaxQueueWaitMillis() {
+            return mMaxQueueWaitMillis.get();
+        }
+
+        long getAverageUploadMillis() {
+            final int count = mFinishedCount.get();
+            return count == 0 ? 0 : mTotalUploadMillis.get() / count;
+        }
+
+        long getMaxUploadMillis() {
+            return mMaxUploadMillis.get();
+        }
+
+        @Override
+        public String toString() {
+            return "finished=" + getFinishedCount() +
+                    ", rejected=" + getRejectedCount() +
+                    ", timedOut=" + getTimedOutCount() +
+                    ", queueWait avg/max ms=" + getAverageQueueWaitMillis() + "/" + getMaxQueueWaitMillis() +
+                    ", upload avg/max ms=" + getAverageUploadMillis() + "/" + getMaxUploadMillis();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.build
+
+import com.murrayc.galaxyzoo.core.DecisionTree
+import com.murrayc.galaxyzoo.core.Encoding
+import org.gradle.api.GradleException
+
+/**
+ * Compiles the decision tree XML files, and their JSON translations, into binary files,
+ * by parsing them with the core module's parsers and writing them with DecisionTree.writeBinary()
+ * and DecisionTree.Translation.writeBinary(),
+ * so the app reads them with the same code's DecisionTree.fromBinary() and Translation.fromBinary().
+ */
+class DecisionTreeCompiler {
+    static void compileTree(File xmlFile, File binaryFile) {
+        def decisionTree
+        try {
+            decisionTree = xmlFile.withInputStream { DecisionTree.fromXml(it, null) }
+        } catch (final DecisionTree.DecisionTreeException e) {
+            throw new GradleException("Could not parse the decision tree: $xmlFile", e)
+        }
+
+        binaryFile.withOutputStream { decisionTree.writeBinary(it) }
+    }
+
+    static void compileTranslation(File jsonFile, File binaryFile) {
+        // The Translation closes the reader.
+        def translation = new DecisionTree.Translation(
+                new GsonJsonTokenReader(jsonFile.newReader(Encoding.STRING_ENCODING)))
+
+        binaryFile.withOutputStream { translation.writeBinary(it) }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.build
+
+import org.gradle.api.GradleException
+
+import javax.imageio.IIOImage
+import javax.imageio.ImageIO
+import javax.imageio.ImageWriteParam
+import java.awt.image.BufferedImage
+
+/**
+ * Packs the icons into a few large atlas images, with an index of each icon's position.
+ * See IconAtlas.java, in the app, which reads the index.
+ */
+class IconAtlasCompiler {
+    // These must be the same as in IconAtlas.java:
+    static final int BINARY_MAGIC_ICONS_INDEX = 0x475A4943 // "GZIC"
+    static final int BINARY_FORMAT_VERSION = 1
+    static final String ICON_FILE_PREFIX = 'icon_'
+
+    static final int ATLAS_COLUMNS = 16
+
+    // The cells are aligned to JPEG's 16x16 blocks, so the colours of neighbouring icons
+    // cannot bleed into each other.
+    static final int CELL_ALIGNMENT = 16
+
+    static final float JPEG_QUALITY = 0.92f
+
+    static void compile(File iconsDir, File outputDir) {
+        // The workflow icons are PNGs with transparency,
+        // and the example icons are JPEG photos:
+        def workflowIcons = new TreeMap()
+        def exampleIcons = new TreeMap()
+        iconsDir.eachFile { file ->
+            if (!file.name.startsWith(ICON_FILE_PREFIX)) {
+                return
+            }
+
+            def image = ImageIO.read(file)
+            if (image == null) {
+                throw new GradleException("Could not read icon: $file")
+            }
+
+            def name = file.name.substring(ICON_FILE_PREFIX.length())
+            if (isPng(file)) {
+                workflowIcons[name] = image
+            } else {
+                exampleIcons[name] = image
+            }
+        }
+
+        def atlases = [
+                [filename: 'workflow.png', format: 'png', icons: workflowIcons, type: BufferedImage.TYPE_INT_ARGB],
+                [filename: 'examples.jpg', format: 'jpg', icons: exampleIcons, type: BufferedImage.TYPE_INT_RGB]
+        ].findAll { !it.icons.isEmpty() }
+
+        def entries = []
+        atlases.eachWithIndex { atlas, atlasIndex ->
+            def images = atlas.icons.values()
+            def cellWidth = align(images.collect { it.width }.max())
+            def cellHeight = align(images.collect { it.height }.max())
+            def columns = Math.min(ATLAS_COLUMNS, images.size())
+            def rows = (int) Math.ceil(images.size() / (double) columns)
+
+            def atlasImage = new BufferedImage(columns * cellWidth, rows * cellHeight, atlas.type)
+            def graphics = atlasImage.createGraphics()
+            atlas.icons.eachWithIndex { name, image, i ->
+                def x = (i % columns) * cellWidth
+                def y = ((int) (i / columns)) * cellHeight
+                graphics.drawImage(image, x, y, null)
+                entries << [name: name, atlasIndex: atlasIndex, x: x, y: y, width: image.width, height: image.height]
+            }
+            graphics.dispose()
+
+            writeImage(atlasImage, atlas.format, new File(outputDir, atlas.filename))
+        }
+
+        new File(outputDir, 'index.bin').withDataOutputStream { out ->
+            out.writeInt(BINARY_MAGIC_ICONS_INDEX)
+            out.writeInt(BINARY_FORMAT_VERSION)
+
+            out.writeInt(atlases.size())
+            atlases.each { atlas ->
+                out.writeUTF(atlas.filename)
+            }
+
+            out.writeInt(entries.size())
+            entries.each { entry ->
+                out.writeUTF(entry.name)
+                out.writeByte(entry.atlasIndex)
+                out.writeShort(entry.x)
+                out.writeShort(entry.y)
+                out.writeShort(entry.width)
+                out.writeShort(entry.height)
+            }
+        }
+    }
+
+    private static int align(int size) {
+        return ((int) ((size + CELL_ALIGNMENT - 1) / CELL_ALIGNMENT)) * CELL_ALIGNMENT
+    }
+
+    // The icon files have no file extensions, so we check the PNG signature.
+    private static boolean isPng(File file) {
+        def signature = new byte[4]
+        file.withInputStream { it.read(signature) }
+        return signature == [0x89, 0x50, 0x4E, 0x47] as byte[]
+    }
+
+    private static void writeImage(BufferedImage image, String format, File file) {
+        def writer = ImageIO.getImageWritersByFormatName(format).next()
+        def param = writer.defaultWriteParam
+        if (format == 'jpg') {
+            param.compressionMode = ImageWriteParam.MODE_EXPLICIT
+            param.compressionQuality = JPEG_QUALITY
+        }
+
+        file.withOutputStream { stream ->
+            def imageOutputStream = ImageIO.createImageOutputStream(stream)
+            writer.output = imageOutputStream
+            writer.write(null, new IIOImage(image, null, null), param)
+            imageOutputStream.close()
+        }
+        writer.dispose()
+    }
+}
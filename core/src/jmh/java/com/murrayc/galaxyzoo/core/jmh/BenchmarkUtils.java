@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core.jmh;
+
+import com.murrayc.galaxyzoo.core.CorePlatform;
+import com.murrayc.galaxyzoo.core.GsonJsonTokenReader;
+import com.murrayc.galaxyzoo.core.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+final class BenchmarkUtils {
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Use Gson's JsonReader instead of Android's,
+     * and only log errors, so logging does not affect the results.
+     */
+    static void installPlatform() {
+        CorePlatform.install(new ErrorsOnlyLogger(), GsonJsonTokenReader.FACTORY);
+    }
+
+    /**
+     * Read the whole resource into memory, so the benchmarks measure the parsing, not the file IO.
+     *
+     * @param resourcePath For instance, "decision_tree/sloan_tree.xml" from the app's assets,
+     *                     or "test_more_items_response.json" from the app's test resources.
+     * @throws IOException If the resource does not exist.
+     */
+    static byte[] readResource(final String resourcePath) throws IOException {
+        final InputStream inputStream = BenchmarkUtils.class.getClassLoader().getResourceAsStream(resourcePath);
+        if (inputStream == null) {
+            throw new IOException("Resource not found: " + resourcePath);
+        }
+
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static final class ErrorsOnlyLogger implements Logger {
+        @Override
+        public void error(final String message, final Throwable e) {
+            System.err.println("ERROR: " + message + ": " + e);
+        }
+
+        @Override
+        public void error(final String message) {
+            System.err.println("ERROR: " + message);
+        }
+
+        @Override
+        public void info(final String message, final Throwable e) {
+        }
+
+        @Override
+        public void info(final String message) {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core.jmh;
+
+import com.murrayc.galaxyzoo.core.DecisionTree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The loading of the decision trees and translations from the app's assets,
+ * from both the XML and JSON files and the binary files generated from them at build time.
+ * See DecisionTreeRegistry in the app.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecisionTreeBenchmark {
+    private static final String ASSET_DIR = "decision_tree/";
+
+    @Param({"sloan_tree.xml", "candels_tree.xml", "goods_full_tree.xml"})
+    public String treeFilename;
+
+    @Param({"de.json"})
+    public String translationFilename;
+
+    private byte[] mTreeXml;
+    private byte[] mTreeBinary;
+    private byte[] mTranslationJson;
+    private byte[] mTranslationBinary;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkUtils.installPlatform();
+
+        mTreeXml = BenchmarkUtils.readResource(ASSET_DIR + treeFilename);
+        mTreeBinary = BenchmarkUtils.readResource(ASSET_DIR + treeFilename + ".bin");
+        mTranslationJson = BenchmarkUtils.readResource(ASSET_DIR + translationFilename);
+        mTranslationBinary = BenchmarkUtils.readResource(ASSET_DIR + translationFilename + ".bin");
+    }
+
+    @Benchmark
+    public DecisionTree treeFromXml() throws DecisionTree.DecisionTreeException {
+        return DecisionTree.fromXml(new ByteArrayInputStream(mTreeXml), null);
+    }
+
+    @Benchmark
+    public DecisionTree treeFromBinary() throws DecisionTree.DecisionTreeException {
+        return DecisionTree.fromBinary(new ByteArrayInputStream(mTreeBinary));
+    }
+
+    @Benchmark
+    public DecisionTree.Translation translationFromJson() throws IOException {
+        return new DecisionTree.Translation(new ByteArrayInputStream(mTranslationJson));
+    }
+
+    @Benchmark
+    public DecisionTree.Translation translationFromBinary() throws IOException {
+        return DecisionTree.Translation.fromBinary(new ByteArrayInputStream(mTranslationBinary));
+    }
+}
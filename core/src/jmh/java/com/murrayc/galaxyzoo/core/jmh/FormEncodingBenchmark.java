@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core.jmh;
+
+import com.murrayc.galaxyzoo.core.ClassificationKeys;
+import com.murrayc.galaxyzoo.core.Encoding;
+import com.murrayc.galaxyzoo.core.FormEncoder;
+import com.murrayc.galaxyzoo.core.FormEncoding;
+import com.murrayc.galaxyzoo.core.NameValuePair;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The encoding of a classification upload, like the one that the app's SyncAdapter builds,
+ * comparing the previous way (building a String, and writing it via an OutputStreamWriter)
+ * with FormEncoder and ClassificationKeys.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormEncodingBenchmark {
+    private static final String PARAM_PART_CLASSIFICATION = "classification";
+    private static final String SUBJECT_ID = "504f217bc499611ea60410ed";
+    private static final String USER_AGENT = "murrayc.com-android-galaxyzoo/1.61";
+    private static final int QUESTIONS_COUNT = 10;
+
+    private final String[] mQuestionIds = new String[QUESTIONS_COUNT];
+    private List<NameValuePair> mClassification;
+    private List<NameValuePair> mClassificationWithCachedKeys;
+    private final FormEncoder mFormEncoder = new FormEncoder();
+
+    //Like the HttpURLConnection's OutputStream, but without the network.
+    private final CountingOutputStream mOut = new CountingOutputStream();
+
+    @Setup
+    public void setup() {
+        BenchmarkUtils.installPlatform();
+
+        for (int i = 0; i < QUESTIONS_COUNT; i++) {
+            mQuestionIds[i] = "decals-" + i;
+        }
+
+        mClassification = buildWithConcatenatedKeys();
+        mClassificationWithCachedKeys = buildWithCachedKeys();
+    }
+
+    /**
+     * How SyncAdapter built the parameters before ClassificationKeys.
+     */
+    @Benchmark
+    public List<NameValuePair> buildWithConcatenatedKeys() {
+        final List<NameValuePair> result = new ArrayList<>();
+        result.add(new NameValuePair(PARAM_PART_CLASSIFICATION + "[subject_ids][]", SUBJECT_ID));
+        result.add(new NameValuePair(PARAM_PART_CLASSIFICATION + "[favorite][]", "true"));
+        for (int i = 0; i < QUESTIONS_COUNT; i++) {
+            result.add(new NameValuePair(getAnnotationPart(i) + "[" + mQuestionIds[i] + "]", "a-1"));
+        }
+        result.add(new NameValuePair(getAnnotationPart(QUESTIONS_COUNT) + "[user_agent]", USER_AGENT));
+        return result;
+    }
+
+    @Benchmark
+    public List<NameValuePair> buildWithCachedKeys() {
+        final List<NameValuePair> result = new ArrayList<>();
+        result.add(ClassificationKeys.subjectId(SUBJECT_ID));
+        result.add(ClassificationKeys.favorite());
+        for (int i = 0; i < QUESTIONS_COUNT; i++) {
+            result.add(ClassificationKeys.annotation(i, mQuestionIds[i], "a-1"));
+        }
+        result.add(ClassificationKeys.userAgent(QUESTIONS_COUNT, USER_AGENT));
+        return result;
+    }
+
+    @Benchmark
+    public String postDataBytes() {
+        return FormEncoding.getPostDataBytes(mClassification);
+    }
+
+    /**
+     * How ZooniverseClient.writeParamsToHttpPost() wrote the parameters before FormEncoder.
+     */
+    @Benchmark
+    public long writeViaOutputStreamWriter() throws IOException {
+        mOut.reset();
+        final BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(mOut, Encoding.STRING_ENCODING));
+        writer.write(FormEncoding.getPostDataBytes(mClassification));
+        writer.flush();
+        return mOut.getCount();
+    }
+
+    @Benchmark
+    public long writeViaFormEncoder() throws IOException {
+        mOut.reset();
+        mFormEncoder.write(mClassification, mOut);
+        return mOut.getCount();
+    }
+
+    @Benchmark
+    public long writeViaFormEncoderWithCachedKeys() throws IOException {
+        mOut.reset();
+        mFormEncoder.write(mClassificationWithCachedKeys, mOut);
+        return mOut.getCount();
+    }
+
+    @Benchmark
+    public String authorizationHeader() {
+        return FormEncoding.generateAuthorizationHeader("somename", "somekey123");
+    }
+
+    private static String getAnnotationPart(final int sequence) {
+        return PARAM_PART_CLASSIFICATION + "[annotations][" + sequence + "]";
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long mCount = 0;
+
+        @Override
+        public void write(final int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            mCount += len;
+        }
+
+        void reset() {
+            mCount = 0;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
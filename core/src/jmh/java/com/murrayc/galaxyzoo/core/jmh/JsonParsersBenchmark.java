@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core.jmh;
+
+import com.murrayc.galaxyzoo.core.LoginResponseJsonParser;
+import com.murrayc.galaxyzoo.core.LoginResult;
+import com.murrayc.galaxyzoo.core.MoreItemsJsonParser;
+import com.murrayc.galaxyzoo.core.Subject;
+import com.murrayc.galaxyzoo.core.SubjectCallback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parsing of the server's responses, using the responses recorded for the app's tests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonParsersBenchmark {
+    private byte[] mMoreItemsResponse;
+    private String mMoreItemsResponseString;
+    private byte[] mLoginResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkUtils.installPlatform();
+
+        mMoreItemsResponse = BenchmarkUtils.readResource("test_more_items_response.json");
+        mMoreItemsResponseString = new String(mMoreItemsResponse, "UTF-8");
+        mLoginResponse = BenchmarkUtils.readResource("test_login_response_success.json");
+    }
+
+    /**
+     * As used by ZooniverseClient.requestMoreItemsSync(), with Volley's String response.
+     */
+    @Benchmark
+    public List<Subject> moreItemsFromString() {
+        return MoreItemsJsonParser.parseMoreItemsResponseContent(mMoreItemsResponseString);
+    }
+
+    /**
+     * As used by ZooniverseClient.requestMoreItemsStreamingSync(), with the response body's stream.
+     */
+    @Benchmark
+    public int moreItemsFromStream(final Blackhole blackhole) {
+        return MoreItemsJsonParser.parseMoreItemsResponseContent(new ByteArrayInputStream(mMoreItemsResponse),
+                new SubjectCallback() {
+                    @Override
+                    public void onSubject(final Subject subject) {
+                        blackhole.consume(subject);
+                    }
+                });
+    }
+
+    @Benchmark
+    public LoginResult loginResponse() throws IOException {
+        return LoginResponseJsonParser.parseLoginResponseContent(new ByteArrayInputStream(mLoginResponse));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parameters of a classification upload,
+ * such as "classification[annotations][3][decals-2]".
+ * The names are built and percent-encoded only once for each sequence and question ID,
+ * so each upload does not need to build and encode them again.
+ * See FormEncoder.
+ *
+ * This may be used from several threads at once.
+ */
+public final class ClassificationKeys {
+    private static final String PARAM_PART_CLASSIFICATION = "classification";
+    private static final String QUESTION_ID_USER_AGENT = "user_agent";
+
+    //Sequences are never this high in our decision trees,
+    //but we don't want to cache an unlimited number of keys if something goes wrong.
+    private static final int MAX_CACHED_SEQUENCE = 64;
+
+    private static final Key KEY_SUBJECT_IDS = new Key(PARAM_PART_CLASSIFICATION + "[subject_ids][]");
+    private static final Key KEY_FAVORITE = new Key(PARAM_PART_CLASSIFICATION + "[favorite][]");
+
+    /**
+     * A parameter name and its percent-encoded bytes.
+     */
+    private static final class Key {
+        final String name;
+        final byte[] encodedName;
+
+        Key(final String name) {
+            this.name = name;
+            this.encodedName = FormEncoder.encode(name);
+        }
+
+        NameValuePair withValue(final String value) {
+            return new NameValuePair(name, encodedName, value);
+        }
+    }
+
+    //The keys for each sequence, by question ID.
+    private static final List<Map<String, Key>> sAnnotationKeys = new ArrayList<>();
+
+    private ClassificationKeys() {
+    }
+
+    public static NameValuePair subjectId(final String subjectId) {
+        return KEY_SUBJECT_IDS.withValue(subjectId);
+    }
+
+    public static NameValuePair favorite() {
+        return KEY_FAVORITE.withValue("true");
+    }
+
+    /**
+     * The question's answer, or one of its selected checkboxes.
+     * The Galaxy-Zoo server expects us to use the same parameter name for both.
+     *
+     * @param sequence The position of the question in the classification.
+     * @param questionId
+     * @param answerOrCheckboxId
+     */
+    public static NameValuePair annotation(final int sequence, final String questionId, final String answerOrCheckboxId) {
+        return getAnnotationKey(sequence, questionId).withValue(answerOrCheckboxId);
+    }
+
+    /**
+     * Help the server know that the classification is from this Android app.
+     * See https://github.com/murraycu/android-galaxyzoo/issues/11
+     *
+     * @param sequence This should be after the sequence of the last question.
+     * @param userAgent
+     */
+    public static NameValuePair userAgent(final int sequence, final String userAgent) {
+        return getAnnotationKey(sequence, QUESTION_ID_USER_AGENT).withValue(userAgent);
+    }
+
+    private static Key getAnnotationKey(final int sequence, final String questionId) {
+        if (sequence < 0 || sequence > MAX_CACHED_SEQUENCE) {
+            return new Key(buildAnnotationName(sequence, questionId));
+        }
+
+        synchronized (sAnnotationKeys) {
+            while (sAnnotationKeys.size() <= sequence) {
+                sAnnotationKeys.add(new HashMap<String, Key>());
+            }
+
+            final Map<String, Key> keys = sAnnotationKeys.get(sequence);
+            Key key = keys.get(questionId);
+            if (key == null) {
+                key = new Key(buildAnnotationName(sequence, questionId));
+                keys.put(questionId, key);
+            }
+
+            return key;
+        }
+    }
+
+    private static String buildAnnotationName(final int sequence, final String questionId) {
+        //Integer.toString() is not locale-dependent.
+        return PARAM_PART_CLASSIFICATION + "[annotations][" + Integer.toString(sequence) + "][" + questionId + "]";
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+import java.io.Reader;
+
+/**
+ * The platform-specific parts that the core code needs,
+ * provided by the app on Android, or by the benchmarks on a normal JVM.
+ * install() should be called before using any other core code, such as in Application.onCreate(),
+ * and in any ContentProvider.onCreate(), which is called before Application.onCreate().
+ */
+public final class CorePlatform {
+    private static volatile Logger sLogger = new SystemErrLogger();
+    private static volatile JsonTokenReader.Factory sJsonTokenReaderFactory = null;
+
+    private CorePlatform() {
+    }
+
+    public static void install(final Logger logger, final JsonTokenReader.Factory jsonTokenReaderFactory) {
+        if (logger == null || jsonTokenReaderFactory == null) {
+            throw new IllegalArgumentException("CorePlatform.install(): The logger and factory must not be null.");
+        }
+
+        sLogger = logger;
+        sJsonTokenReaderFactory = jsonTokenReaderFactory;
+    }
+
+    static Logger getLogger() {
+        return sLogger;
+    }
+
+    /**
+     * @throws IllegalStateException If install() has not been called.
+     */
+    static JsonTokenReader newJsonTokenReader(final Reader reader) {
+        final JsonTokenReader.Factory factory = sJsonTokenReaderFactory;
+        if (factory == null) {
+            throw new IllegalStateException("CorePlatform.install() has not been called.");
+        }
+
+        return factory.create(reader);
+    }
+
+    /**
+     * Used until install() is called, so we don't lose messages.
+     */
+    private static final class SystemErrLogger implements Logger {
+        @Override
+        public void error(final String message, final Throwable e) {
+            System.err.println("ERROR: " + message + ": " + e);
+        }
+
+        @Override
+        public void error(final String message) {
+            System.err.println("ERROR: " + message);
+        }
+
+        @Override
+        public void info(final String message, final Throwable e) {
+            System.err.println("INFO: " + message + ": " + e);
+        }
+
+        @Override
+        public void info(final String message) {
+            System.err.println("INFO: " + message);
+        }
+    }
+}
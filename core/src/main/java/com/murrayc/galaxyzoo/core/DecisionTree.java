@@ -0,0 +1,1015 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo.
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by murrayc on 7/30/14.
+ */
+public class DecisionTree {
+
+    //TODO: Make this private and add accessors.
+    //This may be shared with other DecisionTree instances. See DecisionTree(DecisionTree, DiscussQuestion).
+    //The questions are in the same order as in the file, so writeBinary() keeps the first question first.
+    private final Map<String, Question> questionsMap;
+    private String firstQuestionId = null;
+
+    public static class DiscussQuestion {
+        private final String questionId;
+        private final String yesAnswerId;
+        private final String noAnswerId;
+
+        public DiscussQuestion(final String questionId, final String yesAnswerId, final String noAnswerId) {
+            this.questionId = questionId;
+            this.yesAnswerId = yesAnswerId;
+            this.noAnswerId = noAnswerId;
+        }
+
+        public String getQuestionId() {
+            return questionId;
+        }
+
+        public String getYesAnswerId() {
+            return yesAnswerId;
+        }
+
+        public String getNoAnswerId() {
+            return noAnswerId;
+        }
+    }
+
+    private final DiscussQuestion mDiscussQuestion;
+
+    private static final String NODE_ROOT = "murrayc_zoonverse_questions";
+    private static final String NODE_QUESTION = "question";
+    private static final String NODE_CHECKBOX = "checkbox";
+    private static final String NODE_ANSWER = "answer";
+
+    //The binary format written by writeBinary() and read by fromBinary().
+    //The compileDecisionTrees task in app/build.gradle uses writeBinary(), via buildSrc.
+    //Change BINARY_FORMAT_VERSION if the format changes.
+    private static final int BINARY_MAGIC_TREE = 0x475A4454; //"GZDT"
+    private static final int BINARY_MAGIC_TRANSLATION = 0x475A5452; //"GZTR"
+    private static final int BINARY_FORMAT_VERSION = 1;
+
+    private DecisionTree() {
+        questionsMap = new LinkedHashMap<>();
+        mDiscussQuestion = null;
+    }
+
+    /**
+     * @param inputStreamTree        The XMl file containing the decision tree.
+     * @param inputStreamTranslation A JSON file containing translations of the question and answers,
+     *                               such as https://github.com/zooniverse/Galaxy-Zoo/blob/master/public/locales/es.json
+     */
+    public DecisionTree(final InputStream inputStreamTree, final InputStream inputStreamTranslation) throws DecisionTreeException {
+        this();
+
+        //Load the translation first, so we can avoid reading the English strings that it replaces.
+        //We still need the English strings for the rest, because the translation might be incomplete.
+        Translation translation = null;
+        if (inputStreamTranslation != null) {
+            try {
+                translation = new Translation(inputStreamTranslation);
+            } catch (final IOException e) {
+                throw new DecisionTreeException("Translation parsing failed", e);
+            }
+        }
+
+        loadXml(inputStreamTree, translation);
+    }
+
+    /**
+     * Parse the XML file, using the translated strings instead of the English strings where possible.
+     * This lets a Translation be parsed once and then used for several DecisionTrees.
+     *
+     * @param inputStreamTree The XMl file containing the decision tree.
+     * @param translation
+     * @return
+     * @throws DecisionTreeException
+     */
+    public static DecisionTree fromXml(final InputStream inputStreamTree, final Translation translation) throws DecisionTreeException {
+        final DecisionTree result = new DecisionTree();
+        result.loadXml(inputStreamTree, translation);
+        return result;
+    }
+
+    /**
+     * Build the questions, answers, and checkboxes in one pass over the XML,
+     * without building a DOM document first.
+     */
+    private void loadXml(final InputStream inputStreamTree, final Translation translation) throws DecisionTreeException {
+        try {
+            //Android provides an XmlPullParser implementation,
+            //and a normal JVM can use one such as kXML.
+            final XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            parser.setInput(inputStreamTree, null);
+
+            parser.nextTag();
+            if (!TextUtils.equals(parser.getName(), NODE_ROOT)) {
+                throw new DecisionTreeException("Unexpected XML root node name found: " + parser.getName());
+            }
+
+            while (nextChildTag(parser)) {
+                if (TextUtils.equals(parser.getName(), NODE_QUESTION)) {
+                    addQuestion(readQuestion(parser, translation));
+                } else {
+                    skipElement(parser);
+                }
+            }
+        } catch (final XmlPullParserException | IOException | NumberFormatException e) {
+            throw new DecisionTreeException("Exception while parsing the XML.", e);
+        }
+    }
+
+    /**
+     * Load a decision tree that was compiled from the XML file at build time,
+     * which is much quicker than parsing the XML.
+     * The compiled file does not contain the translation. See Translation.fromBinary().
+     *
+     * @param inputStreamTree The binary file, written by writeBinary() at build time.
+     *                        This will not be closed.
+     * @return
+     * @throws DecisionTreeException If the file is not in the expected format.
+     */
+    public static DecisionTree fromBinary(final InputStream inputStreamTree) throws DecisionTreeException {
+        final DecisionTree result = new DecisionTree();
+
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStreamTree));
+            readBinaryHeader(in, BINARY_MAGIC_TREE);
+
+            final int questionsCount = in.readInt();
+            for (int i = 0; i < questionsCount; i++) {
+                result.addQuestion(readBinaryQuestion(in));
+            }
+        } catch (final IOException e) {
+            throw new DecisionTreeException("Exception while reading the binary decision tree.", e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Write the questions in the format that fromBinary() reads.
+     * The translation, if any, is not written. See Translation.writeBinary().
+     *
+     * @param outputStream This will not be closed.
+     * @throws IOException
+     */
+    public void writeBinary(final OutputStream outputStream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        writeBinaryHeader(out, BINARY_MAGIC_TREE);
+
+        out.writeInt(questionsMap.size());
+        for (final Question question : questionsMap.values()) {
+            writeBinaryQuestion(out, question);
+        }
+
+        out.flush();
+    }
+
+    private void addQuestion(final Question question) {
+        // We assume that the first question in the file is the top of the decision tree:
+        final String questionId = question.getId();
+        if (questionsMap.isEmpty()) {
+            firstQuestionId = questionId;
+        }
+
+        questionsMap.put(questionId, question);
+    }
+
+    private static void readBinaryHeader(final DataInputStream in, final int expectedMagic) throws IOException {
+        final int magic = in.readInt();
+        if (magic != expectedMagic) {
+            throw new IOException("Unexpected binary file type: " + Integer.toHexString(magic));
+        }
+
+        final int version = in.readInt();
+        if (version != BINARY_FORMAT_VERSION) {
+            throw new IOException("Unexpected binary file version: " + version);
+        }
+    }
+
+    private static void writeBinaryHeader(final DataOutputStream out, final int magic) throws IOException {
+        out.writeInt(magic);
+        out.writeInt(BINARY_FORMAT_VERSION);
+    }
+
+    /** Strings that were missing in the XML or JSON are written as a false boolean,
+     * and other strings are written as a true boolean followed by the string.
+     */
+    private static String readBinaryNullableString(final DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return in.readUTF();
+    }
+
+    private static void writeBinaryNullableString(final DataOutputStream out, final String str) throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null) {
+            out.writeUTF(str);
+        }
+    }
+
+    private static Question readBinaryQuestion(final DataInputStream in) throws IOException {
+        final Question result = new Question(
+                in.readUTF(),
+                readBinaryNullableString(in),
+                readBinaryNullableString(in),
+                readBinaryNullableString(in));
+
+        final int checkboxesCount = in.readInt();
+        for (int i = 0; i < checkboxesCount; i++) {
+            result.addCheckbox(new Checkbox(
+                    in.readUTF(),
+                    readBinaryNullableString(in),
+                    in.readUTF(),
+                    in.readInt()));
+        }
+
+        final int answersCount = in.readInt();
+        for (int i = 0; i < answersCount; i++) {
+            result.addAnswer(new Answer(
+                    in.readUTF(),
+                    readBinaryNullableString(in),
+                    in.readUTF(),
+                    in.readUTF(),
+                    in.readInt()));
+        }
+
+        return result;
+    }
+
+    private static void writeBinaryQuestion(final DataOutputStream out, final Question question) throws IOException {
+        out.writeUTF(question.getId());
+        writeBinaryNullableString(out, question.getTitle());
+        writeBinaryNullableString(out, question.getText());
+        writeBinaryNullableString(out, question.getHelp());
+
+        final List<Checkbox> checkboxes = question.getCheckboxes();
+        out.writeInt(checkboxes.size());
+        for (final Checkbox checkbox : checkboxes) {
+            out.writeUTF(checkbox.getId());
+            writeBinaryNullableString(out, checkbox.getText());
+            out.writeUTF(checkbox.getIcon());
+            out.writeInt(checkbox.getExamplesCount());
+        }
+
+        final List<Answer> answers = question.getAnswers();
+        out.writeInt(answers.size());
+        for (final Answer answer : answers) {
+            out.writeUTF(answer.getId());
+            writeBinaryNullableString(out, answer.getText());
+            out.writeUTF(answer.getIcon());
+            out.writeUTF(answer.leadsToQuestionId);
+            out.writeInt(answer.getExamplesCount());
+        }
+    }
+
+    /**
+     * Use the same questions as another DecisionTree, without copying or parsing them again,
+     * but with a different "Discuss this" question.
+     * Several subject groups use the same decision tree file,
+     * but we still know the "Discuss" question for each subject group separately.
+     *
+     * @param decisionTree The DecisionTree whose questions will be shared. This should not be changed afterwards.
+     * @param discussQuestion
+     */
+    public DecisionTree(final DecisionTree decisionTree, final DiscussQuestion discussQuestion) {
+        questionsMap = decisionTree.questionsMap;
+        firstQuestionId = decisionTree.firstQuestionId;
+        mDiscussQuestion = discussQuestion;
+    }
+
+    /**
+     * Replace the English strings with any translated strings.
+     * This should only be called before the DecisionTree is shared with other code,
+     * because the questions are otherwise meant to be immutable.
+     *
+     * @param translation
+     */
+    public void applyTranslation(final Translation translation) {
+        for (final Question question : questionsMap.values()) {
+            final QuestionTranslation questionTranslation = translation.questions.get(question.getId());
+            if (questionTranslation != null) {
+                questionTranslation.applyTo(question);
+            }
+        }
+    }
+
+    /**
+     * The translated strings from a translation JSON file,
+     * such as https://github.com/zooniverse/Galaxy-Zoo/blob/master/public/locales/es.json
+     * This lets us parse the file once and then use it for several DecisionTrees.
+     */
+    public static final class Translation {
+        private final Map<String, QuestionTranslation> questions = new HashMap<>();
+
+        private Translation() {
+        }
+
+        /**
+         * Load a translation that was compiled from the JSON file at build time,
+         * which is quicker than parsing the JSON.
+         *
+         * @param inputStreamTranslation The binary file, written by writeBinary() at build time.
+         *                               This will not be closed.
+         * @return
+         * @throws IOException If the file is not in the expected format.
+         */
+        public static Translation fromBinary(final InputStream inputStreamTranslation) throws IOException {
+            final Translation result = new Translation();
+
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStreamTranslation));
+            readBinaryHeader(in, BINARY_MAGIC_TRANSLATION);
+
+            final int questionsCount = in.readInt();
+            for (int i = 0; i < questionsCount; i++) {
+                final String questionId = in.readUTF();
+
+                final QuestionTranslation questionTranslation = new QuestionTranslation();
+                questionTranslation.text = readBinaryNullableString(in);
+                questionTranslation.title = readBinaryNullableString(in);
+                questionTranslation.help = readBinaryNullableString(in);
+                readBinaryStrings(in, questionTranslation.answers);
+                readBinaryStrings(in, questionTranslation.checkboxes);
+
+                result.questions.put(questionId, questionTranslation);
+            }
+
+            return result;
+        }
+
+        private static void readBinaryStrings(final DataInputStream in, final Map<String, String> strings) throws IOException {
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String id = in.readUTF();
+                strings.put(id, in.readUTF());
+            }
+        }
+
+        /**
+         * Write the translated strings in the format that fromBinary() reads.
+         *
+         * @param outputStream This will not be closed.
+         * @throws IOException
+         */
+        public void writeBinary(final OutputStream outputStream) throws IOException {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+            writeBinaryHeader(out, BINARY_MAGIC_TRANSLATION);
+
+            out.writeInt(questions.size());
+            for (final Map.Entry<String, QuestionTranslation> entry : questions.entrySet()) {
+                out.writeUTF(entry.getKey());
+
+                final QuestionTranslation questionTranslation = entry.getValue();
+                writeBinaryNullableString(out, questionTranslation.text);
+                writeBinaryNullableString(out, questionTranslation.title);
+                writeBinaryNullableString(out, questionTranslation.help);
+                writeBinaryStrings(out, questionTranslation.answers);
+                writeBinaryStrings(out, questionTranslation.checkboxes);
+            }
+
+            out.flush();
+        }
+
+        private static void writeBinaryStrings(final DataOutputStream out, final Map<String, String> strings) throws IOException {
+            out.writeInt(strings.size());
+            for (final Map.Entry<String, String> entry : strings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+
+        /**
+         * @param inputStreamTranslation The JSON file. This will be closed.
+         * @throws IOException
+         */
+        public Translation(final InputStream inputStreamTranslation) throws IOException {
+            Reader streamReader = null;
+            try {
+                streamReader = new InputStreamReader(inputStreamTranslation, Encoding.STRING_ENCODING);
+                readJson(CorePlatform.newJsonTokenReader(streamReader));
+            } catch (final UnsupportedEncodingException e) {
+                //This is very unlikely for UTF-8, so just ignore it.
+                Log.error("DecisionTree: UnsupportedEncodingException parsing JSON", e);
+            } finally {
+                if (streamReader != null) {
+                    streamReader.close();
+                }
+            }
+        }
+
+        /**
+         * @param reader The JSON. This will be closed.
+         * @throws IOException
+         */
+        public Translation(final JsonTokenReader reader) throws IOException {
+            readJson(reader);
+        }
+
+        private void readJson(final JsonTokenReader reader) throws IOException {
+            try {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (TextUtils.equals(reader.nextName(), "questions")) { //We ignore the "zooniverse" and "quiz_questions" objects
+                        readJsonQuestions(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } finally {
+                reader.close();
+            }
+        }
+
+        private void readJsonQuestions(final JsonTokenReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String questionId = reader.nextName();
+                questions.put(questionId, readJsonQuestion(reader));
+            }
+            reader.endObject();
+        }
+
+        private static QuestionTranslation readJsonQuestion(final JsonTokenReader reader) throws IOException {
+            final QuestionTranslation result = new QuestionTranslation();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                switch (name) {
+                    case "text":
+                        result.text = reader.nextString();
+                        break;
+                    case "title":
+                        result.title = reader.nextString();
+                        break;
+                    case "help":
+                        result.help = reader.nextString();
+                        break;
+                    case "answers":
+                        readJsonStrings(reader, result.answers);
+                        break;
+                    case "checkboxes":
+                        readJsonStrings(reader, result.checkboxes);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return result;
+        }
+
+        private static void readJsonStrings(final JsonTokenReader reader, final Map<String, String> strings) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String id = reader.nextName();
+                strings.put(id, reader.nextString());
+            }
+            reader.endObject();
+        }
+    }
+
+    private static final class QuestionTranslation {
+        private String text = null;
+        private String title = null;
+        private String help = null;
+        private final Map<String, String> answers = new HashMap<>();
+        private final Map<String, String> checkboxes = new HashMap<>();
+
+        void applyTo(final Question question) {
+            if (text != null) {
+                question.setText(text);
+            }
+
+            if (title != null) {
+                question.setTitle(title);
+            }
+
+            if (help != null) {
+                question.setHelp(help);
+            }
+
+            //Get the previously created answers and checkboxes from the decision tree and add the translated text:
+            for (final Map.Entry<String, String> entry : answers.entrySet()) {
+                final Answer answer = question.getAnswer(entry.getKey());
+                if (answer != null) {
+                    answer.setText(entry.getValue());
+                }
+            }
+
+            for (final Map.Entry<String, String> entry : checkboxes.entrySet()) {
+                final Checkbox checkbox = question.getCheckbox(entry.getKey());
+                if (checkbox != null) {
+                    checkbox.setText(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private Question getFirstQuestion() {
+        if (questionsMap == null) {
+            return null;
+        }
+
+        return getQuestion(firstQuestionId);
+    }
+
+    public Question getQuestionOrFirst(final String questionId) {
+        if (TextUtils.isEmpty(questionId)) {
+            return getFirstQuestion();
+        } else {
+            return getQuestion(questionId);
+        }
+    }
+
+    public Question getQuestion(final String questionId) {
+        if (questionsMap == null) {
+            return null;
+        }
+
+        if (questionId == null) {
+            Log.error("getQuestion(): questionId was null.");
+            return null;
+        }
+
+        return questionsMap.get(questionId);
+    }
+
+    public Question getNextQuestionForAnswer(final String questionId, final String answerId) {
+        final Question question = getQuestion(questionId);
+        if (question == null) {
+            return null;
+        }
+
+        final Answer answer = question.getAnswer(answerId);
+        if (answer == null) {
+            return null;
+        }
+
+        return getQuestion(answer.leadsToQuestionId);
+    }
+
+    public List<Question> getAllQuestions() {
+        final List<Question> result = new ArrayList<>();
+        for (final Question question : questionsMap.values()) {
+            if (question != null) {
+                result.add(question);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Move to the start of the next child element of the current element.
+     *
+     * @return false if there are no more child elements, when the parser is at the end of the current element.
+     */
+    private static boolean nextChildTag(final XmlPullParser parser) throws XmlPullParserException, IOException {
+        while (true) {
+            switch (parser.next()) {
+                case XmlPullParser.START_TAG:
+                    return true;
+                case XmlPullParser.END_TAG:
+                    return false;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document.");
+                default:
+                    //Ignore text between the elements.
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Skip the current element, including all its child elements.
+     */
+    private static void skipElement(final XmlPullParser parser) throws XmlPullParserException, IOException {
+        while (nextChildTag(parser)) {
+            skipElement(parser);
+        }
+    }
+
+    /**
+     * Read all the text in the current element, like DOM's Node.getTextContent(),
+     * leaving the parser at the end of the element.
+     */
+    private static String readText(final XmlPullParser parser) throws XmlPullParserException, IOException {
+        String result = null;
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.TEXT:
+                    //There is usually just one piece of text, so we don't bother with a StringBuilder.
+                    result = (result == null) ? parser.getText() : result + parser.getText();
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document.");
+                default:
+                    break;
+            }
+        }
+
+        return (result == null) ? "" : result;
+    }
+
+    /**
+     * Like DOM's Element.getAttribute(), this returns an empty string if the attribute is missing.
+     */
+    private static String getAttribute(final XmlPullParser parser, final String name) {
+        final String result = parser.getAttributeValue(null, name);
+        return (result == null) ? "" : result;
+    }
+
+    /**
+     * Read the current question element, leaving the parser at the end of the element.
+     * Translated strings are used instead of the English strings when they are available,
+     * so those English strings are skipped instead of being read.
+     * Only the first title, text, or help element is used.
+     */
+    private static Question readQuestion(final XmlPullParser parser, final Translation translation) throws XmlPullParserException, IOException {
+        final String id = getAttribute(parser, "id");
+
+        final QuestionTranslation questionTranslation = (translation == null) ?
+                null : translation.questions.get(id);
+
+        String title = null;
+        String text = null;
+        String help = null;
+        if (questionTranslation != null) {
+            title = questionTranslation.title;
+            text = questionTranslation.text;
+            help = questionTranslation.help;
+        }
+
+        final List<Checkbox> checkboxes = new ArrayList<>();
+        final List<Answer> answers = new ArrayList<>();
+
+        while (nextChildTag(parser)) {
+            switch (parser.getName()) {
+                case "title":
+                    if (title == null) {
+                        title = readText(parser);
+                    } else {
+                        skipElement(parser);
+                    }
+                    break;
+                case "text":
+                    if (text == null) {
+                        text = readText(parser);
+                    } else {
+                        skipElement(parser);
+                    }
+                    break;
+                case "help":
+                    if (help == null) {
+                        help = readText(parser);
+                    } else {
+                        skipElement(parser);
+                    }
+                    break;
+                case NODE_CHECKBOX:
+                    checkboxes.add(readCheckbox(parser, questionTranslation));
+                    break;
+                case NODE_ANSWER:
+                    answers.add(readAnswer(parser, questionTranslation));
+                    break;
+                default:
+                    skipElement(parser);
+            }
+        }
+
+        final Question result = new Question(id, title, text, help);
+        for (final Checkbox checkbox : checkboxes) {
+            result.addCheckbox(checkbox);
+        }
+
+        for (final Answer answer : answers) {
+            result.addAnswer(answer);
+        }
+
+        return result;
+    }
+
+    private static Checkbox readCheckbox(final XmlPullParser parser, final QuestionTranslation questionTranslation) throws XmlPullParserException, IOException {
+        final String id = getAttribute(parser, "id");
+        final String icon = getAttribute(parser, "icon");
+        final int examplesCount = Integer.parseInt(getAttribute(parser, "examplesCount"));
+
+        final String translatedText = (questionTranslation == null) ?
+                null : questionTranslation.checkboxes.get(id);
+        final String text = readButtonText(parser, translatedText);
+
+        return new Checkbox(id, text, icon, examplesCount);
+    }
+
+    private static Answer readAnswer(final XmlPullParser parser, final QuestionTranslation questionTranslation) throws XmlPullParserException, IOException {
+        final String id = getAttribute(parser, "id");
+        final String icon = getAttribute(parser, "icon");
+        final String leadsTo = getAttribute(parser, "leadsTo");
+        final int examplesCount = Integer.parseInt(getAttribute(parser, "examplesCount"));
+
+        final String translatedText = (questionTranslation == null) ?
+                null : questionTranslation.answers.get(id);
+        final String text = readButtonText(parser, translatedText);
+
+        return new Answer(id, text, icon, leadsTo, examplesCount);
+    }
+
+    /**
+     * Read the text of the current answer or checkbox element, unless we already have a translation,
+     * leaving the parser at the end of the element.
+     */
+    private static String readButtonText(final XmlPullParser parser, final String translatedText) throws XmlPullParserException, IOException {
+        String text = translatedText;
+        while (nextChildTag(parser)) {
+            if (text == null && TextUtils.equals(parser.getName(), "text")) {
+                text = readText(parser);
+            } else {
+                skipElement(parser);
+            }
+        }
+
+        return text;
+    }
+
+    /** This class is meant to be immutable,
+     * because that's generally nice when it's possible.
+     * It returns and takes String references, but String is immutable too.
+     */
+    public abstract static class BaseButton {
+        private final String id;
+        private String text;
+        private final String icon;
+        private final int examplesCount;
+
+        BaseButton(final String id, final String text, final String icon, final int examplesCount) {
+            this.id = id;
+            this.text = text;
+            this.icon = icon;
+            this.examplesCount = examplesCount;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+
+        //TODO: Remove this to make the class really immutable.
+        public void setText(final String text) {
+            this.text = text;
+        }
+
+        public String getIcon() {
+            return icon;
+        }
+
+        public int getExamplesCount() {
+            return examplesCount;
+        }
+
+        public String getExampleIconName(final String questionId, final int exampleIndex) {
+            return questionId + "_" + getId() + "_" + exampleIndex;
+        }
+
+        /**
+         * The full examples are often incorrectly named, which makes the web UI break too,
+         * but which the developers often don't notice (or check for), meaning that users of
+         * the web UI cannot view the full example images.
+         * Using this method, we can find those images even with their wrong names.
+         *
+         * @param questionId
+         * @param exampleIndex
+         * @return
+         */
+        public String getExampleIconNameWithCommonMistake(final String questionId, final int exampleIndex) {
+            return (questionId).replace("-", "_") + "_" + getId() + "_" + exampleIndex;
+        }
+    }
+
+    /**
+     * These are multiple-selection.
+     *
+     * This class is meant to be immutable,
+     * because that's generally nice when it's possible.
+     * It returns and takes String references, but String is immutable too.
+     */
+    public static final class Checkbox extends BaseButton {
+        Checkbox(final String id, final String text, final String icon, final int examplesCount) {
+            super(id, text, icon, examplesCount);
+        }
+    }
+
+    /**
+     * These are single selection.
+     * Sometimes it's just "Done" to accept the checkbox selections.
+     *
+     * This class is meant to be immutable,
+     * because that's generally nice when it's possible.
+     * It returns and take String references, but String is immutable too.
+     */
+    public static final class Answer extends BaseButton {
+        private final String leadsToQuestionId;
+
+        Answer(final String id, final String text, final String icon, final String leadsToQuestionId, final int examplesCount) {
+            super(id, text, icon, examplesCount);
+            this.leadsToQuestionId = leadsToQuestionId;
+        }
+    }
+
+    /**
+     * A question from the Decision Tree,
+     * with associated answers and checkboxes.
+     *
+     * This class is meant to be immutable,
+     * because that's generally nice when it's possible.
+     * It returns and takes references, but only to objects that are immutable too.
+     */
+    public static final class Question {
+
+        //The checkboxes in sequence:
+        private final List<Checkbox> checkboxes = new ArrayList<>();
+
+        //The checkboxes for retrieval by ID:
+        private final Map<String, Checkbox> mapCheckboxes = new HashMap<>();
+
+        //The answers in sequence:
+        private final List<Answer> answers = new ArrayList<>();
+
+        //The answers for retrieval by ID:
+        private final Map<String, Answer> mapAnswers = new HashMap<>();
+
+        private final String id;
+        private String title;
+        private String text;
+        private String help;
+
+        Question(final String id, final String title, final String text, final String help) {
+            this.id = id;
+            this.title = title;
+            this.text = text;
+            this.help = help;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(final String title) {
+            this.title = title;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        //TODO: Remove this to make the class really immutable.
+        public void setText(final String text) {
+            this.text = text;
+        }
+
+        public String getHelp() {
+            return help;
+        }
+
+        //TODO: Remove this to make the class really immutable.
+        public void setHelp(final String help) {
+            this.help = help;
+        }
+
+        public boolean hasCheckboxes() {
+            if (checkboxes == null) {
+                return false;
+            }
+
+            if (checkboxes.isEmpty()) {
+                return false;
+            }
+
+            return true;
+        }
+
+        private void addAnswer(final Answer answer) {
+            answers.add(answer);
+            mapAnswers.put(answer.getId(), answer);
+        }
+
+        private void addCheckbox(final Checkbox checkbox) {
+            checkboxes.add(checkbox);
+            mapCheckboxes.put(checkbox.getId(), checkbox);
+        }
+
+        public List<Checkbox> getCheckboxes() {
+            return Collections.unmodifiableList(checkboxes);
+        }
+
+        public List<Answer> getAnswers() {
+            return Collections.unmodifiableList(answers);
+        }
+
+            public Answer getAnswer(final String id) {
+            return mapAnswers.get(id);
+        }
+
+            public Checkbox getCheckbox(final String id) {
+            return mapCheckboxes.get(id);
+        }
+    }
+
+    public static class DecisionTreeException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public DecisionTreeException(final String detail, final Exception cause) {
+            super(detail, cause);
+        }
+
+        public DecisionTreeException(final String detail) {
+            super(detail);
+        }
+    }
+
+
+    public String getDiscussQuestionYesAnswerId() {
+        if (mDiscussQuestion == null) {
+            return null;
+        }
+
+        return mDiscussQuestion.getYesAnswerId();
+    }
+
+    public String getDiscussQuestionNoAnswerId() {
+        if (mDiscussQuestion == null) {
+            return null;
+        }
+
+        return mDiscussQuestion.getNoAnswerId();
+    }
+
+    public boolean isDiscussQuestion(final String questionId) {
+        if (mDiscussQuestion == null) {
+            return false;
+        }
+
+        return TextUtils.equals(questionId, mDiscussQuestion.getQuestionId());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes form-encoded POST bodies directly to an OutputStream,
+ * such as an HttpURLConnection's, as percent-encoded UTF-8 bytes.
+ * This produces the same bytes as FormEncoding.getPostDataBytes(),
+ * which uses URLEncoder.encode(), but without creating any Strings,
+ * and without an OutputStreamWriter.
+ * Names that were pre-encoded by ClassificationKeys are copied without being encoded again.
+ *
+ * Each FormEncoder reuses its own buffer, so it must only be used by one thread at a time.
+ */
+public final class FormEncoder {
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    //Percent-encoding of one UTF-8 byte, such as %5B.
+    private static final int MAX_BYTES_PER_ENCODED_BYTE = 3;
+
+    //Percent-encoding of the up-to-4 UTF-8 bytes of one code point.
+    private static final int MAX_BYTES_PER_CODE_POINT = 4 * MAX_BYTES_PER_ENCODED_BYTE;
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    //URLEncoder.encode() encodes a lone surrogate as '?', like String.getBytes() does.
+    private static final char REPLACEMENT_CHAR = '?';
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mCount = 0;
+
+    /**
+     * Write the name/value pairs, separated by &, and flush the output.
+     * This does not close the output.
+     */
+    public void write(final List<NameValuePair> nameValuePairs, final OutputStream out) throws IOException {
+        mCount = 0;
+
+        //Avoid the Iterator allocation:
+        final int size = nameValuePairs.size();
+        for (int i = 0; i < size; i++) {
+            final NameValuePair pair = nameValuePairs.get(i);
+            if (i != 0) {
+                writeByte('&', out);
+            }
+
+            final byte[] encodedName = pair.getEncodedName();
+            if (encodedName != null) {
+                writeBytes(encodedName, out);
+            } else {
+                writeEncoded(pair.getName(), out);
+            }
+
+            writeByte('=', out);
+            writeEncoded(pair.getValue(), out);
+        }
+
+        flushBuffer(out);
+        out.flush();
+    }
+
+    /**
+     * The number of bytes that write() will write,
+     * so the caller can use HttpURLConnection.setFixedLengthStreamingMode(),
+     * so HttpURLConnection does not need to buffer the whole body.
+     */
+    public static int getEncodedLength(final List<NameValuePair> nameValuePairs) {
+        int result = 0;
+
+        final int size = nameValuePairs.size();
+        for (int i = 0; i < size; i++) {
+            final NameValuePair pair = nameValuePairs.get(i);
+            if (i != 0) {
+                result++; //&
+            }
+
+            final byte[] encodedName = pair.getEncodedName();
+            if (encodedName != null) {
+                result += encodedName.length;
+            } else {
+                result += getEncodedLength(pair.getName());
+            }
+
+            result++; //=
+            result += getEncodedLength(pair.getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Percent-encode the string, for instance so it can be cached.
+     * This is not meant for frequent use. See ClassificationKeys.
+     */
+    static byte[] encode(final String str) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(getEncodedLength(str));
+        final FormEncoder encoder = new FormEncoder();
+        try {
+            encoder.writeEncoded(str, out);
+            encoder.flushBuffer(out);
+        } catch (final IOException e) {
+            //ByteArrayOutputStream does not really throw this.
+            Log.error("FormEncoder.encode(): Unexpected IOException", e);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static int getEncodedLength(final String str) {
+        int result = 0;
+
+        final int length = str.length();
+        for (int i = 0; i < length; i++) {
+            final char c = str.charAt(i);
+            if (isUnreserved(c) || c == ' ') {
+                result++;
+            } else if (c < 0x80) {
+                result += MAX_BYTES_PER_ENCODED_BYTE;
+            } else if (c < 0x800) {
+                result += 2 * MAX_BYTES_PER_ENCODED_BYTE;
+            } else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(str.charAt(i + 1))) {
+                result += 4 * MAX_BYTES_PER_ENCODED_BYTE;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                result += MAX_BYTES_PER_ENCODED_BYTE; //REPLACEMENT_CHAR
+            } else {
+                result += 3 * MAX_BYTES_PER_ENCODED_BYTE;
+            }
+        }
+
+        return result;
+    }
+
+    private void writeEncoded(final String str, final OutputStream out) throws IOException {
+        final int length = str.length();
+        for (int i = 0; i < length; i++) {
+            if (mCount > BUFFER_SIZE - MAX_BYTES_PER_CODE_POINT) {
+                flushBuffer(out);
+            }
+
+            final char c = str.charAt(i);
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(str.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, str.charAt(i + 1));
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                codePoint = REPLACEMENT_CHAR;
+            }
+
+            appendEncodedCodePoint(codePoint);
+        }
+    }
+
+    /**
+     * The caller must make sure that there is space in the buffer for MAX_BYTES_PER_CODE_POINT bytes.
+     */
+    private void appendEncodedCodePoint(final int codePoint) {
+        if (isUnreserved(codePoint)) {
+            mBuffer[mCount++] = (byte) codePoint;
+        } else if (codePoint == ' ') {
+            mBuffer[mCount++] = '+';
+        } else if (codePoint < 0x80) {
+            appendPercentEncoded(codePoint);
+        } else if (codePoint < 0x800) {
+            appendPercentEncoded(0xC0 | (codePoint >> 6));
+            appendPercentEncoded(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            appendPercentEncoded(0xE0 | (codePoint >> 12));
+            appendPercentEncoded(0x80 | ((codePoint >> 6) & 0x3F));
+            appendPercentEncoded(0x80 | (codePoint & 0x3F));
+        } else {
+            appendPercentEncoded(0xF0 | (codePoint >> 18));
+            appendPercentEncoded(0x80 | ((codePoint >> 12) & 0x3F));
+            appendPercentEncoded(0x80 | ((codePoint >> 6) & 0x3F));
+            appendPercentEncoded(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void appendPercentEncoded(final int b) {
+        mBuffer[mCount++] = '%';
+        mBuffer[mCount++] = HEX_DIGITS[(b >> 4) & 0xF];
+        mBuffer[mCount++] = HEX_DIGITS[b & 0xF];
+    }
+
+    private void flushBuffer(final OutputStream out) throws IOException {
+        if (mCount > 0) {
+            out.write(mBuffer, 0, mCount);
+            mCount = 0;
+        }
+    }
+
+    private void writeByte(final char c, final OutputStream out) throws IOException {
+        if (mCount == BUFFER_SIZE) {
+            flushBuffer(out);
+        }
+
+        mBuffer[mCount++] = (byte) c;
+    }
+
+    private void writeBytes(final byte[] bytes, final OutputStream out) throws IOException {
+        if (mCount + bytes.length > BUFFER_SIZE) {
+            flushBuffer(out);
+
+            if (bytes.length > BUFFER_SIZE) {
+                out.write(bytes);
+                return;
+            }
+        }
+
+        System.arraycopy(bytes, 0, mBuffer, mCount, bytes.length);
+        mCount += bytes.length;
+    }
+
+    /**
+     * The characters that URLEncoder.encode() does not change.
+     */
+    private static boolean isUnreserved(final int c) {
+        return (c >= 'a' && c <= 'z') ||
+                (c >= 'A' && c <= 'Z') ||
+                (c >= '0' && c <= '9') ||
+                c == '.' || c == '-' || c == '*' || c == '_';
+    }
+}
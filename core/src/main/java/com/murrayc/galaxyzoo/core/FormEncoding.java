@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+
+/**
+ * Encoding of the bodies and headers of our requests to the Zooniverse server.
+ */
+public final class FormEncoding {
+    private static final char[] BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private FormEncoding() {
+    }
+
+    /**
+     * @return null if the names or values could not be encoded.
+     */
+    public static String getPostDataBytes(final List<NameValuePair> nameValuePairs) {
+        final StringBuilder result = new StringBuilder();
+        boolean first = true;
+
+        for (final NameValuePair pair : nameValuePairs) {
+            if (first) {
+                first = false;
+            } else {
+                result.append("&");
+            }
+
+            try {
+                result.append(URLEncoder.encode(pair.getName(), Encoding.STRING_ENCODING));
+                result.append("=");
+                result.append(URLEncoder.encode(pair.getValue(), Encoding.STRING_ENCODING));
+            } catch (final UnsupportedEncodingException e) {
+                //This is incredibly unlikely for the UTF-8 encoding,
+                //so we just log it instead of trying to recover from it.
+                Log.error("getPostDataBytes(): Exception", e);
+                return null;
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * @return null if the name and key could not be encoded.
+     */
+    public static String generateAuthorizationHeader(final String authName, final String authApiKey) {
+        //See the similar code in Zooniverse's user.coffee source code:
+        //https://github.com/zooniverse/Zooniverse/blob/master/src/models/user.coffee#L49
+        final String str = authName + ":" + authApiKey;
+        byte[] asBytes = null;
+        try {
+            asBytes = str.getBytes(Encoding.STRING_ENCODING);
+        } catch (final UnsupportedEncodingException e) {
+            //This is incredibly unlikely for the UTF-8 encoding,
+            //so we just log it instead of trying to recover from it.
+            Log.error("generateAuthorizationHeader(): String.getBytes() failed", e);
+            return null;
+        }
+
+        return "Basic " + encodeBase64(asBytes);
+    }
+
+    /**
+     * Standard Base64, with padding, and without line breaks,
+     * like android.util.Base64.encodeToString(bytes, Base64.NO_WRAP).
+     * java.util.Base64 is not available on older Android versions.
+     */
+    static String encodeBase64(final byte[] bytes) {
+        final StringBuilder result = new StringBuilder(((bytes.length + 2) / 3) * 4);
+
+        int i = 0;
+        for (; i + 2 < bytes.length; i += 3) {
+            final int chunk = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8) | (bytes[i + 2] & 0xff);
+            result.append(BASE64_ALPHABET[(chunk >> 18) & 0x3f]);
+            result.append(BASE64_ALPHABET[(chunk >> 12) & 0x3f]);
+            result.append(BASE64_ALPHABET[(chunk >> 6) & 0x3f]);
+            result.append(BASE64_ALPHABET[chunk & 0x3f]);
+        }
+
+        final int remaining = bytes.length - i;
+        if (remaining == 1) {
+            final int chunk = (bytes[i] & 0xff) << 16;
+            result.append(BASE64_ALPHABET[(chunk >> 18) & 0x3f]);
+            result.append(BASE64_ALPHABET[(chunk >> 12) & 0x3f]);
+            result.append("==");
+        } else if (remaining == 2) {
+            final int chunk = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8);
+            result.append(BASE64_ALPHABET[(chunk >> 18) & 0x3f]);
+            result.append(BASE64_ALPHABET[(chunk >> 12) & 0x3f]);
+            result.append(BASE64_ALPHABET[(chunk >> 6) & 0x3f]);
+            result.append('=');
+        }
+
+        return result.toString();
+    }
+}
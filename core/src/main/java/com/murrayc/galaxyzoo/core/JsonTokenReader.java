@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The parts of a streaming JSON reader that our parsers use.
+ * This has the same methods as android.util.JsonReader, and Gson's JsonReader,
+ * so either can be used. See CorePlatform.install().
+ */
+public interface JsonTokenReader extends Closeable {
+    void beginArray() throws IOException;
+
+    void endArray() throws IOException;
+
+    void beginObject() throws IOException;
+
+    void endObject() throws IOException;
+
+    boolean hasNext() throws IOException;
+
+    String nextName() throws IOException;
+
+    String nextString() throws IOException;
+
+    boolean nextBoolean() throws IOException;
+
+    void skipValue() throws IOException;
+
+    interface Factory {
+        JsonTokenReader create(Reader reader);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+/**
+ * Like the app's Log class, but sending the messages to the Logger from CorePlatform,
+ * so this code does not depend on android.util.Log.
+ */
+public final class Log {
+    private Log() {
+    }
+
+    public static void error(final String message, final Throwable e) {
+        CorePlatform.getLogger().error(message, e);
+    }
+
+    public static void error(final String message) {
+        CorePlatform.getLogger().error(message);
+    }
+
+    public static void info(final String message, final Throwable e) {
+        CorePlatform.getLogger().info(message, e);
+    }
+
+    public static void info(final String message) {
+        CorePlatform.getLogger().info(message);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Parses the server's response to a login request.
+ */
+public final class LoginResponseJsonParser {
+    private LoginResponseJsonParser() {
+    }
+
+    public static LoginResult parseLoginResponseContent(final InputStream content) throws IOException {
+        final InputStreamReader streamReader = new InputStreamReader(content, Encoding.STRING_ENCODING);
+        final LoginResult result = parseLoginResponseContent(CorePlatform.newJsonTokenReader(streamReader));
+        streamReader.close();
+
+        return result;
+    }
+
+    /**
+     * The JsonTokenReader is closed afterwards.
+     */
+    public static LoginResult parseLoginResponseContent(final JsonTokenReader reader) throws IOException {
+        //A failure by default.
+        LoginResult result = new LoginResult(false, null, null);
+
+        reader.beginObject();
+        boolean success = false;
+        String apiKey = null;
+        String userName = null;
+        String message = null;
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            switch (name) {
+                case "success":
+                    success = reader.nextBoolean();
+                    break;
+                case "api_key":
+                    apiKey = reader.nextString();
+                    break;
+                case "name":
+                    userName = reader.nextString();
+                    break;
+                case "message":
+                    message = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        if (success) {
+            result = new LoginResult(true, userName, apiKey);
+        } else {
+            Log.info("Login failed.");
+            Log.info("Login failure message: " + message);
+        }
+
+        reader.endObject();
+        reader.close();
+
+        return result;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core;
+
+/**
+ * The server's response to a login request.
+ * See LoginResponseJsonParser.
+ */
+public class LoginResult {
+    private final boolean success;
+    private final String name;
+    private final String apiKey;
+
+    public LoginResult(final boolean success, final String name, final String apiKey) {
+        this.success = success;
+        this.name = name;
+        this.apiKey = apiKey;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public boolean getSuccess() {
+        return success;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -17,14 +17,12 @@
  * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package com.murrayc.galaxyzoo.app.provider.client;
 
-import android.support.annotation.Nullable;
-import android.util.JsonReader;
-
-import com.murrayc.galaxyzoo.app.Log;
+package com.murrayc.galaxyzoo.core;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
@@ -35,9 +33,9 @@ import java.util.List;
  * Created by murrayc on 10/8/14.
  */
 public class MoreItemsJsonParser {
-    public static List<ZooniverseClient.Subject> parseMoreItemsResponseContent(final String content) {
+    public static List<Subject> parseMoreItemsResponseContent(final String content) {
         final Reader reader = new StringReader(content);
-        final List<ZooniverseClient.Subject> result = parseMoreItemsResponseContent(reader);
+        final List<Subject> result = parseMoreItemsResponseContent(reader);
 
         try {
             reader.close();
@@ -48,42 +46,104 @@ public class MoreItemsJsonParser {
         return result;
     }
 
-    public static List<ZooniverseClient.Subject> parseMoreItemsResponseContent(final Reader contentReader) {
-        final List<ZooniverseClient.Subject> result = new ArrayList<>();
+    public static List<Subject> parseMoreItemsResponseContent(final Reader contentReader) {
+        final List<Subject> result = new ArrayList<>();
+        parseMoreItemsResponseContent(contentReader, new SubjectCallback() {
+            @Override
+            public void onSubject(final Subject subject) {
+                result.add(subject);
+            }
+        });
+
+        //TODO: If this is 0 then something went wrong. Let the user know,
+        //maybe via the parseMoreItemsJsonObjectSubject() return string..
+        //For instance, the Galaxy-Zoo server could be down for maintenance (this has happened before),
+        //or there could be some other network problem.
+        return result;
+    }
+
+    /**
+     * Parse the subjects as they are read from the stream, such as an HTTP response's body,
+     * without first reading the whole response into memory.
+     * If the response is cut short or is invalid,
+     * the callback will still have been called for the subjects before the problem.
+     *
+     * @param contentStream The UTF-8 JSON.
+     * @param callback This is called for each subject, on the calling thread.
+     * @return The number of subjects that were parsed.
+     */
+    public static int parseMoreItemsResponseContent(final InputStream contentStream, final SubjectCallback callback) {
+        final Reader reader;
+        try {
+            reader = new InputStreamReader(contentStream, Encoding.STRING_ENCODING);
+        } catch (final UnsupportedEncodingException e) {
+            Log.error("parseMoreItemsResponseContent: UnsupportedEncodingException", e);
+            return 0;
+        }
+
+        return parseMoreItemsResponseContent(reader, callback);
+    }
+
+    /**
+     * Parse the subjects as they are read from the Reader.
+     *
+     * @param contentReader
+     * @param callback This is called for each subject, on the calling thread.
+     * @return The number of subjects that were parsed.
+     */
+    public static int parseMoreItemsResponseContent(final Reader contentReader, final SubjectCallback callback) {
+        return parseMoreItemsResponseContent(CorePlatform.newJsonTokenReader(contentReader), callback);
+    }
+
+    /**
+     * Parse the subjects as they are read from the JsonTokenReader.
+     * The JsonTokenReader is closed afterwards.
+     *
+     * @param reader
+     * @param callback This is called for each subject, on the calling thread.
+     * @return The number of subjects that were parsed.
+     */
+    public static int parseMoreItemsResponseContent(final JsonTokenReader reader, final SubjectCallback callback) {
+        int count = 0;
 
-        final JsonReader reader;
         try {
-            reader = new JsonReader(contentReader);
             reader.beginArray();
             while (reader.hasNext()) {
                 while (reader.hasNext()) {
-                    final ZooniverseClient.Subject subject = parseMoreItemsJsonObjectSubject(reader);
+                    final Subject subject = parseMoreItemsJsonObjectSubject(reader);
                     if (subject != null) {
-                        result.add(subject);
+                        count++;
+                        callback.onSubject(subject);
                     }
                 }
             }
             reader.endArray();
-            reader.close();
         } catch (final UnsupportedEncodingException e) {
             Log.info("parseMoreItemsResponseContent: UnsupportedEncodingException parsing JSON", e);
         } catch (final IOException e) {
             Log.info("parseMoreItemsResponseContent: IOException parsing JSON", e);
+        } catch (final IllegalStateException e) {
+            //The JSON did not have the expected structure, such as an error object instead of an array.
+            Log.info("parseMoreItemsResponseContent: IllegalStateException parsing JSON", e);
+        } finally {
+            try {
+                reader.close();
+            } catch (final IOException e) {
+                Log.error("parseMoreItemsResponseContent: Exception while closing reader", e);
+            }
         }
 
-        if (result.isEmpty()) {
+        if (count == 0) {
             Log.error("parseMoreItemsResponseContent: Failed. No JSON entities parsed."); //TODO: Use some constant error code?
         }
 
-        //TODO: If this is 0 then something went wrong. Let the user know,
-        //maybe via the parseMoreItemsJsonObjectSubject() return string..
-        //For instance, the Galaxy-Zoo server could be down for maintenance (this has happened before),
-        //or there could be some other network problem.
-        return result;
+        return count;
     }
 
-    @Nullable
-    private static ZooniverseClient.Subject parseMoreItemsJsonObjectSubject(final JsonReader reader) throws IOException {
+    /**
+     * @return null if the subject has no locations.
+     */
+    private static Subject parseMoreItemsJsonObjectSubject(final JsonTokenReader reader) throws IOException {
         reader.beginObject();
 
         String subjectId = null;
@@ -118,7 +178,7 @@ public class MoreItemsJsonParser {
             return null;
         }
 
-        return new ZooniverseClient.Subject(subjectId, zooniverseId, groupId,
+        return new Subject(subjectId, zooniverseId, groupId,
                 locations.getLocationStandard(), locations.getLocationThumbnail(), locations.getLocationInverted());
     }
 
@@ -150,7 +210,7 @@ public class MoreItemsJsonParser {
         }
     }
 
-    private static Locations parseMoreItemsJsonObjectSubjectLocation(final JsonReader reader) throws IOException {
+    private static Locations parseMoreItemsJsonObjectSubjectLocation(final JsonTokenReader reader) throws IOException {
         reader.beginObject();
 
         String locationStandard = null;
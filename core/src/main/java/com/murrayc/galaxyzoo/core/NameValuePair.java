@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core;
+
+/**
+ * A name and value for a form-encoded POST body.
+ * See FormEncoding.getPostDataBytes() and FormEncoder.
+ */
+public class NameValuePair {
+    private final String name;
+    private final byte[] encodedName;
+    private final String value;
+
+    public NameValuePair(final String name, final String value) {
+        this(name, null, value);
+    }
+
+    /**
+     * @param encodedName The name, already percent-encoded by FormEncoder.encode(), or null.
+     */
+    NameValuePair(final String name, final byte[] encodedName, final String value) {
+        super();
+        this.name = name;
+        this.encodedName = encodedName;
+        this.value = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return null if the name has not already been encoded.
+     */
+    byte[] getEncodedName() {
+        return encodedName;
+    }
+}
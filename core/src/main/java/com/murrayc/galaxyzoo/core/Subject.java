@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core;
+
+/**
+ * A subject, as described by the server's response to a request for more subjects.
+ * See MoreItemsJsonParser.
+ *
+ * This class is meant to be immutable.
+ * It only returns references to immutable Strings.
+ */
+public final class Subject {
+    private final String mSubjectId;
+    private final String mZooniverseId;
+    private final String mGroupId;
+    private final String mLocationStandard;
+    private final String mLocationThumbnail;
+    private final String mLocationInverted;
+
+    public Subject(final String subjectId, final String zooniverseId, final String groupId, final String locationStandard, final String locationThumbnail, final String locationInverted) {
+        super();
+        this.mSubjectId = subjectId;
+        this.mZooniverseId = zooniverseId;
+        this.mGroupId = groupId;
+        this.mLocationStandard = locationStandard;
+        this.mLocationThumbnail = locationThumbnail;
+        this.mLocationInverted = locationInverted;
+    }
+
+    public String getSubjectId() {
+        return mSubjectId;
+    }
+
+    public String getZooniverseId() {
+        return mZooniverseId;
+    }
+
+    public String getGroupId() {
+        return mGroupId;
+    }
+
+    public String getLocationStandard() {
+        return mLocationStandard;
+    }
+
+    public String getLocationThumbnail() {
+        return mLocationThumbnail;
+    }
+
+    public String getLocationInverted() {
+        return mLocationInverted;
+    }
+
+}
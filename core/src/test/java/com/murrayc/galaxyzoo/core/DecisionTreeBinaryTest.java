@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Check that DecisionTree.fromBinary() reads what DecisionTree.writeBinary() writes,
+ * as the compileDecisionTrees task in app/build.gradle uses writeBinary().
+ */
+public class DecisionTreeBinaryTest {
+    private static final String TREE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<murrayc_zoonverse_questions>\n" +
+            "  <question id=\"sloan-0\">\n" +
+            "    <title>Shape</title>\n" +
+            "    <text>Is the galaxy simply smooth and rounded, with no sign of a disk?</text>\n" +
+            "    <answer id=\"a-0\" icon=\"smooth\" leadsTo=\"sloan-1\" examplesCount=\"3\">\n" +
+            "      <text>Smooth</text>\n" +
+            "    </answer>\n" +
+            "    <answer id=\"a-1\" icon=\"features\" leadsTo=\"sloan-1\" examplesCount=\"2\">\n" +
+            "      <text>Features or disk</text>\n" +
+            "    </answer>\n" +
+            "  </question>\n" +
+            "  <question id=\"sloan-1\">\n" +
+            "    <text>Do you see any of these odd features in the image?</text>\n" +
+            "    <checkbox id=\"x-0\" icon=\"ring\" examplesCount=\"1\">\n" +
+            "      <text>Ring</text>\n" +
+            "    </checkbox>\n" +
+            "    <checkbox id=\"x-1\" icon=\"lens\" examplesCount=\"0\">\n" +
+            "      <text>Lens or arc</text>\n" +
+            "    </checkbox>\n" +
+            "    <answer id=\"a-0\" icon=\"yes\" leadsTo=\"\" examplesCount=\"0\">\n" +
+            "      <text>Done</text>\n" +
+            "    </answer>\n" +
+            "  </question>\n" +
+            "</murrayc_zoonverse_questions>\n";
+
+    private static final String TRANSLATION_JSON = "{\"zooniverse\":{\"ignored\":\"Ignored\"}," +
+            "\"questions\":{" +
+            "\"sloan-0\":{\"title\":\"Forma\",\"text\":\"\u00bfEs la galaxia simplemente suave y redondeada?\"," +
+            "\"answers\":{\"a-0\":\"Suave\",\"a-1\":\"Rasgos o disco\"}}," +
+            "\"sloan-1\":{\"help\":\"Ayuda\",\"checkboxes\":{\"x-0\":\"Anillo\"}}}}";
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestUtils.installPlatform();
+    }
+
+    @Test
+    public void testTreeMatchesXml() throws IOException, DecisionTree.DecisionTreeException {
+        final DecisionTree fromXml = DecisionTree.fromXml(openString(TREE_XML), null);
+
+        final byte[] binary = writeBinary(fromXml);
+        final DecisionTree fromBinary = DecisionTree.fromBinary(new ByteArrayInputStream(binary));
+        assertTreesEqual(fromXml, fromBinary);
+
+        //The first question is the top of the tree, so it must stay first:
+        assertEquals("sloan-0", fromBinary.getQuestionOrFirst(null).getId());
+
+        //Writing it again should give exactly the same file:
+        assertTrue(Arrays.equals(binary, writeBinary(fromBinary)));
+    }
+
+    @Test
+    public void testTranslationMatchesJson() throws IOException, DecisionTree.DecisionTreeException {
+        final DecisionTree.Translation fromJson = new DecisionTree.Translation(openString(TRANSLATION_JSON));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fromJson.writeBinary(out);
+        final DecisionTree.Translation fromBinary = DecisionTree.Translation.fromBinary(
+                new ByteArrayInputStream(out.toByteArray()));
+
+        final DecisionTree translatedFromJson = DecisionTree.fromXml(openString(TREE_XML), fromJson);
+        final DecisionTree translatedFromBinary = DecisionTree.fromXml(openString(TREE_XML), fromBinary);
+        assertTreesEqual(translatedFromJson, translatedFromBinary);
+
+        //Check that the translation was really used, including the English fallbacks:
+        final DecisionTree.Question question = translatedFromBinary.getQuestion("sloan-0");
+        assertEquals("Forma", question.getTitle());
+        assertEquals("Suave", question.getAnswer("a-0").getText());
+
+        final DecisionTree.Question questionOdd = translatedFromBinary.getQuestion("sloan-1");
+        assertEquals("Do you see any of these odd features in the image?", questionOdd.getText());
+        assertEquals("Ayuda", questionOdd.getHelp());
+        assertEquals("Anillo", questionOdd.getCheckbox("x-0").getText());
+        assertEquals("Lens or arc", questionOdd.getCheckbox("x-1").getText());
+    }
+
+    @Test
+    public void testMissingStrings() throws IOException, DecisionTree.DecisionTreeException {
+        final DecisionTree fromXml = DecisionTree.fromXml(openString(TREE_XML), null);
+        final DecisionTree fromBinary = DecisionTree.fromBinary(new ByteArrayInputStream(writeBinary(fromXml)));
+
+        final DecisionTree.Question question = fromBinary.getQuestion("sloan-1");
+        assertNull(question.getTitle());
+        assertNull(question.getHelp());
+    }
+
+    private static InputStream openString(final String str) throws IOException {
+        return new ByteArrayInputStream(str.getBytes(Encoding.STRING_ENCODING));
+    }
+
+    private static byte[] writeBinary(final DecisionTree decisionTree) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        decisionTree.writeBinary(out);
+        return out.toByteArray();
+    }
+
+    private static void assertTreesEqual(final DecisionTree expected, final DecisionTree actual) {
+        final List<DecisionTree.Question> expectedQuestions = expected.getAllQuestions();
+        final List<DecisionTree.Question> actualQuestions = actual.getAllQuestions();
+        assertEquals(expectedQuestions.size(), actualQuestions.size());
+
+        for (int i = 0; i < expectedQuestions.size(); i++) {
+            final DecisionTree.Question expectedQuestion = expectedQuestions.get(i);
+            final DecisionTree.Question actualQuestion = actualQuestions.get(i);
+            assertEquals(expectedQuestion.getId(), actualQuestion.getId());
+            assertEquals(expectedQuestion.getTitle(), actualQuestion.getTitle());
+            assertEquals(expectedQuestion.getText(), actualQuestion.getText());
+            assertEquals(expectedQuestion.getHelp(), actualQuestion.getHelp());
+            assertButtonsEqual(expectedQuestion.getCheckboxes(), actualQuestion.getCheckboxes());
+            assertButtonsEqual(expectedQuestion.getAnswers(), actualQuestion.getAnswers());
+
+            for (final DecisionTree.Answer answer : expectedQuestion.getAnswers()) {
+                final DecisionTree.Question expectedNext = expected.getNextQuestionForAnswer(expectedQuestion.getId(), answer.getId());
+                final DecisionTree.Question actualNext = actual.getNextQuestionForAnswer(actualQuestion.getId(), answer.getId());
+                assertEquals(expectedNext == null ? null : expectedNext.getId(),
+                        actualNext == null ? null : actualNext.getId());
+            }
+        }
+    }
+
+    private static void assertButtonsEqual(final List<? extends DecisionTree.BaseButton> expected,
+                                           final List<? extends DecisionTree.BaseButton> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getText(), actual.get(i).getText());
+            assertEquals(expected.get(i).getIcon(), actual.get(i).getIcon());
+            assertEquals(expected.get(i).getExamplesCount(), actual.get(i).getExamplesCount());
+        }
+    }
+}
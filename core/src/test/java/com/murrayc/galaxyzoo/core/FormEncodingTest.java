@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class FormEncodingTest {
+    @Test
+    public void testEncodeBase64() throws UnsupportedEncodingException {
+        //The test vectors from RFC 4648, which cover each amount of padding:
+        assertEquals("", encodeBase64(""));
+        assertEquals("Zg==", encodeBase64("f"));
+        assertEquals("Zm8=", encodeBase64("fo"));
+        assertEquals("Zm9v", encodeBase64("foo"));
+        assertEquals("Zm9vYg==", encodeBase64("foob"));
+        assertEquals("Zm9vYmE=", encodeBase64("fooba"));
+        assertEquals("Zm9vYmFy", encodeBase64("foobar"));
+    }
+
+    @Test
+    public void testEncodeBase64AllBits() {
+        //Bytes with the high bit set must not be sign-extended,
+        //and these use the last characters of the alphabet.
+        assertEquals("////", FormEncoding.encodeBase64(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff}));
+        assertEquals("+/8=", FormEncoding.encodeBase64(new byte[]{(byte) 0xfb, (byte) 0xff}));
+        assertEquals("AAAA", FormEncoding.encodeBase64(new byte[]{0, 0, 0}));
+    }
+
+    @Test
+    public void testGenerateAuthorizationHeader() {
+        assertEquals("Basic c29tZW5hbWU6c29tZWtleTEyMw==",
+                FormEncoding.generateAuthorizationHeader("somename", "somekey123"));
+    }
+
+    @Test
+    public void testGetPostDataBytes() {
+        final List<NameValuePair> nameValuePairs = new ArrayList<>();
+        nameValuePairs.add(new NameValuePair("classification[subject_ids][]", "504f217bc499611ea60410ed"));
+        nameValuePairs.add(new NameValuePair("classification[annotations][0][sloan-0]", "a-1"));
+        assertEquals("classification%5Bsubject_ids%5D%5B%5D=504f217bc499611ea60410ed&" +
+                        "classification%5Bannotations%5D%5B0%5D%5Bsloan-0%5D=a-1",
+                FormEncoding.getPostDataBytes(nameValuePairs));
+    }
+
+    private static String encodeBase64(final String str) throws UnsupportedEncodingException {
+        return FormEncoding.encodeBase64(str.getBytes(Encoding.STRING_ENCODING));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.murrayc.galaxyzoo.core;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A JsonTokenReader for the regular JVM, using Gson's JsonReader,
+ * from which Android's JsonReader was derived.
+ * This is used by the tests and by the benchmarks.
+ */
+public final class GsonJsonTokenReader implements JsonTokenReader {
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public JsonTokenReader create(final Reader reader) {
+            return new GsonJsonTokenReader(new JsonReader(reader));
+        }
+    };
+
+    private final JsonReader mReader;
+
+    private GsonJsonTokenReader(final JsonReader reader) {
+        mReader = reader;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        mReader.beginArray();
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        mReader.endArray();
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        mReader.beginObject();
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        mReader.endObject();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return mReader.hasNext();
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        return mReader.nextName();
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        return mReader.nextString();
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        return mReader.nextBoolean();
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        mReader.skipValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class LoginResponseJsonParserTest {
+    @BeforeClass
+    public static void setUpClass() {
+        TestUtils.installPlatform();
+    }
+
+    @Test
+    public void testParseSuccess() throws IOException {
+        final InputStream inputStream = TestUtils.openResource("test_login_response_success.json");
+        final LoginResult result = LoginResponseJsonParser.parseLoginResponseContent(inputStream);
+        inputStream.close();
+
+        assertNotNull(result);
+        assertTrue(result.getSuccess());
+        assertEquals("testuser", result.getName());
+        assertEquals("testapikey", result.getApiKey());
+    }
+
+    @Test
+    public void testParseFailure() throws IOException {
+        final InputStream inputStream = new ByteArrayInputStream(
+                "{\"success\":false,\"message\":\"Invalid username or password\"}".getBytes(Encoding.STRING_ENCODING));
+        final LoginResult result = LoginResponseJsonParser.parseLoginResponseContent(inputStream);
+        inputStream.close();
+
+        assertNotNull(result);
+        assertFalse(result.getSuccess());
+        assertNull(result.getName());
+        assertNull(result.getApiKey());
+    }
+}
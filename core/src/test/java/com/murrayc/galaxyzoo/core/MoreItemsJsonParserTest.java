@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+public class MoreItemsJsonParserTest {
+    private static final String RESPONSE_RESOURCE = "test_more_items_response.json";
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestUtils.installPlatform();
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        final Reader reader = new InputStreamReader(TestUtils.openResource(RESPONSE_RESOURCE),
+                Encoding.STRING_ENCODING);
+        final List<Subject> subjects = MoreItemsJsonParser.parseMoreItemsResponseContent(reader);
+        reader.close();
+
+        assertNotNull(subjects);
+        assertEquals(5, subjects.size());
+
+        final Subject subject = subjects.get(0);
+        assertEquals("5500684569736d5964271400", subject.getSubjectId());
+        assertEquals("AGZ00081ls", subject.getZooniverseId());
+        assertEquals("551453e12f0eef21f2000001", subject.getGroupId());
+        assertEquals("http://www.galaxyzoo.org.s3.amazonaws.com/subjects/standard/goods_full_n_27820_standard.jpg",
+                subject.getLocationStandard());
+        assertEquals("http://www.galaxyzoo.org.s3.amazonaws.com/subjects/thumbnail/goods_full_n_27820_thumbnail.jpg",
+                subject.getLocationThumbnail());
+        assertEquals("http://www.galaxyzoo.org.s3.amazonaws.com/subjects/inverted/goods_full_n_27820_inverted.jpg",
+                subject.getLocationInverted());
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        final Reader reader = new InputStreamReader(TestUtils.openResource(RESPONSE_RESOURCE),
+                Encoding.STRING_ENCODING);
+        final List<Subject> expected = MoreItemsJsonParser.parseMoreItemsResponseContent(reader);
+        reader.close();
+
+        final InputStream inputStream = TestUtils.openResource(RESPONSE_RESOURCE);
+        final List<Subject> subjects = new ArrayList<>();
+        final int count = MoreItemsJsonParser.parseMoreItemsResponseContent(inputStream, new SubjectCallback() {
+            @Override
+            public void onSubject(final Subject subject) {
+                subjects.add(subject);
+            }
+        });
+        inputStream.close();
+
+        assertEquals(expected.size(), count);
+        assertEquals(expected.size(), subjects.size());
+        for (int i = 0; i < subjects.size(); i++) {
+            assertEquals(expected.get(i).getSubjectId(), subjects.get(i).getSubjectId());
+            assertEquals(expected.get(i).getLocationStandard(), subjects.get(i).getLocationStandard());
+        }
+    }
+
+    @Test
+    public void testParseEmpty() {
+        assertEquals(0, MoreItemsJsonParser.parseMoreItemsResponseContent("[]").size());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        //This should just fail, without throwing.
+        assertEquals(0, MoreItemsJsonParser.parseMoreItemsResponseContent("{\"error\": \"something\"}").size());
+    }
+
+    @Test
+    public void testParseInvalidClosesReader() {
+        final boolean[] closed = {false};
+        final Reader reader = new StringReader("{\"error\": \"something\"}") {
+            @Override
+            public void close() {
+                closed[0] = true;
+                super.close();
+            }
+        };
+
+        assertEquals(0, MoreItemsJsonParser.parseMoreItemsResponseContent(reader, new SubjectCallback() {
+            @Override
+            public void onSubject(final Subject subject) {
+            }
+        }));
+        assertTrue(closed[0]);
+    }
+}
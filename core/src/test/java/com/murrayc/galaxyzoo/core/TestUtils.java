@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 Murray Cumming
+ *
+ * This file is part of android-galaxyzoo
+ *
+ * android-galaxyzoo is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * android-galaxyzoo is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with android-galaxyzoo.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.murrayc.galaxyzoo.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+final class TestUtils {
+    private TestUtils() {
+    }
+
+    /**
+     * Use Gson's JsonReader instead of Android's, and log to stderr instead of android.util.Log.
+     */
+    static void installPlatform() {
+        CorePlatform.install(new Logger() {
+            @Override
+            public void error(final String message, final Throwable e) {
+                System.err.println("ERROR: " + message + ": " + e);
+            }
+
+            @Override
+            public void error(final String message) {
+                System.err.println("ERROR: " + message);
+            }
+
+            @Override
+            public void info(final String message, final Throwable e) {
+                System.err.println("INFO: " + message + ": " + e);
+            }
+
+            @Override
+            public void info(final String message) {
+                System.err.println("INFO: " + message);
+            }
+        }, GsonJsonTokenReader.FACTORY);
+    }
+
+    /**
+     * @param resourcePath For instance, "test_more_items_response.json" from the app's test resources.
+     * @throws IOException If the resource does not exist.
+     */
+    static InputStream openResource(final String resourcePath) throws IOException {
+        final InputStream inputStream = TestUtils.class.getClassLoader().getResourceAsStream(resourcePath);
+        if (inputStream == null) {
+            throw new IOException("Resource not found: " + resourcePath);
+        }
+
+        return inputStream;
+    }
+}